@@ -12,16 +12,38 @@ package org.openhab.habdroid.core;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
 import android.os.Bundle;
 import android.util.Log;
 
+import org.openhab.habdroid.util.ReconnectScheduler;
+
 public class ConnectivityChangeReceiver extends BroadcastReceiver {
     private static final String TAG = ConnectivityChangeReceiver.class.getSimpleName();
+    private ReconnectScheduler mReconnectScheduler;
+
+    public ConnectivityChangeReceiver() {
+    }
+
+    /**
+     * Creates a receiver which passes connectivity changes on to the given reconnect scheduler
+     */
+    public ConnectivityChangeReceiver(ReconnectScheduler reconnectScheduler) {
+        mReconnectScheduler = reconnectScheduler;
+    }
 
     @Override
     public void onReceive(Context context, Intent intent) {
         Log.d(TAG, "onReceive()");
         logIntent(intent);
+        if (mReconnectScheduler != null) {
+            ConnectivityManager connectivityManager = (ConnectivityManager) context.getSystemService(
+                    Context.CONNECTIVITY_SERVICE);
+            NetworkInfo activeNetworkInfo = connectivityManager.getActiveNetworkInfo();
+            mReconnectScheduler.setNetworkAvailable(activeNetworkInfo != null
+                    && activeNetworkInfo.isConnected());
+        }
     }
 
     private void logIntent(Intent intent) {
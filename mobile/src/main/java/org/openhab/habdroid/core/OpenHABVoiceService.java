@@ -19,6 +19,8 @@ import android.util.Log;
 import android.widget.Toast;
 
 import org.openhab.habdroid.R;
+import org.openhab.habdroid.ui.OpenHABMainActivity;
+import org.openhab.habdroid.util.CommandQueue;
 import org.openhab.habdroid.util.Constants;
 import org.openhab.habdroid.util.ContinuingIntentService;
 import org.openhab.habdroid.util.MyAsyncHttpClient;
@@ -166,6 +168,12 @@ public class OpenHABVoiceService extends ContinuingIntentService implements Open
         new Handler(Looper.getMainLooper()).post(new Runnable() {
             @Override
             public void run() {
+                // Queue the command while the app is running, so it is retried if it fails
+                CommandQueue commandQueue = OpenHABMainActivity.getCommandQueue();
+                if (commandQueue != null) {
+                    commandQueue.sendItemCommand(itemName, command);
+                    return;
+                }
                 mAsyncHttpClient.post(mOpenHABBaseUrl + "rest/items/" + itemName,
                         command, "text/plain;charset=UTF-8", new MyHttpClient.ResponseHandler() {
                             @Override
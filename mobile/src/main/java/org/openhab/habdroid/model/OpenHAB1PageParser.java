@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.model;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * This class parses openHAB 1 XML sitemap pages in a single pass with a SAX parser,
+ * without building a DOM. An instance keeps its parser, so it should be reused for
+ * all pages loaded by the same data source. Instances are not thread safe.
+ */
+
+public class OpenHAB1PageParser extends DefaultHandler {
+    private static SAXParserFactory parserFactory;
+
+    private final SAXParser parser;
+    private final ArrayList<String> elementStack = new ArrayList<String>();
+    private final ArrayList<OpenHABWidget> widgetStack = new ArrayList<OpenHABWidget>();
+    private final StringBuilder text = new StringBuilder();
+    // Depth of an element subtree we are not interested in, like widgets of a linked page
+    private int ignoreDepth;
+    private OpenHABItem item;
+    private OpenHABLinkedPage linkedPage;
+    private String mappingCommand;
+    private String mappingLabel;
+
+    private OpenHABWidget rootWidget;
+    private String title;
+    private String id;
+    private String icon;
+    private String link;
+
+    public OpenHAB1PageParser() throws ParserConfigurationException, SAXException {
+        parser = getParserFactory().newSAXParser();
+    }
+
+    private static synchronized SAXParserFactory getParserFactory() {
+        if (parserFactory == null) {
+            parserFactory = SAXParserFactory.newInstance();
+            parserFactory.setNamespaceAware(false);
+            parserFactory.setValidating(false);
+        }
+        return parserFactory;
+    }
+
+    /**
+     * Parses a sitemap page and returns its root widget, or null if the document was empty.
+     * Page title, id, icon and link are available through the getters afterwards.
+     */
+    public OpenHABWidget parse(InputStream inputStream) throws SAXException, IOException {
+        rootWidget = null;
+        title = null;
+        id = null;
+        icon = null;
+        link = null;
+        elementStack.clear();
+        widgetStack.clear();
+        ignoreDepth = 0;
+        item = null;
+        linkedPage = null;
+        try {
+            parser.parse(new InputSource(inputStream), this);
+        } finally {
+            parser.reset();
+        }
+        return rootWidget;
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes)
+            throws SAXException {
+        elementStack.add(qName);
+        text.setLength(0);
+        if (ignoreDepth > 0) {
+            ignoreDepth++;
+            return;
+        }
+        int depth = elementStack.size();
+        if (depth == 1) {
+            rootWidget = new OpenHAB1Widget();
+            rootWidget.setType("root");
+            widgetStack.add(rootWidget);
+            return;
+        }
+        String parentName = elementStack.get(depth - 2);
+        boolean inWidget = depth == 2 || parentName.equals("widget");
+        if (!inWidget && !parentName.equals("item") && !parentName.equals("linkedPage")
+                && !parentName.equals("mapping")) {
+            ignoreDepth = 1;
+        } else if (qName.equals("widget")) {
+            if (inWidget) {
+                widgetStack.add(new OpenHAB1Widget(widgetStack.get(widgetStack.size() - 1)));
+            } else {
+                ignoreDepth = 1;
+            }
+        } else if (depth > 2 && inWidget) {
+            if (qName.equals("item")) {
+                item = new OpenHABItem();
+            } else if (qName.equals("linkedPage")) {
+                linkedPage = new OpenHABLinkedPage();
+            } else if (qName.equals("mapping")) {
+                mappingCommand = "";
+                mappingLabel = "";
+            }
+        }
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) {
+        if (ignoreDepth == 0) {
+            text.append(ch, start, length);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        elementStack.remove(elementStack.size() - 1);
+        if (ignoreDepth > 0) {
+            ignoreDepth--;
+            return;
+        }
+        int depth = elementStack.size();
+        if (depth == 0) {
+            widgetStack.clear();
+            return;
+        }
+        String parentName = elementStack.get(depth - 1);
+        String value = text.toString();
+        text.setLength(0);
+        if (qName.equals("widget")) {
+            OpenHABWidget widget = widgetStack.remove(widgetStack.size() - 1);
+            widget.parent.addChildWidget(widget);
+        } else if (depth == 1) {
+            if (qName.equals("title")) {
+                title = value;
+            } else if (qName.equals("id")) {
+                id = value;
+            } else if (qName.equals("icon")) {
+                icon = value;
+            } else if (qName.equals("link")) {
+                link = value;
+            }
+        } else if (parentName.equals("item") && item != null) {
+            setItemField(qName, value);
+        } else if (parentName.equals("linkedPage") && linkedPage != null) {
+            setLinkedPageField(qName, value);
+        } else if (parentName.equals("mapping")) {
+            if (qName.equals("command")) {
+                mappingCommand = value;
+            } else if (qName.equals("label")) {
+                mappingLabel = value;
+            }
+        } else if (parentName.equals("widget")) {
+            try {
+                setWidgetField(widgetStack.get(widgetStack.size() - 1), qName, value);
+            } catch (NumberFormatException e) {
+                throw new SAXException("Invalid value for " + qName + ": " + value, e);
+            }
+        }
+    }
+
+    private void setWidgetField(OpenHABWidget widget, String name, String value) {
+        switch (name) {
+            case "item":
+                widget.setItem(item);
+                item = null;
+                break;
+            case "linkedPage":
+                widget.setLinkedPage(linkedPage);
+                linkedPage = null;
+                break;
+            case "mapping":
+                widget.getMappings().add(new OpenHABWidgetMapping(mappingCommand, mappingLabel));
+                break;
+            case "type":
+                widget.setType(value);
+                break;
+            case "widgetId":
+                widget.setId(value);
+                break;
+            case "label":
+                widget.setLabel(value);
+                break;
+            case "icon":
+                widget.setIcon(value);
+                break;
+            case "url":
+                widget.setUrl(value);
+                break;
+            case "minValue":
+                widget.setMinValue(Float.valueOf(value));
+                break;
+            case "maxValue":
+                widget.setMaxValue(Float.valueOf(value));
+                break;
+            case "step":
+                widget.setStep(Float.valueOf(value));
+                break;
+            case "refresh":
+                widget.setRefresh(Integer.valueOf(value));
+                break;
+            case "period":
+                widget.setPeriod(value);
+                break;
+            case "service":
+                widget.setService(value);
+                break;
+            case "height":
+                widget.setHeight(Integer.valueOf(value));
+                break;
+            case "iconcolor":
+                widget.setIconColor(value);
+                break;
+            case "labelcolor":
+                widget.setLabelColor(value);
+                break;
+            case "valuecolor":
+                widget.setValueColor(value);
+                break;
+            case "encoding":
+                widget.setEncoding(value);
+                break;
+        }
+    }
+
+    private void setItemField(String name, String value) {
+        if (name.equals("type")) {
+            item.setType(value);
+        } else if (name.equals("groupType")) {
+            item.setGroupType(value);
+        } else if (name.equals("name")) {
+            item.setName(value);
+        } else if (name.equals("state")) {
+            item.setState(value.equals("Uninitialized") ? null : value);
+        } else if (name.equals("link")) {
+            item.setLink(value);
+        }
+    }
+
+    private void setLinkedPageField(String name, String value) {
+        if (name.equals("id")) {
+            linkedPage.setId(value);
+        } else if (name.equals("title")) {
+            linkedPage.setTitle(value);
+        } else if (name.equals("icon")) {
+            linkedPage.setIcon(value);
+        } else if (name.equals("link")) {
+            linkedPage.setLink(value);
+        }
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getIcon() {
+        return icon;
+    }
+
+    public String getLink() {
+        return link;
+    }
+}
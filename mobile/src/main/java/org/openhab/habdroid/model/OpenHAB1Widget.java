@@ -6,12 +6,29 @@ import org.w3c.dom.NodeList;
 import java.util.ArrayList;
 
 public class OpenHAB1Widget extends OpenHABWidget {
+    // Icon the cached icon path was built from, compared by reference
+    private String iconPath;
+    private String iconPathIcon;
+
     public OpenHAB1Widget() {
     }
 
     @Override
     public String getIconPath() {
-        return String.format("images/%s.png", getIcon());
+        String icon = getIcon();
+        if (iconPath == null || icon != iconPathIcon) {
+            iconPath = String.format("images/%s.png", icon);
+            iconPathIcon = icon;
+        }
+        return iconPath;
+    }
+
+    /**
+     * Creates an empty widget for the streaming parser, which adds it to its parent
+     * once all of its fields are known.
+     */
+    OpenHAB1Widget(OpenHABWidget parent) {
+        this.parent = parent;
     }
 
     private OpenHAB1Widget(OpenHABWidget parent, Node startNode) {
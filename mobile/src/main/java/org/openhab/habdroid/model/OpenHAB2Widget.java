@@ -1,14 +1,22 @@
 package org.openhab.habdroid.model;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 
 public class OpenHAB2Widget extends OpenHABWidget {
 
     private String iconFormat;
+    // Icon and item state the cached icon path was built from, compared by reference
+    private String iconPath;
+    private String iconPathIcon;
+    private String iconPathState;
 
     public OpenHAB2Widget() {
         iconFormat="null";
@@ -18,7 +26,13 @@ public class OpenHAB2Widget extends OpenHABWidget {
     public String getIconPath() {
         OpenHABItem widgetItem = getItem();
         String itemState = (widgetItem != null) ? widgetItem.getState() : null;
-        return String.format("icon/%s?state=%s&format=%s", getIcon(), itemState, iconFormat);
+        String icon = getIcon();
+        if (iconPath == null || icon != iconPathIcon || itemState != iconPathState) {
+            iconPath = String.format("icon/%s?state=%s&format=%s", icon, itemState, iconFormat);
+            iconPathIcon = icon;
+            iconPathState = itemState;
+        }
+        return iconPath;
     }
 
     private OpenHAB2Widget(OpenHABWidget parent, JSONObject widgetJson, String iconFormat) {
@@ -91,6 +105,119 @@ public class OpenHAB2Widget extends OpenHABWidget {
         this.parent.addChildWidget(this);
     }
 
+    private OpenHAB2Widget(OpenHABWidget parent, JsonReader reader, String iconFormat) throws IOException {
+        this.iconFormat = iconFormat;
+        this.parent = parent;
+        this.children = new ArrayList<OpenHABWidget>();
+        this.mappings = new ArrayList<OpenHABWidgetMapping>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "item":
+                    this.setItem(new OpenHABItem(reader));
+                    break;
+                case "linkedPage":
+                    this.setLinkedPage(new OpenHABLinkedPage(reader));
+                    break;
+                case "mappings":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        String command = null;
+                        String label = null;
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            String mappingName = reader.nextName();
+                            if (mappingName.equals("command")) {
+                                command = reader.nextString();
+                            } else if (mappingName.equals("label")) {
+                                label = reader.nextString();
+                            } else {
+                                reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                        mappings.add(new OpenHABWidgetMapping(command, label));
+                    }
+                    reader.endArray();
+                    break;
+                case "widgets":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        createOpenHABWidgetFromJson(this, reader, iconFormat);
+                    }
+                    reader.endArray();
+                    break;
+                case "type":
+                    this.setType(reader.nextString());
+                    break;
+                case "widgetId":
+                    this.setId(reader.nextString());
+                    break;
+                case "label":
+                    this.setLabel(reader.nextString());
+                    break;
+                case "icon":
+                    this.setIcon(reader.nextString());
+                    break;
+                case "url":
+                    this.setUrl(reader.nextString());
+                    break;
+                case "minValue":
+                    this.setMinValue((float) reader.nextDouble());
+                    break;
+                case "maxValue":
+                    this.setMaxValue((float) reader.nextDouble());
+                    break;
+                case "step":
+                    this.setStep((float) reader.nextDouble());
+                    break;
+                case "refresh":
+                    this.setRefresh(reader.nextInt());
+                    break;
+                case "period":
+                    this.setPeriod(reader.nextString());
+                    break;
+                case "service":
+                    this.setService(reader.nextString());
+                    break;
+                case "height":
+                    this.setHeight(reader.nextInt());
+                    break;
+                case "iconcolor":
+                    this.setIconColor(reader.nextString());
+                    break;
+                case "labelcolor":
+                    this.setLabelColor(reader.nextString());
+                    break;
+                case "valuecolor":
+                    this.setValueColor(reader.nextString());
+                    break;
+                case "encoding":
+                    this.setEncoding(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        this.parent.addChildWidget(this);
+    }
+
+    /**
+     * Creates a widget from the current object of a streaming JSON reader, without
+     * building an intermediate JSON tree. The reader is left after the end of the object.
+     */
+    public static OpenHABWidget createOpenHABWidgetFromJson(OpenHABWidget parent, JsonReader reader, String iconFormat)
+            throws IOException {
+        return new OpenHAB2Widget(parent, reader, iconFormat);
+    }
+
     public static OpenHABWidget createOpenHABWidgetFromJson(OpenHABWidget parent, JSONObject widgetJson, String iconFormat) {
         return new OpenHAB2Widget(parent, widgetJson, iconFormat);
     }
@@ -13,12 +13,15 @@ import android.graphics.Color;
 import android.util.Log;
 
 import com.crittercism.app.Crittercism;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -32,9 +35,18 @@ public class OpenHABItem {
 	private String groupType;
 	private String state = "";
 	private String link;
+	// State the cached values below were parsed from, compared by reference
+	private String parsedState;
+	private boolean stateAsBoolean;
+	private Float stateAsFloat;
+	private final static Float ZERO = 0f;
+	private final static Float HUNDRED = 100f;
 	private final static String TAG = OpenHABItem.class.getSimpleName();
 	private final static Pattern HSB_PATTERN = Pattern.compile("^\\d+,\\d+,(\\d+)$");
 
+	OpenHABItem() {
+	}
+
 	public OpenHABItem(Node startNode) {
 		if (startNode.hasChildNodes()) {
 			NodeList childNodes = startNode.getChildNodes();
@@ -83,6 +95,43 @@ public class OpenHABItem {
             }
     }
 	
+	public OpenHABItem(JsonReader reader) throws IOException {
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (reader.peek() != JsonToken.STRING && reader.peek() != JsonToken.NUMBER) {
+				reader.skipValue();
+				continue;
+			}
+			switch (name) {
+				case "type":
+					this.setType(reader.nextString());
+					break;
+				case "groupType":
+					this.setGroupType(reader.nextString());
+					break;
+				case "name":
+					this.setName(reader.nextString());
+					break;
+				case "state":
+					String state = reader.nextString();
+					if (state.equals("NULL") || state.equals("UNDEF") || state.equalsIgnoreCase("undefined")) {
+						this.setState(null);
+					} else {
+						this.setState(state);
+					}
+					break;
+				case "link":
+					this.setLink(reader.nextString());
+					break;
+				default:
+					reader.skipValue();
+					break;
+			}
+		}
+		reader.endObject();
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -115,7 +164,25 @@ public class OpenHABItem {
 		this.state = state;
 	}
 
+	/**
+	 * Parses the state into the values returned by getStateAsBoolean and getStateAsFloat
+	 * once per state, so rebinding a row with an unchanged item doesn't allocate
+	 */
+	private void parseState() {
+		if (parsedState != null && parsedState == state) {
+			return;
+		}
+		stateAsBoolean = parseStateAsBoolean();
+		stateAsFloat = parseStateAsFloat();
+		parsedState = state;
+	}
+
 	public boolean getStateAsBoolean() {
+		parseState();
+		return stateAsBoolean;
+	}
+
+	private boolean parseStateAsBoolean() {
 		// For uninitialized/null state return false
 		if (state == null) {
 			return false;
@@ -145,14 +212,19 @@ public class OpenHABItem {
 	}
 
 	public Float getStateAsFloat() {
+		parseState();
+		return stateAsFloat;
+	}
+
+	private Float parseStateAsFloat() {
 		Float result;
 		// For uninitialized/null state return zero
 		if (state == null) {
-			result = 0f;
+			result = ZERO;
 		} else if ("ON".equals(state)) {
-			result = 100f;
+			result = HUNDRED;
 		} else if ("OFF".equals(state)) {
-			result = 0f;
+			result = ZERO;
 		} else {
 			try {
 				result = Float.parseFloat(state);
@@ -161,7 +233,7 @@ public class OpenHABItem {
 					Crittercism.logHandledException(e);
 					Log.e(TAG, e.getMessage());
 				}
-				result = new Float(0);
+				result = ZERO;
 			}
 		}
 		return result;
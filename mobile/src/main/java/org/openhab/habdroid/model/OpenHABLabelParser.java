@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.model;
+
+/**
+ * This class splits openHAB labels like "Temperature [21.5 °C]" into the text shown as label
+ * and the formatted state in brackets shown as value.
+ *
+ * The result is the same as taking the first two parts of label.split("\\[|\\]"), without
+ * compiling a pattern or allocating an array.
+ */
+
+public final class OpenHABLabelParser {
+
+    private OpenHABLabelParser() {
+    }
+
+    /**
+     * Returns the part of the label before the first bracket, or the label itself if it
+     * has no brackets
+     */
+    public static String getText(String label) {
+        if (label == null) {
+            return null;
+        }
+        int start = indexOfBracket(label, 0);
+        return start < 0 ? label : label.substring(0, start);
+    }
+
+    /**
+     * Returns the part of the label between the first bracket and the following one,
+     * or null if the label has no value
+     */
+    public static String getValue(String label) {
+        if (label == null) {
+            return null;
+        }
+        int start = indexOfBracket(label, 0);
+        if (start < 0) {
+            return null;
+        }
+        int end = indexOfBracket(label, start + 1);
+        if (end < 0) {
+            end = label.length();
+        }
+        // Like split, an empty value only counts if text follows it
+        if (end == start + 1 && !hasTextFrom(label, end)) {
+            return null;
+        }
+        return label.substring(start + 1, end);
+    }
+
+    private static int indexOfBracket(String label, int from) {
+        for (int i = from; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c == '[' || c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasTextFrom(String label, int from) {
+        for (int i = from; i < label.length(); i++) {
+            char c = label.charAt(i);
+            if (c != '[' && c != ']') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
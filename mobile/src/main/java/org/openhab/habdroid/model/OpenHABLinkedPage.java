@@ -9,11 +9,16 @@
 
 package org.openhab.habdroid.model;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import java.io.IOException;
+
 /**
  * This is a class to hold information about openHAB linked page.
  */
@@ -25,6 +30,9 @@ public class OpenHABLinkedPage {
 	private String link;
 	private static final String TAG = OpenHABLinkedPage.class.getSimpleName();
 	
+	OpenHABLinkedPage() {
+	}
+
 	public OpenHABLinkedPage(Node startNode) {
 		if (startNode.hasChildNodes()) {
 			NodeList childNodes = startNode.getChildNodes();
@@ -58,6 +66,28 @@ public class OpenHABLinkedPage {
         }
     }
 
+    public OpenHABLinkedPage(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() != JsonToken.STRING && reader.peek() != JsonToken.NUMBER) {
+                reader.skipValue();
+                continue;
+            }
+            if (name.equals("id"))
+                this.setId(reader.nextString());
+            else if (name.equals("title"))
+                this.setTitle(reader.nextString());
+            else if (name.equals("icon"))
+                this.setIcon(reader.nextString());
+            else if (name.equals("link"))
+                this.setLink(reader.nextString());
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+    }
+
 	public String getId() {
 		return id;
 	}
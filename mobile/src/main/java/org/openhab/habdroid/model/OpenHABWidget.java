@@ -21,6 +21,9 @@ import java.util.ArrayList;
 public abstract class OpenHABWidget {
 	private String id;
 	private String label;
+	// Parts of the label, split once when it is set
+	private String labelText;
+	private String labelValue;
 	private String icon;
 	private String type;
 	private String url;
@@ -104,6 +107,22 @@ public abstract class OpenHABWidget {
 
 	public void setLabel(String label) {
 		this.label = label;
+		this.labelText = OpenHABLabelParser.getText(label);
+		this.labelValue = OpenHABLabelParser.getValue(label);
+	}
+
+	/**
+	 * Returns the label without the value in brackets
+	 */
+	public String getLabelText() {
+		return labelText;
+	}
+
+	/**
+	 * Returns the value shown in brackets in the label, or null if there is none
+	 */
+	public String getLabelValue() {
+		return labelValue;
 	}
 
 	public String getIcon() {
@@ -11,13 +11,26 @@ package org.openhab.habdroid.model;
 
 import android.util.Log;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.ParserConfigurationException;
 
 /**
  * This class provides datasource for openHAB widgets from sitemap page.
@@ -32,6 +45,14 @@ public class OpenHABWidgetDataSource {
 	private String id;
 	private String icon;
 	private String link;
+	private OpenHAB1PageParser xmlParser;
+	// Built from the widget tree on first use after each parse
+	private List<OpenHABWidget> widgets;
+	private List<OpenHABWidget> linkWidgets;
+	private List<OpenHABWidget> nonlinkWidgets;
+	private Map<String, OpenHABWidget> widgetsById;
+	private Map<String, List<OpenHABWidget>> widgetsByItemName;
+	private String displayTitle;
 
 	public OpenHABWidgetDataSource(String iconFormat) {
 		this.iconFormat = iconFormat;
@@ -41,8 +62,9 @@ public class OpenHABWidgetDataSource {
 		Log.i(TAG, "Loading new data");
         if (rootNode == null)
             return;
-		rootWidget = new OpenHAB1Widget();
-		rootWidget.setType("root");
+		OpenHABWidget newRootWidget = new OpenHAB1Widget();
+		newRootWidget.setType("root");
+		setRootWidget(newRootWidget);
 		if (rootNode.hasChildNodes()) {
 			NodeList childNodes = rootNode.getChildNodes();
 			for (int i = 0; i < childNodes.getLength(); i ++) {
@@ -62,12 +84,45 @@ public class OpenHABWidgetDataSource {
 		}
 	}
 
+    /**
+     * Builds the widget tree from an openHAB 1 sitemap page XML stream in a single pass,
+     * without creating a DOM. The SAX parser is kept and reused for subsequent pages.
+     */
+    public void setSourceXml(InputStream inputStream)
+            throws ParserConfigurationException, SAXException, IOException {
+        if (xmlParser == null) {
+            xmlParser = new OpenHAB1PageParser();
+        }
+        setSourceXml(inputStream, xmlParser);
+    }
+
+    /**
+     * Same as {@link #setSourceXml(InputStream)}, but with a parser owned by the caller,
+     * e.g. one per background thread shared by many data sources
+     */
+    public void setSourceXml(InputStream inputStream, OpenHAB1PageParser parser)
+            throws SAXException, IOException {
+        OpenHABWidget newRootWidget = parser.parse(inputStream);
+        if (newRootWidget == null)
+            return;
+        setRootWidget(newRootWidget);
+        if (parser.getTitle() != null)
+            this.setTitle(parser.getTitle());
+        if (parser.getId() != null)
+            this.setId(parser.getId());
+        if (parser.getIcon() != null)
+            this.setIcon(parser.getIcon());
+        if (parser.getLink() != null)
+            this.setLink(parser.getLink());
+    }
+
     public void setSourceJson(JSONObject jsonObject) {
         Log.d(TAG, jsonObject.toString());
         if (!jsonObject.has("widgets"))
             return;
-        rootWidget = new OpenHAB2Widget();
-        rootWidget.setType("root");
+        OpenHABWidget newRootWidget = new OpenHAB2Widget();
+        newRootWidget.setType("root");
+        setRootWidget(newRootWidget);
         try {
             JSONArray jsonWidgetArray = jsonObject.getJSONArray("widgets");
             for (int i=0; i<jsonWidgetArray.length(); i++) {
@@ -88,75 +143,185 @@ public class OpenHABWidgetDataSource {
         }
     }
 	
+    /**
+     * Builds the widget tree directly from an openHAB 2 sitemap page JSON stream in a single
+     * pass, without creating a String copy of the response or a JSONObject tree.
+     */
+    public void setSourceJson(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, "UTF-8"));
+        try {
+            OpenHABWidget newRootWidget = new OpenHAB2Widget();
+            newRootWidget.setType("root");
+            boolean hasWidgets = false;
+            String newTitle = null, newId = null, newIcon = null, newLink = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                } else if (name.equals("widgets")) {
+                    hasWidgets = true;
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        OpenHAB2Widget.createOpenHABWidgetFromJson(newRootWidget, reader, iconFormat);
+                    }
+                    reader.endArray();
+                } else if (name.equals("title")) {
+                    newTitle = reader.nextString();
+                } else if (name.equals("id")) {
+                    newId = reader.nextString();
+                } else if (name.equals("icon")) {
+                    newIcon = reader.nextString();
+                } else if (name.equals("link")) {
+                    newLink = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (!hasWidgets)
+                return;
+            setRootWidget(newRootWidget);
+            if (newTitle != null)
+                this.setTitle(newTitle);
+            if (newId != null)
+                this.setId(newId);
+            if (newIcon != null)
+                this.setIcon(newIcon);
+            if (newLink != null)
+                this.setLink(newLink);
+        } catch (IllegalStateException | NumberFormatException e) {
+            // Thrown by JsonReader if the document doesn't have the expected structure
+            throw new IOException(e);
+        } finally {
+            reader.close();
+        }
+    }
+	
 	public OpenHABWidget getRootWidget() {
 		return this.rootWidget;
 	}
 
+    /**
+     * Returns the widget with the given id from the first two levels of the page
+     */
 	public OpenHABWidget getWidgetById(String widgetId) {
-		ArrayList<OpenHABWidget> widgets = this.getWidgets();
-		for (int i = 0; i < widgets.size(); i++) {
-			if (widgets.get(i).getId().equals(widgetId))
-				return widgets.get(i);
-		}
-		return null;
+		buildIndex();
+		return widgetsById.get(widgetId);
 	}
-	
+
+    /**
+     * Returns all widgets of the first two levels of the page which show the given item
+     */
+    public List<OpenHABWidget> getWidgetsByItemName(String itemName) {
+        buildIndex();
+        List<OpenHABWidget> result = widgetsByItemName.get(itemName);
+        return result != null ? Collections.unmodifiableList(result) : Collections.<OpenHABWidget>emptyList();
+    }
+
+    /**
+     * Returns a copy of the flattened widget list, see {@link #getWidgetList()}
+     */
 	public ArrayList<OpenHABWidget> getWidgets() {
-		ArrayList<OpenHABWidget> result = new ArrayList<OpenHABWidget>();
-		if (rootWidget != null)
-		if (this.rootWidget.hasChildren()) {
-			for (int i = 0; i < rootWidget.getChildren().size(); i++) {
-				OpenHABWidget openHABWidget = this.rootWidget.getChildren().get(i);
-				result.add(openHABWidget);
-				if (openHABWidget.hasChildren()) {
-					for (int j = 0; j < openHABWidget.getChildren().size(); j++) {
-						result.add(openHABWidget.getChildren().get(j));
-					}
-				}
-			}
-		}
-		return result;
+		return new ArrayList<OpenHABWidget>(getWidgetList());
 	}
 
     public ArrayList<OpenHABWidget> getLinkWidgets() {
-        ArrayList<OpenHABWidget> result = new ArrayList<OpenHABWidget>();
-        if (rootWidget != null)
-            if (this.rootWidget.hasChildren()) {
-                for (int i = 0; i < rootWidget.getChildren().size(); i++) {
-                    OpenHABWidget openHABWidget = this.rootWidget.getChildren().get(i);
-                    if (openHABWidget.hasLinkedPage() || openHABWidget.childrenHasLinkedPages())
-                    result.add(openHABWidget);
-                    if (openHABWidget.hasChildren()) {
-                        for (int j = 0; j < openHABWidget.getChildren().size(); j++) {
-                            if (openHABWidget.getChildren().get(j).hasLinkedPage())
-                                result.add(openHABWidget.getChildren().get(j));
-                        }
-                    }
-                }
-            }
-        return result;
+        return new ArrayList<OpenHABWidget>(getLinkWidgetList());
     }
 
     public ArrayList<OpenHABWidget> getNonlinkWidgets() {
-        ArrayList<OpenHABWidget> result = new ArrayList<OpenHABWidget>();
-        if (rootWidget != null)
-            if (this.rootWidget.hasChildren()) {
-                for (int i = 0; i < rootWidget.getChildren().size(); i++) {
-                    OpenHABWidget openHABWidget = this.rootWidget.getChildren().get(i);
-                    if ((openHABWidget.getType().equals("Frame") && openHABWidget.childrenHasNonlinkedPages()) ||
-                            (!openHABWidget.getType().equals("Frame") && !openHABWidget.hasLinkedPage()))
-                        result.add(openHABWidget);
-                    if (openHABWidget.hasChildren()) {
-                        for (int j = 0; j < openHABWidget.getChildren().size(); j++) {
-                            if (!openHABWidget.getChildren().get(j).hasLinkedPage())
-                                result.add(openHABWidget.getChildren().get(j));
-                        }
+        return new ArrayList<OpenHABWidget>(getNonlinkWidgetList());
+    }
+
+    /**
+     * Widgets of the first two levels of the page in display order. The list is built once
+     * per page and can't be modified.
+     */
+    public List<OpenHABWidget> getWidgetList() {
+        buildIndex();
+        return widgets;
+    }
+
+    /**
+     * Widgets linking to other pages and frames containing such widgets. The list is built
+     * once per page and can't be modified.
+     */
+    public List<OpenHABWidget> getLinkWidgetList() {
+        buildIndex();
+        return linkWidgets;
+    }
+
+    /**
+     * Widgets without linked page and frames containing such widgets. The list is built
+     * once per page and can't be modified.
+     */
+    public List<OpenHABWidget> getNonlinkWidgetList() {
+        buildIndex();
+        return nonlinkWidgets;
+    }
+
+    /**
+     * Builds the flattened lists and lookup tables of the current page if not done yet
+     */
+    private void buildIndex() {
+        if (widgets != null)
+            return;
+        ArrayList<OpenHABWidget> allWidgets = new ArrayList<OpenHABWidget>();
+        ArrayList<OpenHABWidget> links = new ArrayList<OpenHABWidget>();
+        ArrayList<OpenHABWidget> nonlinks = new ArrayList<OpenHABWidget>();
+        widgetsById = new HashMap<String, OpenHABWidget>();
+        widgetsByItemName = new HashMap<String, List<OpenHABWidget>>();
+        if (rootWidget != null && rootWidget.hasChildren()) {
+            for (OpenHABWidget openHABWidget : rootWidget.getChildren()) {
+                addToIndex(openHABWidget, allWidgets);
+                boolean isFrame = openHABWidget.getType().equals("Frame");
+                if (openHABWidget.hasLinkedPage() || openHABWidget.childrenHasLinkedPages())
+                    links.add(openHABWidget);
+                if ((isFrame && openHABWidget.childrenHasNonlinkedPages()) ||
+                        (!isFrame && !openHABWidget.hasLinkedPage()))
+                    nonlinks.add(openHABWidget);
+                if (openHABWidget.hasChildren()) {
+                    for (OpenHABWidget child : openHABWidget.getChildren()) {
+                        addToIndex(child, allWidgets);
+                        if (child.hasLinkedPage())
+                            links.add(child);
+                        else
+                            nonlinks.add(child);
                     }
                 }
             }
-        return result;
+        }
+        widgets = Collections.unmodifiableList(allWidgets);
+        linkWidgets = Collections.unmodifiableList(links);
+        nonlinkWidgets = Collections.unmodifiableList(nonlinks);
+    }
+
+    private void addToIndex(OpenHABWidget widget, List<OpenHABWidget> allWidgets) {
+        allWidgets.add(widget);
+        // Keep the first widget if ids are duplicated, like the former linear search
+        if (widget.getId() != null && !widgetsById.containsKey(widget.getId()))
+            widgetsById.put(widget.getId(), widget);
+        OpenHABItem item = widget.getItem();
+        if (item != null && item.getName() != null) {
+            List<OpenHABWidget> itemWidgets = widgetsByItemName.get(item.getName());
+            if (itemWidgets == null) {
+                itemWidgets = new ArrayList<OpenHABWidget>(1);
+                widgetsByItemName.put(item.getName(), itemWidgets);
+            }
+            itemWidgets.add(widget);
+        }
     }
 
+    private void setRootWidget(OpenHABWidget rootWidget) {
+        this.rootWidget = rootWidget;
+        // The index is rebuilt for the new page on first use
+        widgets = null;
+        linkWidgets = null;
+        nonlinkWidgets = null;
+        widgetsById = null;
+        widgetsByItemName = null;
+    }
 
     public void logWidget(OpenHABWidget widget) {
 		Log.i(TAG, "Widget <" + widget.getLabel() + "> (" + widget.getType() + ")");
@@ -168,20 +333,15 @@ public class OpenHABWidgetDataSource {
 	}
 
 	public String getTitle() {
-		String[] splitString;
-        if (title != null) {
-    		splitString = title.split("\\[|\\]");
-            if (splitString.length>0) {
-                return splitString[0];
-            } else {
-                return title;
-            }
+        if (displayTitle == null) {
+            displayTitle = title != null ? OpenHABLabelParser.getText(title) : "";
         }
-        return "";
+        return displayTitle;
 	}
 
 	public void setTitle(String title) {
 		this.title = title;
+		displayTitle = null;
 	}
 
 	public String getId() {
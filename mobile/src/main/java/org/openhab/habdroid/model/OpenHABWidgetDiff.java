@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.model;
+
+import android.support.v7.util.DiffUtil;
+
+import java.util.List;
+
+/**
+ * This class compares the widgets of two versions of a sitemap page, so only rows whose
+ * content changed are rebound. Widgets are matched by their widget id and type, the
+ * operations are calculated by DiffUtil with the Callback below.
+ */
+
+public class OpenHABWidgetDiff {
+
+    private OpenHABWidgetDiff() {
+    }
+
+    /**
+     * Two widgets are considered to be the same row if they have the same id and type.
+     * Widgets without an id never match, so they are always replaced.
+     */
+    public static boolean isSameWidget(OpenHABWidget oldWidget, OpenHABWidget newWidget) {
+        if (oldWidget.getId() == null || newWidget.getId() == null) {
+            return false;
+        }
+        return oldWidget.getId().equals(newWidget.getId())
+                && equals(oldWidget.getType(), newWidget.getType());
+    }
+
+    /**
+     * Checks if everything which is displayed in a widget row is unchanged
+     */
+    public static boolean hasSameContent(OpenHABWidget oldWidget, OpenHABWidget newWidget) {
+        if (!equals(oldWidget.getLabel(), newWidget.getLabel())
+                || !equals(oldWidget.getIcon(), newWidget.getIcon())
+                || !equals(oldWidget.getLabelColor(), newWidget.getLabelColor())
+                || !equals(oldWidget.getValueColor(), newWidget.getValueColor())
+                || !equals(oldWidget.getIconColor(), newWidget.getIconColor())
+                || !equals(oldWidget.getUrl(), newWidget.getUrl())
+                || !equals(oldWidget.getPeriod(), newWidget.getPeriod())
+                || !equals(oldWidget.getService(), newWidget.getService())
+                || !equals(oldWidget.getEncoding(), newWidget.getEncoding())
+                || !equals(oldWidget.getState(), newWidget.getState())
+                || oldWidget.getMinValue() != newWidget.getMinValue()
+                || oldWidget.getMaxValue() != newWidget.getMaxValue()
+                || oldWidget.getStep() != newWidget.getStep()
+                || oldWidget.getRefresh() != newWidget.getRefresh()
+                || oldWidget.getHeight() != newWidget.getHeight()) {
+            return false;
+        }
+        OpenHABItem oldItem = oldWidget.getItem();
+        OpenHABItem newItem = newWidget.getItem();
+        if (oldItem == null || newItem == null) {
+            if (oldItem != newItem) {
+                return false;
+            }
+        } else if (!equals(oldItem.getState(), newItem.getState())
+                || !equals(oldItem.getName(), newItem.getName())
+                || !equals(oldItem.getType(), newItem.getType())
+                || !equals(oldItem.getGroupType(), newItem.getGroupType())
+                || !equals(oldItem.getLink(), newItem.getLink())) {
+            return false;
+        }
+        OpenHABLinkedPage oldPage = oldWidget.getLinkedPage();
+        OpenHABLinkedPage newPage = newWidget.getLinkedPage();
+        if (oldPage == null || newPage == null) {
+            if (oldPage != newPage) {
+                return false;
+            }
+        } else if (!equals(oldPage.getLink(), newPage.getLink())) {
+            return false;
+        }
+        List<OpenHABWidgetMapping> oldMappings = oldWidget.getMappings();
+        List<OpenHABWidgetMapping> newMappings = newWidget.getMappings();
+        if (oldMappings.size() != newMappings.size()) {
+            return false;
+        }
+        for (int i = 0; i < oldMappings.size(); i++) {
+            if (!equals(oldMappings.get(i).getCommand(), newMappings.get(i).getCommand())
+                    || !equals(oldMappings.get(i).getLabel(), newMappings.get(i).getLabel())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Compares the widgets of the shown page and of its update for DiffUtil
+     */
+    public static class Callback extends DiffUtil.Callback {
+        private final List<OpenHABWidget> mOldWidgets;
+        private final List<OpenHABWidget> mNewWidgets;
+
+        public Callback(List<OpenHABWidget> oldWidgets, List<OpenHABWidget> newWidgets) {
+            mOldWidgets = oldWidgets;
+            mNewWidgets = newWidgets;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldWidgets.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewWidgets.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return isSameWidget(mOldWidgets.get(oldItemPosition), mNewWidgets.get(newItemPosition));
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            return hasSameContent(mOldWidgets.get(oldItemPosition), mNewWidgets.get(newItemPosition));
+        }
+    }
+}
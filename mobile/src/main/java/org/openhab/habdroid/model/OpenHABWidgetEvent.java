@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.model;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * This class holds a single event of the openHAB 2 sitemap event stream. Most events
+ * describe the new label, colors and item state of one widget of the subscribed page,
+ * others only signal that the connection is alive or that the sitemap was changed.
+ */
+
+public class OpenHABWidgetEvent {
+    public static final String TYPE_ALIVE = "ALIVE";
+    public static final String TYPE_SITEMAP_CHANGED = "SITEMAP_CHANGED";
+
+    private String type;
+    private String sitemapName;
+    private String pageId;
+    private String widgetId;
+    private String label;
+    private String labelColor;
+    private String valueColor;
+    private String state;
+    private boolean visible = true;
+    private OpenHABItem item;
+
+    private OpenHABWidgetEvent() {
+    }
+
+    public static OpenHABWidgetEvent fromJson(String json) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        OpenHABWidgetEvent event = new OpenHABWidgetEvent();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.skipValue();
+                    continue;
+                }
+                switch (name) {
+                    case "TYPE":
+                        event.type = reader.nextString();
+                        break;
+                    case "sitemapName":
+                        event.sitemapName = reader.nextString();
+                        break;
+                    case "pageId":
+                        event.pageId = reader.nextString();
+                        break;
+                    case "widgetId":
+                        event.widgetId = reader.nextString();
+                        break;
+                    case "label":
+                        event.label = reader.nextString();
+                        break;
+                    case "labelcolor":
+                        event.labelColor = reader.nextString();
+                        break;
+                    case "valuecolor":
+                        event.valueColor = reader.nextString();
+                        break;
+                    case "state":
+                        event.state = reader.nextString();
+                        break;
+                    case "visibility":
+                        event.visible = reader.nextBoolean();
+                        break;
+                    case "item":
+                        event.item = new OpenHABItem(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        } finally {
+            reader.close();
+        }
+        return event;
+    }
+
+    /**
+     * Updates label, colors and item state of the given widget. Returns false if the
+     * widget is no longer visible, the page then has to be reloaded to remove it.
+     */
+    public boolean applyTo(OpenHABWidget widget) {
+        if (!visible) {
+            return false;
+        }
+        if (label != null) {
+            widget.setLabel(label);
+        }
+        if (labelColor != null) {
+            widget.setLabelColor(labelColor);
+        }
+        if (valueColor != null) {
+            widget.setValueColor(valueColor);
+        }
+        if (state != null) {
+            widget.setState(state);
+        }
+        if (item != null && widget.getItem() != null) {
+            widget.getItem().setState(item.getState());
+        }
+        return true;
+    }
+
+    public boolean isWidgetEvent() {
+        return type == null && widgetId != null;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getSitemapName() {
+        return sitemapName;
+    }
+
+    public String getPageId() {
+        return pageId;
+    }
+
+    public String getWidgetId() {
+        return widgetId;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    public OpenHABItem getItem() {
+        return item;
+    }
+}
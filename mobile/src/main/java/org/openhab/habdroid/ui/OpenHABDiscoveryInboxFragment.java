@@ -245,22 +245,29 @@ public class OpenHABDiscoveryInboxFragment extends ListFragment implements Swipe
     private void loadThingTypes () {
         if (mAsyncHttpClient != null) {
             startProgressIndicator();
-            mRequestHandle = mAsyncHttpClient.get(openHABBaseUrl + "rest/thing-types", new MyHttpClient.ResponseHandler() {
+            final String url = openHABBaseUrl + "rest/thing-types";
+            mRequestHandle = mAsyncHttpClient.get(url, new MyHttpClient.ResponseHandler() {
                 @Override
                 public void onSuccess(Call call, int statusCode, Headers headers, byte[] responseBody) {
                     stopProgressIndicator();
-                    String jsonString = null;
-                    try {
-                        jsonString = new String(responseBody, "UTF-8");
-                    } catch (UnsupportedEncodingException e) {
-                        e.printStackTrace();
-                    }
                     Log.d(TAG, "Thing types request success");
-                    Log.d(TAG, jsonString);
-                    GsonBuilder gsonBuilder = new GsonBuilder();
-                    Gson gson = gsonBuilder.create();
+                    // Thing types rarely change, reuse them if the server reports no change
+                    Object thingTypes = mAsyncHttpClient.getStoredModel(url);
+                    if (!(thingTypes instanceof ThingType[])) {
+                        String jsonString = null;
+                        try {
+                            jsonString = new String(responseBody, "UTF-8");
+                        } catch (UnsupportedEncodingException e) {
+                            e.printStackTrace();
+                        }
+                        Log.d(TAG, jsonString);
+                        GsonBuilder gsonBuilder = new GsonBuilder();
+                        Gson gson = gsonBuilder.create();
+                        thingTypes = gson.fromJson(jsonString, ThingType[].class);
+                        mAsyncHttpClient.putStoredModel(url, thingTypes);
+                    }
                     mThingTypes.clear();
-                    mThingTypes.addAll(Arrays.asList(gson.fromJson(jsonString, ThingType[].class)));
+                    mThingTypes.addAll(Arrays.asList((ThingType[]) thingTypes));
                     mDiscoveryInboxAdapter.setThingTypes(mThingTypes);
                     mDiscoveryInboxAdapter.notifyDataSetChanged();
                 }
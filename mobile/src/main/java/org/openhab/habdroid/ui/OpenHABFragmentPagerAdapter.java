@@ -9,7 +9,6 @@
 
 package org.openhab.habdroid.ui;
 
-import android.support.v4.app.ListFragment;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentManager;
 import android.support.v4.app.FragmentStatePagerAdapter;
@@ -24,7 +23,7 @@ import java.util.List;
 public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter implements ViewPager.OnPageChangeListener {
 
     private static final String TAG = OpenHABFragmentPagerAdapter.class.getSimpleName();
-    private List<ListFragment> fragmentList;
+    private List<Fragment> fragmentList;
     private FragmentManager fragmentManager;
     private boolean notifyDataSetChangedPending = false;
     private int columnsNumber = 1;
@@ -34,11 +33,12 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
     private String openHABPassword;
     private boolean actualColumnCountChanged = false;
     private int mSelectedPage;
+    private WebViewPool mWebViewPool;
 
     public OpenHABFragmentPagerAdapter(FragmentManager fm) {
         super(fm);
         fragmentManager = fm;
-        fragmentList = new ArrayList<ListFragment>(0);
+        fragmentList = new ArrayList<Fragment>(0);
     }
 
     @Override
@@ -64,21 +64,34 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
         }
     }
 
-    public List<ListFragment> getFragmentList() {
+    public List<Fragment> getFragmentList() {
         return fragmentList;
     }
 
-    public void setFragmentList(List<ListFragment>fragments) {
+    public void setFragmentList(List<Fragment>fragments) {
         fragmentList = fragments;
         notifyDataSetChanged();
     }
 
     public void clearFragmentList() {
+        if (mWebViewPool != null) {
+            mWebViewPool.releaseAll();
+        }
         fragmentList.clear();
         notifyDataSetChanged();
     }
 
-    public ListFragment getFragment(int position) {
+    /**
+     * Removes the page at the given position and releases its WebViews
+     */
+    private void removeFragment(int position) {
+        Fragment fragment = fragmentList.remove(position);
+        if (mWebViewPool != null && fragment instanceof OpenHABWidgetListFragment) {
+            mWebViewPool.release(((OpenHABWidgetListFragment) fragment).getDisplayPageUrl());
+        }
+    }
+
+    public Fragment getFragment(int position) {
         if (position < fragmentList.size()) {
             return fragmentList.get(position);
         }
@@ -220,7 +233,7 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
         int oldColumnCount = getActualColumnsNumber();
         if (position < fragmentList.size()) {
             for (int i=fragmentList.size()-1; i>=position; i--) {
-                fragmentList.remove(i);
+                removeFragment(i);
                 Log.d(TAG, String.format("Removing fragment at position %d", i));
             }
             notifyDataSetChanged();
@@ -252,7 +265,7 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
                     ((OpenHABWidgetListFragment)fragmentList.get(pageSelected)).clearSelection();
                 for(int i=fragmentList.size()-1; i>mSelectedPage; i--) {
                     Log.d(TAG, String.format("Removing page %d", i));
-                    fragmentList.remove(i);
+                    removeFragment(i);
                 }
                 notifyDataSetChanged();
             } else { // In single column we will set a flag to do that after scroll finishes
@@ -269,7 +282,7 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
             if (mSelectedPage < fragmentList.size() - 1) {
                 Log.d(TAG, "new position is less then current");
                 for(int i=fragmentList.size()-1; i>mSelectedPage; i--) {
-                    fragmentList.remove(i);
+                    removeFragment(i);
                 }
             }
             notifyDataSetChanged();
@@ -281,7 +294,7 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
     private void removeLastFragmentIfNotWidgetList() {
         while (!(fragmentList.get(fragmentList.size() - 1) instanceof OpenHABWidgetListFragment) &&
                 fragmentList.size() > 0) {
-            fragmentList.remove(fragmentList.size() - 1);
+            removeFragment(fragmentList.size() - 1);
         }
     }
 
@@ -336,4 +349,8 @@ public class OpenHABFragmentPagerAdapter extends FragmentStatePagerAdapter imple
     public void setOpenHABPassword(String openHABPassword) {
         this.openHABPassword = openHABPassword;
     }
+
+    public void setWebViewPool(WebViewPool webViewPool) {
+        mWebViewPool = webViewPool;
+    }
 }
@@ -56,6 +56,7 @@ public class OpenHABInfoFragment extends DialogFragment {
                 (getActivity().getApplicationContext());
         mAsyncHttpClient = new MyAsyncHttpClient(getActivity().getApplicationContext(), prefs.getBoolean(Constants.PREFERENCE_SSLHOST,
                 false), prefs.getBoolean(Constants.PREFERENCE_SSLCERT, false));
+        mAsyncHttpClient.setValidatorStore(OpenHABMainActivity.getValidatorStore());
         mOpenHABVersionText = (TextView)view.findViewById(R.id.openhab_version);
         mOpenHABUUIDText = (TextView)view.findViewById(R.id.openhab_uuid);
         mOpenHABSecretText = (TextView)view.findViewById(R.id.openhab_secret);
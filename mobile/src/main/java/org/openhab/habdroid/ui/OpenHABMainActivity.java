@@ -22,6 +22,7 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.content.res.Configuration;
+import android.net.ConnectivityManager;
 import android.net.Uri;
 import android.nfc.NfcAdapter;
 import android.os.AsyncTask;
@@ -55,12 +56,12 @@ import android.widget.Toast;
 import com.crittercism.app.Crittercism;
 import com.google.android.gms.analytics.GoogleAnalytics;
 import com.google.android.gms.gcm.GoogleCloudMessaging;
-import com.loopj.android.image.WebImageCache;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.openhab.habdroid.BuildConfig;
 import org.openhab.habdroid.R;
+import org.openhab.habdroid.core.ConnectivityChangeReceiver;
 import org.openhab.habdroid.core.HABDroid;
 import org.openhab.habdroid.core.NetworkConnectivityInfo;
 import org.openhab.habdroid.core.NotificationDeletedBroadcastReceiver;
@@ -74,10 +75,21 @@ import org.openhab.habdroid.model.OpenHABSitemap;
 import org.openhab.habdroid.model.thing.ThingType;
 import org.openhab.habdroid.ui.drawer.OpenHABDrawerAdapter;
 import org.openhab.habdroid.ui.drawer.OpenHABDrawerItem;
+import org.openhab.habdroid.util.CommandCoalescer;
+import org.openhab.habdroid.util.CommandQueue;
 import org.openhab.habdroid.util.Constants;
+import org.openhab.habdroid.util.HttpValidatorStore;
+import org.openhab.habdroid.util.IconLoader;
+import org.openhab.habdroid.util.ImageRefreshScheduler;
 import org.openhab.habdroid.util.MyAsyncHttpClient;
 import org.openhab.habdroid.util.MyHttpClient;
 import org.openhab.habdroid.util.MySyncHttpClient;
+import org.openhab.habdroid.util.OptimisticStateTracker;
+import org.openhab.habdroid.util.PageCache;
+import org.openhab.habdroid.util.PagePrefetcher;
+import org.openhab.habdroid.util.ReconnectScheduler;
+import org.openhab.habdroid.util.SitemapPageParser;
+import org.openhab.habdroid.util.SitemapSubscriptionManager;
 import org.openhab.habdroid.util.Util;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
@@ -85,6 +97,7 @@ import org.xml.sax.SAXException;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -148,6 +161,31 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
     // Loopj
 //    private static MyAsyncHttpClient mAsyncHttpClient;
     private static MyAsyncHttpClient mAsyncHttpClient;
+    // Server push subscriptions of all displayed sitemap pages
+    private static SitemapSubscriptionManager mSubscriptionManager;
+    // Backoff for reconnects of all connections kept open to openHAB
+    private static ReconnectScheduler mReconnectScheduler;
+    // Background parsing of sitemap pages for all fragments
+    private static SitemapPageParser mPageParser;
+    // Last loaded sitemap pages and sitemap lists for instant start
+    private static PageCache mPageCache;
+    // Pages linked from the displayed pages, loaded ahead of navigation
+    private static PagePrefetcher mPagePrefetcher;
+    // ETag/Last-Modified validators for conditional GET requests
+    private static HttpValidatorStore mValidatorStore;
+    // Shared timer refreshing the visible Image and Chart widgets
+    private static ImageRefreshScheduler mImageRefreshScheduler;
+    // Rate limited, latest wins sending of item commands
+    private static CommandCoalescer mCommandCoalescer;
+    // Item commands kept until the server accepted them, also across restarts
+    private static CommandQueue mCommandQueue;
+    // Item states shown before the server confirms a command
+    private static OptimisticStateTracker mStateTracker;
+    private ConnectivityChangeReceiver mConnectivityChangeReceiver;
+    // WebViews of the Webview widgets on the pages of this activity
+    private WebViewPool mWebViewPool;
+    // Inflated widget rows shared by the pages of this activity
+    private WidgetRowPool mRowPool;
     // Base URL of current openHAB connection
     private String openHABBaseUrl = "http://demo.openhab.org:8080/";
     // openHAB username
@@ -188,6 +226,8 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
     private ArrayList<OpenHABSitemap> mSitemapList;
     private NetworkConnectivityInfo mStartedWithNetworkConnectivityInfo;
     private int mOpenHABVersion;
+    // Sitemap which was opened from the page cache before the sitemap list was loaded
+    private String mCachedSitemapUrl;
     private List<OpenHABDrawerItem> mDrawerItemList;
     private ProgressBar mProgressBar;
     private Boolean mIsMyOpenHAB = false;
@@ -212,6 +252,46 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         return mAsyncHttpClient;
     }
 
+    public static SitemapSubscriptionManager getSubscriptionManager() {
+        return mSubscriptionManager;
+    }
+
+    public static ReconnectScheduler getReconnectScheduler() {
+        return mReconnectScheduler;
+    }
+
+    public static SitemapPageParser getPageParser() {
+        return mPageParser;
+    }
+
+    public static PageCache getPageCache() {
+        return mPageCache;
+    }
+
+    public static PagePrefetcher getPagePrefetcher() {
+        return mPagePrefetcher;
+    }
+
+    public static ImageRefreshScheduler getImageRefreshScheduler() {
+        return mImageRefreshScheduler;
+    }
+
+    public static CommandCoalescer getCommandCoalescer() {
+        return mCommandCoalescer;
+    }
+
+    public static CommandQueue getCommandQueue() {
+        return mCommandQueue;
+    }
+
+    public static OptimisticStateTracker getStateTracker() {
+        return mStateTracker;
+    }
+
+    public static HttpValidatorStore getValidatorStore() {
+        return mValidatorStore;
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         Log.d(TAG, "onCreate()");
@@ -227,6 +307,10 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         // initialize loopj async http client
         mAsyncHttpClient = new MyAsyncHttpClient(this, mSettings.getBoolean(Constants.PREFERENCE_SSLHOST,
                 false), mSettings.getBoolean(Constants.PREFERENCE_SSLCERT, false));
+        if (mValidatorStore == null) {
+            mValidatorStore = new HttpValidatorStore();
+        }
+        mAsyncHttpClient.setValidatorStore(mValidatorStore);
 
         // Disable screen timeout if set in preferences
         if (mSettings.getBoolean(Constants.PREFERENCE_SCREENTIMEROFF, false)) {
@@ -241,6 +325,52 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         openHABPassword = mSettings.getString(Constants.PREFERENCE_PASSWORD, null);
         mAsyncHttpClient.setBasicAuth(openHABUsername, openHABPassword, true);
         mAsyncHttpClient.setTimeout(30000);
+        if (mSubscriptionManager != null) {
+            mSubscriptionManager.shutdown();
+        }
+        if (mPagePrefetcher != null) {
+            mPagePrefetcher.clear();
+        }
+        mPagePrefetcher = PagePrefetcher.create(mAsyncHttpClient);
+        if (mStateTracker == null) {
+            mStateTracker = OptimisticStateTracker.create();
+        }
+        if (mReconnectScheduler == null) {
+            mReconnectScheduler = ReconnectScheduler.create();
+        }
+        mSubscriptionManager = SitemapSubscriptionManager.create(mAsyncHttpClient, mReconnectScheduler);
+        if (mCommandQueue == null) {
+            mCommandQueue = CommandQueue.create(getApplicationContext(), mReconnectScheduler);
+        }
+        // Queued commands wait until the server to send them to is known
+        mCommandQueue.setTransport(null);
+        mCommandCoalescer = CommandCoalescer.create(mCommandQueue);
+        mCommandCoalescer.setListener(new CommandCoalescer.Listener() {
+            @Override
+            public void onCommandDeferred(String url, String command) {
+                mStateTracker.onCommandDeferred(url);
+            }
+
+            @Override
+            public void onCommandDelivered(String url, String command) {
+                mStateTracker.onCommandDelivered(url);
+            }
+
+            @Override
+            public void onCommandFailed(String url, String command) {
+                mStateTracker.onCommandFailed(url);
+            }
+        });
+        if (mPageParser == null) {
+            mPageParser = SitemapPageParser.create();
+        }
+        if (mPageCache == null) {
+            mPageCache = PageCache.create(getApplicationContext());
+        }
+        if (mImageRefreshScheduler == null) {
+            mImageRefreshScheduler = ImageRefreshScheduler.create();
+        }
+        mConnectivityChangeReceiver = new ConnectivityChangeReceiver(mReconnectScheduler);
 
         if (!BuildConfig.IS_DEVELOPER) {
             Util.initCrittercism(getApplicationContext(), "5117659f59e1bd4ba9000004");
@@ -394,6 +524,8 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
     @Override
     public void onStart() {
         super.onStart();
+        registerReceiver(mConnectivityChangeReceiver,
+                new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION));
         // Start activity tracking via Google Analytics
         if (!BuildConfig.IS_DEVELOPER) {
             GoogleAnalytics.getInstance(this).reportActivityStart(this);
@@ -414,6 +546,19 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         if (mOpenHABTracker != null) {
             mOpenHABTracker.stop();
         }
+        unregisterReceiver(mConnectivityChangeReceiver);
+    }
+
+    @Override
+    public void onDestroy() {
+        Log.d(TAG, "onDestroy()");
+        if (mWebViewPool != null) {
+            mWebViewPool.releaseAll();
+        }
+        if (mRowPool != null) {
+            mRowPool.clear();
+        }
+        super.onDestroy();
     }
 
     private void setupToolbar() {
@@ -485,6 +630,10 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         pagerAdapter.setColumnsNumber(getResources().getInteger(R.integer.pager_columns));
         pagerAdapter.setOpenHABUsername(openHABUsername);
         pagerAdapter.setOpenHABPassword(openHABPassword);
+        mWebViewPool = new WebViewPool(this);
+        pagerAdapter.setWebViewPool(mWebViewPool);
+        mRowPool = new WidgetRowPool(this);
+        OpenHABWidgetAdapter.preInflateRows(mRowPool);
         pager = (OpenHABViewPager) findViewById(R.id.pager);
         pager.setScrollDurationFactor(2.5);
         pager.setOffscreenPageLimit(1);
@@ -510,12 +659,14 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
             Toast.makeText(getApplicationContext(), message, Toast.LENGTH_LONG).show();
         }
         openHABBaseUrl = baseUrl;
+        mCommandQueue.setTransport(CommandQueue.createTransport(mAsyncHttpClient, baseUrl));
         mDrawerAdapter.setOpenHABBaseUrl(openHABBaseUrl);
         pagerAdapter.setOpenHABBaseUrl(openHABBaseUrl);
         if (!TextUtils.isEmpty(mNfcData)) {
             onNfcTag(mNfcData);
             openNFCPageIfPending();
         } else {
+            showCachedSitemap(baseUrl);
             final String url = baseUrl + "rest/bindings";
             mAsyncHttpClient.get(url, new MyHttpClient.TextResponseHandler() {
                 @Override
@@ -556,35 +707,19 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         }
     }
 
-    private void loadSitemapList(String baseUrl) {
+    private void loadSitemapList(final String baseUrl) {
         Log.d(TAG, "Loading sitemap list from " + baseUrl + "rest/sitemaps");
         setProgressIndicatorVisible(true);
         mAsyncHttpClient.get(baseUrl + "rest/sitemaps", new DefaultHttpResponseHandler() {
             @Override
             public void onSuccess(Call call, int statusCode, Headers headers, byte[] responseBody) {
                 setProgressIndicatorVisible(false);
-                mSitemapList.clear();
-                // If openHAB's version is 1, get sitemap list from XML
-                if (mOpenHABVersion == 1) {
-                    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                    try {
-                        DocumentBuilder builder = dbf.newDocumentBuilder();
-                        Document sitemapsXml = builder.parse(new ByteArrayInputStream(responseBody));
-                        mSitemapList.addAll(Util.parseSitemapList(sitemapsXml));
-                    } catch (ParserConfigurationException | SAXException | IOException e) {
-                        e.printStackTrace();
-                    }
-                    // Later versions work with JSON
-                } else {
-                    try {
-                        String jsonString = new String(responseBody, "UTF-8");
-                        JSONArray jsonArray = new JSONArray(jsonString);
-                        mSitemapList.addAll(Util.parseSitemapList(jsonArray));
-                        Log.d(TAG, jsonArray.toString());
-                    } catch (UnsupportedEncodingException | JSONException e) {
-                        e.printStackTrace();
-                    }
+                if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED && !mSitemapList.isEmpty()) {
+                    // The drawer shows the current sitemaps already
+                    return;
                 }
+                mSitemapList.clear();
+                mSitemapList.addAll(getSitemapList(baseUrl + "rest/sitemaps", responseBody));
                 if (mSitemapList.size() == 0) {
                     return;
                 }
@@ -611,27 +746,7 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
                 Log.d(TAG, new String(responseBody));
                 setProgressIndicatorVisible(false);
                 mSitemapList.clear();
-                // If openHAB's version is 1, get sitemap list from XML
-                if (mOpenHABVersion == 1) {
-                    DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-                    try {
-                        DocumentBuilder builder = dbf.newDocumentBuilder();
-                        Document sitemapsXml = builder.parse(new ByteArrayInputStream(responseBody));
-                        mSitemapList.addAll(Util.parseSitemapList(sitemapsXml));
-                    } catch (ParserConfigurationException | SAXException | IOException e) {
-                        e.printStackTrace();
-                    }
-                    // Later versions work with JSON
-                } else {
-                    try {
-                        String jsonString = new String(responseBody, "UTF-8");
-                        JSONArray jsonArray = new JSONArray(jsonString);
-                        mSitemapList.addAll(Util.parseSitemapList(jsonArray));
-                        Log.d(TAG, jsonArray.toString());
-                    } catch (UnsupportedEncodingException | JSONException e) {
-                        e.printStackTrace();
-                    }
-                }
+                mSitemapList.addAll(getSitemapList(baseUrl + "rest/sitemaps", responseBody));
                 // Now work with sitemaps list
                 if (mSitemapList.size() == 0) {
                     // Got an empty sitemap list!
@@ -639,6 +754,7 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
                     showAlertDialog(getString(R.string.error_empty_sitemap_list));
                     return;
                 }
+                mPageCache.put(baseUrl + "rest/sitemaps", mOpenHABVersion, responseBody);
                 loadDrawerItems();
                 // If we are forced to do selection, just open selection dialog
                 if (forceSelect) {
@@ -688,6 +804,95 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
         });
     }
 
+    /**
+     * Returns the sitemaps of a sitemap list response. If the server answered that the list
+     * didn't change, the list parsed from the previous response is used.
+     *
+     * @param url URL the sitemap list was loaded from
+     * @param responseBody response of rest/sitemaps
+     * @return the sitemaps, empty if the response couldn't be parsed
+     */
+    @SuppressWarnings("unchecked")
+    private List<OpenHABSitemap> getSitemapList(String url, byte[] responseBody) {
+        Object sitemapList = mAsyncHttpClient.getStoredModel(url);
+        if (sitemapList instanceof List) {
+            Log.d(TAG, "Sitemap list not modified");
+            return (List<OpenHABSitemap>) sitemapList;
+        }
+        List<OpenHABSitemap> parsedList = parseSitemapList(responseBody, mOpenHABVersion);
+        mAsyncHttpClient.putStoredModel(url, parsedList);
+        return parsedList;
+    }
+
+    /**
+     * Parses a sitemap list response of the given openHAB version
+     *
+     * @param responseBody response of rest/sitemaps
+     * @param openHABVersion version of the server which sent the response
+     * @return the sitemaps, empty if the response couldn't be parsed
+     */
+    private List<OpenHABSitemap> parseSitemapList(byte[] responseBody, int openHABVersion) {
+        // If openHAB's version is 1, get sitemap list from XML
+        if (openHABVersion == 1) {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            try {
+                DocumentBuilder builder = dbf.newDocumentBuilder();
+                Document sitemapsXml = builder.parse(new ByteArrayInputStream(responseBody));
+                return Util.parseSitemapList(sitemapsXml);
+            } catch (ParserConfigurationException | SAXException | IOException e) {
+                e.printStackTrace();
+            }
+            // Later versions work with JSON
+        } else {
+            try {
+                String jsonString = new String(responseBody, "UTF-8");
+                JSONArray jsonArray = new JSONArray(jsonString);
+                Log.d(TAG, jsonArray.toString());
+                return Util.parseSitemapList(jsonArray);
+            } catch (UnsupportedEncodingException | JSONException e) {
+                e.printStackTrace();
+            }
+        }
+        return new ArrayList<OpenHABSitemap>();
+    }
+
+    /**
+     * Opens the configured sitemap from the sitemap list cached for this server, so its
+     * cached home page is shown while version detection and the sitemap list are loaded.
+     * Only done on a fresh start, i.e. when no page is shown yet.
+     *
+     * @param baseUrl an absolute base URL of openHAB
+     */
+    private void showCachedSitemap(final String baseUrl) {
+        if (pagerAdapter.getCount() > 0) {
+            return;
+        }
+        final String configuredSitemap = mSettings.getString(Constants.PREFERENCE_SITEMAP, "");
+        if (configuredSitemap.length() == 0) {
+            return;
+        }
+        mPageCache.get(baseUrl + "rest/sitemaps", new PageCache.Callback() {
+            @Override
+            public void onEntryLoaded(PageCache.Entry entry) {
+                if (entry == null || pagerAdapter.getCount() > 0 || !baseUrl.equals(openHABBaseUrl)) {
+                    return;
+                }
+                List<OpenHABSitemap> sitemapList =
+                        parseSitemapList(entry.getResponseBody(), entry.getOpenHABVersion());
+                if (!Util.sitemapExists(sitemapList, configuredSitemap)) {
+                    return;
+                }
+                Log.d(TAG, "Opening cached sitemap " + configuredSitemap);
+                mOpenHABVersion = entry.getOpenHABVersion();
+                mSitemapList.clear();
+                mSitemapList.addAll(sitemapList);
+                loadDrawerItems();
+                mCachedSitemapUrl = Util.getSitemapByName(sitemapList, configuredSitemap).getHomepageLink();
+                openSitemap(mCachedSitemapUrl);
+            }
+        });
+    }
+
     private void showSitemapSelectionDialog(final List<OpenHABSitemap> sitemapList) {
         Log.d(TAG, "Opening sitemap selection dialog");
         final List<String> sitemapNameList = new ArrayList<String>();
@@ -751,6 +956,13 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
     }
 
     private void openSitemap(String sitemapUrl) {
+        if (sitemapUrl.equals(mCachedSitemapUrl) && pagerAdapter.getCount() == 1) {
+            // The cached home page is still shown and refreshes itself
+            Log.d(TAG, "Sitemap at " + sitemapUrl + " is already open");
+            mCachedSitemapUrl = null;
+            return;
+        }
+        mCachedSitemapUrl = null;
         Log.i(TAG, "Opening sitemap at " + sitemapUrl);
         sitemapRootUrl = sitemapUrl;
         pagerAdapter.clearFragmentList();
@@ -808,8 +1020,8 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
                 restartIntent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
                 // Finish current activity
                 finish();
-                WebImageCache cache = new WebImageCache(getBaseContext());
-                cache.clear();
+                IconLoader.getCache(this).clear();
+                mPageCache.clear();
                 // Start launch activity
                 startActivity(restartIntent);
                 // Start launch activity
@@ -968,6 +1180,10 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
 
     public void sendItemCommand(String itemName, String command) {
         try {
+            if (mCommandCoalescer != null) {
+                mCommandCoalescer.send(openHABBaseUrl + "rest/items/" + itemName, command);
+                return;
+            }
             mAsyncHttpClient.post(openHABBaseUrl + "rest/items/" + itemName, command, "text/plain;charset=UTF-8", new MyHttpClient.TextResponseHandler() {
                 @Override
                 public void onFailure(Call call, int statusCode, Headers headers, String responseString, Throwable error) {
@@ -1143,6 +1359,14 @@ public class OpenHABMainActivity extends AppCompatActivity implements OnWidgetSe
             showCertificateDialog(decisionId, certMessage);
     }
 
+    public WebViewPool getWebViewPool() {
+        return mWebViewPool;
+    }
+
+    public WidgetRowPool getRowPool() {
+        return mRowPool;
+    }
+
     public String getOpenHABBaseUrl() {
         return openHABBaseUrl;
     }
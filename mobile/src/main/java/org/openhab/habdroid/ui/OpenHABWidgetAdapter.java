@@ -10,9 +10,14 @@
 package org.openhab.habdroid.ui;
 
 import android.content.Context;
+import android.content.res.ColorStateList;
 import android.net.Uri;
 import android.os.Build;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.SwitchCompat;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
@@ -20,17 +25,12 @@ import android.view.View;
 import android.view.View.OnClickListener;
 import android.view.View.OnTouchListener;
 import android.view.ViewGroup;
-import android.view.WindowManager;
 import android.webkit.WebView;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
-import android.widget.ImageButton;
+import android.widget.FrameLayout;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.RadioGroup;
-import android.widget.RadioGroup.OnCheckedChangeListener;
-import android.widget.RelativeLayout;
 import android.widget.SeekBar;
 import android.widget.SeekBar.OnSeekBarChangeListener;
 import android.widget.Spinner;
@@ -40,31 +40,40 @@ import android.widget.VideoView;
 import org.openhab.habdroid.R;
 import org.openhab.habdroid.model.OpenHABItem;
 import org.openhab.habdroid.model.OpenHABWidget;
+import org.openhab.habdroid.model.OpenHABWidgetDiff;
 import org.openhab.habdroid.model.OpenHABWidgetMapping;
 import org.openhab.habdroid.ui.widget.ColorPickerDialog;
 import org.openhab.habdroid.ui.widget.OnColorChangedListener;
 import org.openhab.habdroid.ui.widget.SegmentedControlButton;
+import org.openhab.habdroid.util.CommandCoalescer;
 import org.openhab.habdroid.util.MjpegStreamer;
 import org.openhab.habdroid.util.MyAsyncHttpClient;
 import org.openhab.habdroid.util.MyHttpClient;
 import org.openhab.habdroid.util.MySmartImageView;
+import org.openhab.habdroid.util.OptimisticStateTracker;
+import org.openhab.habdroid.util.PlaybackCoordinator;
 
 import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import okhttp3.Call;
 import okhttp3.Headers;
 
 /**
- * This class provides openHAB widgets adapter for list view.
+ * This class provides openHAB widgets adapter for the widget list. Every widget type has
+ * its own view holder, which looks up its views once when the row is created.
  */
 
-public class OpenHABWidgetAdapter extends ArrayAdapter<OpenHABWidget> {
+public class OpenHABWidgetAdapter extends RecyclerView.Adapter<OpenHABWidgetAdapter.ViewHolder> {
 	public static final int TYPE_GENERICITEM = 0;
 	public static final int TYPE_FRAME = 1;
 	public static final int TYPE_GROUP = 2;
@@ -83,610 +92,225 @@ public class OpenHABWidgetAdapter extends ArrayAdapter<OpenHABWidget> {
     public static final int TYPE_VIDEO_MJPEG = 15;
 	public static final int TYPES_COUNT = 16;
 	private static final String TAG = "OpenHABWidgetAdapter";
+    // Payload for rows which only need their divider updated after rows were added or removed
+    private static final Object PAYLOAD_DIVIDER = new Object();
+
+    /**
+     * Receives clicks on rows of widgets other than frames
+     */
+    public interface OnWidgetClickListener {
+        void onWidgetClick(OpenHABWidget widget, int position);
+        boolean onWidgetLongClick(OpenHABWidget widget, int position);
+    }
+
+    private final Context mContext;
+    private final LayoutInflater mInflater;
+    private final List<OpenHABWidget> mWidgets;
+    private final int mScreenWidth;
+    private final Random mRandom = new Random();
 	private String openHABBaseUrl = "http://demo.openhab.org:8080/";
 	private String openHABUsername = "";
 	private String openHABPassword = "";
-	private ArrayList<VideoView> videoWidgetList;
 	private ArrayList<MySmartImageView> refreshImageList;
-    private ArrayList<MjpegStreamer> mjpegWidgetList;
+    // Starts the streams of Video widgets on screen, a limited number at a time
+    private final PlaybackCoordinator mPlaybackCoordinator =
+            new PlaybackCoordinator(PlaybackCoordinator.DEFAULT_MAX_STREAMS);
     private MyAsyncHttpClient mAsyncHttpClient;
+    private WebViewPool mWebViewPool;
+    private WidgetRowPool mRowPool;
+    private String mPageUrl;
     private View volumeUpWidget;
     private View volumeDownWidget;
+    private OnWidgetClickListener mClickListener;
+    private int mSelectedPosition = -1;
+    // Stable ids are assigned per widget id, so they can't collide like hashes could
+    private final Map<String, Long> mStableIds = new HashMap<String, Long>();
+    private long mNextStableId = 0;
+    // Rows bound to a widget and not recycled yet, including those cached off screen
+    private final Set<ViewHolder> mBoundHolders = new HashSet<ViewHolder>();
+    // Time spent in binding rows, per view type
+    private final long[] mBindTimes = new long[TYPES_COUNT];
+    private final int[] mBindCounts = new int[TYPES_COUNT];
 
-	public OpenHABWidgetAdapter(Context context, int resource,
-			List<OpenHABWidget> objects) {
-		super(context, resource, objects);
-		// Initialize video view array
-		videoWidgetList = new ArrayList<VideoView>();
+    /**
+     * @param context  context to inflate rows with
+     * @param widgets  list of widgets to show, which is updated by the adapter
+     */
+	public OpenHABWidgetAdapter(Context context, List<OpenHABWidget> widgets) {
+        mContext = context;
+        mInflater = LayoutInflater.from(context);
+        mWidgets = widgets;
+        mScreenWidth = context.getResources().getDisplayMetrics().widthPixels;
 		refreshImageList = new ArrayList<MySmartImageView>();
-        mjpegWidgetList = new ArrayList<MjpegStreamer>();
+        setHasStableIds(true);
 	}
 
-    @SuppressWarnings("deprecation")
-	@Override
-    public View getView(int position, View convertView, ViewGroup parent) {
-    	/* TODO: This definitely needs some huge refactoring */
-    	final RelativeLayout widgetView;
-		TextView labelTextView;
-		TextView valueTextView;
-    	int widgetLayout;
-    	String[] splitString;
-    	OpenHABWidget openHABWidget = getItem(position);
-    	int screenWidth = ((WindowManager)getContext().getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getWidth();
-    	switch (this.getItemViewType(position)) {
-    	case TYPE_FRAME:
-    		widgetLayout = R.layout.openhabwidgetlist_frameitem;
-    		break;
-    	case TYPE_GROUP:
-    		widgetLayout = R.layout.openhabwidgetlist_groupitem;
-    		break;
-    	case TYPE_SECTIONSWITCH:
-    		widgetLayout = R.layout.openhabwidgetlist_sectionswitchitem;
-    		break;
-    	case TYPE_SWITCH:
-    		widgetLayout = R.layout.openhabwidgetlist_switchitem;
-    		break;
-    	case TYPE_ROLLERSHUTTER:
-    		widgetLayout = R.layout.openhabwidgetlist_rollershutteritem;
-    		break;
-    	case TYPE_TEXT:
-    		widgetLayout = R.layout.openhabwidgetlist_textitem;
-    		break;
-    	case TYPE_SLIDER:
-    		widgetLayout = R.layout.openhabwidgetlist_slideritem;
-    		break;
-    	case TYPE_IMAGE:
-    		widgetLayout = R.layout.openhabwidgetlist_imageitem;
-    		break;
-    	case TYPE_SELECTION:
-    		widgetLayout = R.layout.openhabwidgetlist_selectionitem;
-    		break;
-    	case TYPE_SETPOINT:
-    		widgetLayout = R.layout.openhabwidgetlist_setpointitem;
-    		break;
-    	case TYPE_CHART:
-    		widgetLayout = R.layout.openhabwidgetlist_chartitem;
-    		break;
-    	case TYPE_VIDEO:
-    		widgetLayout = R.layout.openhabwidgetlist_videoitem;
-    		break;
-        case TYPE_VIDEO_MJPEG:
-            widgetLayout = R.layout.openhabwidgetlist_videomjpegitem;
-            break;
-    	case TYPE_WEB:
-    		widgetLayout = R.layout.openhabwidgetlist_webitem;
-    		break;
-    	case TYPE_COLOR:
-    		widgetLayout = R.layout.openhabwidgetlist_coloritem;
-    		break;
-    	default:
-    		widgetLayout = R.layout.openhabwidgetlist_genericitem;
-    		break;
-    	}
-    	if (convertView == null) {
-    		widgetView = new RelativeLayout(getContext());
-    		String inflater = Context.LAYOUT_INFLATER_SERVICE;
-    		LayoutInflater vi;
-    		vi = (LayoutInflater)getContext().getSystemService(inflater);
-    		vi.inflate(widgetLayout, widgetView, true);
-    	} else {
-    		widgetView = (RelativeLayout) convertView;
-    	}
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        int layout = getLayout(viewType);
+        View itemView = mRowPool != null ? mRowPool.obtain(layout, parent) : mInflater.inflate(layout, parent, false);
+        switch (viewType) {
+            case TYPE_FRAME:
+                return new FrameViewHolder(itemView);
+            case TYPE_GROUP:
+                return new GroupViewHolder(itemView);
+            case TYPE_SECTIONSWITCH:
+                return new SectionSwitchViewHolder(itemView);
+            case TYPE_SWITCH:
+                return new SwitchViewHolder(itemView);
+            case TYPE_ROLLERSHUTTER:
+                return new RollershutterViewHolder(itemView);
+            case TYPE_TEXT:
+                return new TextViewHolder(itemView);
+            case TYPE_SLIDER:
+                return new SliderViewHolder(itemView);
+            case TYPE_IMAGE:
+                return new ImageViewHolder(itemView);
+            case TYPE_SELECTION:
+                return new SelectionViewHolder(itemView);
+            case TYPE_SETPOINT:
+                return new SetpointViewHolder(itemView);
+            case TYPE_CHART:
+                return new ChartViewHolder(itemView);
+            case TYPE_VIDEO:
+                return new VideoViewHolder(itemView);
+            case TYPE_VIDEO_MJPEG:
+                return new MjpegViewHolder(itemView);
+            case TYPE_WEB:
+                return new WebViewHolder(itemView);
+            case TYPE_COLOR:
+                return new ColorViewHolder(itemView);
+            default:
+                return new GenericViewHolder(itemView);
+        }
+    }
 
-        // Process the colour attributes
-        Integer iconColor = openHABWidget.getIconColor();
-        Integer labelColor = openHABWidget.getLabelColor();
-        Integer valueColor = openHABWidget.getValueColor();
-
-        // Process widgets icon image
-        MySmartImageView widgetImage = (MySmartImageView)widgetView.findViewById(R.id.widgetimage);
-        // Some of widgets, for example Frame doesnt' have an icon, so...
-        if (widgetImage != null) {
-            // This is needed to escape possible spaces and everything according to rfc2396
-            String iconUrl = openHABBaseUrl + Uri.encode(openHABWidget.getIconPath(),"/?=&");
-//                Log.d(TAG, "Will try to load icon from " + iconUrl);
-            // Now set image URL
-            widgetImage.setImageUrl(iconUrl, R.drawable.blank_icon,
-                    openHABUsername, openHABPassword);
-            if (iconColor != null) {
-                widgetImage.setColorFilter(iconColor);
-            } else {
-                widgetImage.clearColorFilter();
-            }
-        }
-        TextView defaultTextView = new TextView(widgetView.getContext());
-        // Get TextView for widget label and set it's color
-        labelTextView = (TextView)widgetView.findViewById(R.id.widgetlabel);
-        // Change label color only for non-frame widgets
-        if(labelColor != null && labelTextView != null && this.getItemViewType(position) != TYPE_FRAME) {
-            Log.d(TAG, String.format("Setting label color to %d", labelColor));
-            labelTextView.setTextColor(labelColor);
-        } else if (labelTextView != null && this.getItemViewType(position) != TYPE_FRAME)
-            labelTextView.setTextColor(defaultTextView.getTextColors().getDefaultColor());
-        // Get TextView for widget value and set it's color
-        valueTextView = (TextView)widgetView.findViewById(R.id.widgetvalue);
-        if (valueColor != null && valueTextView != null) {
-            Log.d(TAG, String.format("Setting value color to %d", valueColor));
-            valueTextView.setTextColor(valueColor);
-        } else if (valueTextView != null)
-            valueTextView.setTextColor(defaultTextView.getTextColors().getDefaultColor());
-        defaultTextView = null;
-    	switch (getItemViewType(position)) {
-    	case TYPE_FRAME:
-            if (labelTextView != null){
-                labelTextView.setText(openHABWidget.getLabel());
-                if(valueColor != null)
-                    labelTextView.setTextColor(valueColor);
-            }
-    		widgetView.setClickable(false);
-    		if (openHABWidget.getLabel().length() > 0) { // hide empty frames
-    			widgetView.setVisibility(View.VISIBLE);
-    			labelTextView.setVisibility(View.VISIBLE);
-    		} else {
-    			widgetView.setVisibility(View.GONE);
-    			labelTextView.setVisibility(View.GONE);
-    		}
-    		break;
-    	case TYPE_GROUP:
-    		if (labelTextView != null && valueTextView != null) {
-    			splitString = openHABWidget.getLabel().split("\\[|\\]");
-                if(splitString.length > 0) {
-                    labelTextView.setText(splitString[0]);
-                }
-    			if (splitString.length > 1) { // We have some value
-    				valueTextView.setText(splitString[1]);
-    			} else {
-    				// This is needed to clean up cached TextViews
-    				valueTextView.setText("");
-    			}
-    		}
-    		break;
-    	case TYPE_SECTIONSWITCH:
-			splitString = openHABWidget.getLabel().split("\\[|\\]");
-			if (labelTextView != null && splitString.length > 0)
-				labelTextView.setText(splitString[0]);
-			if (splitString.length > 1 && valueTextView != null) { // We have some value
-				valueTextView.setText(splitString[1]);
-			} else {
-				// This is needed to clean up cached TextViews
-				valueTextView.setText("");
-			}
-    		RadioGroup sectionSwitchRadioGroup = (RadioGroup)widgetView.findViewById(R.id.sectionswitchradiogroup);
-    		// As we create buttons in this radio in runtime, we need to remove all
-    		// exiting buttons first
-    		sectionSwitchRadioGroup.removeAllViews();
-    		sectionSwitchRadioGroup.setTag(openHABWidget);
-    		Iterator<OpenHABWidgetMapping> sectionMappingIterator = openHABWidget.getMappings().iterator();
-    		while (sectionMappingIterator.hasNext()) {
-    			OpenHABWidgetMapping widgetMapping = sectionMappingIterator.next();
-    			SegmentedControlButton segmentedControlButton = 
-    					(SegmentedControlButton) LayoutInflater.from(sectionSwitchRadioGroup.getContext()).inflate(
-    							R.layout.openhabwidgetlist_sectionswitchitem_button, sectionSwitchRadioGroup, false);
-    			segmentedControlButton.setText(widgetMapping.getLabel());
-    			segmentedControlButton.setTag(widgetMapping.getCommand());
-    			if (openHABWidget.getItem() != null && widgetMapping.getCommand() != null) {
-	    			if (widgetMapping.getCommand().equals(openHABWidget.getItem().getState())) {
-	    				segmentedControlButton.setChecked(true);
-	    			} else {
-	    				segmentedControlButton.setChecked(false);
-	    			}
-    			} else {
-    				segmentedControlButton.setChecked(false);
-    			}
-                segmentedControlButton.setOnClickListener(new OnClickListener() {
-                    @Override
-                    public void onClick(View view) {
-                        Log.i(TAG, "Button clicked");
-                        RadioGroup group = (RadioGroup)view.getParent();
-                        if (group.getTag() != null) {
-                            OpenHABWidget radioWidget = (OpenHABWidget)group.getTag();
-                            SegmentedControlButton selectedButton = (SegmentedControlButton)view;
-                            if (selectedButton.getTag() != null) {
-                                sendItemCommand(radioWidget.getItem(), (String)selectedButton.getTag());
-                            }
-                        }
-                    }
-                });
-    			sectionSwitchRadioGroup.addView(segmentedControlButton);
-    		}
+    /**
+     * Layout of the rows of the given view type
+     */
+    static int getLayout(int viewType) {
+        switch (viewType) {
+            case TYPE_FRAME:
+                return R.layout.openhabwidgetlist_frameitem;
+            case TYPE_GROUP:
+                return R.layout.openhabwidgetlist_groupitem;
+            case TYPE_SECTIONSWITCH:
+                return R.layout.openhabwidgetlist_sectionswitchitem;
+            case TYPE_SWITCH:
+                return R.layout.openhabwidgetlist_switchitem;
+            case TYPE_ROLLERSHUTTER:
+                return R.layout.openhabwidgetlist_rollershutteritem;
+            case TYPE_TEXT:
+                return R.layout.openhabwidgetlist_textitem;
+            case TYPE_SLIDER:
+                return R.layout.openhabwidgetlist_slideritem;
+            case TYPE_IMAGE:
+                return R.layout.openhabwidgetlist_imageitem;
+            case TYPE_SELECTION:
+                return R.layout.openhabwidgetlist_selectionitem;
+            case TYPE_SETPOINT:
+                return R.layout.openhabwidgetlist_setpointitem;
+            case TYPE_CHART:
+                return R.layout.openhabwidgetlist_chartitem;
+            case TYPE_VIDEO:
+                return R.layout.openhabwidgetlist_videoitem;
+            case TYPE_VIDEO_MJPEG:
+                return R.layout.openhabwidgetlist_videomjpegitem;
+            case TYPE_WEB:
+                return R.layout.openhabwidgetlist_webitem;
+            case TYPE_COLOR:
+                return R.layout.openhabwidgetlist_coloritem;
+            default:
+                return R.layout.openhabwidgetlist_genericitem;
+        }
+    }
 
+    /**
+     * Inflates the rows of the most common and the heavier widget types ahead while the
+     * main thread is idle
+     */
+    static void preInflateRows(WidgetRowPool rowPool) {
+        rowPool.preInflate(getLayout(TYPE_SWITCH), 3);
+        rowPool.preInflate(getLayout(TYPE_TEXT), 3);
+        rowPool.preInflate(getLayout(TYPE_GROUP), 2);
+        rowPool.preInflate(getLayout(TYPE_SLIDER), 2);
+        rowPool.preInflate(getLayout(TYPE_SETPOINT), 2);
+        rowPool.preInflate(getLayout(TYPE_COLOR), 1);
+        rowPool.preInflate(getLayout(TYPE_CHART), 1);
+    }
 
-    		sectionSwitchRadioGroup.setOnCheckedChangeListener(new OnCheckedChangeListener() {
-				public void onCheckedChanged(RadioGroup group, int checkedId) {
-					OpenHABWidget radioWidget = (OpenHABWidget)group.getTag();
-					SegmentedControlButton selectedButton = (SegmentedControlButton)group.findViewById(checkedId);
-					if (selectedButton != null) {
-						Log.d(TAG, "Selected " + selectedButton.getText());
-						Log.d(TAG, "Command = " + (String) selectedButton.getTag());
-//						radioWidget.getItem().sendCommand((String)selectedButton.getTag());
-						sendItemCommand(radioWidget.getItem(), (String)selectedButton.getTag());
-					}
-				}
-    		});
-    		break;
-    	case TYPE_SWITCH:
-    		if (labelTextView != null)
-    			labelTextView.setText(openHABWidget.getLabel());
-            SwitchCompat switchSwitch = (SwitchCompat)widgetView.findViewById(R.id.switchswitch);
-    		if (openHABWidget.hasItem()) {
-    			if (openHABWidget.getItem().getStateAsBoolean()) {
-    				switchSwitch.setChecked(true);
-    			} else {
-    				switchSwitch.setChecked(false);
-    			}
-    		}
-    		switchSwitch.setTag(openHABWidget.getItem());
-    		switchSwitch.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					SwitchCompat switchSwitch = (SwitchCompat)v;
-					OpenHABItem linkedItem = (OpenHABItem)switchSwitch.getTag();
-					if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP)
-						if (!switchSwitch.isChecked()) {
-							sendItemCommand(linkedItem, "ON");
-						} else {
-							sendItemCommand(linkedItem, "OFF");
-						}
-					return false;
-				}
-                		});
-    		break;
-    	case TYPE_COLOR:
-    		if (labelTextView != null)
-    			labelTextView.setText(openHABWidget.getLabel());
-    		ImageButton colorUpButton = (ImageButton)widgetView.findViewById(R.id.colorbutton_up);
-    		ImageButton colorDownButton = (ImageButton)widgetView.findViewById(R.id.colorbutton_down);
-    		ImageButton colorColorButton = (ImageButton)widgetView.findViewById(R.id.colorbutton_color);
-    		colorUpButton.setTag(openHABWidget.getItem());
-    		colorDownButton.setTag(openHABWidget.getItem());
-    		colorColorButton.setTag(openHABWidget.getItem());
-    		colorUpButton.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					ImageButton colorButton = (ImageButton)v;
-					OpenHABItem colorItem = (OpenHABItem)colorButton.getTag();
-					if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP)
-						sendItemCommand(colorItem, "ON");
-					return false;
-				}
-            });
-    		colorDownButton.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					ImageButton colorButton = (ImageButton)v;
-					OpenHABItem colorItem = (OpenHABItem)colorButton.getTag();
-					if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP)
-						sendItemCommand(colorItem, "OFF");
-					return false;
-				}
-                		});
-    		colorColorButton.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					ImageButton colorButton = (ImageButton)v;
-					OpenHABItem colorItem = (OpenHABItem)colorButton.getTag();
-					if (colorItem != null) {
-						if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP) {
-							Log.d(TAG, "Time to launch color picker!");
-							ColorPickerDialog colorDialog = new ColorPickerDialog(widgetView.getContext(), new OnColorChangedListener() {
-								public void colorChanged(float[] hsv, View v) {
-									Log.d(TAG, "New color HSV = " + hsv[0] + ", " + hsv[1] + ", " +
-											hsv[2]);
-									String newColor = String.valueOf(hsv[0]) + "," + String.valueOf(hsv[1]*100) + "," + String.valueOf(hsv[2]*100);
-									OpenHABItem colorItem = (OpenHABItem) v.getTag();
-									sendItemCommand(colorItem, newColor);
-								}
-							}, colorItem.getStateAsHSV());
-							colorDialog.setTag(colorItem);
-							colorDialog.show();
-						}
-					}
-					return false;
-				}
-                		});
-    		break;
-    	case TYPE_ROLLERSHUTTER:
-    		if (labelTextView != null)
-    			labelTextView.setText(openHABWidget.getLabel());
-    		ImageButton rollershutterUpButton = (ImageButton)widgetView.findViewById(R.id.rollershutterbutton_up);
-    		ImageButton rollershutterStopButton = (ImageButton)widgetView.findViewById(R.id.rollershutterbutton_stop);
-    		ImageButton rollershutterDownButton = (ImageButton)widgetView.findViewById(R.id.rollershutterbutton_down);
-    		rollershutterUpButton.setTag(openHABWidget.getItem());
-    		rollershutterStopButton.setTag(openHABWidget.getItem());
-    		rollershutterDownButton.setTag(openHABWidget.getItem());
-    		rollershutterUpButton.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					ImageButton rollershutterButton = (ImageButton)v;
-					OpenHABItem rollershutterItem = (OpenHABItem)rollershutterButton.getTag();
-					if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP)
-						sendItemCommand(rollershutterItem, "UP");
-					return false;
-				}
-                		});
-    		rollershutterStopButton.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					ImageButton rollershutterButton = (ImageButton)v;
-					OpenHABItem rollershutterItem = (OpenHABItem)rollershutterButton.getTag();
-					if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP)
-						sendItemCommand(rollershutterItem, "STOP");
-					return false;
-				}
-                		});
-    		rollershutterDownButton.setOnTouchListener(new OnTouchListener() {
-				public boolean onTouch(View v, MotionEvent motionEvent) {
-					ImageButton rollershutterButton = (ImageButton)v;
-					OpenHABItem rollershutterItem = (OpenHABItem)rollershutterButton.getTag();
-					if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP)
-						sendItemCommand(rollershutterItem, "DOWN");
-					return false;
-				}
-                		});
-    		break;
-    	case TYPE_TEXT:
-    		splitString = openHABWidget.getLabel().split("\\[|\\]");
-    		if (labelTextView != null)
-    			if (splitString.length > 0) {
-    				labelTextView.setText(splitString[0]);
-    			} else {
-    				labelTextView.setText(openHABWidget.getLabel());
-    			}
-    		if (valueTextView != null)
-    			if (splitString.length > 1) {
-    				// If value is not empty, show TextView
-    				valueTextView.setVisibility(View.VISIBLE);
-    				valueTextView.setText(splitString[1]);
-    			} else {
-    				// If value is empty, hide TextView to fix vertical alignment of label
-    				valueTextView.setVisibility(View.GONE);
-    				valueTextView.setText("");
-    			}
-    		break;
-    	case TYPE_SLIDER:
-    		splitString = openHABWidget.getLabel().split("\\[|\\]");
-    		if (labelTextView != null && splitString.length > 0)
-    			labelTextView.setText(splitString[0]);
-    		SeekBar sliderSeekBar = (SeekBar)widgetView.findViewById(R.id.sliderseekbar);
-    		if (openHABWidget.hasItem()) {
-    			sliderSeekBar.setTag(openHABWidget.getItem());
-    			sliderSeekBar.setProgress(openHABWidget.getItem().getStateAsFloat().intValue());
-    			sliderSeekBar.setOnSeekBarChangeListener(new OnSeekBarChangeListener() {
-						public void onProgressChanged(SeekBar seekBar,
-								int progress, boolean fromUser) {
-						}
-						public void onStartTrackingTouch(SeekBar seekBar) {
-							Log.d(TAG, "onStartTrackingTouch position = " + seekBar.getProgress());
-						}
-						public void onStopTrackingTouch(SeekBar seekBar) {
-							Log.d(TAG, "onStopTrackingTouch position = " + seekBar.getProgress());
-							OpenHABItem sliderItem = (OpenHABItem)seekBar.getTag();
-//							sliderItem.sendCommand(String.valueOf(seekBar.getProgress()));
-							if (sliderItem != null && seekBar != null)
-								sendItemCommand(sliderItem, String.valueOf(seekBar.getProgress()));
-						}
-    			});
-                if (volumeUpWidget == null) {
-                    volumeUpWidget = sliderSeekBar;
-                    volumeDownWidget = sliderSeekBar;
-                }
-    		}
-    		break;
-    	case TYPE_IMAGE:
-    		MySmartImageView imageImage = (MySmartImageView)widgetView.findViewById(R.id.imageimage);
-    		imageImage.setImageUrl(ensureAbsoluteURL(openHABBaseUrl, openHABWidget.getUrl()), false, 
-    				openHABUsername, openHABPassword);
-//    		ViewGroup.LayoutParams imageLayoutParams = imageImage.getLayoutParams();
-//    		float imageRatio = imageImage.getDrawable().getIntrinsicWidth()/imageImage.getDrawable().getIntrinsicHeight();
-//    		imageLayoutParams.height = (int) (screenWidth/imageRatio);
-//    		imageImage.setLayoutParams(imageLayoutParams);
-    		if (openHABWidget.getRefresh() > 0) {
-    			imageImage.setRefreshRate(openHABWidget.getRefresh());
-    			refreshImageList.add(imageImage);
-    		}
-   		break;
-    	case TYPE_CHART:
-    		MySmartImageView chartImage = (MySmartImageView)widgetView.findViewById(R.id.chartimage);
-    		//Always clear the drawable so no images from recycled views appear
-    		chartImage.setImageDrawable(null);
-    		OpenHABItem chartItem = openHABWidget.getItem();
-    		Random random = new Random();
-    		String chartUrl = "";
-    		if (chartItem != null) {
-	    		if (chartItem.getType().equals("GroupItem") || chartItem.getType().equals("Group")) {
-	    			chartUrl = openHABBaseUrl + "chart?groups=" + chartItem.getName() +
-	    					"&period=" + openHABWidget.getPeriod() + "&random=" +
-	    					String.valueOf(random.nextInt());
-	    		} else {
-                    chartUrl = openHABBaseUrl + "chart?items=" + chartItem.getName() +
-                            "&period=" + openHABWidget.getPeriod() + "&random=" +
-                            String.valueOf(random.nextInt());
-                }
-                if (openHABWidget.getService() != null && openHABWidget.getService().length() > 0) {
-                    chartUrl += "&service=" + openHABWidget.getService();
-                }
-    		}
-    		Log.d(TAG, "Chart url = " + chartUrl);
-    		if (chartImage == null)
-    			Log.e(TAG, "chartImage == null !!!");
-            ViewGroup.LayoutParams chartLayoutParams = chartImage.getLayoutParams();
-            chartLayoutParams.height = (int) (screenWidth/2);
-            chartImage.setLayoutParams(chartLayoutParams);
-            chartUrl += "&w=" + String.valueOf(screenWidth);
-            chartUrl += "&h=" + String.valueOf(screenWidth/2);
-   			chartImage.setImageUrl(chartUrl, false, openHABUsername, openHABPassword);
-    		// TODO: This is quite dirty fix to make charts look full screen width on all displays
-    		if (openHABWidget.getRefresh() > 0) {
-    			chartImage.setRefreshRate(openHABWidget.getRefresh());
-    			refreshImageList.add(chartImage);
-    		}
-    		Log.d(TAG, "chart size = " + chartLayoutParams.width + " " + chartLayoutParams.height);
-    	break;
-    	case TYPE_VIDEO:
-            VideoView videoVideo = (VideoView)widgetView.findViewById(R.id.videovideo);
-            Log.d(TAG, "Opening video at " + openHABWidget.getUrl());
-            // TODO: This is quite dirty fix to make video look maximum available size on all screens
-            WindowManager wm = (WindowManager) getContext().getSystemService(Context.WINDOW_SERVICE);
-            ViewGroup.LayoutParams videoLayoutParams = videoVideo.getLayoutParams();
-            videoLayoutParams.height = (int)(wm.getDefaultDisplay().getWidth()/1.77);
-            videoVideo.setLayoutParams(videoLayoutParams);
-            // We don't have any event handler to know if the VideoView is on the screen
-            // so we manage an array of all videos to stop them when user leaves the page
-            if (!videoWidgetList.contains(videoVideo))
-                videoWidgetList.add(videoVideo);
-            // Start video
-            if (!videoVideo.isPlaying()) {
-                videoVideo.setVideoURI(Uri.parse(openHABWidget.getUrl()));
-                videoVideo.start();
-            }
-            Log.d(TAG, "Video height is " + videoVideo.getHeight());
-    	break;
-        case TYPE_VIDEO_MJPEG:
-            Log.d(TAG, "Video is mjpeg");
-            ImageView mjpegImage = (ImageView)widgetView.findViewById(R.id.mjpegimage);
-            MjpegStreamer mjpegStreamer = new MjpegStreamer(openHABWidget.getUrl(), this.openHABUsername, this.openHABPassword, this.getContext());
-            mjpegStreamer.setTargetImageView(mjpegImage);
-            mjpegStreamer.start();
-            if (!mjpegWidgetList.contains(mjpegStreamer))
-                mjpegWidgetList.add(mjpegStreamer);
-        break;
-    	case TYPE_WEB:
-    		WebView webWeb = (WebView)widgetView.findViewById(R.id.webweb);
-    		if (openHABWidget.getHeight() > 0) {
-    			ViewGroup.LayoutParams webLayoutParams = webWeb.getLayoutParams();
-    			webLayoutParams.height = openHABWidget.getHeight() * 80;
-    			webWeb.setLayoutParams(webLayoutParams);
-    		}
-    		webWeb.setWebViewClient(new AnchorWebViewClient(openHABWidget.getUrl(), this.openHABUsername, this.openHABPassword));
-            webWeb.getSettings().setDomStorageEnabled(true);
-            webWeb.getSettings().setJavaScriptEnabled(true);
-    		webWeb.loadUrl(openHABWidget.getUrl());
-    	break;
-    	case TYPE_SELECTION:
-    		int spinnerSelectedIndex = -1;
-    		if (labelTextView != null)
-    			labelTextView.setText(openHABWidget.getLabel());
-    		final Spinner selectionSpinner = (Spinner)widgetView.findViewById(R.id.selectionspinner);
-    		ArrayList<String> spinnerArray = new ArrayList<String>();
-    		Iterator<OpenHABWidgetMapping> mappingIterator = openHABWidget.getMappings().iterator();
-    		while (mappingIterator.hasNext()) {
-    			OpenHABWidgetMapping openHABWidgetMapping = mappingIterator.next();
-    			spinnerArray.add(openHABWidgetMapping.getLabel());
-                if (openHABWidgetMapping.getCommand() != null && openHABWidget.getItem() != null)
-                    if (openHABWidgetMapping.getCommand().equals(openHABWidget.getItem().getState())) {
-                        spinnerSelectedIndex = spinnerArray.size() - 1;
-                    }
-    		}
-			ArrayAdapter<String> spinnerAdapter = new SpinnerClickAdapter<String>(this.getContext(),
-				android.R.layout.simple_spinner_item, spinnerArray, openHABWidget, new AdapterView.OnItemClickListener() {
-				@Override
-				public void onItemClick(AdapterView<?> parent, View view, int index, long id) {
-					Log.d(TAG, "Spinner item click on index " + index);
-					String selectedLabel = (String) parent.getAdapter().getItem(index);
-					Log.d(TAG, "Spinner onItemSelected selected label = " + selectedLabel);
-					OpenHABWidget openHABWidget = (OpenHABWidget) parent.getTag();
-					if (openHABWidget != null) {
-						Log.d(TAG, "Label selected = " + openHABWidget.getMapping(index).getLabel());
-						Iterator<OpenHABWidgetMapping> mappingIterator = openHABWidget.getMappings().iterator();
-						while (mappingIterator.hasNext()) {
-							OpenHABWidgetMapping openHABWidgetMapping = mappingIterator.next();
-							if (openHABWidgetMapping.getLabel().equals(selectedLabel)) {
-								Log.d(TAG, "Spinner onItemSelected found match with " + openHABWidgetMapping.getCommand());
-								if (openHABWidget.getItem() != null && openHABWidget.getItem().getState() != null) {
-									sendItemCommand(openHABWidget.getItem(), openHABWidgetMapping.getCommand());
-								} else if (openHABWidget.getItem() != null && openHABWidget.getItem().getState() == null) {
-									Log.d(TAG, "Spinner onItemSelected selected label command and state == null");
-									sendItemCommand(openHABWidget.getItem(), openHABWidgetMapping.getCommand());
-								}
-							}
-						}
-					}
-					// TODO: there's probably a better solution...
-					try {
-						// Close the spinner programmatically
-						Method method = Spinner.class.getDeclaredMethod("onDetachedFromWindow");
-						method.setAccessible(true);
-						method.invoke(selectionSpinner);
-					} catch (Exception ex) {}
-				}
-			});
-    		spinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-    		selectionSpinner.setAdapter(spinnerAdapter);
-    		if (spinnerSelectedIndex >= 0) {
-				Log.d(TAG, "Setting spinner selected index to " + String.valueOf(spinnerSelectedIndex));
-				selectionSpinner.setSelection(spinnerSelectedIndex);
-			} else {
-				Log.d(TAG, "Not setting spinner selected index");
-			}
-    		break;
-    	case TYPE_SETPOINT:
-    		splitString = openHABWidget.getLabel().split("\\[|\\]");
-    		if (labelTextView != null && splitString.length > 0)
-    			labelTextView.setText(splitString[0]);
-    		if (valueTextView != null)
-    			if (splitString.length > 1) {
-    				// If value is not empty, show TextView
-    				valueTextView.setVisibility(View.VISIBLE);
-    				valueTextView.setText(splitString[1]);
-    			}
-    		Button setPointMinusButton = (Button)widgetView.findViewById(R.id.setpointbutton_minus);
-    		Button setPointPlusButton = (Button)widgetView.findViewById(R.id.setpointbutton_plus);
-    		setPointMinusButton.setTag(openHABWidget);
-    		setPointPlusButton.setTag(openHABWidget);
-    		setPointMinusButton.setOnClickListener(new OnClickListener() {
-				public void onClick(View v) {
-					Log.d(TAG, "Minus");
-					OpenHABWidget setPointWidget = (OpenHABWidget)v.getTag();
-					float currentValue = setPointWidget.getItem().getStateAsFloat();
-					currentValue = currentValue - setPointWidget.getStep();
-					if (currentValue < setPointWidget.getMinValue())
-						currentValue = setPointWidget.getMinValue();
-                    if (currentValue > setPointWidget.getMaxValue())
-                        currentValue = setPointWidget.getMaxValue();
-					sendItemCommand(setPointWidget.getItem(), String.valueOf(currentValue));
-
-				}
-                		});
-    		setPointPlusButton.setOnClickListener(new OnClickListener() {
-				public void onClick(View v) {
-					Log.d(TAG, "Plus");
-					OpenHABWidget setPointWidget = (OpenHABWidget)v.getTag();
-					float currentValue = setPointWidget.getItem().getStateAsFloat();
-					currentValue = currentValue + setPointWidget.getStep();
-                    if (currentValue < setPointWidget.getMinValue())
-                        currentValue = setPointWidget.getMinValue();
-					if (currentValue > setPointWidget.getMaxValue())
-						currentValue = setPointWidget.getMaxValue();
-					sendItemCommand(setPointWidget.getItem(), String.valueOf(currentValue));
-				}
-                		});
-            if (volumeUpWidget == null) {
-                volumeUpWidget = setPointPlusButton;
-                volumeDownWidget = setPointMinusButton;
-            }
-    		break;
-    	default:
-    		if (labelTextView != null)
-    			labelTextView.setText(openHABWidget.getLabel());
-    		break;
-    	}
-    	LinearLayout dividerLayout = (LinearLayout)widgetView.findViewById(R.id.listdivider);
-    	if (dividerLayout != null) {
-    		if (position < this.getCount()-1) {
-    			if (this.getItemViewType(position + 1) == TYPE_FRAME) {
-        			dividerLayout.setVisibility(View.GONE); // hide dividers before frame widgets
-    			} else {
-    				dividerLayout.setVisibility(View.VISIBLE); // show dividers for all others
-    			}
-    		} else { // last widget in the list, hide divider
-    			dividerLayout.setVisibility(View.GONE);
-    		}
-    	}
-    	return widgetView;
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        long startTime = System.nanoTime();
+        mBoundHolders.add(holder);
+        holder.bind(mWidgets.get(position));
+        holder.bindDivider(position);
+        holder.itemView.setActivated(position == mSelectedPosition);
+        int viewType = holder.getItemViewType();
+        mBindTimes[viewType] += System.nanoTime() - startTime;
+        mBindCounts[viewType]++;
     }
-    
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position, List<Object> payloads) {
+        boolean dividerOnly = !payloads.isEmpty();
+        for (Object payload : payloads) {
+            dividerOnly &= payload == PAYLOAD_DIVIDER;
+        }
+        if (dividerOnly) {
+            holder.bindDivider(position);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @Override
+    public void onViewRecycled(ViewHolder holder) {
+        mBoundHolders.remove(holder);
+        holder.onRecycled();
+    }
+
+    @Override
+    public void onViewAttachedToWindow(ViewHolder holder) {
+        holder.onAttached();
+    }
+
     @Override
-    public int getViewTypeCount() {
-        return TYPES_COUNT;
+    public void onViewDetachedFromWindow(ViewHolder holder) {
+        holder.onDetached();
     }
-    
+
+    @Override
+    public int getItemCount() {
+        return mWidgets.size();
+    }
+
+    public OpenHABWidget getItem(int position) {
+        return mWidgets.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String key = getStableIdKey(position);
+        Long id = mStableIds.get(key);
+        if (id == null) {
+            id = mNextStableId++;
+            mStableIds.put(key, id);
+        }
+        return id;
+    }
+
+    private String getStableIdKey(int position) {
+        OpenHABWidget widget = mWidgets.get(position);
+        return widget.getId() != null ? widget.getId() : "#" + position;
+    }
+
     @Override
     public int getItemViewType(int position) {
-    	OpenHABWidget openHABWidget = getItem(position);
+    	return getItemViewType(mWidgets.get(position));
+    }
+
+    public int getItemViewType(OpenHABWidget openHABWidget) {
     	if (openHABWidget.getType().equals("Frame")) {
     		return TYPE_FRAME;
     	} else if (openHABWidget.getType().equals("Group")) {
@@ -739,10 +363,100 @@ public class OpenHABWidgetAdapter extends ArrayAdapter<OpenHABWidget> {
     	}
     }
 
+    /**
+     * Replaces the shown widgets, notifying only the rows which changed
+     *
+     * @param  newWidgets  widgets of the updated page
+     */
+    public void updateWidgets(final List<OpenHABWidget> newWidgets) {
+        // New widgets of the rows which aren't notified, by the widget they replace
+        final Map<OpenHABWidget, OpenHABWidget> unchangedWidgets = new IdentityHashMap<OpenHABWidget, OpenHABWidget>();
+        DiffUtil.DiffResult diffResult = DiffUtil.calculateDiff(
+                new OpenHABWidgetDiff.Callback(mWidgets, newWidgets) {
+                    @Override
+                    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                        if (!super.areContentsTheSame(oldItemPosition, newItemPosition)) {
+                            return false;
+                        }
+                        unchangedWidgets.put(mWidgets.get(oldItemPosition), newWidgets.get(newItemPosition));
+                        return true;
+                    }
+                }, false);
+        mWidgets.clear();
+        mWidgets.addAll(newWidgets);
+        // Forget the ids of widgets which are gone, so the map doesn't grow with every update
+        Set<String> stableIdKeys = new HashSet<String>();
+        for (int i = 0; i < mWidgets.size(); i++) {
+            stableIdKeys.add(getStableIdKey(i));
+        }
+        mStableIds.keySet().retainAll(stableIdKeys);
+        for (ViewHolder holder : mBoundHolders) {
+            OpenHABWidget widget = unchangedWidgets.get(holder.mBoundWidget);
+            if (widget != null) {
+                holder.rebind(widget);
+            }
+        }
+        final boolean[] structuralChange = new boolean[1];
+        diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                structuralChange[0] = true;
+                notifyItemRangeInserted(position, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                structuralChange[0] = true;
+                notifyItemRangeRemoved(position, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                structuralChange[0] = true;
+                notifyItemMoved(fromPosition, toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(position, count, payload);
+            }
+        });
+        if (structuralChange[0]) {
+            // Dividers depend on the following row
+            notifyItemRangeChanged(0, mWidgets.size(), PAYLOAD_DIVIDER);
+        }
+    }
+
+    public void setOnWidgetClickListener(OnWidgetClickListener listener) {
+        mClickListener = listener;
+    }
+
+    /**
+     * Marks the row at the given position as selected, used in multi column mode.
+     * Use -1 to clear the selection.
+     */
+    public void setSelectedPosition(int position) {
+        if (position == mSelectedPosition) {
+            return;
+        }
+        int oldPosition = mSelectedPosition;
+        mSelectedPosition = position;
+        if (oldPosition >= 0 && oldPosition < mWidgets.size()) {
+            notifyItemChanged(oldPosition);
+        }
+        if (position >= 0 && position < mWidgets.size()) {
+            notifyItemChanged(position);
+        }
+    }
+
+    public int getSelectedPosition() {
+        return mSelectedPosition;
+    }
+
     public void setOpenHABBaseUrl(String baseUrl) {
     	openHABBaseUrl = baseUrl;
     }
-    
+
     private String ensureAbsoluteURL(String base, String maybeRelative) {
         if (maybeRelative.startsWith("http")) {
             return maybeRelative;
@@ -754,9 +468,19 @@ public class OpenHABWidgetAdapter extends ArrayAdapter<OpenHABWidget> {
             }
         }
     }
-    
+
     public void sendItemCommand(OpenHABItem item, String command) {
         if (item != null && command != null) {
+            // Show the expected state right away, it is rolled back if the command fails
+            OptimisticStateTracker stateTracker = OpenHABMainActivity.getStateTracker();
+            if (stateTracker != null) {
+                stateTracker.apply(item, command);
+            }
+            CommandCoalescer commandCoalescer = OpenHABMainActivity.getCommandCoalescer();
+            if (commandCoalescer != null) {
+                commandCoalescer.send(item.getLink(), command);
+                return;
+            }
             mAsyncHttpClient.post(item.getLink(), command, "text/plain", new MyHttpClient.TextResponseHandler() {
                 @Override
                 public void onFailure(Call call, int statusCode, Headers headers, String responseString, Throwable error) {
@@ -788,20 +512,24 @@ public class OpenHABWidgetAdapter extends ArrayAdapter<OpenHABWidget> {
 	public void setOpenHABPassword(String openHABPassword) {
 		this.openHABPassword = openHABPassword;
 	}
-	
-	public void stopVideoWidgets() {
-		Log.d(TAG, "Stopping video for " + videoWidgetList.size() + " widgets");
-		for (int i=0; i<videoWidgetList.size(); i++) {
-			if (videoWidgetList.get(i) != null)
-				videoWidgetList.get(i).stopPlayback();
-		}
-		videoWidgetList.clear();
-        for (int i=0; i<mjpegWidgetList.size(); i++) {
-            if (mjpegWidgetList.get(i) != null)
-                mjpegWidgetList.get(i).stop();
-        }
-        mjpegWidgetList.clear();
-	}
+
+    /**
+     * Stops all video streams, e.g. when the page is paused
+     */
+    public void stopVideoWidgets() {
+        mPlaybackCoordinator.pause();
+    }
+
+    /**
+     * Starts the video streams on screen again after they were stopped
+     */
+    public void startVideoWidgets() {
+        mPlaybackCoordinator.resume();
+    }
+
+    public PlaybackCoordinator getPlaybackCoordinator() {
+        return mPlaybackCoordinator;
+    }
 
 
 	public void stopImageRefresh() {
@@ -869,19 +597,891 @@ public class OpenHABWidgetAdapter extends ArrayAdapter<OpenHABWidget> {
         return mAsyncHttpClient;
     }
 
+    /**
+     * Sets the pool providing the WebViews of Webview widgets, which are kept per page
+     *
+     * @param pageUrl  url of the page shown by this adapter
+     */
+    public void setWebViewPool(WebViewPool webViewPool, String pageUrl) {
+        mWebViewPool = webViewPool;
+        mPageUrl = pageUrl;
+    }
+
+    /**
+     * Sets the pool rows are taken from instead of inflating them, which is shared by the
+     * lists of all pages
+     */
+    public void setRowPool(WidgetRowPool rowPool) {
+        mRowPool = rowPool;
+    }
+
+    /**
+     * Removes the rows from the list when its page is closed and gives them to the row pool
+     */
+    public void releaseRows(RecyclerView recyclerView) {
+        // Removing the adapter recycles all rows into the list's own pool first
+        recyclerView.setAdapter(null);
+        if (mRowPool == null) {
+            return;
+        }
+        RecyclerView.RecycledViewPool recycledViewPool = recyclerView.getRecycledViewPool();
+        for (int viewType = 0; viewType < TYPES_COUNT; viewType++) {
+            RecyclerView.ViewHolder holder;
+            while ((holder = recycledViewPool.getRecycledView(viewType)) != null) {
+                mRowPool.recycle(getLayout(viewType), holder.itemView);
+            }
+        }
+    }
+
     public void setAsyncHttpClient(MyAsyncHttpClient asyncHttpClient) {
         mAsyncHttpClient = asyncHttpClient;
     }
 
-    public boolean areAllItemsEnabled() {
-        return false;
+    /**
+     * Number of rows bound since the last reset
+     */
+    public int getBindCount() {
+        int count = 0;
+        for (int bindCount : mBindCounts) {
+            count += bindCount;
+        }
+        return count;
+    }
+
+    /**
+     * Average time in milliseconds it took to bind a row since the last reset
+     */
+    public float getAverageBindTime() {
+        long time = 0;
+        for (long bindTime : mBindTimes) {
+            time += bindTime;
+        }
+        int count = getBindCount();
+        return count > 0 ? time / 1e6f / count : 0f;
+    }
+
+    /**
+     * Average time in milliseconds it took to bind a row of the given type since the last reset
+     */
+    public float getAverageBindTime(int viewType) {
+        return mBindCounts[viewType] > 0 ? mBindTimes[viewType] / 1e6f / mBindCounts[viewType] : 0f;
+    }
+
+    public void resetBindStats() {
+        for (int i = 0; i < TYPES_COUNT; i++) {
+            mBindTimes[i] = 0;
+            mBindCounts[i] = 0;
+        }
+    }
+
+    /**
+     * Base class of the rows, which shows icon, label and value with their colors
+     */
+    public abstract class ViewHolder extends RecyclerView.ViewHolder {
+        protected OpenHABWidget mBoundWidget;
+        protected final MySmartImageView mIconView;
+        protected final TextView mLabelView;
+        protected final TextView mValueView;
+        private final View mDividerView;
+        private final ColorStateList mLabelColors;
+        private final ColorStateList mValueColors;
+        // Icon path the icon view was last loaded with, compared by reference
+        private String mBoundIconPath;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            mIconView = (MySmartImageView) itemView.findViewById(R.id.widgetimage);
+            mLabelView = (TextView) itemView.findViewById(R.id.widgetlabel);
+            mValueView = (TextView) itemView.findViewById(R.id.widgetvalue);
+            mDividerView = itemView.findViewById(R.id.listdivider);
+            // A pooled row may still have the colors of the widget it showed before
+            mLabelColors = mLabelView != null ? WidgetRowPool.getDefaultTextColors(mLabelView) : null;
+            mValueColors = mValueView != null ? WidgetRowPool.getDefaultTextColors(mValueView) : null;
+            itemView.setOnClickListener(new OnClickListener() {
+                @Override
+                public void onClick(View v) {
+                    int position = getAdapterPosition();
+                    if (mClickListener != null && position != RecyclerView.NO_POSITION) {
+                        mClickListener.onWidgetClick(mBoundWidget, position);
+                    }
+                }
+            });
+            itemView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    int position = getAdapterPosition();
+                    return mClickListener != null && position != RecyclerView.NO_POSITION
+                            && mClickListener.onWidgetLongClick(mBoundWidget, position);
+                }
+            });
+        }
+
+        void bind(OpenHABWidget widget) {
+            mBoundWidget = widget;
+            // Some of widgets, for example Frame doesnt' have an icon, so...
+            if (mIconView != null) {
+                // Widgets cache their icon path, so an unchanged row keeps its icon
+                String iconPath = widget.getIconPath();
+                if (iconPath != mBoundIconPath) {
+                    // This is needed to escape possible spaces and everything according to rfc2396
+                    String iconUrl = openHABBaseUrl + Uri.encode(iconPath, "/?=&");
+                    mIconView.setImageUrl(iconUrl, R.drawable.blank_icon,
+                            openHABUsername, openHABPassword);
+                    mBoundIconPath = iconPath;
+                }
+                if (widget.getIconColor() != null) {
+                    mIconView.setColorFilter(widget.getIconColor());
+                } else {
+                    mIconView.clearColorFilter();
+                }
+            }
+            if (mLabelView != null) {
+                if (widget.getLabelColor() != null) {
+                    mLabelView.setTextColor(widget.getLabelColor());
+                } else {
+                    mLabelView.setTextColor(mLabelColors);
+                }
+            }
+            if (mValueView != null) {
+                if (widget.getValueColor() != null) {
+                    mValueView.setTextColor(widget.getValueColor());
+                } else {
+                    mValueView.setTextColor(mValueColors);
+                }
+            }
+            bindContent(widget);
+        }
+
+        abstract void bindContent(OpenHABWidget widget);
+
+        /**
+         * Points the row to the widget of an updated page whose content didn't change,
+         * so clicks and commands use it, without showing it again
+         */
+        void rebind(OpenHABWidget widget) {
+            if (mBoundIconPath != null && mBoundIconPath == mBoundWidget.getIconPath()) {
+                // The icon is the same, but the path of the new widget is another string
+                mBoundIconPath = widget.getIconPath();
+            }
+            rebindContent(widget);
+            mBoundWidget = widget;
+        }
+
+        /**
+         * Replaces references to the bound widget kept by the row type, see rebind().
+         * mBoundWidget is still the previous widget when this is called.
+         */
+        void rebindContent(OpenHABWidget widget) {
+        }
+
+        void bindDivider(int position) {
+            if (mDividerView == null) {
+                return;
+            }
+            // hide dividers before frame widgets and after the last widget
+            if (position < getItemCount() - 1 && getItemViewType(position + 1) != TYPE_FRAME) {
+                mDividerView.setVisibility(View.VISIBLE);
+            } else {
+                mDividerView.setVisibility(View.GONE);
+            }
+        }
+
+        /**
+         * Called when the row is scrolled out and will be reused for another widget
+         */
+        void onRecycled() {
+        }
+
+        /**
+         * Called when the row entered the screen
+         */
+        void onAttached() {
+        }
+
+        /**
+         * Called when the row left the screen
+         */
+        void onDetached() {
+        }
+
+        void setLabel(String label) {
+            if (mLabelView != null) {
+                mLabelView.setText(label);
+            }
+        }
+
+        /**
+         * Shows the part of the label before the brackets as label and the part in
+         * brackets as value
+         */
+        void setLabelAndValue(OpenHABWidget widget, boolean hideEmptyValue) {
+            setLabel(widget.getLabelText());
+            if (mValueView != null) {
+                if (widget.getLabelValue() != null) {
+                    mValueView.setVisibility(View.VISIBLE);
+                    mValueView.setText(widget.getLabelValue());
+                } else {
+                    // If value is empty, hide TextView to fix vertical alignment of label
+                    if (hideEmptyValue) {
+                        mValueView.setVisibility(View.GONE);
+                    }
+                    mValueView.setText("");
+                }
+            }
+        }
+    }
+
+    class GenericViewHolder extends ViewHolder {
+        GenericViewHolder(View itemView) {
+            super(itemView);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabel());
+        }
+    }
+
+    class FrameViewHolder extends ViewHolder {
+        FrameViewHolder(View itemView) {
+            super(itemView);
+            itemView.setClickable(false);
+            itemView.setLongClickable(false);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabel());
+            // Frame labels use the value color
+            if (widget.getValueColor() != null && mLabelView != null) {
+                mLabelView.setTextColor(widget.getValueColor());
+            }
+            // hide empty frames
+            int visibility = widget.getLabel().length() > 0 ? View.VISIBLE : View.GONE;
+            itemView.setVisibility(visibility);
+            mLabelView.setVisibility(visibility);
+        }
+    }
+
+    class GroupViewHolder extends ViewHolder {
+        GroupViewHolder(View itemView) {
+            super(itemView);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabelAndValue(widget, false);
+        }
+    }
+
+    class TextViewHolder extends ViewHolder {
+        TextViewHolder(View itemView) {
+            super(itemView);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabelAndValue(widget, true);
+        }
     }
 
-    public boolean isEnabled(int position) {
-        OpenHABWidget openHABWidget = getItem(position);
-        if (openHABWidget.getType().equals("Frame"))
+    class SectionSwitchViewHolder extends ViewHolder {
+        private final RadioGroup mRadioGroup;
+        // Buttons removed for rows with fewer mappings, reused for rows with more
+        private final ArrayList<SegmentedControlButton> mSpareButtons = new ArrayList<SegmentedControlButton>();
+        private final OnClickListener mButtonClickListener = new OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                Log.i(TAG, "Button clicked");
+                if (view.getTag() != null) {
+                    sendItemCommand(mBoundWidget.getItem(), (String) view.getTag());
+                }
+            }
+        };
+
+        SectionSwitchViewHolder(View itemView) {
+            super(itemView);
+            mRadioGroup = (RadioGroup) itemView.findViewById(R.id.sectionswitchradiogroup);
+            // A row from the shared pool brings the buttons of its previous list
+            for (int i = 0; i < mRadioGroup.getChildCount(); i++) {
+                mRadioGroup.getChildAt(i).setOnClickListener(mButtonClickListener);
+            }
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabelAndValue(widget, false);
+            // Only the difference in mapping count is added or removed, the other
+            // buttons are rebound in place
+            List<OpenHABWidgetMapping> mappings = widget.getMappings();
+            int mappingCount = mappings.size();
+            while (mRadioGroup.getChildCount() > mappingCount) {
+                int lastIndex = mRadioGroup.getChildCount() - 1;
+                mSpareButtons.add((SegmentedControlButton) mRadioGroup.getChildAt(lastIndex));
+                mRadioGroup.removeViewAt(lastIndex);
+            }
+            while (mRadioGroup.getChildCount() < mappingCount) {
+                mRadioGroup.addView(obtainButton());
+            }
+            String state = widget.getItem() != null ? widget.getItem().getState() : null;
+            for (int i = 0; i < mappingCount; i++) {
+                OpenHABWidgetMapping widgetMapping = mappings.get(i);
+                SegmentedControlButton segmentedControlButton = (SegmentedControlButton) mRadioGroup.getChildAt(i);
+                if (!TextUtils.equals(segmentedControlButton.getText(), widgetMapping.getLabel())) {
+                    segmentedControlButton.setText(widgetMapping.getLabel());
+                }
+                segmentedControlButton.setTag(widgetMapping.getCommand());
+                segmentedControlButton.setChecked(widgetMapping.getCommand() != null
+                        && widgetMapping.getCommand().equals(state));
+            }
+        }
+
+        private SegmentedControlButton obtainButton() {
+            int spareCount = mSpareButtons.size();
+            if (spareCount > 0) {
+                return mSpareButtons.remove(spareCount - 1);
+            }
+            SegmentedControlButton segmentedControlButton = (SegmentedControlButton) mInflater.inflate(
+                    R.layout.openhabwidgetlist_sectionswitchitem_button, mRadioGroup, false);
+            segmentedControlButton.setOnClickListener(mButtonClickListener);
+            return segmentedControlButton;
+        }
+    }
+
+    class SwitchViewHolder extends ViewHolder {
+        private final SwitchCompat mSwitch;
+
+        SwitchViewHolder(View itemView) {
+            super(itemView);
+            mSwitch = (SwitchCompat) itemView.findViewById(R.id.switchswitch);
+            mSwitch.setOnTouchListener(new OnTouchListener() {
+                public boolean onTouch(View v, MotionEvent motionEvent) {
+                    if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP) {
+                        sendItemCommand(mBoundWidget.getItem(), mSwitch.isChecked() ? "OFF" : "ON");
+                    }
+                    return false;
+                }
+            });
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabel());
+            if (widget.hasItem()) {
+                mSwitch.setChecked(widget.getItem().getStateAsBoolean());
+            }
+        }
+    }
+
+    class ColorViewHolder extends ViewHolder {
+        ColorViewHolder(View itemView) {
+            super(itemView);
+            itemView.findViewById(R.id.colorbutton_up).setOnTouchListener(new CommandTouchListener(this, "ON"));
+            itemView.findViewById(R.id.colorbutton_down).setOnTouchListener(new CommandTouchListener(this, "OFF"));
+            itemView.findViewById(R.id.colorbutton_color).setOnTouchListener(new OnTouchListener() {
+                public boolean onTouch(View v, MotionEvent motionEvent) {
+                    OpenHABItem colorItem = mBoundWidget.getItem();
+                    if (colorItem != null && motionEvent.getActionMasked() == MotionEvent.ACTION_UP) {
+                        Log.d(TAG, "Time to launch color picker!");
+                        ColorPickerDialog colorDialog = new ColorPickerDialog(mContext, new OnColorChangedListener() {
+                            public void colorChanged(float[] hsv, View v) {
+                                Log.d(TAG, "New color HSV = " + hsv[0] + ", " + hsv[1] + ", " +
+                                        hsv[2]);
+                                String newColor = String.valueOf(hsv[0]) + "," + String.valueOf(hsv[1]*100) + "," + String.valueOf(hsv[2]*100);
+                                OpenHABItem colorItem = (OpenHABItem) v.getTag();
+                                sendItemCommand(colorItem, newColor);
+                            }
+                        }, colorItem.getStateAsHSV());
+                        colorDialog.setTag(colorItem);
+                        colorDialog.show();
+                    }
+                    return false;
+                }
+            });
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabel());
+        }
+    }
+
+    class RollershutterViewHolder extends ViewHolder {
+        RollershutterViewHolder(View itemView) {
+            super(itemView);
+            itemView.findViewById(R.id.rollershutterbutton_up).setOnTouchListener(new CommandTouchListener(this, "UP"));
+            itemView.findViewById(R.id.rollershutterbutton_stop).setOnTouchListener(new CommandTouchListener(this, "STOP"));
+            itemView.findViewById(R.id.rollershutterbutton_down).setOnTouchListener(new CommandTouchListener(this, "DOWN"));
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabel());
+        }
+    }
+
+    class SliderViewHolder extends ViewHolder {
+        private final SeekBar mSeekBar;
+
+        SliderViewHolder(View itemView) {
+            super(itemView);
+            mSeekBar = (SeekBar) itemView.findViewById(R.id.sliderseekbar);
+            mSeekBar.setOnSeekBarChangeListener(new OnSeekBarChangeListener() {
+                public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
+                }
+
+                public void onStartTrackingTouch(SeekBar seekBar) {
+                    Log.d(TAG, "onStartTrackingTouch position = " + seekBar.getProgress());
+                }
+
+                public void onStopTrackingTouch(SeekBar seekBar) {
+                    Log.d(TAG, "onStopTrackingTouch position = " + seekBar.getProgress());
+                    OpenHABItem sliderItem = (OpenHABItem) seekBar.getTag();
+                    if (sliderItem != null)
+                        sendItemCommand(sliderItem, String.valueOf(seekBar.getProgress()));
+                }
+            });
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabelText());
+            if (widget.hasItem()) {
+                mSeekBar.setTag(widget.getItem());
+                mSeekBar.setProgress(widget.getItem().getStateAsFloat().intValue());
+                if (volumeUpWidget == null) {
+                    volumeUpWidget = mSeekBar;
+                    volumeDownWidget = mSeekBar;
+                }
+            } else {
+                mSeekBar.setTag(null);
+            }
+        }
+
+        @Override
+        void rebindContent(OpenHABWidget widget) {
+            mSeekBar.setTag(widget.getItem());
+        }
+    }
+
+    class ImageViewHolder extends ViewHolder {
+        private final MySmartImageView mImageView;
+        // Widget the image is loaded and refreshed for, until the row is recycled
+        private OpenHABWidget mShownWidget;
+
+        ImageViewHolder(View itemView) {
+            super(itemView);
+            mImageView = (MySmartImageView) itemView.findViewById(R.id.imageimage);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            if (widget == mShownWidget && (widget.getRefresh() <= 0 || mImageView.getRefreshRate() > 0)) {
+                return;
+            }
+            mShownWidget = widget;
+            mImageView.cancelRefresh();
+            mImageView.setImageUrl(ensureAbsoluteURL(openHABBaseUrl, widget.getUrl()), false,
+                    openHABUsername, openHABPassword);
+            if (widget.getRefresh() > 0) {
+                mImageView.setRefreshRate(OpenHABMainActivity.getImageRefreshScheduler(), widget.getRefresh());
+                refreshImageList.add(mImageView);
+            }
+        }
+
+        @Override
+        void rebindContent(OpenHABWidget widget) {
+            if (mShownWidget == mBoundWidget) {
+                mShownWidget = widget;
+            }
+        }
+
+        @Override
+        void onRecycled() {
+            mShownWidget = null;
+            mImageView.cancelRefresh();
+            refreshImageList.remove(mImageView);
+        }
+    }
+
+    class ChartViewHolder extends ViewHolder {
+        private final MySmartImageView mChartView;
+        // Widget the chart is loaded and refreshed for, until the row is recycled
+        private OpenHABWidget mShownWidget;
+
+        ChartViewHolder(View itemView) {
+            super(itemView);
+            mChartView = (MySmartImageView) itemView.findViewById(R.id.chartimage);
+            // TODO: This is quite dirty fix to make charts look full screen width on all displays
+            ViewGroup.LayoutParams chartLayoutParams = mChartView.getLayoutParams();
+            chartLayoutParams.height = mScreenWidth / 2;
+            mChartView.setLayoutParams(chartLayoutParams);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            if (widget == mShownWidget && (widget.getRefresh() <= 0 || mChartView.getRefreshRate() > 0)) {
+                return;
+            }
+            mShownWidget = widget;
+            //Always clear the drawable so no images from recycled views appear
+            mChartView.cancelRefresh();
+            mChartView.setImageDrawable(null);
+            OpenHABItem chartItem = widget.getItem();
+            String chartUrl = "";
+            if (chartItem != null) {
+                if (chartItem.getType().equals("GroupItem") || chartItem.getType().equals("Group")) {
+                    chartUrl = openHABBaseUrl + "chart?groups=" + chartItem.getName();
+                } else {
+                    chartUrl = openHABBaseUrl + "chart?items=" + chartItem.getName();
+                }
+                chartUrl += "&period=" + widget.getPeriod() + "&random=" + mRandom.nextInt();
+                if (widget.getService() != null && widget.getService().length() > 0) {
+                    chartUrl += "&service=" + widget.getService();
+                }
+            }
+            chartUrl += "&w=" + mScreenWidth;
+            chartUrl += "&h=" + mScreenWidth / 2;
+            Log.d(TAG, "Chart url = " + chartUrl);
+            mChartView.setImageUrl(chartUrl, false, openHABUsername, openHABPassword);
+            if (widget.getRefresh() > 0) {
+                mChartView.setRefreshRate(OpenHABMainActivity.getImageRefreshScheduler(), widget.getRefresh());
+                refreshImageList.add(mChartView);
+            }
+        }
+
+        @Override
+        void rebindContent(OpenHABWidget widget) {
+            if (mShownWidget == mBoundWidget) {
+                mShownWidget = widget;
+            }
+        }
+
+        @Override
+        void onRecycled() {
+            mShownWidget = null;
+            mChartView.cancelRefresh();
+            refreshImageList.remove(mChartView);
+        }
+    }
+
+    class VideoViewHolder extends ViewHolder implements PlaybackCoordinator.Stream {
+        private final VideoView mVideoView;
+        private String mUrl;
+
+        VideoViewHolder(View itemView) {
+            super(itemView);
+            mVideoView = (VideoView) itemView.findViewById(R.id.videovideo);
+            // TODO: This is quite dirty fix to make video look maximum available size on all screens
+            ViewGroup.LayoutParams videoLayoutParams = mVideoView.getLayoutParams();
+            videoLayoutParams.height = (int) (mScreenWidth / 1.77);
+            mVideoView.setLayoutParams(videoLayoutParams);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            // Keep playing if the row is rebound for the same video
+            if (TextUtils.equals(mUrl, widget.getUrl())) {
+                return;
+            }
+            mUrl = widget.getUrl();
+            // The row may be on screen already, then the new video replaces the old one
+            if (mPlaybackCoordinator.isPlaying(this)) {
+                mVideoView.stopPlayback();
+                start();
+            }
+        }
+
+        @Override
+        void onAttached() {
+            mPlaybackCoordinator.onVisible(this);
+        }
+
+        @Override
+        void onDetached() {
+            mPlaybackCoordinator.onHidden(this);
+        }
+
+        @Override
+        void onRecycled() {
+            mPlaybackCoordinator.onHidden(this);
+            mUrl = null;
+        }
+
+        @Override
+        public void start() {
+            Log.d(TAG, "Opening video at " + mUrl);
+            mVideoView.setVideoURI(Uri.parse(mUrl));
+            mVideoView.start();
+        }
+
+        @Override
+        public void stop() {
+            mVideoView.stopPlayback();
+        }
+    }
+
+    class MjpegViewHolder extends ViewHolder implements PlaybackCoordinator.Stream {
+        private final ImageView mImageView;
+        private MjpegStreamer mStreamer;
+        private String mStreamerUrl;
+
+        MjpegViewHolder(View itemView) {
+            super(itemView);
+            mImageView = (ImageView) itemView.findViewById(R.id.mjpegimage);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            // Keep streaming if the row is rebound for the same stream
+            if (mStreamer != null && TextUtils.equals(mStreamerUrl, widget.getUrl())) {
+                return;
+            }
+            Log.d(TAG, "Video is mjpeg");
+            boolean playing = mPlaybackCoordinator.isPlaying(this);
+            stop();
+            mStreamerUrl = widget.getUrl();
+            mStreamer = new MjpegStreamer(mStreamerUrl, openHABUsername, openHABPassword, mContext);
+            mStreamer.setTargetImageView(mImageView);
+            // The row may be on screen already, then the new stream replaces the old one
+            if (playing) {
+                start();
+            }
+        }
+
+        @Override
+        void onAttached() {
+            mPlaybackCoordinator.onVisible(this);
+        }
+
+        @Override
+        void onDetached() {
+            mPlaybackCoordinator.onHidden(this);
+        }
+
+        @Override
+        void onRecycled() {
+            mPlaybackCoordinator.onHidden(this);
+            mStreamer = null;
+            mStreamerUrl = null;
+        }
+
+        @Override
+        public void start() {
+            if (mStreamer != null) {
+                mStreamer.start();
+            }
+        }
+
+        @Override
+        public void stop() {
+            if (mStreamer != null) {
+                mStreamer.stop();
+            }
+        }
+    }
+
+    class WebViewHolder extends ViewHolder {
+        private final FrameLayout mWebContainer;
+        private WebView mWebView;
+        private String mLoadedUrl;
+
+        WebViewHolder(View itemView) {
+            super(itemView);
+            mWebContainer = (FrameLayout) itemView.findViewById(R.id.webweb);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            if (widget.getHeight() > 0) {
+                ViewGroup.LayoutParams webLayoutParams = mWebContainer.getLayoutParams();
+                if (webLayoutParams.height != widget.getHeight() * 80) {
+                    webLayoutParams.height = widget.getHeight() * 80;
+                    mWebContainer.setLayoutParams(webLayoutParams);
+                }
+            }
+            // Don't reload the page if the row is rebound for the same url
+            if (mWebView != null && TextUtils.equals(mLoadedUrl, widget.getUrl())) {
+                return;
+            }
+            releaseWebView();
+            mLoadedUrl = widget.getUrl();
+            if (mWebViewPool != null) {
+                // The pool keeps the loaded page while the row is scrolled out
+                mWebView = mWebViewPool.obtain(mPageUrl, mLoadedUrl, openHABUsername, openHABPassword);
+            } else {
+                mWebView = new WebView(mContext);
+                mWebView.getSettings().setDomStorageEnabled(true);
+                mWebView.getSettings().setJavaScriptEnabled(true);
+                mWebView.setWebViewClient(new AnchorWebViewClient(mLoadedUrl, openHABUsername, openHABPassword));
+                mWebView.loadUrl(mLoadedUrl);
+            }
+            mWebContainer.addView(mWebView, new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+        }
+
+        @Override
+        void onRecycled() {
+            releaseWebView();
+        }
+
+        private void releaseWebView() {
+            if (mWebView == null) {
+                return;
+            }
+            if (mWebViewPool != null) {
+                mWebViewPool.recycle(mWebView);
+            } else {
+                mWebContainer.removeView(mWebView);
+                mWebView.destroy();
+            }
+            mWebView = null;
+            mLoadedUrl = null;
+        }
+    }
+
+    class SelectionViewHolder extends ViewHolder {
+        private final Spinner mSpinner;
+        private final SpinnerClickAdapter<String> mSpinnerAdapter;
+        private final AdapterView.OnItemClickListener mSpinnerClickListener = new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int index, long id) {
+                Log.d(TAG, "Spinner item click on index " + index);
+                String selectedLabel = (String) parent.getAdapter().getItem(index);
+                Log.d(TAG, "Spinner onItemSelected selected label = " + selectedLabel);
+                OpenHABWidget openHABWidget = (OpenHABWidget) parent.getTag();
+                if (openHABWidget != null) {
+                    for (OpenHABWidgetMapping openHABWidgetMapping : openHABWidget.getMappings()) {
+                        if (openHABWidgetMapping.getLabel().equals(selectedLabel)) {
+                            Log.d(TAG, "Spinner onItemSelected found match with " + openHABWidgetMapping.getCommand());
+                            sendItemCommand(openHABWidget.getItem(), openHABWidgetMapping.getCommand());
+                        }
+                    }
+                }
+                // TODO: there's probably a better solution...
+                try {
+                    // Close the spinner programmatically
+                    Method method = Spinner.class.getDeclaredMethod("onDetachedFromWindow");
+                    method.setAccessible(true);
+                    method.invoke(mSpinner);
+                } catch (Exception ex) {}
+            }
+        };
+
+        SelectionViewHolder(View itemView) {
+            super(itemView);
+            mSpinner = (Spinner) itemView.findViewById(R.id.selectionspinner);
+            mSpinnerAdapter = new SpinnerClickAdapter<String>(mContext,
+                    android.R.layout.simple_spinner_item, new ArrayList<String>(), null, mSpinnerClickListener);
+            mSpinnerAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+            mSpinner.setAdapter(mSpinnerAdapter);
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabel());
+            mSpinnerAdapter.setTag(widget);
+            List<OpenHABWidgetMapping> mappings = widget.getMappings();
+            int mappingCount = mappings.size();
+            String state = widget.getItem() != null ? widget.getItem().getState() : null;
+            int spinnerSelectedIndex = -1;
+            boolean labelsChanged = mSpinnerAdapter.getCount() != mappingCount;
+            for (int i = 0; i < mappingCount; i++) {
+                OpenHABWidgetMapping openHABWidgetMapping = mappings.get(i);
+                if (!labelsChanged && !TextUtils.equals(mSpinnerAdapter.getItem(i), openHABWidgetMapping.getLabel())) {
+                    labelsChanged = true;
+                }
+                if (openHABWidgetMapping.getCommand() != null
+                        && openHABWidgetMapping.getCommand().equals(state)) {
+                    spinnerSelectedIndex = i;
+                }
+            }
+            if (labelsChanged) {
+                mSpinnerAdapter.setNotifyOnChange(false);
+                mSpinnerAdapter.clear();
+                for (int i = 0; i < mappingCount; i++) {
+                    mSpinnerAdapter.add(mappings.get(i).getLabel());
+                }
+                mSpinnerAdapter.notifyDataSetChanged();
+            }
+            // Without a matching mapping the first one is shown, like a newly set adapter does
+            int selection = Math.max(spinnerSelectedIndex, 0);
+            if (mappingCount > 0 && mSpinner.getSelectedItemPosition() != selection) {
+                mSpinner.setSelection(selection);
+            }
+        }
+
+        @Override
+        void rebindContent(OpenHABWidget widget) {
+            mSpinnerAdapter.setTag(widget);
+        }
+    }
+
+    class SetpointViewHolder extends ViewHolder {
+        private final Button mMinusButton;
+        private final Button mPlusButton;
+
+        SetpointViewHolder(View itemView) {
+            super(itemView);
+            mMinusButton = (Button) itemView.findViewById(R.id.setpointbutton_minus);
+            mPlusButton = (Button) itemView.findViewById(R.id.setpointbutton_plus);
+            mMinusButton.setOnClickListener(new OnClickListener() {
+                public void onClick(View v) {
+                    Log.d(TAG, "Minus");
+                    sendSetpoint(-mBoundWidget.getStep());
+                }
+            });
+            mPlusButton.setOnClickListener(new OnClickListener() {
+                public void onClick(View v) {
+                    Log.d(TAG, "Plus");
+                    sendSetpoint(mBoundWidget.getStep());
+                }
+            });
+        }
+
+        private void sendSetpoint(float step) {
+            float currentValue = mBoundWidget.getItem().getStateAsFloat() + step;
+            if (currentValue < mBoundWidget.getMinValue())
+                currentValue = mBoundWidget.getMinValue();
+            if (currentValue > mBoundWidget.getMaxValue())
+                currentValue = mBoundWidget.getMaxValue();
+            sendItemCommand(mBoundWidget.getItem(), String.valueOf(currentValue));
+        }
+
+        @Override
+        void bindContent(OpenHABWidget widget) {
+            setLabel(widget.getLabelText());
+            if (mValueView != null && widget.getLabelValue() != null) {
+                // If value is not empty, show TextView
+                mValueView.setVisibility(View.VISIBLE);
+                mValueView.setText(widget.getLabelValue());
+            }
+            if (volumeUpWidget == null) {
+                volumeUpWidget = mPlusButton;
+                volumeDownWidget = mMinusButton;
+            }
+        }
+    }
+
+    /**
+     * Sends a fixed command for the item of the row when the button is released
+     */
+    private class CommandTouchListener implements OnTouchListener {
+        private final ViewHolder mHolder;
+        private final String mCommand;
+
+        CommandTouchListener(ViewHolder holder, String command) {
+            mHolder = holder;
+            mCommand = command;
+        }
+
+        @Override
+        public boolean onTouch(View v, MotionEvent motionEvent) {
+            if (motionEvent.getActionMasked() == MotionEvent.ACTION_UP && mHolder.mBoundWidget != null) {
+                sendItemCommand(mHolder.mBoundWidget.getItem(), mCommand);
+            }
             return false;
-        return true;
+        }
     }
 
 }
@@ -11,48 +11,43 @@ package org.openhab.habdroid.ui;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
 import android.os.Bundle;
-import android.os.Handler;
 import android.preference.PreferenceManager;
-import android.support.v4.app.ListFragment;
-import android.text.TextUtils;
+import android.support.v4.app.Fragment;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SimpleItemAnimator;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AdapterView;
-import android.widget.ListView;
 
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.openhab.habdroid.R;
 import org.openhab.habdroid.model.OpenHABItem;
 import org.openhab.habdroid.model.OpenHABNFCActionList;
 import org.openhab.habdroid.model.OpenHABWidget;
 import org.openhab.habdroid.model.OpenHABWidgetDataSource;
-import org.openhab.habdroid.util.Constants;
+import org.openhab.habdroid.model.OpenHABWidgetEvent;
 import org.openhab.habdroid.util.MyAsyncHttpClient;
 import org.openhab.habdroid.util.MyHttpClient;
+import org.openhab.habdroid.util.OptimisticStateTracker;
+import org.openhab.habdroid.util.PageCache;
+import org.openhab.habdroid.util.PagePrefetcher;
+import org.openhab.habdroid.util.ReconnectScheduler;
+import org.openhab.habdroid.util.SitemapPageParser;
+import org.openhab.habdroid.util.SitemapSubscriptionManager;
 import org.openhab.habdroid.util.Util;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-
-import java.io.IOException;
-import java.io.StringReader;
-import java.net.SocketTimeoutException;
+
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-
 import okhttp3.Call;
 import okhttp3.Headers;
 
@@ -61,13 +56,17 @@ import okhttp3.Headers;
  * widgets from sitemap page with further navigation through sitemap and everything else!
  */
 
-public class OpenHABWidgetListFragment extends ListFragment {
+public class OpenHABWidgetListFragment extends Fragment {
     private static final String TAG = OpenHABWidgetListFragment.class.getSimpleName();
     private OnWidgetSelectedListener widgetSelectedListener;
     // Datasource, providing list of openHAB widgets
     private OpenHABWidgetDataSource openHABWidgetDataSource;
+    private String mIconFormat;
     // List adapter for list view of openHAB widgets
     private OpenHABWidgetAdapter openHABWidgetAdapter;
+    private RecyclerView mRecyclerView;
+    // Whether the selected row is highlighted, which is the case in multi column mode
+    private boolean mSelectionEnabled;
     // Url of current sitemap page displayed
     // Url of current sitemap page displayed
     private String displayPageUrl;
@@ -98,12 +97,68 @@ public class OpenHABWidgetListFragment extends ListFragment {
     private int mCurrentSelectedItem = -1;
     private int mPosition;
     private int mOldSelectedItem = -1;
-    private String mAtmosphereTrackingId;
-    //handlers will reconnect the network during outages
-    private Handler networkHandler = new Handler();
-    private Runnable networkRunnable;
+    // reloads the page after connection failures, scheduled with backoff
+    private Runnable mReconnectRunnable = new Runnable() {
+        @Override
+        public void run() {
+            if (displayPageUrl != null && isResumed()) {
+                showPage(displayPageUrl);
+            }
+        }
+    };
     // keeps track of current request to cancel it in onPause
     private Call mRequestHandle;
+    // Whether the page content being parsed comes from a full page load
+    private boolean mPendingFullLoad;
+    // Whether the page content being parsed or shown comes from the page cache
+    private boolean mShowingCachedContent;
+    // Whether content from the server arrived since the page was requested
+    private boolean mFreshContentReceived;
+    private SitemapPageParser.ResultListener mPageParsedListener = new SitemapPageParser.ResultListener() {
+        @Override
+        public void onPageParsed(SitemapPageParser.Result result) {
+            showParsedPage(result);
+        }
+    };
+    // Rebinds the rows of items whose state was set before the server reported it
+    private OptimisticStateTracker.Listener mItemStateListener = new OptimisticStateTracker.Listener() {
+        @Override
+        public void onItemStateChanged(OpenHABItem item) {
+            for (int position = 0; position < widgetList.size(); position++) {
+                OpenHABItem widgetItem = widgetList.get(position).getItem();
+                if (widgetItem != null && item.getName().equals(widgetItem.getName())) {
+                    widgetItem.setState(item.getState());
+                    rebindRow(position);
+                }
+            }
+        }
+    };
+    // Page we receive updates for from the shared subscription manager
+    private String mSubscribedPageUrl;
+    private SitemapSubscriptionManager.PageUpdateListener mPageUpdateListener =
+            new SitemapSubscriptionManager.PageUpdateListener() {
+        @Override
+        public void onPageContent(String pageUrl, byte[] responseBody) {
+            processContent(responseBody, true);
+        }
+
+        @Override
+        public void onWidgetEvent(String pageUrl, OpenHABWidgetEvent event) {
+            applyWidgetEvent(event);
+        }
+
+        @Override
+        public void onPageInvalidated(String pageUrl) {
+            showPage(displayPageUrl);
+        }
+
+        @Override
+        public void onSubscriptionFailure(String pageUrl, Throwable error) {
+            mSubscribedPageUrl = null;
+            Log.e(TAG, "Page subscription failed = " + error.getClass().toString() + ", reconnecting");
+            scheduleReconnect();
+        }
+    };
 
     @Override
     public void onCreate(Bundle savedInstanceState) {
@@ -127,56 +182,49 @@ public class OpenHABWidgetListFragment extends ListFragment {
         Log.d(TAG, "onActivityCreated()");
         Log.d(TAG, "isAdded = " + isAdded());
         mActivity = (OpenHABMainActivity)getActivity();
-        final String iconFormat = PreferenceManager.getDefaultSharedPreferences(mActivity).getString("iconFormatType","PNG");
-        openHABWidgetDataSource = new OpenHABWidgetDataSource(iconFormat);
-        openHABWidgetAdapter = new OpenHABWidgetAdapter(getActivity(),
-                R.layout.openhabwidgetlist_genericitem, widgetList);
-        getListView().setAdapter(openHABWidgetAdapter);
+        mIconFormat = PreferenceManager.getDefaultSharedPreferences(mActivity).getString("iconFormatType","PNG");
+        openHABWidgetDataSource = new OpenHABWidgetDataSource(mIconFormat);
+        openHABWidgetAdapter = new OpenHABWidgetAdapter(getActivity(), widgetList);
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        // Rows are updated in place, cross-fading them on every state change only flickers
+        ((SimpleItemAnimator) mRecyclerView.getItemAnimator()).setSupportsChangeAnimations(false);
+        mRecyclerView.setAdapter(openHABWidgetAdapter);
         openHABBaseUrl = mActivity.getOpenHABBaseUrl();
         openHABUsername = mActivity.getOpenHABUsername();
         openHABPassword = mActivity.getOpenHABPassword();
-        // We're using atmosphere so create an own client to not block the others
-        SharedPreferences prefs = PreferenceManager
-                .getDefaultSharedPreferences(mActivity);
-        mAsyncHttpClient = new MyAsyncHttpClient(mActivity, prefs.getBoolean(Constants.PREFERENCE_SSLHOST,
-                        false), prefs.getBoolean(Constants.PREFERENCE_SSLCERT, false));
-        mAsyncHttpClient.setBasicAuth(openHABUsername, openHABPassword);
+        // Page updates are pushed through the shared subscription manager, so the page
+        // itself can be loaded with the activity's client
+        mAsyncHttpClient = mActivity.getAsyncHttpClient();
         openHABWidgetAdapter.setOpenHABUsername(openHABUsername);
         openHABWidgetAdapter.setOpenHABPassword(openHABPassword);
         openHABWidgetAdapter.setOpenHABBaseUrl(openHABBaseUrl);
         openHABWidgetAdapter.setAsyncHttpClient(mAsyncHttpClient);
-        getListView().setOnItemClickListener(new AdapterView.OnItemClickListener() {
-            public void onItemClick(AdapterView<?> parent, View view, int position,
-                                    long id) {
+        openHABWidgetAdapter.setWebViewPool(mActivity.getWebViewPool(), displayPageUrl);
+        openHABWidgetAdapter.setRowPool(mActivity.getRowPool());
+        openHABWidgetAdapter.setOnWidgetClickListener(new OpenHABWidgetAdapter.OnWidgetClickListener() {
+            @Override
+            public void onWidgetClick(OpenHABWidget openHABWidget, int position) {
                 Log.d(TAG, "Widget clicked " + String.valueOf(position));
-                OpenHABWidget openHABWidget = openHABWidgetAdapter.getItem(position);
                 if (openHABWidget.hasLinkedPage()) {
                     // Widget have a page linked to it
-                    String[] splitString;
-                    splitString = openHABWidget.getLinkedPage().getTitle().split("\\[|\\]");
                     if (OpenHABWidgetListFragment.this.widgetSelectedListener != null) {
                         widgetSelectedListener.onWidgetSelectedListener(openHABWidget.getLinkedPage(),
                                 OpenHABWidgetListFragment.this);
                     }
-//                        navigateToPage(openHABWidget.getLinkedPage().getLink(), splitString[0]);
                     mOldSelectedItem = position;
+                    if (mSelectionEnabled) {
+                        openHABWidgetAdapter.setSelectedPosition(position);
+                    }
                 } else {
-                    Log.d(TAG, String.format("Click on item with no linked page, reverting selection to item %d", mOldSelectedItem));
-                    // If an item without a linked page is clicked this will clear the selection
-                    // and revert it to previously selected item (if any) when CHOICE_MODE_SINGLE
-                    // is switched on for widget listview in multi-column mode on tablets
-                    getListView().clearChoices();
-                    getListView().requestLayout();
-                    getListView().setItemChecked(mOldSelectedItem, true);
+                    // Items without a linked page keep the previously selected item (if any)
+                    // selected in multi-column mode on tablets
+                    Log.d(TAG, String.format("Click on item with no linked page, keeping selection of item %d", mOldSelectedItem));
                 }
             }
 
-        });
-        getListView().setOnItemLongClickListener(new AdapterView.OnItemLongClickListener() {
-            public boolean onItemLongClick(AdapterView<?> parent, View view,
-                                           int position, long id) {
+            @Override
+            public boolean onWidgetLongClick(OpenHABWidget openHABWidget, int position) {
                 Log.d(TAG, "Widget long-clicked " + String.valueOf(position));
-                OpenHABWidget openHABWidget = openHABWidgetAdapter.getItem(position);
                 Log.d(TAG, "Widget type = " + openHABWidget.getType());
                 if (openHABWidget.getType().equals("Switch") || openHABWidget.getType().equals("Selection") ||
                         openHABWidget.getType().equals("Colorpicker")) {
@@ -207,7 +255,7 @@ public class OpenHABWidgetListFragment extends ListFragment {
         });
         if (getResources().getInteger(R.integer.pager_columns) > 1) {
             Log.d(TAG, "More then 1 column, setting selector on");
-            getListView().setChoiceMode(ListView.CHOICE_MODE_SINGLE);
+            mSelectionEnabled = true;
         }
     }
 
@@ -230,7 +278,9 @@ public class OpenHABWidgetListFragment extends ListFragment {
         // Inflate the layout for this fragment
         Log.i(TAG, "onCreateView");
         Log.d(TAG, "isAdded = " + isAdded());
-        return inflater.inflate(R.layout.openhabwidgetlist_fragment, container, false);
+        View view = inflater.inflate(R.layout.openhabwidgetlist_fragment, container, false);
+        mRecyclerView = (RecyclerView) view.findViewById(R.id.widgetlist);
+        return view;
     }
 
     @Override
@@ -240,6 +290,16 @@ public class OpenHABWidgetListFragment extends ListFragment {
         super.onViewCreated(view, savedInstanceState);
     }
 
+    @Override
+    public void onDestroyView() {
+        Log.d(TAG, "onDestroyView() " + displayPageUrl);
+        // Other pages reuse the rows of this one
+        if (openHABWidgetAdapter != null && mRecyclerView != null) {
+            openHABWidgetAdapter.releaseRows(mRecyclerView);
+        }
+        super.onDestroyView();
+    }
+
     @Override
     public void onPause () {
         super.onPause();
@@ -257,12 +317,25 @@ public class OpenHABWidgetListFragment extends ListFragment {
             }
         });
         thread.start();
+        unsubscribeFromPage();
+        if (OpenHABMainActivity.getPageParser() != null) {
+            OpenHABMainActivity.getPageParser().cancel(this);
+        }
+        mPendingFullLoad = false;
+        if (OpenHABMainActivity.getReconnectScheduler() != null) {
+            OpenHABMainActivity.getReconnectScheduler().cancel(mReconnectRunnable);
+        }
+        if (OpenHABMainActivity.getImageRefreshScheduler() != null) {
+            OpenHABMainActivity.getImageRefreshScheduler().pause();
+        }
+        if (OpenHABMainActivity.getStateTracker() != null) {
+            OpenHABMainActivity.getStateTracker().removeListener(mItemStateListener);
+        }
         if (openHABWidgetAdapter != null) {
-            openHABWidgetAdapter.stopImageRefresh();
             openHABWidgetAdapter.stopVideoWidgets();
+            PerformanceStats.log(mActivity, openHABWidgetAdapter);
+            mCurrentSelectedItem = openHABWidgetAdapter.getSelectedPosition();
         }
-        if (isAdded())
-            mCurrentSelectedItem = getListView().getCheckedItemPosition();
     }
 
     @Override
@@ -270,8 +343,17 @@ public class OpenHABWidgetListFragment extends ListFragment {
         super.onResume();
         Log.d(TAG, "onResume() " + displayPageUrl);
         Log.d(TAG, "isAdded = " + isAdded());
+        if (OpenHABMainActivity.getImageRefreshScheduler() != null) {
+            OpenHABMainActivity.getImageRefreshScheduler().resume();
+        }
+        if (OpenHABMainActivity.getStateTracker() != null) {
+            OpenHABMainActivity.getStateTracker().addListener(mItemStateListener);
+        }
+        if (openHABWidgetAdapter != null) {
+            openHABWidgetAdapter.startVideoWidgets();
+        }
         if (displayPageUrl != null)
-            showPage(displayPageUrl, false);
+            showPage(displayPageUrl);
     }
 
     @Override
@@ -297,41 +379,39 @@ public class OpenHABWidgetListFragment extends ListFragment {
     }
 
     /**
-     * Loads data from sitemap page URL and passes it to processContent
+     * Loads data from sitemap page URL and passes it to processContent. Once the page is
+     * shown, further updates are received through the shared subscription manager.
      *
      * @param  pageUrl  an absolute base URL of openHAB sitemap page
-     * @param  longPolling  enable long polling when loading page
      * @return      void
      */
-    public void showPage(String pageUrl, final boolean longPolling) {
-        Log.i(TAG, " showPage for " + pageUrl + " longPolling = " + longPolling);
+    public void showPage(String pageUrl) {
+        Log.i(TAG, " showPage for " + pageUrl);
         Log.d(TAG, "isAdded = " + isAdded());
-        // Cancel any existing http request to openHAB (typically ongoing long poll)
+        // Cancel any existing http request to openHAB
         if (mRequestHandle != null) {
             mRequestHandle.cancel();
             mRequestHandle = null;
         }
-        if (!longPolling) {
-            startProgressIndicator();
-            this.mAtmosphereTrackingId = null;
+        startProgressIndicator();
+        mFreshContentReceived = false;
+        if (widgetList.isEmpty()) {
+            PagePrefetcher prefetcher = OpenHABMainActivity.getPagePrefetcher();
+            byte[] prefetchedPage = prefetcher != null ? prefetcher.getPage(pageUrl) : null;
+            if (prefetchedPage != null) {
+                Log.d(TAG, "Showing prefetched page " + pageUrl);
+                mShowingCachedContent = true;
+                parseContent(prefetchedPage, false);
+            } else {
+                showCachedPage(pageUrl);
+            }
         }
         Map<String, String> headers = new HashMap<String, String>();
         if (mActivity.getOpenHABVersion() == 1) {
             headers.put("Accept", "application/xml");
         }
         headers.put("X-Atmosphere-Framework", "1.0");
-        if (longPolling) {
-            mAsyncHttpClient.setTimeout(300000);
-            headers.put("X-Atmosphere-Transport", "long-polling");
-            if (this.mAtmosphereTrackingId == null) {
-                headers.put("X-Atmosphere-tracking-id", "0");
-            } else {
-                headers.put("X-Atmosphere-tracking-id", this.mAtmosphereTrackingId);
-            }
-        } else {
-            headers.put("X-Atmosphere-tracking-id", "0");
-            mAsyncHttpClient.setTimeout(10000);
-        }
+        headers.put("X-Atmosphere-tracking-id", "0");
         mRequestHandle = mAsyncHttpClient.get(pageUrl, headers, new MyHttpClient.ResponseHandler() {
                     @Override
                     public void onFailure(Call call, int statusCode, Headers headers, byte[] responseBody, Throwable error) {
@@ -339,31 +419,15 @@ public class OpenHABWidgetListFragment extends ListFragment {
                             Log.i(TAG, "Call canceled on failure - stop updating");
                             return;
                         }
-                        mAtmosphereTrackingId = null;
-                        if (!longPolling)
-                            stopProgressIndicator();
-                        if (error instanceof SocketTimeoutException) {
-                            Log.d(TAG, "Connection timeout, reconnecting");
-                            showPage(displayPageUrl, false);
-                            return;
-                        } else {
+                        stopProgressIndicator();
                     /*
                     * If we get a network error try connecting again, if the
-                    * fragment is paused, the runnable will be removed
+                    * fragment is paused, the reconnect will be canceled
                     */
-                            Log.e(TAG, error.toString());
-                            Log.e(TAG, String.format("status code = %d", statusCode));
-                            Log.e(TAG, "Connection error = " + error.getClass().toString() + ", cycle aborted");
-
-//                            networkHandler.removeCallbacks(networkRunnable);
-//                            networkRunnable =  new Runnable(){
-//                                @Override
-//                                public void run(){
-                                    showPage(displayPageUrl, false);
-//                                }
-//                            };
-//                            networkHandler.postDelayed(networkRunnable, 10 * 1000);
-                        }
+                        Log.e(TAG, error.toString());
+                        Log.e(TAG, String.format("status code = %d", statusCode));
+                        Log.e(TAG, "Connection error = " + error.getClass().toString() + ", reconnecting");
+                        scheduleReconnect();
                     }
 
                     @Override
@@ -372,98 +436,160 @@ public class OpenHABWidgetListFragment extends ListFragment {
                             Log.i(TAG, "Call canceled on success - stop updating");
                             return;
                         }
-                        String id = headers.get("X-Atmosphere-tracking-id");
-                        if (id != null) {
-                            Log.i(TAG, "Found atmosphere tracking id: " + id);
-                            OpenHABWidgetListFragment.this.mAtmosphereTrackingId = id;
-                        }
-                        if (!longPolling)
-                            stopProgressIndicator();
-                        String responseString = new String(responseBody);
-                        processContent(responseString, longPolling);
-                        // Log.d(TAG, responseString);
+                        stopProgressIndicator();
+                        // The backoff is reset by the subscription once it receives updates,
+                        // the page itself may load fine while the subscription keeps failing
+                        processContent(responseBody, false);
                     }
                 });
     }
 
     /**
-     * Parse XML sitemap page and show it
+     * Shows the page as it was last loaded, until the request for the current page completes
+     *
+     * @param  pageUrl  an absolute base URL of openHAB sitemap page
+     */
+    private void showCachedPage(final String pageUrl) {
+        PageCache pageCache = OpenHABMainActivity.getPageCache();
+        if (pageCache == null) {
+            return;
+        }
+        pageCache.get(pageUrl, new PageCache.Callback() {
+            @Override
+            public void onEntryLoaded(PageCache.Entry entry) {
+                if (entry == null || mFreshContentReceived || !isAdded()
+                        || !pageUrl.equals(displayPageUrl) || !widgetList.isEmpty()) {
+                    return;
+                }
+                Log.d(TAG, String.format("Showing cached page %s from %d", pageUrl, entry.getSavedAt()));
+                mShowingCachedContent = true;
+                parseContent(entry.getResponseBody(), false);
+            }
+        });
+    }
+
+    /**
+     * Loads the pages linked from this page in the background, so they show up
+     * immediately when navigating to them
+     */
+    private void prefetchLinkedPages() {
+        PagePrefetcher prefetcher = OpenHABMainActivity.getPagePrefetcher();
+        if (prefetcher == null) {
+            return;
+        }
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) mActivity.getSystemService(Context.CONNECTIVITY_SERVICE);
+        prefetcher.prefetch(openHABWidgetDataSource, mActivity.getOpenHABVersion(),
+                ConnectivityManagerCompat.isActiveNetworkMetered(connectivityManager));
+    }
+
+    private void scheduleReconnect() {
+        ReconnectScheduler reconnectScheduler = OpenHABMainActivity.getReconnectScheduler();
+        if (reconnectScheduler != null) {
+            reconnectScheduler.scheduleReconnect(mReconnectRunnable);
+        }
+    }
+
+    private void subscribeToPage() {
+        SitemapSubscriptionManager subscriptionManager = OpenHABMainActivity.getSubscriptionManager();
+        if (subscriptionManager == null || displayPageUrl.equals(mSubscribedPageUrl)) {
+            return;
+        }
+        unsubscribeFromPage();
+        mSubscribedPageUrl = displayPageUrl;
+        subscriptionManager.subscribe(mSubscribedPageUrl, mActivity.getOpenHABVersion(),
+                mPageUpdateListener);
+    }
+
+    private void unsubscribeFromPage() {
+        SitemapSubscriptionManager subscriptionManager = OpenHABMainActivity.getSubscriptionManager();
+        if (subscriptionManager != null && mSubscribedPageUrl != null) {
+            subscriptionManager.unsubscribe(mSubscribedPageUrl, mPageUpdateListener);
+        }
+        mSubscribedPageUrl = null;
+    }
+
+    /**
+     * Parse sitemap page in the background and show it once it is parsed
      *
      *
      * @return      void
      */
-    public void processContent(String responseString, boolean longPolling) {
+    public void processContent(byte[] responseBody, boolean longPolling) {
 
         Log.d(TAG, "processContent() " + this.displayPageUrl);
         Log.d(TAG, "isAdded = " + isAdded());
-        Log.d(TAG, "responseString.length() = " + (responseString != null ? responseString.length()  : -1));
+        Log.d(TAG, "responseBody.length = " + (responseBody != null ? responseBody.length  : -1));
 
         // We can receive empty response, probably when no items was changed
         // so we needn't process it
-        if (responseString == null || responseString.length() == 0) {
-            showPage(displayPageUrl, true);
+        if (responseBody == null || responseBody.length == 0) {
             return;
         }
 
-        // As we change the page we need to stop all videos on current page
-        // before going to the new page. This is quite dirty, but is the only
-        // way to do that...
-        openHABWidgetAdapter.stopVideoWidgets();
-        openHABWidgetAdapter.stopImageRefresh();
-        // If openHAB verion = 1 get page from XML
-        if (mActivity.getOpenHABVersion() == 1) {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            try {
-                DocumentBuilder builder = dbf.newDocumentBuilder();
-                Document document = builder.parse(new InputSource(new StringReader(responseString)));
-                if (document != null) {
-                    Node rootNode = document.getFirstChild();
-                    openHABWidgetDataSource.setSourceNode(rootNode);
-                    widgetList.clear();
-                    for (OpenHABWidget w : openHABWidgetDataSource.getWidgets()) {
-                        // Remove frame widgets with no label text
-                        if (w.getType().equals("Frame") && TextUtils.isEmpty(w.getLabel()))
-                            continue;
-                        widgetList.add(w);
-                    }
-                } else {
-                    Log.e(TAG, "Got a null response from openHAB");
-                    showPage(displayPageUrl, false);
-                }
-            } catch (ParserConfigurationException | SAXException | IOException e) {
-                    Log.d(TAG, "responseString:\n" + String.valueOf(responseString));
-                    Log.e(TAG, e.getMessage(), e);
-            }
-            // Later versions work with JSON
-        } else {
-            try {
-                JSONObject pageJson = new JSONObject(responseString);
-                openHABWidgetDataSource.setSourceJson(pageJson);
-                widgetList.clear();
-                for (OpenHABWidget w : openHABWidgetDataSource.getWidgets()) {
-                    // Remove frame widgets with no label text
-                    if (w.getType().equals("Frame") && TextUtils.isEmpty(w.getLabel()))
-                        continue;
-                    widgetList.add(w);
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
+        mFreshContentReceived = true;
+        mShowingCachedContent = false;
+        parseContent(responseBody, longPolling);
+    }
+
+    private void parseContent(byte[] responseBody, boolean longPolling) {
+        SitemapPageParser pageParser = OpenHABMainActivity.getPageParser();
+        if (pageParser == null) {
+            return;
+        }
+        // A full load which is still being parsed must not be downgraded to an update
+        mPendingFullLoad |= !longPolling;
+        pageParser.parse(this, responseBody, mActivity.getOpenHABVersion(), mIconFormat,
+                mPageParsedListener);
+    }
+
+    /**
+     * Shows a page which was parsed in the background. Called on the main thread with
+     * the result of the latest processContent call only.
+     *
+     * @param  result  parsed page
+     */
+    private void showParsedPage(SitemapPageParser.Result result) {
+        boolean longPolling = !mPendingFullLoad;
+        mPendingFullLoad = false;
+        if (!isAdded()) {
+            return;
+        }
+        if (result.getError() != null) {
+            Log.e(TAG, "Failed to parse " + displayPageUrl, result.getError());
+            return;
+        }
+        Log.d(TAG, String.format("Page %s parsed in %d ms", displayPageUrl, result.getParseTime()));
+        openHABWidgetDataSource = result.getDataSource();
+        List<OpenHABWidget> newWidgetList = result.getWidgets();
+        reconcileItemStates(newWidgetList);
+        if (!longPolling && !mShowingCachedContent) {
+            PageCache pageCache = OpenHABMainActivity.getPageCache();
+            if (pageCache != null) {
+                pageCache.put(displayPageUrl, mActivity.getOpenHABVersion(), result.getResponseBody());
             }
+            prefetchLinkedPages();
         }
 
-        openHABWidgetAdapter.notifyDataSetChanged();
-        if (!longPolling && isAdded()) {
-            getListView().clearChoices();
+        if (longPolling && !widgetList.isEmpty()) {
+            updateWidgetList(newWidgetList);
+        } else {
+            // Video rows switch their stream when they are rebound for another widget
+            openHABWidgetAdapter.stopImageRefresh();
+            widgetList.clear();
+            widgetList.addAll(newWidgetList);
+            openHABWidgetAdapter.notifyDataSetChanged();
+        }
+        if (!longPolling && mSelectionEnabled) {
             Log.d(TAG, String.format("processContent selectedItem = %d", mCurrentSelectedItem));
-            if (mCurrentSelectedItem >= 0)
-                getListView().setItemChecked(mCurrentSelectedItem, true);
+            openHABWidgetAdapter.setSelectedPosition(mCurrentSelectedItem);
         }
         if (getActivity() != null && mIsVisible)
             getActivity().setTitle(openHABWidgetDataSource.getTitle());
 //            }
         // Set widget list index to saved or zero position
         // This would mean we got widget and command from nfc tag, so we need to do some automatic actions!
-        if (this.nfcWidgetId != null && this.nfcCommand != null) {
+        if (this.nfcWidgetId != null && this.nfcCommand != null && !mShowingCachedContent) {
             Log.d(TAG, "Have widget and command, NFC action!");
             OpenHABWidget nfcWidget = this.openHABWidgetDataSource.getWidgetById(this.nfcWidgetId);
             OpenHABItem nfcItem = nfcWidget.getItem();
@@ -494,7 +620,72 @@ public class OpenHABWidgetListFragment extends ListFragment {
             }
         }
 
-        showPage(displayPageUrl, true);
+        // Keep the page up to date, unless we were paused while it was loading. Cached
+        // content is replaced by the running page request anyway.
+        if (!longPolling && !mShowingCachedContent && isResumed()) {
+            subscribeToPage();
+        }
+    }
+
+    /**
+     * Applies a long polling update to the displayed list. Only rows whose content
+     * changed are rebound.
+     *
+     * @param  newWidgetList  widgets of the updated page
+     */
+    private void updateWidgetList(List<OpenHABWidget> newWidgetList) {
+        openHABWidgetAdapter.updateWidgets(newWidgetList);
+    }
+
+    /**
+     * Applies a widget update from the sitemap event stream to the displayed list.
+     * The page is reloaded if the update can't be applied to a single row.
+     */
+    private void applyWidgetEvent(OpenHABWidgetEvent event) {
+        OptimisticStateTracker stateTracker = OpenHABMainActivity.getStateTracker();
+        for (int position = 0; position < widgetList.size(); position++) {
+            OpenHABWidget widget = widgetList.get(position);
+            if (event.getWidgetId().equals(widget.getId())) {
+                if (event.applyTo(widget)) {
+                    if (stateTracker != null && widget.hasItem()) {
+                        stateTracker.reconcile(widget.getItem());
+                    }
+                    rebindRow(position);
+                } else {
+                    showPage(displayPageUrl);
+                }
+                return;
+            }
+        }
+        OpenHABWidget widget = openHABWidgetDataSource.getWidgetById(event.getWidgetId());
+        if (widget != null) {
+            // Widget is part of the page but not displayed, like frames without label
+            event.applyTo(widget);
+        } else if (event.isVisible()) {
+            // A hidden widget became visible
+            showPage(displayPageUrl);
+        }
+    }
+
+    /**
+     * Keeps the states set for commands the server didn't confirm yet, instead of showing
+     * the states of the received page
+     */
+    private void reconcileItemStates(List<OpenHABWidget> widgets) {
+        OptimisticStateTracker stateTracker = OpenHABMainActivity.getStateTracker();
+        if (stateTracker == null || stateTracker.getPendingCount() == 0) {
+            return;
+        }
+        for (int i = 0; i < widgets.size(); i++) {
+            if (widgets.get(i).hasItem()) {
+                stateTracker.reconcile(widgets.get(i).getItem());
+            }
+        }
+    }
+
+    private void rebindRow(int position) {
+        // Rows which are not visible will be bound when they are scrolled into view
+        openHABWidgetAdapter.notifyItemChanged(position);
     }
 
     private void stopProgressIndicator() {
@@ -548,9 +739,8 @@ public class OpenHABWidgetListFragment extends ListFragment {
     public void clearSelection() {
         Log.d(TAG, "clearSelection() " + this.displayPageUrl);
         Log.d(TAG, "isAdded = " + isAdded());
-        if (getListView() != null && this.isVisible() && isAdded()) {
-            getListView().clearChoices();
-            getListView().requestLayout();
+        if (openHABWidgetAdapter != null && this.isVisible() && isAdded()) {
+            openHABWidgetAdapter.setSelectedPosition(-1);
         }
     }
 
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.ui;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import org.openhab.habdroid.BuildConfig;
+import org.openhab.habdroid.util.BitmapDecoder;
+import org.openhab.habdroid.util.CommandCoalescer;
+import org.openhab.habdroid.util.CommandQueue;
+import org.openhab.habdroid.util.IconCache;
+import org.openhab.habdroid.util.IconLoader;
+import org.openhab.habdroid.util.PlaybackCoordinator;
+
+/**
+ * This class logs the statistics of the rows, streams, icons and commands of a page when it
+ * is paused. The statistics are only logged in debug builds or if debug logging is enabled
+ * for the tag PerformanceStats.
+ */
+
+class PerformanceStats {
+    private static final String TAG = PerformanceStats.class.getSimpleName();
+
+    private PerformanceStats() {
+    }
+
+    static boolean isEnabled() {
+        return BuildConfig.DEBUG || Log.isLoggable(TAG, Log.DEBUG);
+    }
+
+    /**
+     * Logs the statistics and starts counting the bind times of the adapter anew
+     */
+    static void log(Context context, OpenHABWidgetAdapter adapter) {
+        if (!isEnabled()) {
+            return;
+        }
+        PlaybackCoordinator playbackCoordinator = adapter.getPlaybackCoordinator();
+        Log.d(TAG, String.format("Video streams: %d visible, %d started, %d stopped",
+                playbackCoordinator.getVisibleCount(), playbackCoordinator.getStartCount(),
+                playbackCoordinator.getStopCount()));
+        Log.d(TAG, String.format("Bound %d rows in %.3f ms on average",
+                adapter.getBindCount(), adapter.getAverageBindTime()));
+        adapter.resetBindStats();
+        CommandCoalescer commandCoalescer = OpenHABMainActivity.getCommandCoalescer();
+        if (commandCoalescer != null) {
+            Log.d(TAG, String.format("Commands: %d sent, %d dropped, %d deferred, %d failed, %d in flight",
+                    commandCoalescer.getSentCount(), commandCoalescer.getDroppedCount(),
+                    commandCoalescer.getDeferredCount(), commandCoalescer.getFailedCount(),
+                    commandCoalescer.getInFlightCount()));
+        }
+        CommandQueue commandQueue = OpenHABMainActivity.getCommandQueue();
+        if (commandQueue != null) {
+            Log.d(TAG, String.format("Command queue: %d queued, oldest %d ms, %d delivered in %d ms average, %d retries",
+                    commandQueue.getDepth(), commandQueue.getOldestAge(), commandQueue.getDeliveredCount(),
+                    commandQueue.getAverageLatency(), commandQueue.getRetryCount()));
+        }
+        IconLoader<Bitmap> iconLoader = IconLoader.getInstance(context);
+        Log.d(TAG, String.format("Icons: %d loaded in %d ms average, %d from cache, %d joined a running load, %d failed, peak %d running and %d queued",
+                iconLoader.getLoadedCount(), iconLoader.getAverageLoadTime(), iconLoader.getCacheHitCount(),
+                iconLoader.getCoalescedCount(), iconLoader.getFailedCount(), iconLoader.getPeakActiveCount(),
+                iconLoader.getPeakQueueLength()));
+        IconCache<Bitmap> iconCache = IconLoader.getCache(context);
+        Log.d(TAG, String.format("Icon cache: %d memory hits, %d shared, %d disk hits, %d misses, %d/%d evicted, %d expired, %d images for %d icons in %d KB of memory, %d KB on disk",
+                iconCache.getMemoryHitCount(), iconCache.getSharedHitCount(), iconCache.getDiskHitCount(),
+                iconCache.getMissCount(), iconCache.getMemoryEvictionCount(), iconCache.getDiskEvictionCount(),
+                iconCache.getExpiredCount(), iconCache.getMemoryImageCount(), iconCache.getMemoryKeyCount(),
+                iconCache.getMemorySize() / 1024, iconCache.getDiskSize() / 1024));
+        BitmapDecoder bitmapDecoder = IconLoader.getDecoder(context);
+        Log.d(TAG, String.format("Decoded %d images in %.1f ms average, %d into reused bitmaps, %d KB allocated, %d KB pooled",
+                bitmapDecoder.getDecodeCount(), bitmapDecoder.getAverageDecodeTime(), bitmapDecoder.getReusedCount(),
+                bitmapDecoder.getAllocatedBytes() / 1024, bitmapDecoder.getPoolSize() / 1024));
+    }
+}
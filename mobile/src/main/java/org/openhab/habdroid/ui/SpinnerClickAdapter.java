@@ -52,4 +52,8 @@ class SpinnerClickAdapter<T> extends ArrayAdapter<T> implements SpinnerAdapter {
     public Object getTag() {
         return this.mTag;
     }
+
+    public void setTag(Object tag) {
+        this.mTag = tag;
+    }
 }
\ No newline at end of file
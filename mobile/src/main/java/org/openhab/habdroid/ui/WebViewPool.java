@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.ui;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+import android.webkit.WebView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the WebViews of Webview widgets for the pages of an activity by page and
+ * widget url. A WebView is only created when its row is shown for the first time and loads
+ * its url once, so rebinding or scrolling a row back in doesn't reload the page. Rows which
+ * are shown at the same time get a WebView each, even if they show the same url.
+ * The WebViews of a page are destroyed when the page is removed from the pager.
+ */
+
+public class WebViewPool {
+    private static final String TAG = WebViewPool.class.getSimpleName();
+
+    private final Context mContext;
+    // WebViews per page url and widget url
+    private final Map<String, Map<String, List<WebView>>> mPages =
+            new HashMap<String, Map<String, List<WebView>>>();
+    private int mCreatedCount = 0;
+    private int mReusedCount = 0;
+
+    /**
+     * @param context  activity the WebViews are shown in
+     */
+    public WebViewPool(Context context) {
+        mContext = context;
+    }
+
+    /**
+     * Returns a WebView showing the url on the given page. A recycled WebView which showed
+     * the url keeps its loaded page, a WebView still shown in another row is never taken
+     * from it. If there is none, a new WebView is created and starts loading the url.
+     */
+    public WebView obtain(String pageUrl, String url, String username, String password) {
+        Map<String, List<WebView>> pageWebViews = mPages.get(pageUrl);
+        if (pageWebViews == null) {
+            pageWebViews = new HashMap<String, List<WebView>>();
+            mPages.put(pageUrl, pageWebViews);
+        }
+        List<WebView> webViews = pageWebViews.get(url);
+        if (webViews == null) {
+            webViews = new ArrayList<WebView>();
+            pageWebViews.put(url, webViews);
+        }
+        for (WebView webView : webViews) {
+            if (webView.getParent() == null) {
+                mReusedCount++;
+                webView.onResume();
+                return webView;
+            }
+        }
+        WebView webView = new WebView(mContext);
+        webView.getSettings().setDomStorageEnabled(true);
+        webView.getSettings().setJavaScriptEnabled(true);
+        webView.setWebViewClient(new AnchorWebViewClient(url, username, password));
+        webView.loadUrl(url);
+        webViews.add(webView);
+        mCreatedCount++;
+        return webView;
+    }
+
+    /**
+     * Removes the WebView from its row when the row is scrolled out. It is paused, but
+     * keeps its page until the page it belongs to is released, and can be obtained for
+     * another row of the url again.
+     */
+    public void recycle(WebView webView) {
+        detach(webView);
+        webView.onPause();
+    }
+
+    private static void detach(WebView webView) {
+        ViewParent parent = webView.getParent();
+        if (parent instanceof ViewGroup) {
+            ((ViewGroup) parent).removeView(webView);
+        }
+    }
+
+    /**
+     * Destroys the WebViews of a page which was removed
+     */
+    public void release(String pageUrl) {
+        Map<String, List<WebView>> pageWebViews = mPages.remove(pageUrl);
+        if (pageWebViews == null) {
+            return;
+        }
+        int count = 0;
+        for (List<WebView> webViews : pageWebViews.values()) {
+            for (WebView webView : webViews) {
+                detach(webView);
+                webView.destroy();
+                count++;
+            }
+        }
+        Log.d(TAG, String.format("Released %d WebViews of %s", count, pageUrl));
+    }
+
+    /**
+     * Destroys the WebViews of all pages, e.g. when the activity is destroyed
+     */
+    public void releaseAll() {
+        List<String> pageUrls = new ArrayList<String>(mPages.keySet());
+        for (String pageUrl : pageUrls) {
+            release(pageUrl);
+        }
+    }
+
+    /**
+     * Number of WebViews kept for all pages
+     */
+    public int getViewCount() {
+        int count = 0;
+        for (Map<String, List<WebView>> pageWebViews : mPages.values()) {
+            for (List<WebView> webViews : pageWebViews.values()) {
+                count += webViews.size();
+            }
+        }
+        return count;
+    }
+
+    public int getCreatedCount() {
+        return mCreatedCount;
+    }
+
+    public int getReusedCount() {
+        return mReusedCount;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.ui;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AbsSpinner;
+import android.widget.FrameLayout;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+import org.openhab.habdroid.R;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * This class keeps inflated widget rows for all widget lists of an activity, so a page opened
+ * in another pager column reuses the rows of pages which were closed instead of inflating
+ * them again. Rows are kept per layout, up to a limit per layout.
+ *
+ * Rows can also be inflated ahead while the main thread is idle, so the first page showing
+ * them doesn't have to inflate them while scrolling. Only the views are shared, each list
+ * creates its own view holders for them. Kept rows don't hold on to the listeners of the list
+ * they were shown in, and the text colors they were inflated with are recorded, as the list
+ * showing them before may have colored them.
+ */
+
+public class WidgetRowPool {
+    private static final String TAG = WidgetRowPool.class.getSimpleName();
+    public static final int DEFAULT_MAX_ROWS = 4;
+
+    private final LayoutInflater mInflater;
+    // Parent for inflating rows ahead, so they get the layout params of their layout
+    private final ViewGroup mInflateParent;
+    private final HashMap<Integer, ArrayList<View>> mRows = new HashMap<Integer, ArrayList<View>>();
+    private final HashMap<Integer, Integer> mMaxRows = new HashMap<Integer, Integer>();
+    // Number of rows still to inflate ahead per layout
+    private final SparseIntArray mPendingInflations = new SparseIntArray();
+    private boolean mIdleHandlerAdded = false;
+    private int mInflatedCount = 0;
+    private int mReusedCount = 0;
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            // One row per idle call, so input arriving meanwhile isn't delayed
+            if (mPendingInflations.size() > 0) {
+                int layout = mPendingInflations.keyAt(0);
+                int count = mPendingInflations.valueAt(0);
+                if (count > 1) {
+                    mPendingInflations.put(layout, count - 1);
+                } else {
+                    mPendingInflations.delete(layout);
+                }
+                if (getRows(layout).size() < getMaxRows(layout)) {
+                    getRows(layout).add(inflate(layout, mInflateParent));
+                }
+            }
+            mIdleHandlerAdded = mPendingInflations.size() > 0;
+            return mIdleHandlerAdded;
+        }
+    };
+
+    /**
+     * @param context  activity the rows are shown in
+     */
+    public WidgetRowPool(Context context) {
+        this(LayoutInflater.from(context), new FrameLayout(context));
+    }
+
+    WidgetRowPool(LayoutInflater inflater, ViewGroup inflateParent) {
+        mInflater = inflater;
+        mInflateParent = inflateParent;
+    }
+
+    /**
+     * Sets how many rows of the layout are kept at most
+     */
+    public void setMaxRows(int layout, int maxRows) {
+        mMaxRows.put(layout, maxRows);
+        ArrayList<View> rows = getRows(layout);
+        while (rows.size() > maxRows) {
+            rows.remove(rows.size() - 1);
+        }
+    }
+
+    private int getMaxRows(int layout) {
+        Integer maxRows = mMaxRows.get(layout);
+        return maxRows != null ? maxRows : DEFAULT_MAX_ROWS;
+    }
+
+    private ArrayList<View> getRows(int layout) {
+        ArrayList<View> rows = mRows.get(layout);
+        if (rows == null) {
+            rows = new ArrayList<View>();
+            mRows.put(layout, rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Returns a kept row of the layout, or a newly inflated one if none is kept
+     */
+    public View obtain(int layout, ViewGroup parent) {
+        ArrayList<View> rows = getRows(layout);
+        if (!rows.isEmpty()) {
+            mReusedCount++;
+            return rows.remove(rows.size() - 1);
+        }
+        return inflate(layout, parent);
+    }
+
+    private View inflate(int layout, ViewGroup parent) {
+        mInflatedCount++;
+        View row = mInflater.inflate(layout, parent, false);
+        recordTextColors(row);
+        return row;
+    }
+
+    private static void recordTextColors(View view) {
+        if (view instanceof TextView) {
+            view.setTag(R.id.default_text_colors, ((TextView) view).getTextColors());
+        } else if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                recordTextColors(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the text colors the text view was inflated with, or its current ones if
+     * the row wasn't inflated by a pool
+     */
+    public static ColorStateList getDefaultTextColors(TextView textView) {
+        Object colors = textView.getTag(R.id.default_text_colors);
+        return colors instanceof ColorStateList ? (ColorStateList) colors : textView.getTextColors();
+    }
+
+    private static void clearListeners(View view) {
+        view.setOnTouchListener(null);
+        if (view instanceof AbsSpinner) {
+            // Spinners don't take click listeners, but their adapter refers to the list
+            ((AbsSpinner) view).setAdapter(null);
+            return;
+        }
+        // Setting a listener makes a view clickable, so only clear it where one may be set
+        if (view.isClickable()) {
+            view.setOnClickListener(null);
+        }
+        if (view.isLongClickable()) {
+            view.setOnLongClickListener(null);
+        }
+        if (view instanceof SeekBar) {
+            ((SeekBar) view).setOnSeekBarChangeListener(null);
+        } else if (view instanceof ViewGroup) {
+            ViewGroup group = (ViewGroup) view;
+            for (int i = 0; i < group.getChildCount(); i++) {
+                clearListeners(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Keeps a row which isn't shown anymore for reuse, unless enough rows of the layout
+     * are kept already. The listeners of the row and its children are cleared, the view
+     * holder created for it next sets them again.
+     */
+    public void recycle(int layout, View row) {
+        ArrayList<View> rows = getRows(layout);
+        if (row.getParent() == null && rows.size() < getMaxRows(layout) && !rows.contains(row)) {
+            clearListeners(row);
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Inflates rows of the layout while the main thread is idle, until the given number
+     * of rows is kept
+     */
+    public void preInflate(int layout, int count) {
+        int missing = Math.min(count, getMaxRows(layout)) - getRows(layout).size();
+        if (missing <= 0) {
+            return;
+        }
+        mPendingInflations.put(layout, missing);
+        if (!mIdleHandlerAdded) {
+            mIdleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(mIdleHandler);
+        }
+    }
+
+    /**
+     * Drops all kept rows and stops inflating ahead
+     */
+    public void clear() {
+        Log.d(TAG, String.format("Dropping %d rows, %d inflated and %d reused",
+                getPooledCount(), mInflatedCount, mReusedCount));
+        mRows.clear();
+        mPendingInflations.clear();
+        if (mIdleHandlerAdded) {
+            Looper.myQueue().removeIdleHandler(mIdleHandler);
+            mIdleHandlerAdded = false;
+        }
+    }
+
+    /**
+     * Number of rows kept for all layouts
+     */
+    public int getPooledCount() {
+        int count = 0;
+        for (ArrayList<View> rows : mRows.values()) {
+            count += rows.size();
+        }
+        return count;
+    }
+
+    public int getInflatedCount() {
+        return mInflatedCount;
+    }
+
+    public int getReusedCount() {
+        return mReusedCount;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.os.Build;
+import android.util.Log;
+
+import com.caverock.androidsvg.SVG;
+import com.caverock.androidsvg.SVGParseException;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * This class decodes icons and images no larger than needed. The bounds of an image are read
+ * first and it is sampled down to the size it is shown at, so a camera snapshot shown in a
+ * list row isn't decoded at full resolution. Images without alpha channel are decoded with
+ * two bytes per pixel.
+ *
+ * Bitmaps which aren't shown anymore can be given back, they are kept in a small pool by size
+ * and config and decoding reuses their memory for images of the same size, like the frames of
+ * a refreshing image.
+ */
+
+public class BitmapDecoder {
+    private static final String TAG = BitmapDecoder.class.getSimpleName();
+    public static final long DEFAULT_MAX_POOL_SIZE = 4 * 1024 * 1024;
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    private final long maxPoolSize;
+    // Pooled bitmaps by size and config, and all of them oldest first
+    private final HashMap<String, ArrayDeque<Bitmap>> pool = new HashMap<String, ArrayDeque<Bitmap>>();
+    private final ArrayDeque<Bitmap> poolOrder = new ArrayDeque<Bitmap>();
+    private long poolSize = 0;
+    private int decodeCount = 0;
+    private int reusedCount = 0;
+    private long allocatedBytes = 0;
+    private long totalDecodeTime = 0;
+
+    /**
+     * @param maxPoolSize  maximum size of the bitmaps kept for reuse in bytes
+     */
+    public BitmapDecoder(long maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Decodes the image, sampled down so it is no larger than maxSize in either dimension
+     *
+     * @param iconFormat  icon format of the server, SVG or PNG
+     * @param maxSize  maximum size in pixels, or 0 to decode at full size
+     * @return the bitmap, or null if the data isn't a valid image
+     */
+    public Bitmap decode(String url, String iconFormat, byte[] data, int maxSize) {
+        long startTime = System.nanoTime();
+        if ("SVG".equals(iconFormat)) {
+            Bitmap bitmap = decodeSvg(data);
+            onDecoded(url, bitmap, 1, false, startTime);
+            return bitmap;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.e(TAG, "Failed to decode " + url);
+            return null;
+        }
+        int sampleSize = calculateSampleSize(options.outWidth, options.outHeight, maxSize);
+        Bitmap.Config config = hasAlpha(data) ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = config;
+        // Mutable, so the bitmap can be reused once it isn't shown anymore
+        options.inMutable = true;
+        // Before KitKat only bitmaps of exactly the same size can be reused
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT || sampleSize == 1) {
+            options.inBitmap = getPooled(options.outWidth / sampleSize, options.outHeight / sampleSize, config);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap didn't fit the sampled image after all
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        onDecoded(url, bitmap, sampleSize, options.inBitmap != null && bitmap == options.inBitmap, startTime);
+        return bitmap;
+    }
+
+    private static Bitmap decodeSvg(byte[] data) {
+        Bitmap bitmap = null;
+        try {
+            SVG svg = SVG.getFromInputStream(new ByteArrayInputStream(data));
+            double width = 16;
+            double height = 16;
+            if (svg.getDocumentViewBox() != null) {
+                width = svg.getDocumentViewBox().width();
+                height = svg.getDocumentViewBox().height();
+            } else {
+                Log.d(TAG, "DocumentViewBox is null. assuming width and heigh of 16px.");
+            }
+
+            bitmap = Bitmap.createBitmap((int) Math.ceil(width), (int) Math.ceil(height), Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            svg.renderToCanvas(canvas);
+        } catch (SVGParseException e) {
+            Log.e(TAG, "Failed to parse SVG icon", e);
+        }
+        return bitmap;
+    }
+
+    private void onDecoded(String url, Bitmap bitmap, int sampleSize, boolean reused, long startTime) {
+        if (bitmap == null) {
+            return;
+        }
+        long decodeTime = System.nanoTime() - startTime;
+        int allocated = reused ? 0 : bitmap.getByteCount();
+        synchronized (this) {
+            decodeCount++;
+            totalDecodeTime += decodeTime;
+            allocatedBytes += allocated;
+            if (reused) {
+                reusedCount++;
+            }
+        }
+        Log.d(TAG, String.format("Decoded %s to %dx%d %s, sample size %d, in %.1f ms allocating %d bytes",
+                url, bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig(), sampleSize,
+                decodeTime / 1000000f, allocated));
+    }
+
+    /**
+     * Largest power of two sample size which keeps both dimensions at least maxSize, or
+     * at full size if they are smaller
+     */
+    static int calculateSampleSize(int width, int height, int maxSize) {
+        int sampleSize = 1;
+        if (maxSize <= 0) {
+            return sampleSize;
+        }
+        while (width / (sampleSize * 2) >= maxSize && height / (sampleSize * 2) >= maxSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Whether the image may have transparent pixels. Only JPEGs and PNGs without alpha
+     * channel or transparency chunk are known to have none.
+     */
+    static boolean hasAlpha(byte[] data) {
+        if (data.length >= 2 && data[0] == (byte) 0xff && data[1] == (byte) 0xd8) {
+            return false;
+        }
+        if (data.length < 33) {
+            return true;
+        }
+        for (int i = 0; i < PNG_SIGNATURE.length; i++) {
+            if (data[i] != PNG_SIGNATURE[i]) {
+                return true;
+            }
+        }
+        // Color type in the header chunk: 4 is gray and 6 is color with alpha
+        int colorType = data[25];
+        if (colorType == 4 || colorType == 6) {
+            return true;
+        }
+        // Other types are transparent only with a tRNS chunk, which comes before the image data
+        int offset = PNG_SIGNATURE.length;
+        while (offset + 8 <= data.length) {
+            int length = ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16)
+                    | ((data[offset + 2] & 0xff) << 8) | (data[offset + 3] & 0xff);
+            String type = new String(data, offset + 4, 4);
+            if ("tRNS".equals(type)) {
+                return true;
+            }
+            if ("IDAT".equals(type) || length < 0) {
+                return false;
+            }
+            offset += 12 + length;
+        }
+        return false;
+    }
+
+    private static String getPoolKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + " " + config;
+    }
+
+    private synchronized Bitmap getPooled(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = pool.get(getPoolKey(width, height, config));
+        if (bitmaps == null || bitmaps.isEmpty()) {
+            return null;
+        }
+        Bitmap bitmap = bitmaps.poll();
+        poolOrder.remove(bitmap);
+        poolSize -= bitmap.getByteCount();
+        return bitmap;
+    }
+
+    /**
+     * Keeps a bitmap which isn't shown anymore for decoding further images into it. The
+     * oldest bitmaps are dropped if the pool gets too large.
+     */
+    public synchronized void recycle(Bitmap bitmap) {
+        if (bitmap == null || !bitmap.isMutable() || bitmap.isRecycled()
+                || bitmap.getByteCount() > maxPoolSize || poolOrder.contains(bitmap)) {
+            return;
+        }
+        String key = getPoolKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bitmaps = pool.get(key);
+        if (bitmaps == null) {
+            bitmaps = new ArrayDeque<Bitmap>();
+            pool.put(key, bitmaps);
+        }
+        bitmaps.add(bitmap);
+        poolOrder.add(bitmap);
+        poolSize += bitmap.getByteCount();
+        Iterator<Bitmap> iterator = poolOrder.iterator();
+        while (poolSize > maxPoolSize && iterator.hasNext()) {
+            Bitmap oldest = iterator.next();
+            iterator.remove();
+            pool.get(getPoolKey(oldest.getWidth(), oldest.getHeight(), oldest.getConfig())).remove(oldest);
+            poolSize -= oldest.getByteCount();
+        }
+    }
+
+    public synchronized int getDecodeCount() {
+        return decodeCount;
+    }
+
+    /**
+     * Number of images decoded into a pooled bitmap
+     */
+    public synchronized int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Bytes of bitmap memory allocated for decoded images
+     */
+    public synchronized long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Average time in milliseconds for decoding an image
+     */
+    public synchronized float getAverageDecodeTime() {
+        return decodeCount > 0 ? totalDecodeTime / 1000000f / decodeCount : 0;
+    }
+
+    public synchronized long getPoolSize() {
+        return poolSize;
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class sends item commands with at most one command per item in flight and a minimum
+ * interval between the commands of an item. Commands given while an item has to wait replace
+ * each other, so only the latest one is sent once the item may send again. This keeps fast
+ * interactions like dragging the color wheel from queueing up stale commands.
+ *
+ * The first command to an idle item is sent immediately. Commands of the same item are sent
+ * in the order they were given, commands of different items don't wait for each other.
+ * A command the sender couldn't deliver yet and keeps for a retry doesn't hold back the
+ * next command of its item, the sender is expected to replace it by that command.
+ */
+
+public class CommandCoalescer {
+    public static final long DEFAULT_MIN_INTERVAL = 250;
+    public static final String MEDIA_TYPE = "text/plain;charset=UTF-8";
+
+    public interface Sender {
+        /**
+         * Posts the command to the item url and calls callback once the request finished
+         */
+        void send(String url, String command, Callback callback);
+    }
+
+    public interface Callback {
+        /**
+         * Called if the command couldn't be sent yet and is kept for a retry. onComplete
+         * follows once it was delivered or dropped.
+         */
+        void onDeferred();
+
+        /**
+         * Called if the command was dropped before it was sent, as a newer command to the
+         * same item replaced it. onComplete isn't called for it then.
+         */
+        void onReplaced();
+
+        void onComplete(boolean success);
+    }
+
+    public interface Listener {
+        /**
+         * Called if the command is kept for a retry, e.g. because there is no connection
+         */
+        void onCommandDeferred(String url, String command);
+
+        void onCommandDelivered(String url, String command);
+
+        /**
+         * Called for failed commands which weren't superseded by a later command
+         */
+        void onCommandFailed(String url, String command);
+    }
+
+    private class ItemState implements Runnable {
+        final String url;
+        String pendingCommand;
+        SentCommand inFlight;
+        boolean flushScheduled;
+        long lastSendTime;
+
+        ItemState(String url) {
+            this.url = url;
+        }
+
+        @Override
+        public void run() {
+            synchronized (CommandCoalescer.this) {
+                flushScheduled = false;
+                flush(this);
+            }
+        }
+    }
+
+    private class SentCommand implements Callback {
+        final ItemState state;
+        final String command;
+        boolean deferred;
+
+        SentCommand(ItemState state, String command) {
+            this.state = state;
+            this.command = command;
+        }
+
+        @Override
+        public void onDeferred() {
+            synchronized (CommandCoalescer.this) {
+                if (deferred) {
+                    // Another retry failed
+                    return;
+                }
+                deferred = true;
+                deferredCount++;
+                if (listener != null) {
+                    listener.onCommandDeferred(state.url, command);
+                }
+                release();
+            }
+        }
+
+        @Override
+        public void onReplaced() {
+            synchronized (CommandCoalescer.this) {
+                droppedCount++;
+                if (!deferred) {
+                    release();
+                }
+                // The state is up to the command which replaced this one
+            }
+        }
+
+        @Override
+        public void onComplete(boolean success) {
+            synchronized (CommandCoalescer.this) {
+                if (!deferred) {
+                    release();
+                }
+                if (success) {
+                    if (listener != null) {
+                        listener.onCommandDelivered(state.url, command);
+                    }
+                    return;
+                }
+                failedCount++;
+                if (listener != null && !isSuperseded()) {
+                    listener.onCommandFailed(state.url, command);
+                }
+            }
+        }
+
+        /**
+         * Whether a newer command to the item is still to come, which decides about the state.
+         * The item may have been forgotten and created again while this command was deferred.
+         */
+        private boolean isSuperseded() {
+            ItemState current = items.get(state.url);
+            return current != null
+                    && (current.pendingCommand != null || (current.inFlight != null && current.inFlight != this));
+        }
+
+        private void release() {
+            state.inFlight = null;
+            inFlightCount--;
+            flush(state);
+        }
+    }
+
+    private final Timer timer;
+    private final Sender sender;
+    private final Map<String, ItemState> items = new HashMap<String, ItemState>();
+    private long minInterval;
+    private Listener listener;
+    private int sentCount = 0;
+    private int droppedCount = 0;
+    private int deferredCount = 0;
+    private int failedCount = 0;
+    private int inFlightCount = 0;
+
+    /**
+     * @param minInterval  minimum time in milliseconds between two commands to the same item
+     * @param timer  timer delaying commands which come in faster than the interval
+     * @param sender  sender doing the actual request
+     */
+    public CommandCoalescer(long minInterval, Timer timer, Sender sender) {
+        this.minInterval = minInterval;
+        this.timer = timer;
+        this.sender = sender;
+    }
+
+    /**
+     * Creates a coalescer with the default interval which passes the commands to the
+     * given sender and delays them on the main thread
+     */
+    public static CommandCoalescer create(Sender sender) {
+        return new CommandCoalescer(DEFAULT_MIN_INTERVAL, new MainThreadTimer(), sender);
+    }
+
+    /**
+     * Sends the command to the item with the given url, replacing a command to the item
+     * which is still waiting to be sent
+     */
+    public synchronized void send(String url, String command) {
+        ItemState state = items.get(url);
+        if (state == null) {
+            state = new ItemState(url);
+            items.put(url, state);
+        }
+        if (state.pendingCommand != null) {
+            droppedCount++;
+        }
+        state.pendingCommand = command;
+        flush(state);
+    }
+
+    private void flush(ItemState state) {
+        if (state.inFlight != null || state.flushScheduled) {
+            return;
+        }
+        long wait = state.lastSendTime + minInterval - timer.now();
+        if (wait > 0) {
+            // Sends the pending command once the interval is over, or forgets the item
+            // if nothing is left to send by then
+            state.flushScheduled = true;
+            timer.schedule(state, wait);
+            return;
+        }
+        if (state.pendingCommand == null) {
+            items.remove(state.url);
+            return;
+        }
+        String command = state.pendingCommand;
+        state.pendingCommand = null;
+        state.inFlight = new SentCommand(state, command);
+        state.lastSendTime = timer.now();
+        inFlightCount++;
+        sentCount++;
+        sender.send(state.url, command, state.inFlight);
+    }
+
+    /**
+     * Sets the listener told about the outcome of sent commands
+     */
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized void setMinInterval(long minInterval) {
+        this.minInterval = minInterval;
+    }
+
+    public synchronized long getMinInterval() {
+        return minInterval;
+    }
+
+    public synchronized int getSentCount() {
+        return sentCount;
+    }
+
+    /**
+     * Number of commands which were replaced by a later command to the same item, either
+     * while waiting here or while kept for a retry by the sender
+     */
+    public synchronized int getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Number of commands the sender kept for a retry
+     */
+    public synchronized int getDeferredCount() {
+        return deferredCount;
+    }
+
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * Number of items which are sending a command or have to wait before sending the next one
+     */
+    public synchronized int getItemCount() {
+        return items.size();
+    }
+
+    /**
+     * Number of items with a command waiting to be sent
+     */
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (ItemState state : items.values()) {
+            if (state.pendingCommand != null) {
+                pending++;
+            }
+        }
+        return pending;
+    }
+}
@@ -0,0 +1,601 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+
+/**
+ * This class keeps item commands until the server accepted them, so commands given while
+ * the connection is down are not lost. Commands which fail without a response or with a
+ * server error are retried through the shared ReconnectScheduler, which backs off and holds
+ * the retry until the network is available again. Their callback is told that they were
+ * deferred, so the next command to the item isn't held back. Commands rejected by the server
+ * are dropped.
+ *
+ * Commands are kept for the item name and posted to the server of the current transport, so
+ * commands queued before the connection changed, e.g. from the local to the remote url, are
+ * sent to the server which is reachable now.
+ *
+ * A queued command to an item is replaced by a newer command to the same item. Commands
+ * older than a maximum age are dropped instead of being sent late. Only a few commands are
+ * sent at the same time and only one per item, so the commands of an item stay ordered.
+ *
+ * The queue is kept in an append-only file of added and removed commands, which is
+ * rewritten with the remaining commands when it is loaded and once it has grown.
+ */
+
+public class CommandQueue implements CommandCoalescer.Sender {
+    private static final String TAG = CommandQueue.class.getSimpleName();
+    private static final int MAGIC = 0x4F484351;
+    private static final int FORMAT_VERSION = 2;
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 2;
+    // Removed commands after which the file is rewritten
+    private static final int COMPACT_THRESHOLD = 64;
+    public static final int DEFAULT_MAX_REQUESTS = 2;
+    public static final long DEFAULT_MAX_AGE = 15 * 60 * 1000;
+
+    public interface Transport {
+        /**
+         * Posts the command to the item with the given name and calls callback with the status
+         * code of the response, or 0 if no response was received
+         */
+        void post(String itemName, String command, TransportCallback callback);
+    }
+
+    public interface TransportCallback {
+        void onResult(int statusCode);
+    }
+
+    private class Entry implements TransportCallback {
+        final long id;
+        final String itemName;
+        final String command;
+        final long enqueuedAt;
+        CommandCoalescer.Callback callback;
+        boolean inFlight;
+
+        Entry(long id, String itemName, String command, long enqueuedAt) {
+            this.id = id;
+            this.itemName = itemName;
+            this.command = command;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public void onResult(int statusCode) {
+            onEntryResult(this, statusCode);
+        }
+    }
+
+    private final File file;
+    private final int maxRequests;
+    private final long maxAge;
+    private final ReconnectScheduler reconnectScheduler;
+    private final Timer clock;
+    private final Executor ioExecutor;
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<Long, Entry>();
+    private Transport transport;
+    private long nextId = 1;
+    private int inFlightCount = 0;
+    private boolean waitingForRetry = false;
+    private int removedSinceCompaction = 0;
+    private int deliveredCount = 0;
+    private int failedCount = 0;
+    private int expiredCount = 0;
+    private int replacedCount = 0;
+    private int retryCount = 0;
+    private long totalLatency = 0;
+
+    private final Runnable retryRunnable = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (CommandQueue.this) {
+                waitingForRetry = false;
+                Log.d(TAG, String.format("Retrying %d queued commands", entries.size()));
+                drain();
+            }
+        }
+    };
+
+    /**
+     * @param file  file the queue is kept in, or null to keep it in memory only
+     * @param maxRequests  maximum number of commands sent at the same time
+     * @param maxAge  time in milliseconds after which a queued command is dropped
+     * @param reconnectScheduler  scheduler for retries after failed commands
+     * @param clock  clock for the age of commands
+     * @param ioExecutor  executor writing the file, running one task after the other
+     */
+    public CommandQueue(File file, int maxRequests, long maxAge, ReconnectScheduler reconnectScheduler,
+                        Timer clock, Executor ioExecutor) {
+        this.file = file;
+        this.maxRequests = maxRequests;
+        this.maxAge = maxAge;
+        this.reconnectScheduler = reconnectScheduler;
+        this.clock = clock;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Creates a queue with default limits in the app's files directory and starts loading
+     * the commands queued before the last shutdown
+     */
+    public static CommandQueue create(Context context, ReconnectScheduler reconnectScheduler) {
+        CommandQueue queue = new CommandQueue(new File(context.getFilesDir(), "commands"),
+                DEFAULT_MAX_REQUESTS, DEFAULT_MAX_AGE, reconnectScheduler,
+                new MainThreadTimer(), Executors.newSingleThreadExecutor());
+        queue.load();
+        return queue;
+    }
+
+    /**
+     * Creates a transport which posts the commands with the given client to the items of the
+     * server with the given base url
+     */
+    public static Transport createTransport(final MyHttpClient<?> httpClient, final String baseUrl) {
+        return new Transport() {
+            @Override
+            public void post(String itemName, String command, final TransportCallback callback) {
+                httpClient.post(baseUrl + "rest/items/" + itemName, command, CommandCoalescer.MEDIA_TYPE, new MyHttpClient.ResponseHandler() {
+                    @Override
+                    public void onFailure(Call call, int statusCode, Headers headers, byte[] responseBody, Throwable error) {
+                        Log.e(TAG, "Got command error " + statusCode, error);
+                        callback.onResult(statusCode);
+                    }
+
+                    @Override
+                    public void onSuccess(Call call, int statusCode, Headers headers, byte[] responseBody) {
+                        Log.d(TAG, "Command was sent successfully");
+                        callback.onResult(statusCode);
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * Sets the transport queued commands are sent with, e.g. after the connection changed,
+     * and starts sending them
+     */
+    public synchronized void setTransport(Transport transport) {
+        this.transport = transport;
+        drain();
+    }
+
+    /**
+     * Queues a command to the item with the given name without waiting for its result
+     */
+    public void sendItemCommand(String itemName, String command) {
+        sendItemCommand(itemName, command, null);
+    }
+
+    /**
+     * Queues a command to the item the url points to. Only the item name is kept, the command
+     * is posted to the server of the transport.
+     */
+    @Override
+    public synchronized void send(String url, String command, CommandCoalescer.Callback callback) {
+        String itemName = getItemName(url);
+        if (itemName == null) {
+            Log.e(TAG, "Can't queue command " + command + " to " + url);
+            failedCount++;
+            if (callback != null) {
+                callback.onComplete(false);
+            }
+            return;
+        }
+        sendItemCommand(itemName, command, callback);
+    }
+
+    /**
+     * Queues a command to the item with the given name. The callback is called once the server
+     * accepted the command or the command was dropped. A command which is replaced by a newer
+     * command to the same item before it was sent is reported as replaced.
+     */
+    public synchronized void sendItemCommand(String itemName, String command, CommandCoalescer.Callback callback) {
+        // Replace a queued command to the item, unless it is being sent already
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry queued = iterator.next();
+            if (!queued.inFlight && queued.itemName.equals(itemName)) {
+                iterator.remove();
+                persistRemove(queued);
+                replacedCount++;
+                if (queued.callback != null) {
+                    CommandCoalescer.Callback queuedCallback = queued.callback;
+                    queued.callback = null;
+                    queuedCallback.onReplaced();
+                }
+                break;
+            }
+        }
+        Entry entry = new Entry(nextId++, itemName, command, clock.now());
+        entry.callback = callback;
+        entries.put(entry.id, entry);
+        persistAdd(entry);
+        drain();
+        if (waitingForRetry && callback != null) {
+            // Sent with the next retry
+            callback.onDeferred();
+        }
+    }
+
+    /**
+     * Starts sending queued commands, as many as the limits allow
+     */
+    private void drain() {
+        if (transport == null || waitingForRetry) {
+            return;
+        }
+        long now = clock.now();
+        List<Entry> dueEntries = new ArrayList<Entry>();
+        List<String> busyItems = new ArrayList<String>();
+        for (Entry entry : entries.values()) {
+            if (entry.inFlight) {
+                busyItems.add(entry.itemName);
+            }
+        }
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext() && inFlightCount < maxRequests) {
+            Entry entry = iterator.next();
+            if (entry.inFlight || busyItems.contains(entry.itemName)) {
+                continue;
+            }
+            if (now - entry.enqueuedAt > maxAge) {
+                Log.d(TAG, "Dropping expired command " + entry.command + " to " + entry.itemName);
+                iterator.remove();
+                persistRemove(entry);
+                expiredCount++;
+                complete(entry, false);
+                continue;
+            }
+            entry.inFlight = true;
+            inFlightCount++;
+            busyItems.add(entry.itemName);
+            dueEntries.add(entry);
+        }
+        for (Entry entry : dueEntries) {
+            transport.post(entry.itemName, entry.command, entry);
+        }
+    }
+
+    private synchronized void onEntryResult(Entry entry, int statusCode) {
+        entry.inFlight = false;
+        inFlightCount--;
+        if (statusCode >= 200 && statusCode < 300) {
+            entries.remove(entry.id);
+            persistRemove(entry);
+            deliveredCount++;
+            totalLatency += clock.now() - entry.enqueuedAt;
+            // The shared backoff is left to the page subscriptions, a single accepted
+            // command doesn't mean the connection works again
+            complete(entry, true);
+        } else if (statusCode == 0 || statusCode == 408 || statusCode == 429 || statusCode >= 500) {
+            retryCount++;
+            if (entry.callback != null) {
+                entry.callback.onDeferred();
+            }
+            if (!waitingForRetry) {
+                waitingForRetry = true;
+                reconnectScheduler.scheduleReconnect(retryRunnable);
+            }
+            return;
+        } else {
+            Log.e(TAG, "Command " + entry.command + " to " + entry.itemName + " rejected with " + statusCode);
+            entries.remove(entry.id);
+            persistRemove(entry);
+            failedCount++;
+            complete(entry, false);
+        }
+        drain();
+    }
+
+    private void complete(Entry entry, boolean success) {
+        if (entry.callback != null) {
+            CommandCoalescer.Callback callback = entry.callback;
+            entry.callback = null;
+            callback.onComplete(success);
+        }
+    }
+
+    /**
+     * Reads the commands queued before the last shutdown and queues those which aren't
+     * too old and not replaced by a command given since. This has to be called once, before
+     * the first command is queued.
+     */
+    public void load() {
+        if (file == null) {
+            return;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<Entry> loadedEntries = readEntries();
+                List<Entry> remainingEntries = new ArrayList<Entry>();
+                synchronized (CommandQueue.this) {
+                    long now = clock.now();
+                    LinkedHashMap<Long, Entry> queuedEntries = new LinkedHashMap<Long, Entry>(entries);
+                    entries.clear();
+                    // Loaded commands get new ids below the ids of this run, so they can't
+                    // collide with commands appended to the file in the meantime
+                    long id = -loadedEntries.size();
+                    for (Entry loaded : loadedEntries) {
+                        if (now - loaded.enqueuedAt > maxAge) {
+                            expiredCount++;
+                            continue;
+                        }
+                        if (hasQueuedCommand(queuedEntries, loaded.itemName)) {
+                            replacedCount++;
+                            continue;
+                        }
+                        Entry entry = new Entry(id++, loaded.itemName, loaded.command, loaded.enqueuedAt);
+                        entries.put(entry.id, entry);
+                        remainingEntries.add(entry);
+                    }
+                    entries.putAll(queuedEntries);
+                    Log.d(TAG, String.format("Loaded %d queued commands", remainingEntries.size()));
+                }
+                writeEntries(remainingEntries);
+                synchronized (CommandQueue.this) {
+                    drain();
+                }
+            }
+        });
+    }
+
+    private static boolean hasQueuedCommand(Map<Long, Entry> queuedEntries, String itemName) {
+        for (Entry entry : queuedEntries.values()) {
+            if (entry.itemName.equals(itemName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void persistAdd(Entry entry) {
+        if (file == null) {
+            return;
+        }
+        final long id = entry.id;
+        final String itemName = entry.itemName;
+        final String command = entry.command;
+        final long enqueuedAt = entry.enqueuedAt;
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DataOutputStream out = null;
+                try {
+                    out = openForAppend();
+                    out.writeByte(RECORD_ADD);
+                    out.writeLong(id);
+                    out.writeLong(enqueuedAt);
+                    out.writeUTF(itemName);
+                    out.writeUTF(command);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to store command to " + itemName, e);
+                } finally {
+                    closeQuietly(out);
+                }
+            }
+        });
+    }
+
+    private void persistRemove(Entry entry) {
+        if (file == null) {
+            return;
+        }
+        final long id = entry.id;
+        removedSinceCompaction++;
+        if (removedSinceCompaction >= COMPACT_THRESHOLD) {
+            removedSinceCompaction = 0;
+            final List<Entry> remainingEntries = new ArrayList<Entry>(entries.values());
+            ioExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    writeEntries(remainingEntries);
+                }
+            });
+            return;
+        }
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                DataOutputStream out = null;
+                try {
+                    out = openForAppend();
+                    out.writeByte(RECORD_REMOVE);
+                    out.writeLong(id);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to remove stored command", e);
+                } finally {
+                    closeQuietly(out);
+                }
+            }
+        });
+    }
+
+    private DataOutputStream openForAppend() throws IOException {
+        boolean isNew = !file.exists() || file.length() == 0;
+        file.getParentFile().mkdirs();
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (isNew) {
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+        }
+        return out;
+    }
+
+    /**
+     * Replaces the file with one holding only the given commands
+     */
+    private void writeEntries(List<Entry> remainingEntries) {
+        File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            file.getParentFile().mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            for (Entry entry : remainingEntries) {
+                out.writeByte(RECORD_ADD);
+                out.writeLong(entry.id);
+                out.writeLong(entry.enqueuedAt);
+                out.writeUTF(entry.itemName);
+                out.writeUTF(entry.command);
+            }
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Can't rename " + tempFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to rewrite command queue", e);
+            closeQuietly(out);
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Replays the records of the file. A record cut off by a crash ends the replay.
+     */
+    private List<Entry> readEntries() {
+        LinkedHashMap<Long, Entry> storedEntries = new LinkedHashMap<Long, Entry>();
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION) {
+                return new ArrayList<Entry>();
+            }
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                if (type == RECORD_ADD) {
+                    long enqueuedAt = in.readLong();
+                    String itemName = in.readUTF();
+                    String command = in.readUTF();
+                    storedEntries.put(id, new Entry(id, itemName, command, enqueuedAt));
+                } else if (type == RECORD_REMOVE) {
+                    storedEntries.remove(id);
+                } else {
+                    throw new IOException("Unknown record type " + type);
+                }
+            }
+        } catch (FileNotFoundException e) {
+            // Nothing was queued yet
+        } catch (EOFException e) {
+            // End of the file or of the last complete record
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read command queue", e);
+        } finally {
+            closeQuietly(in);
+        }
+        return new ArrayList<Entry>(storedEntries.values());
+    }
+
+    /**
+     * Name of the item the url points to, which is the last segment of its path
+     */
+    static String getItemName(String url) {
+        HttpUrl httpUrl = url != null ? HttpUrl.parse(url) : null;
+        if (httpUrl == null) {
+            return null;
+        }
+        List<String> segments = httpUrl.pathSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (!segments.get(i).isEmpty()) {
+                return segments.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * Number of commands waiting to be sent or being sent
+     */
+    public synchronized int getDepth() {
+        return entries.size();
+    }
+
+    public synchronized int getInFlightCount() {
+        return inFlightCount;
+    }
+
+    /**
+     * Average time in milliseconds from queueing a command until the server accepted it
+     */
+    public synchronized long getAverageLatency() {
+        return deliveredCount > 0 ? totalLatency / deliveredCount : 0;
+    }
+
+    /**
+     * Time in milliseconds the oldest queued command is waiting, or 0 if none is queued
+     */
+    public synchronized long getOldestAge() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        return iterator.hasNext() ? clock.now() - iterator.next().enqueuedAt : 0;
+    }
+
+    public synchronized int getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized int getExpiredCount() {
+        return expiredCount;
+    }
+
+    /**
+     * Number of queued commands which were replaced by a newer command to the same item
+     */
+    public synchronized int getReplacedCount() {
+        return replacedCount;
+    }
+
+    public synchronized int getRetryCount() {
+        return retryCount;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import java.net.HttpURLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+
+/**
+ * This class remembers the ETag and Last-Modified validators of GET responses, so requests
+ * for the same URL can be sent as conditional requests. If the server answers with
+ * 304 Not Modified, the body of the previous response is served again.
+ *
+ * Only the endpoints which are loaded again and again without changing much are handled,
+ * see handles(). Entries are kept per URL and Authorization header, so a body stored for
+ * one login is never served for another.
+ *
+ * Callers can attach the model they parsed from a response to its entry. It stays
+ * available until the server sends different content for the URL, so a caller receiving
+ * a 304 can reuse it instead of parsing the same body again.
+ */
+
+public class HttpValidatorStore {
+    public static final int DEFAULT_MAX_ENTRIES = 50;
+    public static final long DEFAULT_MAX_SIZE = 1024 * 1024;
+    private static final String[] ENDPOINTS = {
+            "rest/sitemaps", "rest/thing-types", "rest/bindings", "static/uuid"
+    };
+
+    private static class Entry {
+        final String etag;
+        final String lastModified;
+        final byte[] responseBody;
+        Object model;
+
+        Entry(String etag, String lastModified, byte[] responseBody) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.responseBody = responseBody;
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxSize;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long size = 0;
+    private int conditionalRequestCount = 0;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    public HttpValidatorStore() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxEntries  maximum number of URLs to remember
+     * @param maxSize  maximum size of all remembered response bodies in bytes
+     */
+    public HttpValidatorStore(int maxEntries, long maxSize) {
+        this.maxEntries = maxEntries;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Whether responses of the URL are kept, which is only the case for the sitemap list,
+     * thing types, bindings and the server UUID
+     */
+    public static boolean handles(String url) {
+        HttpUrl httpUrl = HttpUrl.parse(url);
+        if (httpUrl == null) {
+            return false;
+        }
+        String path = httpUrl.encodedPath();
+        for (String endpoint : ENDPOINTS) {
+            if (path.endsWith("/" + endpoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getKey(String url, String authorization) {
+        return authorization != null ? url + "\n" + authorization : url;
+    }
+
+    /**
+     * Adds If-None-Match and If-Modified-Since headers to a GET request of the given URL
+     * if validators are known for it
+     *
+     * @param authorization  Authorization header the request is sent with, or null
+     */
+    public synchronized void addValidators(String url, String authorization,
+                                           Request.Builder requestBuilder) {
+        Entry entry = entries.get(getKey(url, authorization));
+        if (entry == null) {
+            return;
+        }
+        if (entry.etag != null) {
+            requestBuilder.header("If-None-Match", entry.etag);
+        }
+        if (entry.lastModified != null) {
+            requestBuilder.header("If-Modified-Since", entry.lastModified);
+        }
+        conditionalRequestCount++;
+    }
+
+    /**
+     * Handles the response of a GET request
+     *
+     * @return the body to deliver, which is the remembered body if the server answered
+     * 304 Not Modified, or null if the response is a 304 without remembered body
+     */
+    public synchronized byte[] onResponse(String url, String authorization, int statusCode,
+                                          Headers headers, byte[] responseBody) {
+        String key = getKey(url, authorization);
+        if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            hitCount++;
+            return entry.responseBody;
+        }
+        if (statusCode < 200 || statusCode >= 300) {
+            return responseBody;
+        }
+        if (entries.containsKey(key)) {
+            missCount++;
+        }
+        remove(key);
+        String etag = headers.get("ETag");
+        String lastModified = headers.get("Last-Modified");
+        if ((etag != null || lastModified != null) && responseBody != null
+                && responseBody.length <= maxSize) {
+            entries.put(key, new Entry(etag, lastModified, responseBody));
+            size += responseBody.length;
+            trim();
+        }
+        return responseBody;
+    }
+
+    /**
+     * Attaches a model parsed from the current response body of the given URL
+     */
+    public synchronized void putModel(String url, String authorization, Object model) {
+        Entry entry = entries.get(getKey(url, authorization));
+        if (entry != null) {
+            entry.model = model;
+        }
+    }
+
+    /**
+     * Returns the model attached to the current response body of the given URL, or null
+     */
+    public synchronized Object getModel(String url, String authorization) {
+        Entry entry = entries.get(getKey(url, authorization));
+        return entry != null ? entry.model : null;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private void remove(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            size -= entry.responseBody.length;
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || size > maxSize) && iterator.hasNext()) {
+            size -= iterator.next().getValue().responseBody.length;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Number of requests which were sent with validators
+     */
+    public synchronized int getConditionalRequestCount() {
+        return conditionalRequestCount;
+    }
+
+    /**
+     * Number of 304 responses which were served from the store
+     */
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Number of responses with new content for a URL whose validators were known
+     */
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+}
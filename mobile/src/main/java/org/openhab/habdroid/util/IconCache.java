@@ -0,0 +1,512 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class caches icons in two tiers: decoded images in memory, bounded by their size in
+ * bytes, and the downloaded data on disk, bounded by the total file size and an age. Both
+ * tiers drop the least recently used entries first.
+ *
+ * Entries are keyed by a normalized url, which keeps the server and path but ignores the
+ * order of the query parameters, so openHAB 2 icon urls like icon/light?state=ON&format=PNG
+ * match regardless of how they were built, while icons of different servers don't collide.
+ *
+ * Images in memory are shared by content: each key refers to the hash of the data the image
+ * was decoded from, so icons whose urls differ only by a state returning the same data, like
+ * a dimmer at 37% and 38%, are held once. Memory is counted per shared image and an image is
+ * dropped once no key refers to it anymore.
+ */
+
+public class IconCache<T> implements IconLoader.Cache<T> {
+    private static final String TAG = IconCache.class.getSimpleName();
+    public static final long DEFAULT_MAX_DISK_SIZE = 10 * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE = 7 * 24 * 60 * 60 * 1000L;
+    // Share of the heap used for decoded icons
+    public static final int MEMORY_FRACTION = 8;
+
+    public interface Sizer<T> {
+        /**
+         * Size of the image in memory in bytes
+         */
+        int sizeOf(T image);
+    }
+
+    private static class MemoryEntry<T> {
+        final T image;
+        final int size;
+        int keyCount = 0;
+
+        MemoryEntry(T image, int size) {
+            this.image = image;
+            this.size = size;
+        }
+    }
+
+    private static class DiskEntry {
+        final File file;
+        final long size;
+        final long writeTime;
+
+        DiskEntry(File file, long size, long writeTime) {
+            this.file = file;
+            this.size = size;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private final Sizer<T> sizer;
+    private final long maxMemorySize;
+    private final File directory;
+    private final long maxDiskSize;
+    private final long maxAge;
+    private final Timer clock;
+    // The key and disk maps are in access order, the least recently used entry comes first.
+    // Disk entries are indexed by file name, so files stored by earlier runs are found again.
+    private final LinkedHashMap<String, String> memoryKeys = new LinkedHashMap<String, String>(16, 0.75f, true);
+    // Images in memory by the hash of their data
+    private final HashMap<String, MemoryEntry<T>> memoryEntries = new HashMap<String, MemoryEntry<T>>();
+    private final LinkedHashMap<String, DiskEntry> diskEntries = new LinkedHashMap<String, DiskEntry>(16, 0.75f, true);
+    private long memorySize = 0;
+    private long diskSize = 0;
+    private boolean diskLoaded = false;
+    private int memoryHitCount = 0;
+    private int sharedHitCount = 0;
+    private int diskHitCount = 0;
+    private int missCount = 0;
+    private int memoryEvictionCount = 0;
+    private int diskEvictionCount = 0;
+    private int expiredCount = 0;
+
+    /**
+     * @param sizer  tells the memory size of images
+     * @param maxMemorySize  maximum size of the images kept in memory in bytes
+     * @param directory  directory for the data on disk, or null to only cache in memory
+     * @param maxDiskSize  maximum size of the files on disk in bytes
+     * @param maxAge  time in milliseconds after which data on disk is not used anymore
+     * @param clock  clock for the age of the data on disk
+     */
+    public IconCache(Sizer<T> sizer, long maxMemorySize, File directory, long maxDiskSize, long maxAge,
+                     Timer clock) {
+        this.sizer = sizer;
+        this.maxMemorySize = maxMemorySize;
+        this.directory = directory;
+        this.maxDiskSize = maxDiskSize;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    /**
+     * Memory size for a cache using the default share of the heap
+     */
+    public static long getDefaultMemorySize() {
+        return Runtime.getRuntime().maxMemory() / MEMORY_FRACTION;
+    }
+
+    /**
+     * Normalizes the url to the cache key. Scheme and host are lowercased and the fragment
+     * is removed. Query parameters are sorted, empty ones are dropped.
+     */
+    static String getKey(String url) {
+        int fragmentStart = url.indexOf('#');
+        if (fragmentStart >= 0) {
+            url = url.substring(0, fragmentStart);
+        }
+        int queryStart = url.indexOf('?');
+        String base = queryStart >= 0 ? url.substring(0, queryStart) : url;
+        int authorityStart = base.indexOf("://");
+        if (authorityStart >= 0) {
+            int pathStart = base.indexOf('/', authorityStart + 3);
+            if (pathStart < 0) {
+                pathStart = base.length();
+            }
+            base = base.substring(0, pathStart).toLowerCase(Locale.US) + base.substring(pathStart);
+        }
+        if (queryStart < 0) {
+            return base;
+        }
+        List<String> params = new ArrayList<String>(Arrays.asList(url.substring(queryStart + 1).split("&")));
+        params.removeAll(Collections.singleton(""));
+        if (params.isEmpty()) {
+            return base;
+        }
+        Collections.sort(params);
+        StringBuilder key = new StringBuilder(base).append('?');
+        for (int i = 0; i < params.size(); i++) {
+            if (i > 0) {
+                key.append('&');
+            }
+            key.append(params.get(i));
+        }
+        return key.toString();
+    }
+
+    @Override
+    public T get(String url) {
+        synchronized (memoryEntries) {
+            String hash = memoryKeys.get(getKey(url));
+            if (hash == null) {
+                return null;
+            }
+            memoryHitCount++;
+            return memoryEntries.get(hash).image;
+        }
+    }
+
+    @Override
+    public T getShared(String hash) {
+        synchronized (memoryEntries) {
+            MemoryEntry<T> entry = memoryEntries.get(hash);
+            if (entry == null) {
+                return null;
+            }
+            sharedHitCount++;
+            return entry.image;
+        }
+    }
+
+    @Override
+    public T put(String url, String hash, T image) {
+        String key = getKey(url);
+        synchronized (memoryEntries) {
+            MemoryEntry<T> entry = memoryEntries.get(hash);
+            if (entry == null) {
+                int size = sizer.sizeOf(image);
+                if (size > maxMemorySize) {
+                    return image;
+                }
+                entry = new MemoryEntry<T>(image, size);
+                memoryEntries.put(hash, entry);
+                memorySize += size;
+            }
+            String previousHash = memoryKeys.put(key, hash);
+            if (!hash.equals(previousHash)) {
+                entry.keyCount++;
+                if (previousHash != null) {
+                    releaseMemoryEntry(previousHash);
+                }
+            }
+            Iterator<String> iterator = memoryKeys.values().iterator();
+            while (memorySize > maxMemorySize && iterator.hasNext()) {
+                String evictedHash = iterator.next();
+                iterator.remove();
+                releaseMemoryEntry(evictedHash);
+            }
+            // Another image may have been decoded from the same data meanwhile
+            return entry.image;
+        }
+    }
+
+    private void releaseMemoryEntry(String hash) {
+        MemoryEntry<T> entry = memoryEntries.get(hash);
+        entry.keyCount--;
+        if (entry.keyCount == 0) {
+            memoryEntries.remove(hash);
+            memorySize -= entry.size;
+            memoryEvictionCount++;
+        }
+    }
+
+    @Override
+    public byte[] getData(String url) {
+        if (directory == null) {
+            synchronized (diskEntries) {
+                missCount++;
+            }
+            return null;
+        }
+        String name = getFileName(getKey(url));
+        DiskEntry entry;
+        synchronized (diskEntries) {
+            loadDiskEntries();
+            entry = diskEntries.get(name);
+            if (entry != null && clock.now() - entry.writeTime > maxAge) {
+                removeDiskEntry(name, entry);
+                expiredCount++;
+                entry = null;
+            }
+            if (entry == null) {
+                missCount++;
+                return null;
+            }
+        }
+        byte[] data = readFile(entry.file, entry.size);
+        synchronized (diskEntries) {
+            if (data == null) {
+                removeDiskEntry(name, entry);
+                missCount++;
+            } else {
+                diskHitCount++;
+            }
+        }
+        return data;
+    }
+
+    @Override
+    public void putData(String url, byte[] data) {
+        if (directory == null || data.length > maxDiskSize) {
+            return;
+        }
+        File file = new File(directory, getFileName(getKey(url)));
+        File tempFile = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        synchronized (diskEntries) {
+            loadDiskEntries();
+            try {
+                directory.mkdirs();
+                out = new FileOutputStream(tempFile);
+                out.write(data);
+                out.close();
+                out = null;
+                if (!tempFile.renameTo(file)) {
+                    throw new IOException("Can't rename " + tempFile);
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to store " + url, e);
+                closeQuietly(out);
+                tempFile.delete();
+                return;
+            }
+            DiskEntry previous = diskEntries.put(file.getName(), new DiskEntry(file, data.length, clock.now()));
+            if (previous != null) {
+                diskSize -= previous.size;
+            }
+            diskSize += data.length;
+            trimDisk();
+        }
+    }
+
+    private void trimDisk() {
+        Iterator<DiskEntry> iterator = diskEntries.values().iterator();
+        while (diskSize > maxDiskSize && iterator.hasNext()) {
+            DiskEntry entry = iterator.next();
+            iterator.remove();
+            diskSize -= entry.size;
+            entry.file.delete();
+            diskEvictionCount++;
+        }
+    }
+
+    private void removeDiskEntry(String name, DiskEntry entry) {
+        if (diskEntries.get(name) == entry) {
+            diskEntries.remove(name);
+            diskSize -= entry.size;
+        }
+        entry.file.delete();
+    }
+
+    /**
+     * Reads the files stored by earlier runs, oldest first
+     */
+    private void loadDiskEntries() {
+        if (diskLoaded) {
+            return;
+        }
+        diskLoaded = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsTime = lhs.lastModified();
+                long rhsTime = rhs.lastModified();
+                return lhsTime < rhsTime ? -1 : (lhsTime == rhsTime ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            diskEntries.put(file.getName(), new DiskEntry(file, file.length(), file.lastModified()));
+            diskSize += file.length();
+        }
+        trimDisk();
+    }
+
+    private static byte[] readFile(File file, long size) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            byte[] data = new byte[(int) size];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of " + file);
+                }
+                offset += read;
+            }
+            return data;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read " + file, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * File name for a key, the hash of the key as files are also looked up by name
+     */
+    private static String getFileName(String key) {
+        try {
+            return hash(key.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    /**
+     * Hash of the data, the same for equal data
+     */
+    public static String hash(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(data);
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(String.format(Locale.US, "%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every platform has SHA-1, but don't treat different data as equal if not
+            return data.length + ":" + Arrays.hashCode(data) + ":" + System.identityHashCode(data);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (memoryEntries) {
+            memoryKeys.clear();
+            memoryEntries.clear();
+            memorySize = 0;
+        }
+        if (directory == null) {
+            return;
+        }
+        synchronized (diskEntries) {
+            diskEntries.clear();
+            diskSize = 0;
+            diskLoaded = true;
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    public long getMemorySize() {
+        synchronized (memoryEntries) {
+            return memorySize;
+        }
+    }
+
+    public long getDiskSize() {
+        synchronized (diskEntries) {
+            return diskSize;
+        }
+    }
+
+    /**
+     * Number of images in memory, each shared by all keys whose data was equal
+     */
+    public int getMemoryImageCount() {
+        synchronized (memoryEntries) {
+            return memoryEntries.size();
+        }
+    }
+
+    public int getMemoryKeyCount() {
+        synchronized (memoryEntries) {
+            return memoryKeys.size();
+        }
+    }
+
+    /**
+     * Number of images not decoded because an image of equal data was in memory
+     */
+    public int getSharedHitCount() {
+        synchronized (memoryEntries) {
+            return sharedHitCount;
+        }
+    }
+
+    public int getMemoryHitCount() {
+        synchronized (memoryEntries) {
+            return memoryHitCount;
+        }
+    }
+
+    public int getDiskHitCount() {
+        synchronized (diskEntries) {
+            return diskHitCount;
+        }
+    }
+
+    /**
+     * Number of lookups found in neither tier
+     */
+    public int getMissCount() {
+        synchronized (diskEntries) {
+            return missCount;
+        }
+    }
+
+    public int getMemoryEvictionCount() {
+        synchronized (memoryEntries) {
+            return memoryEvictionCount;
+        }
+    }
+
+    public int getDiskEvictionCount() {
+        synchronized (diskEntries) {
+            return diskEvictionCount;
+        }
+    }
+
+    public int getExpiredCount() {
+        synchronized (diskEntries) {
+            return expiredCount;
+        }
+    }
+}
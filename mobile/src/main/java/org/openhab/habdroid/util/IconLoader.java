@@ -0,0 +1,626 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import okhttp3.Call;
+import okhttp3.Credentials;
+import okhttp3.Headers;
+
+/**
+ * This class loads icons and images without blocking a thread while they are downloaded.
+ * Downloads are started asynchronously on one shared HTTP client, so connections and TLS
+ * sessions are reused between icons. Only a limited number of downloads run at the same
+ * time, further ones wait in a queue. Images held in memory are delivered right away, disk
+ * lookups and decoding run on a small executor and the result is delivered on the callback
+ * executor, usually the main thread.
+ *
+ * Requests for an image which is already being loaded join that load instead of starting
+ * another one, so a page showing the same icon many times downloads and decodes it once.
+ *
+ * The type of the loaded images is a parameter, so the pipeline doesn't depend on how the
+ * images are decoded and cached.
+ */
+
+public class IconLoader<T> {
+    private static final String TAG = IconLoader.class.getSimpleName();
+    public static final int DEFAULT_MAX_REQUESTS = 6;
+    private static final int READ_TIMEOUT = 10000;
+    private static final int DECODE_THREADS = 2;
+
+    private static final String CACHE_DIRECTORY = "icons";
+
+    private static IconLoader<Bitmap> sInstance;
+    private static IconCache<Bitmap> sCache;
+    private static BitmapDecoder sDecoder;
+    private static HttpFetcher sFetcher;
+    private static volatile String sIconFormat;
+    // Preferences only keep a weak reference to their listeners
+    private static final SharedPreferences.OnSharedPreferenceChangeListener sPreferenceListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    if (Constants.PREFERENCE_SSLHOST.equals(key) || Constants.PREFERENCE_SSLCERT.equals(key)
+                            || Constants.PREFERENCE_ICON_FORMAT.equals(key)) {
+                        updatePreferences(prefs);
+                    }
+                }
+            };
+
+    public interface Fetcher {
+        /**
+         * Starts downloading the url and calls callback once it is done, on any thread
+         */
+        void fetch(String url, Map<String, String> headers, FetchCallback callback);
+    }
+
+    public interface FetchCallback {
+        void onSuccess(byte[] body);
+        void onFailure(int statusCode, Throwable error);
+    }
+
+    public interface Decoder<T> {
+        /**
+         * Decodes the downloaded data no larger than maxSize, or at full size if it is 0.
+         * Returns null if it isn't a valid image.
+         */
+        T decode(String url, byte[] data, int maxSize);
+
+        /**
+         * Takes back an image which isn't shown anymore, so its memory can be reused
+         */
+        void recycle(T image);
+    }
+
+    public interface Cache<T> {
+        /**
+         * Returns the decoded image if it is held in memory, or null. Called on the thread
+         * starting the load, so it must not block.
+         */
+        T get(String url);
+        /**
+         * Returns the image in memory decoded from data with the given hash, or null
+         */
+        T getShared(String hash);
+        /**
+         * Keeps the image decoded from data with the given hash for the url. Returns the
+         * image to show, which is the one already kept for equal data if there is one.
+         */
+        T put(String url, String hash, T image);
+        /**
+         * Returns the stored data of the image, or null. May read from disk, it is only
+         * called on the decode executor.
+         */
+        byte[] getData(String url);
+        void putData(String url, byte[] data);
+        void clear();
+    }
+
+    public interface Callback<T> {
+        void onLoaded(T image);
+        void onFailed();
+    }
+
+    /**
+     * A pending load, which can be cancelled when its target shows something else
+     */
+    public class Request {
+        final Callback<T> callback;
+        final long startTime;
+        volatile boolean cancelled;
+        // Load this request waits for, guarded by the loader
+        Job job;
+        volatile boolean ownsImage;
+
+        Request(Callback<T> callback) {
+            this.callback = callback;
+            this.startTime = clock.now();
+        }
+
+        /**
+         * Drops the load, the callback won't be called anymore. The download continues
+         * as long as other requests wait for the same image.
+         */
+        public void cancel() {
+            cancelled = true;
+            synchronized (IconLoader.this) {
+                if (job == null) {
+                    return;
+                }
+                job.requests.remove(this);
+                if (job.requests.isEmpty() && queue.remove(job)) {
+                    removeJob(job);
+                    cancelledCount++;
+                }
+                job = null;
+            }
+        }
+
+        /**
+         * Whether the loaded image was decoded for this request only and isn't cached, so it
+         * can be recycled once it isn't shown anymore
+         */
+        public boolean ownsImage() {
+            return ownsImage;
+        }
+    }
+
+    /**
+     * Lookup, download and decoding of one image, shared by all requests for it
+     */
+    private class Job implements FetchCallback {
+        final String key;
+        final String url;
+        final Map<String, String> headers;
+        final boolean useCache;
+        final int maxSize;
+        final List<Request> requests = new ArrayList<Request>();
+
+        Job(String key, String url, Map<String, String> headers, boolean useCache, int maxSize) {
+            this.key = key;
+            this.url = url;
+            this.headers = headers;
+            this.useCache = useCache;
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * Url the decoded image is kept in memory for, images decoded for a smaller size
+         * are kept apart
+         */
+        String getSizedUrl() {
+            return IconLoader.getSizedUrl(url, maxSize);
+        }
+
+        @Override
+        public void onSuccess(final byte[] body) {
+            onFetchDone();
+            decodeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // The data of a cancelled image is still stored, it is likely shown again
+                    if (useCache) {
+                        cache.putData(url, body);
+                    }
+                    synchronized (IconLoader.this) {
+                        if (requests.isEmpty()) {
+                            removeJob(Job.this);
+                            return;
+                        }
+                    }
+                    finish(Job.this, decode(Job.this, body));
+                }
+            });
+        }
+
+        @Override
+        public void onFailure(int statusCode, Throwable error) {
+            Log.e(TAG, "Failed to get " + url + " with code " + statusCode + ": " + error);
+            onFetchDone();
+            finish(this, null);
+        }
+    }
+
+    private final Fetcher fetcher;
+    private final Decoder<T> decoder;
+    private final Cache<T> cache;
+    private final int maxRequests;
+    private final Executor decodeExecutor;
+    private final Executor callbackExecutor;
+    private final Timer clock;
+    private final ArrayDeque<Job> queue = new ArrayDeque<Job>();
+    // Jobs waiting for a lookup, download or decoding, by image and credentials
+    private final Map<String, Job> jobs = new HashMap<String, Job>();
+    private int activeCount = 0;
+    private int peakActiveCount = 0;
+    private int peakQueueLength = 0;
+    private int loadedCount = 0;
+    private int failedCount = 0;
+    private int cacheHitCount = 0;
+    private int cancelledCount = 0;
+    private int coalescedCount = 0;
+    private long totalLoadTime = 0;
+
+    /**
+     * @param fetcher  downloads the images
+     * @param decoder  decodes downloaded images, called on the decode executor
+     * @param cache  cache for loaded images and their data
+     * @param maxRequests  maximum number of downloads running at the same time
+     * @param decodeExecutor  executor for cache lookups and decoding
+     * @param callbackExecutor  executor the callbacks are called on
+     * @param clock  clock for the load times
+     */
+    public IconLoader(Fetcher fetcher, Decoder<T> decoder, Cache<T> cache, int maxRequests,
+                      Executor decodeExecutor, Executor callbackExecutor, Timer clock) {
+        this.fetcher = fetcher;
+        this.decoder = decoder;
+        this.cache = cache;
+        this.maxRequests = maxRequests;
+        this.decodeExecutor = decodeExecutor;
+        this.callbackExecutor = callbackExecutor;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the loader shared by all image views. Its HTTP client is rebuilt when the SSL
+     * settings change and the icon format follows its setting.
+     */
+    public static synchronized IconLoader<Bitmap> getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            final Handler handler = new Handler(Looper.getMainLooper());
+            sFetcher = new HttpFetcher(appContext);
+            sDecoder = new BitmapDecoder(BitmapDecoder.DEFAULT_MAX_POOL_SIZE);
+            Timer clock = new MainThreadTimer();
+            sCache = new IconCache<Bitmap>(new IconCache.Sizer<Bitmap>() {
+                @Override
+                public int sizeOf(Bitmap image) {
+                    return image.getByteCount();
+                }
+            }, IconCache.getDefaultMemorySize(), new File(appContext.getCacheDir(), CACHE_DIRECTORY),
+                    IconCache.DEFAULT_MAX_DISK_SIZE, IconCache.DEFAULT_MAX_AGE, clock);
+            sInstance = new IconLoader<Bitmap>(sFetcher, new Decoder<Bitmap>() {
+                @Override
+                public Bitmap decode(String url, byte[] data, int maxSize) {
+                    return sDecoder.decode(url, sIconFormat, data, maxSize);
+                }
+
+                @Override
+                public void recycle(Bitmap image) {
+                    sDecoder.recycle(image);
+                }
+            }, sCache, DEFAULT_MAX_REQUESTS, Executors.newFixedThreadPool(DECODE_THREADS), new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            }, clock);
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            updatePreferences(prefs);
+            prefs.registerOnSharedPreferenceChangeListener(sPreferenceListener);
+        }
+        return sInstance;
+    }
+
+    private static synchronized void updatePreferences(SharedPreferences prefs) {
+        sFetcher.update(prefs);
+        sIconFormat = prefs.getString(Constants.PREFERENCE_ICON_FORMAT, "PNG");
+    }
+
+    /**
+     * Returns the cache of the shared loader
+     */
+    public static IconCache<Bitmap> getCache(Context context) {
+        getInstance(context);
+        return sCache;
+    }
+
+    /**
+     * Returns the decoder of the shared loader
+     */
+    public static BitmapDecoder getDecoder(Context context) {
+        getInstance(context);
+        return sDecoder;
+    }
+
+    /**
+     * Loads the image at the url at full size, from the cache if useCache is set and it is cached
+     *
+     * @param username  user for basic authentication, or null
+     * @param password  password for basic authentication
+     */
+    public Request load(String url, String username, String password, boolean useCache, Callback<T> callback) {
+        return load(url, username, password, useCache, 0, callback);
+    }
+
+    /**
+     * Loads the image at the url, from the cache if useCache is set and it is cached
+     *
+     * @param username  user for basic authentication, or null
+     * @param password  password for basic authentication
+     * @param maxSize  size in pixels the image is shown at, larger images are decoded
+     *                 smaller, or 0 to decode at full size
+     */
+    public Request load(String url, String username, String password, boolean useCache, int maxSize,
+                        Callback<T> callback) {
+        Map<String, String> headers = new HashMap<String, String>();
+        if (username != null && username.length() > 0 && password != null && password.length() > 0) {
+            headers.put("Authorization", Credentials.basic(username, password));
+        }
+        final Request request = new Request(callback);
+        String sizedUrl = getSizedUrl(url, maxSize);
+        if (useCache) {
+            T cachedImage = cache.get(sizedUrl);
+            if (cachedImage != null) {
+                synchronized (this) {
+                    cacheHitCount++;
+                }
+                deliver(request, cachedImage);
+                return request;
+            }
+        }
+        String key = (useCache ? "" : "uncached ") + IconCache.getKey(sizedUrl) + " " + headers.get("Authorization");
+        final Job job;
+        synchronized (this) {
+            Job runningJob = jobs.get(key);
+            if (runningJob != null) {
+                runningJob.requests.add(request);
+                request.job = runningJob;
+                coalescedCount++;
+                return request;
+            }
+            job = new Job(key, url, headers, useCache, maxSize);
+            job.requests.add(request);
+            request.job = job;
+            jobs.put(key, job);
+        }
+        if (!useCache) {
+            enqueue(job);
+            return request;
+        }
+        decodeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (IconLoader.this) {
+                    if (job.requests.isEmpty()) {
+                        removeJob(job);
+                        return;
+                    }
+                }
+                byte[] data = cache.getData(job.url);
+                T image = data != null ? decode(job, data) : null;
+                if (image != null) {
+                    synchronized (IconLoader.this) {
+                        cacheHitCount++;
+                    }
+                    finish(job, image);
+                } else {
+                    enqueue(job);
+                }
+            }
+        });
+        return request;
+    }
+
+    private void enqueue(Job job) {
+        synchronized (this) {
+            // All requests may have been cancelled during the cache lookup
+            if (job.requests.isEmpty()) {
+                removeJob(job);
+                return;
+            }
+            queue.add(job);
+            peakQueueLength = Math.max(peakQueueLength, queue.size());
+        }
+        startRequests();
+    }
+
+    private void removeJob(Job job) {
+        if (jobs.get(job.key) == job) {
+            jobs.remove(job.key);
+        }
+    }
+
+    /**
+     * Decodes the data, unless an image decoded from equal data is in memory already.
+     * Icons of different states often are the same image.
+     */
+    private T decode(Job job, byte[] data) {
+        if (!job.useCache) {
+            // Not shared, so the requesting view may recycle it
+            return decoder.decode(job.url, data, job.maxSize);
+        }
+        String hash = IconCache.hash(data) + (job.maxSize > 0 ? "@" + job.maxSize : "");
+        T image = cache.getShared(hash);
+        if (image == null) {
+            image = decoder.decode(job.url, data, job.maxSize);
+        }
+        if (image != null) {
+            image = cache.put(job.getSizedUrl(), hash, image);
+        }
+        return image;
+    }
+
+    /**
+     * Url with the size it is decoded for, so images decoded smaller are kept apart
+     */
+    private static String getSizedUrl(String url, int maxSize) {
+        if (maxSize <= 0) {
+            return url;
+        }
+        return url + (url.indexOf('?') >= 0 ? "&" : "?") + "@size=" + maxSize;
+    }
+
+    /**
+     * Takes back an image which isn't shown anymore, only for images of requests which
+     * own their image
+     */
+    public void recycle(T image) {
+        decoder.recycle(image);
+    }
+
+    /**
+     * Delivers the image to all requests waiting for the job. Once it is in the cache, new
+     * requests for the image don't join the job anymore.
+     */
+    private void finish(Job job, T image) {
+        List<Request> requests;
+        synchronized (this) {
+            removeJob(job);
+            requests = new ArrayList<Request>(job.requests);
+            for (Request request : requests) {
+                request.job = null;
+                request.ownsImage = image != null && !job.useCache && requests.size() == 1;
+            }
+        }
+        for (Request request : requests) {
+            deliver(request, image);
+        }
+    }
+
+    private void onFetchDone() {
+        synchronized (this) {
+            activeCount--;
+        }
+        startRequests();
+    }
+
+    private void startRequests() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                if (activeCount >= maxRequests || queue.isEmpty()) {
+                    return;
+                }
+                job = queue.poll();
+                activeCount++;
+                peakActiveCount = Math.max(peakActiveCount, activeCount);
+            }
+            // Started outside the lock, as the fetcher may call back right away
+            fetcher.fetch(job.url, job.headers, job);
+        }
+    }
+
+    private void deliver(final Request request, final T image) {
+        synchronized (this) {
+            if (image != null) {
+                loadedCount++;
+                totalLoadTime += clock.now() - request.startTime;
+            } else {
+                failedCount++;
+            }
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (request.cancelled) {
+                    return;
+                }
+                if (image != null) {
+                    request.callback.onLoaded(image);
+                } else {
+                    request.callback.onFailed();
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetcher on one client for all downloads, rebuilt when the SSL settings change
+     */
+    private static class HttpFetcher implements Fetcher {
+        private final Context context;
+        private MyAsyncHttpClient client;
+        private boolean ignoreSSLHostname;
+        private boolean ignoreCertTrust;
+
+        HttpFetcher(Context context) {
+            this.context = context;
+        }
+
+        synchronized void update(SharedPreferences prefs) {
+            boolean sslHost = prefs.getBoolean(Constants.PREFERENCE_SSLHOST, false);
+            boolean sslCert = prefs.getBoolean(Constants.PREFERENCE_SSLCERT, false);
+            if (client == null || sslHost != ignoreSSLHostname || sslCert != ignoreCertTrust) {
+                ignoreSSLHostname = sslHost;
+                ignoreCertTrust = sslCert;
+                client = new MyAsyncHttpClient(context, sslHost, sslCert);
+                client.setTimeout(READ_TIMEOUT);
+            }
+        }
+
+        @Override
+        public void fetch(String url, Map<String, String> headers, final FetchCallback callback) {
+            MyAsyncHttpClient client;
+            synchronized (this) {
+                client = this.client;
+            }
+            client.get(url, headers, new MyHttpClient.ResponseHandler() {
+                @Override
+                public void onFailure(Call call, int statusCode, Headers headers, byte[] responseBody, Throwable error) {
+                    callback.onFailure(statusCode, error);
+                }
+
+                @Override
+                public void onSuccess(Call call, int statusCode, Headers headers, byte[] responseBody) {
+                    callback.onSuccess(responseBody);
+                }
+            });
+        }
+    }
+
+    /**
+     * Number of downloads waiting for a free slot
+     */
+    public synchronized int getQueueLength() {
+        return queue.size();
+    }
+
+    public synchronized int getPeakQueueLength() {
+        return peakQueueLength;
+    }
+
+    /**
+     * Number of downloads running
+     */
+    public synchronized int getActiveCount() {
+        return activeCount;
+    }
+
+    public synchronized int getPeakActiveCount() {
+        return peakActiveCount;
+    }
+
+    public synchronized int getLoadedCount() {
+        return loadedCount;
+    }
+
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized int getCacheHitCount() {
+        return cacheHitCount;
+    }
+
+    public synchronized int getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * Number of requests which joined a load already running for the same image
+     */
+    public synchronized int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * Average time in milliseconds from requesting an image until it was loaded
+     */
+    public synchronized long getAverageLoadTime() {
+        return loadedCount > 0 ? totalLoadTime / loadedCount : 0;
+    }
+}
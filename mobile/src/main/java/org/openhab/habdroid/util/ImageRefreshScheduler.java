@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class refreshes the images of Image and Chart widgets which have a refresh period set.
+ * All images share one timer on the main thread instead of a timer thread each. Images with
+ * the same period are refreshed together in one tick.
+ *
+ * An image is skipped in a tick while it isn't visible or while its previous refresh is
+ * still loading. No ticks run while the scheduler is paused, which it is as long as none of
+ * the widget lists showing the images is resumed.
+ */
+
+public class ImageRefreshScheduler {
+    private static final String TAG = ImageRefreshScheduler.class.getSimpleName();
+
+    public interface Target {
+        /**
+         * Whether the image is currently on screen
+         */
+        boolean isVisible();
+
+        /**
+         * Reloads the image and runs onComplete once it is loaded or failed to load
+         */
+        void refresh(Runnable onComplete);
+    }
+
+    private final Timer timer;
+    private final Map<Long, Tick> ticks = new HashMap<Long, Tick>();
+    private final Map<Target, Registration> registrations = new HashMap<Target, Registration>();
+    private int resumeCount = 0;
+    private int refreshCount = 0;
+    private int skippedInFlightCount = 0;
+    private int skippedInvisibleCount = 0;
+
+    private class Registration {
+        final Target target;
+        final long period;
+        boolean inFlight;
+        final Runnable onComplete = new Runnable() {
+            @Override
+            public void run() {
+                synchronized (ImageRefreshScheduler.this) {
+                    inFlight = false;
+                }
+            }
+        };
+
+        Registration(Target target, long period) {
+            this.target = target;
+            this.period = period;
+        }
+    }
+
+    private class Tick implements Runnable {
+        final long period;
+        final List<Registration> registrations = new ArrayList<Registration>();
+        boolean scheduled;
+
+        Tick(long period) {
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            onTick(this);
+        }
+    }
+
+    public ImageRefreshScheduler(Timer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Creates a scheduler which refreshes images on the main thread
+     */
+    public static ImageRefreshScheduler create() {
+        return new ImageRefreshScheduler(new MainThreadTimer());
+    }
+
+    /**
+     * Refreshes the target every period milliseconds, replacing a previous registration
+     * of the target
+     */
+    public synchronized void register(Target target, long period) {
+        Registration registration = registrations.get(target);
+        if (registration != null) {
+            if (registration.period == period) {
+                return;
+            }
+            unregister(target);
+        }
+        registration = new Registration(target, period);
+        registrations.put(target, registration);
+        Tick tick = ticks.get(period);
+        if (tick == null) {
+            tick = new Tick(period);
+            ticks.put(period, tick);
+        }
+        tick.registrations.add(registration);
+        scheduleTick(tick);
+    }
+
+    public synchronized void unregister(Target target) {
+        Registration registration = registrations.remove(target);
+        if (registration == null) {
+            return;
+        }
+        Tick tick = ticks.get(registration.period);
+        tick.registrations.remove(registration);
+        if (tick.registrations.isEmpty()) {
+            timer.cancel(tick);
+            ticks.remove(registration.period);
+        }
+    }
+
+    /**
+     * Called when a widget list showing refreshing images is resumed
+     */
+    public synchronized void resume() {
+        resumeCount++;
+        if (resumeCount == 1) {
+            Log.d(TAG, String.format("Resuming refresh of %d images", registrations.size()));
+            for (Tick tick : ticks.values()) {
+                scheduleTick(tick);
+            }
+        }
+    }
+
+    /**
+     * Called when a widget list showing refreshing images is paused. Refreshing stops
+     * until a widget list is resumed again.
+     */
+    public synchronized void pause() {
+        if (resumeCount == 0) {
+            return;
+        }
+        resumeCount--;
+        if (resumeCount == 0) {
+            Log.d(TAG, String.format("Pausing refresh of %d images", registrations.size()));
+            for (Tick tick : ticks.values()) {
+                timer.cancel(tick);
+                tick.scheduled = false;
+            }
+        }
+    }
+
+    private void scheduleTick(Tick tick) {
+        if (resumeCount > 0 && !tick.scheduled) {
+            tick.scheduled = true;
+            timer.schedule(tick, tick.period);
+        }
+    }
+
+    private void onTick(Tick tick) {
+        List<Registration> dueRegistrations = new ArrayList<Registration>();
+        synchronized (this) {
+            tick.scheduled = false;
+            if (resumeCount == 0 || ticks.get(tick.period) != tick) {
+                return;
+            }
+            for (int i = 0; i < tick.registrations.size(); i++) {
+                Registration registration = tick.registrations.get(i);
+                if (registration.inFlight) {
+                    skippedInFlightCount++;
+                } else if (!registration.target.isVisible()) {
+                    skippedInvisibleCount++;
+                } else {
+                    registration.inFlight = true;
+                    refreshCount++;
+                    dueRegistrations.add(registration);
+                }
+            }
+            scheduleTick(tick);
+        }
+        // Loads are started outside of the lock, other threads only need it to complete
+        for (int i = 0; i < dueRegistrations.size(); i++) {
+            Registration registration = dueRegistrations.get(i);
+            registration.target.refresh(registration.onComplete);
+        }
+    }
+
+    public synchronized boolean isPaused() {
+        return resumeCount == 0;
+    }
+
+    public synchronized int getRegisteredCount() {
+        return registrations.size();
+    }
+
+    /**
+     * Number of distinct refresh periods, which is the number of ticks scheduled while resumed
+     */
+    public synchronized int getTickCount() {
+        return ticks.size();
+    }
+
+    public synchronized int getRefreshCount() {
+        return refreshCount;
+    }
+
+    public synchronized int getSkippedInFlightCount() {
+        return skippedInFlightCount;
+    }
+
+    public synchronized int getSkippedInvisibleCount() {
+        return skippedInvisibleCount;
+    }
+}
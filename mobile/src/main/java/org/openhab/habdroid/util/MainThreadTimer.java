@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+/**
+ * This class is the timer used by the app wide schedulers and caches outside of tests. It
+ * runs the scheduled runnables on the main thread and tells the wall clock time.
+ */
+
+public class MainThreadTimer implements Timer {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public long now() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void schedule(Runnable runnable, long delayMillis) {
+        handler.postDelayed(runnable, delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable runnable) {
+        handler.removeCallbacks(runnable);
+    }
+}
@@ -18,9 +18,9 @@ import android.util.Log;
 import android.widget.ImageView;
 
 import java.io.IOException;
-import java.io.InputStream;
 
 import okhttp3.Authenticator;
+import okhttp3.Call;
 import okhttp3.Credentials;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
@@ -30,22 +30,19 @@ import okhttp3.Route;
 public class MjpegStreamer {
 
     private static final String TAG = MjpegStreamer.class.getSimpleName();
+    // Shares its connection pool and threads with the clients of all streamers
+    private static OkHttpClient sBaseClient;
     private String mSourceUrl;
-    private String mUsername;
-    private String mPassword;
-    private MjpegInputStream mInputStream;
-    private boolean mRunning = false;
+    private OkHttpClient mClient;
     private Handler mHandler;
     private Context mCtx;
-    private int mId;
     private ImageView mTargetImageView;
     private DownloadImageTask mDownloadImageTask;
 
     public MjpegStreamer(String sourceUrl, String username, String password, Context ctx){
         mSourceUrl = sourceUrl;
-        mUsername = username;
-        mPassword = password;
         mCtx = ctx;
+        mClient = createClient(username, password);
         mHandler = new Handler(new Handler.Callback() {
             @Override
             public boolean handleMessage(Message msg) {
@@ -57,48 +54,15 @@ public class MjpegStreamer {
         });
     }
 
-    public void start() {
-        mDownloadImageTask = startTask(this, 1, false, mHandler);
-    }
-
-    public void stop() {
-        if (mDownloadImageTask != null)
-            mDownloadImageTask.cancel(true);
-    }
-
-    public void setTargetImageView(ImageView targetImageView) {
-        mTargetImageView = targetImageView;
-    }
-
-    public void startStream(Handler handler, int id){
-        mHandler = handler;
-        mId = id;
-        mInputStream = new MjpegInputStream(httpRequest(mSourceUrl, mUsername, mPassword));
-        mRunning = true;
-    }
-
-    public void getFrame(){
-        Bitmap mBitmap;
-        try {
-            mBitmap = mInputStream.readMjpegFrame();
-            Message m = mHandler.obtainMessage(mId, mBitmap);
-            m.sendToTarget();
-        } catch (IOException e) {
-            e.printStackTrace();
+    private static synchronized OkHttpClient createClient(final String usr, final String pwd) {
+        if (sBaseClient == null) {
+            sBaseClient = new OkHttpClient();
         }
-    }
-
-    public InputStream httpRequest(String url, final String usr, final String pwd){
-        Request request = new Request.Builder()
-                .url(url)
-                .build();
-        OkHttpClient client = new OkHttpClient.Builder()
+        return sBaseClient.newBuilder()
                 .authenticator(new Authenticator() {
                     @Override
                     public Request authenticate(Route route, Response response) throws IOException {
-                        System.out.println("Authenticating for response: " + response);
-                        System.out.println("Challenges: " + response.challenges());
-                        // Get username/password from preferences
+                        Log.d(TAG, "Authenticating for response: " + response);
                         String credential = Credentials.basic(usr, pwd);
                         return response.request().newBuilder()
                                 .header("Authorization", credential)
@@ -106,50 +70,96 @@ public class MjpegStreamer {
                     }
                 })
                 .build();
+    }
 
-        try {
-            Log.d(TAG, "1. Sending http request");
-            Response response = client.newCall(request).execute();
-            Log.d(TAG, "2. Request finished, status = " + response.code());
-            if (response.code()==401){
-                //You must turn off camera User Access Control before this will work
-                return null;
-            }
-            return response.body().byteStream();
-        } catch (IOException e) {
-            e.printStackTrace();
-            Log.d(TAG, "Request failed-IOException", e);
-            //Error connecting to camera
-        }
-
-        return null;
-
+    public void start() {
+        stop();
+        // Every stream gets its own thread, streams must not wait for each other
+        mDownloadImageTask = new DownloadImageTask(1);
+        mDownloadImageTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, mHandler);
     }
 
-    private DownloadImageTask startTask(MjpegStreamer cam, int id, boolean useParallelExecution, Handler h) {
-        DownloadImageTask task = new DownloadImageTask(cam, id);
-        if (useParallelExecution) {
-            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
-        } else {
-            task.execute(h);
+    /**
+     * Stops reading frames and closes the connection of the stream
+     */
+    public void stop() {
+        if (mDownloadImageTask != null) {
+            mDownloadImageTask.close();
+            mDownloadImageTask = null;
         }
-        return task;
+    }
+
+    public void setTargetImageView(ImageView targetImageView) {
+        mTargetImageView = targetImageView;
     }
 
     private class DownloadImageTask extends AsyncTask<Handler, Void, Void> {
-        MjpegStreamer cam;
-        int id;
-        DownloadImageTask(MjpegStreamer cam, int id){
-            this.cam = cam;
-            this.id = id;
+        private final int mId;
+        private Call mCall;
+        private MjpegInputStream mInputStream;
+
+        DownloadImageTask(int id) {
+            mId = id;
         }
 
+        /**
+         * Cancels the task and its request. A frame which is being read fails with an
+         * IOException then, so the input stream is closed on the task's thread.
+         */
+        synchronized void close() {
+            cancel(true);
+            if (mCall != null) {
+                mCall.cancel();
+            }
+        }
+
+        @Override
         protected Void doInBackground(Handler... h) {
-            cam.startStream(h[0], id);
-            while (!isCancelled()) {
-                cam.getFrame();
+            Request request = new Request.Builder()
+                    .url(mSourceUrl)
+                    .build();
+            synchronized (this) {
+                if (isCancelled()) {
+                    return null;
+                }
+                mCall = mClient.newCall(request);
+            }
+            try {
+                Log.d(TAG, "1. Sending http request");
+                Response response = mCall.execute();
+                Log.d(TAG, "2. Request finished, status = " + response.code());
+                if (response.code() == 401) {
+                    //You must turn off camera User Access Control before this will work
+                    response.close();
+                    return null;
+                }
+                mInputStream = new MjpegInputStream(response.body().byteStream());
+                while (!isCancelled()) {
+                    Bitmap bitmap = mInputStream.readMjpegFrame();
+                    Message m = h[0].obtainMessage(mId, bitmap);
+                    m.sendToTarget();
+                }
+            } catch (IOException e) {
+                if (!isCancelled()) {
+                    Log.d(TAG, "Request failed-IOException", e);
+                    //Error connecting to camera
+                }
+            } finally {
+                closeInputStream();
             }
             return null;
         }
+
+        private void closeInputStream() {
+            if (mInputStream == null) {
+                return;
+            }
+            try {
+                mInputStream.close();
+            } catch (IOException e) {
+                // ignore
+            }
+            mInputStream = null;
+        }
     }
-}
\ No newline at end of file
+}
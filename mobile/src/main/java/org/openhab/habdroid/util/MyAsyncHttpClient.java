@@ -14,6 +14,7 @@ import android.os.Handler;
 import android.os.Looper;
 
 import java.io.IOException;
+import java.net.HttpURLConnection;
 import java.util.Map;
 
 import okhttp3.Call;
@@ -30,7 +31,7 @@ public class MyAsyncHttpClient extends MyHttpClient<Call> {
         clientSSLSetup(ctx, ignoreSSLHostname, ignoreCertTrust);
 	}
 
-    protected Call method(String url, String method, Map<String, String> addHeaders, String
+    protected Call method(final String url, String method, Map<String, String> addHeaders, String
             requestBody, String mediaType, final MyHttpClient.ResponseHandler responseHandler) {
         Request.Builder requestBuilder = new Request.Builder();
         requestBuilder.url(url);
@@ -45,6 +46,11 @@ public class MyAsyncHttpClient extends MyHttpClient<Call> {
         if (requestBody != null) {
             requestBuilder.method(method, RequestBody.create(MediaType.parse(mediaType), requestBody));
         }
+        final HttpValidatorStore store = getValidatorStore(url, method, requestBody);
+        final String authorization = headers.get("Authorization");
+        if (store != null) {
+            store.addValidators(url, authorization, requestBuilder);
+        }
         Call call = client.newCall(requestBuilder.build());
         call.enqueue(new Callback() {
             @Override
@@ -60,9 +66,18 @@ public class MyAsyncHttpClient extends MyHttpClient<Call> {
             @Override
             public void onResponse(final Call call, Response response) throws IOException {
                 final int code = response.code();
-                final byte[] body = response.body().bytes();
-                final boolean success = response.isSuccessful();
+                byte[] responseBody = response.body().bytes();
+                boolean isSuccessful = response.isSuccessful();
                 final Headers headers = response.headers();
+                if (store != null) {
+                    byte[] storedBody = store.onResponse(url, authorization, code, headers, responseBody);
+                    if (code == HttpURLConnection.HTTP_NOT_MODIFIED && storedBody != null) {
+                        responseBody = storedBody;
+                        isSuccessful = true;
+                    }
+                }
+                final byte[] body = responseBody;
+                final boolean success = isSuccessful;
                 final String message = response.message();
                 runOnUiThread(new Runnable() {
                     @Override
@@ -50,6 +50,7 @@ public abstract class MyHttpClient<T> {
     protected Map<String, String> headers = new HashMap<String, String>();
     protected OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder();
     protected OkHttpClient client = clientBuilder.build();
+    protected HttpValidatorStore validatorStore;
 
     protected void clientSSLSetup(Context ctx, Boolean ignoreSSLHostname, Boolean ignoreCertTrust) {
         if (ignoreSSLHostname) {
@@ -127,6 +128,59 @@ public abstract class MyHttpClient<T> {
         headers.put(key, value);
     }
 
+    /**
+     * Sends GET requests as conditional requests based on the validators kept in the given
+     * store. Responses with 304 Not Modified are passed to the handler as success with
+     * the stored body and the original 304 status code.
+     */
+    public void setValidatorStore(HttpValidatorStore validatorStore) {
+        this.validatorStore = validatorStore;
+    }
+
+    public HttpValidatorStore getValidatorStore() {
+        return validatorStore;
+    }
+
+    /**
+     * Returns the validator store if the request is a GET request of an URL it handles
+     */
+    protected HttpValidatorStore getValidatorStore(String url, String method, String requestBody) {
+        if (validatorStore == null || requestBody != null || !method.equals("GET")
+                || !HttpValidatorStore.handles(url)) {
+            return null;
+        }
+        return validatorStore;
+    }
+
+    /**
+     * Returns the model attached to the stored response of the URL for the login of this
+     * client, or null
+     */
+    public Object getStoredModel(String url) {
+        return validatorStore != null ? validatorStore.getModel(url, headers.get("Authorization")) : null;
+    }
+
+    /**
+     * Attaches a model parsed from the current response of the URL for the login of this client
+     */
+    public void putStoredModel(String url, Object model) {
+        if (validatorStore != null) {
+            validatorStore.putModel(url, headers.get("Authorization"), model);
+        }
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the underlying client with the SSL setup applied, so that clients with
+     * different timeouts can be derived from it which share its connection pool.
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
     public T get(String url, ResponseHandler responseHandler) {
         return method(url, "GET", null, null, null, responseHandler);
     }
@@ -10,44 +10,30 @@
 package org.openhab.habdroid.util;
 
 import android.content.Context;
-import android.os.Handler;
-import android.os.Message;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.util.AttributeSet;
+import android.util.DisplayMetrics;
 import android.util.Log;
+import android.view.ViewGroup;
+import android.widget.ImageView;
 
-import com.loopj.android.image.SmartImageView;
-
-import java.lang.ref.WeakReference;
-import java.util.Timer;
-import java.util.TimerTask;
-
-public class MySmartImageView extends SmartImageView {
+public class MySmartImageView extends ImageView implements ImageRefreshScheduler.Target {
 
     public static final String TAG = MySmartImageView.class.getSimpleName();
 
-    // Handler classes should be static or leaks might occur.
-    private static class RefreshHandler extends Handler {
-
-        private final WeakReference<MySmartImageView> viewWeakReference;
-
-        RefreshHandler(MySmartImageView smartImageView) {
-            viewWeakReference = new WeakReference<>(smartImageView);
-        }
-
-        public void handleMessage(Message msg) {
-            MySmartImageView imageView = viewWeakReference.get();
-            if (imageView != null) {
-                Log.i(TAG, "Refreshing image at " + imageView.myImageUrl);
-                imageView.setImage(new MyWebImage(imageView.myImageUrl, false, imageView.username, imageView.password));
-            }
-        }
-    }
-
     private String myImageUrl;
     private String username;
     private String password;
 
-    private Timer imageRefreshTimer;
+    private ImageRefreshScheduler refreshScheduler;
+    private int refreshRate;
+    private final Rect visibleRect = new Rect();
+    private IconLoader<Bitmap>.Request currentRequest;
+    // Completion of a refresh, which has to run even if the load is cancelled
+    private Runnable pendingOnComplete;
+    // Image decoded for this view only, recycled once it is replaced
+    private Bitmap ownedBitmap;
 
     public MySmartImageView(Context context) {
         super(context);
@@ -62,54 +48,167 @@ public class MySmartImageView extends SmartImageView {
     }
 
     public void setImageUrl(String url, String username, String password) {
-        this.myImageUrl = url;
-        this.username = username;
-        this.password = password;
-        setImage(new MyWebImage(url, username, password));
+        setImageUrl(url, true, username, password);
     }
 
     public void setImageUrl(String url, final Integer fallbackResource, String username, String password) {
-        this.myImageUrl = url;
-        this.username = username;
-        this.password = password;
-        setImage(new MyWebImage(url, username, password), fallbackResource, null);
+        setImageUrl(url, fallbackResource, null, username, password);
     }
 
     public void setImageUrl(String url, final Integer fallbackResource, final Integer loadingResource, String username, String password) {
         this.myImageUrl = url;
         this.username = username;
         this.password = password;
-        setImage(new MyWebImage(url, username, password), fallbackResource, loadingResource);
+        loadImage(true, fallbackResource, loadingResource, null);
     }
 
     public void setImageUrl(String url, boolean useImageCache, String username, String password) {
         this.myImageUrl = url;
         this.username = username;
         this.password = password;
-        setImage(new MyWebImage(url, useImageCache, username, password));
+        loadImage(useImageCache, null, null, null);
     }
 
-    public void setRefreshRate(int msec) {
-        Log.i(TAG, "Setting image refresh rate to " + msec + " msec for " + myImageUrl);
-        if (this.imageRefreshTimer != null) {
-            this.imageRefreshTimer.cancel();
+    /**
+     * Starts loading the image url through the shared icon loader. The view keeps showing
+     * its current image, or the loading resource if given, until the image is loaded.
+     */
+    private void loadImage(boolean useCache, final Integer fallbackResource, Integer loadingResource,
+                           Runnable onComplete) {
+        cancelLoad();
+        if (loadingResource != null) {
+            showResource(loadingResource);
+        }
+        if (myImageUrl == null) {
+            if (fallbackResource != null) {
+                showResource(fallbackResource);
+            }
+            if (onComplete != null) {
+                onComplete.run();
+            }
+            return;
         }
+        pendingOnComplete = onComplete;
+        currentRequest = IconLoader.getInstance(getContext()).load(myImageUrl, username, password,
+                useCache, getMaxImageSize(), new IconLoader.Callback<Bitmap>() {
+                    @Override
+                    public void onLoaded(Bitmap image) {
+                        boolean ownsImage = currentRequest != null && currentRequest.ownsImage();
+                        currentRequest = null;
+                        showBitmap(image, ownsImage);
+                        runPendingOnComplete();
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        currentRequest = null;
+                        if (fallbackResource != null) {
+                            showResource(fallbackResource);
+                        }
+                        runPendingOnComplete();
+                    }
+                });
+    }
 
-        this.imageRefreshTimer = new Timer();
-        final Handler timerHandler = new RefreshHandler(this);
+    /**
+     * Size in pixels the image is decoded for: the size of the view if it is fixed in the
+     * layout, otherwise the larger screen dimension. It doesn't depend on whether the view
+     * is laid out yet or on the orientation, so it stays the same for each load.
+     */
+    private int getMaxImageSize() {
+        ViewGroup.LayoutParams params = getLayoutParams();
+        if (params != null && params.width > 0 && params.height > 0) {
+            return Math.max(params.width, params.height);
+        }
+        DisplayMetrics metrics = getResources().getDisplayMetrics();
+        return Math.max(metrics.widthPixels, metrics.heightPixels);
+    }
 
-        imageRefreshTimer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                timerHandler.sendEmptyMessage(0);
-            }
-        }, msec, msec);
+    private void showBitmap(Bitmap image, boolean owned) {
+        Bitmap previous = ownedBitmap;
+        setImageBitmap(image);
+        ownedBitmap = owned ? image : null;
+        if (previous != null && previous != image) {
+            IconLoader.getInstance(getContext()).recycle(previous);
+        }
+    }
+
+    private void showResource(int resource) {
+        Bitmap previous = ownedBitmap;
+        setImageResource(resource);
+        ownedBitmap = null;
+        if (previous != null) {
+            IconLoader.getInstance(getContext()).recycle(previous);
+        }
+    }
+
+    private void cancelLoad() {
+        if (currentRequest != null) {
+            currentRequest.cancel();
+            currentRequest = null;
+        }
+        runPendingOnComplete();
+    }
+
+    private void runPendingOnComplete() {
+        if (pendingOnComplete != null) {
+            Runnable onComplete = pendingOnComplete;
+            pendingOnComplete = null;
+            onComplete.run();
+        }
+    }
+
+    /**
+     * Reloads the image every msec milliseconds through the given scheduler while the
+     * view is attached to a window
+     */
+    public void setRefreshRate(ImageRefreshScheduler scheduler, int msec) {
+        Log.i(TAG, "Setting image refresh rate to " + msec + " msec for " + myImageUrl);
+        cancelRefresh();
+        this.refreshScheduler = scheduler;
+        this.refreshRate = msec;
+        if (scheduler != null && getWindowToken() != null) {
+            scheduler.register(this, msec);
+        }
     }
 
     public void cancelRefresh() {
-        Log.i(TAG, "Cancel image Refresh for " + myImageUrl);
-        if (this.imageRefreshTimer != null) {
-            this.imageRefreshTimer.cancel();
+        if (this.refreshScheduler != null) {
+            Log.i(TAG, "Cancel image Refresh for " + myImageUrl);
+            this.refreshScheduler.unregister(this);
+            this.refreshScheduler = null;
         }
+        this.refreshRate = 0;
+    }
+
+    public int getRefreshRate() {
+        return refreshRate;
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (refreshScheduler != null) {
+            refreshScheduler.register(this, refreshRate);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (refreshScheduler != null) {
+            refreshScheduler.unregister(this);
+        }
+    }
+
+    @Override
+    public boolean isVisible() {
+        return isShown() && getGlobalVisibleRect(visibleRect);
+    }
+
+    @Override
+    public void refresh(Runnable onComplete) {
+        Log.i(TAG, "Refreshing image at " + myImageUrl);
+        loadImage(false, null, null, onComplete);
     }
 }
@@ -16,6 +16,7 @@ import android.support.annotation.NonNull;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
 import java.util.Map;
 
 import okhttp3.Call;
@@ -47,15 +48,30 @@ public class MySyncHttpClient extends MyHttpClient<Response> {
         if (requestBody != null) {
             requestBuilder.method(method, RequestBody.create(MediaType.parse(mediaType), requestBody));
         }
+        HttpValidatorStore store = getValidatorStore(url, method, requestBody);
+        String authorization = headers.get("Authorization");
+        if (store != null) {
+            store.addValidators(url, authorization, requestBuilder);
+        }
         Request request = requestBuilder.build();
         Call call = client.newCall(request);
         try {
             Response resp = call.execute();
-            if (resp.isSuccessful()) {
-                responseHandler.onSuccess(call, resp.code(), resp.headers(), resp.body().bytes());
+            int code = resp.code();
+            byte[] body = resp.body().bytes();
+            boolean success = resp.isSuccessful();
+            if (store != null) {
+                byte[] storedBody = store.onResponse(url, authorization, code, resp.headers(), body);
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED && storedBody != null) {
+                    body = storedBody;
+                    success = true;
+                }
+            }
+            if (success) {
+                responseHandler.onSuccess(call, code, resp.headers(), body);
             } else {
-                responseHandler.onFailure(call, resp.code(), resp.headers(), resp.body().bytes(),
-                        new IOException(resp.code() + ": " + resp.message()));
+                responseHandler.onFailure(call, code, resp.headers(), body,
+                        new IOException(code + ": " + resp.message()));
             }
             return resp;
         } catch(IOException ex) {
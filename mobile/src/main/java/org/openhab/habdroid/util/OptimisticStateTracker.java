@@ -0,0 +1,298 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.util.Log;
+
+import org.openhab.habdroid.model.OpenHABItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class shows the state an item is expected to have after a command right away, instead
+ * of waiting for the server to report it. The expected state is kept until the server reports
+ * it too. If the server doesn't within a timeout, or the command fails, the item is rolled
+ * back to the last state reported by the server.
+ *
+ * States the server reports while a command is pending are assumed to be older than the
+ * command, so they don't replace the expected state before the timeout.
+ */
+
+public class OptimisticStateTracker {
+    private static final String TAG = OptimisticStateTracker.class.getSimpleName();
+    public static final long DEFAULT_TIMEOUT = 10 * 1000;
+
+    public interface Listener {
+        /**
+         * Called when the tracker changed the state of the item, either to the expected
+         * state or back to the server state
+         */
+        void onItemStateChanged(OpenHABItem item);
+    }
+
+    private class PendingState implements Runnable {
+        final String itemName;
+        final String previousState;
+        OpenHABItem item;
+        String url;
+        String expectedState;
+        String serverState;
+        boolean serverStateReceived;
+
+        PendingState(OpenHABItem item) {
+            this.itemName = item.getName();
+            this.previousState = item.getState();
+        }
+
+        @Override
+        public void run() {
+            synchronized (OptimisticStateTracker.this) {
+                if (pendingStates.get(itemName) == this) {
+                    Log.d(TAG, "No state confirmation for " + itemName + ", rolling back");
+                    timeoutCount++;
+                    rollback(this);
+                }
+            }
+        }
+    }
+
+    private final long timeout;
+    private final Timer timer;
+    private final Map<String, PendingState> pendingStates = new HashMap<String, PendingState>();
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private int confirmedCount = 0;
+    private int timeoutCount = 0;
+    private int failedCount = 0;
+
+    public OptimisticStateTracker(long timeout, Timer timer) {
+        this.timeout = timeout;
+        this.timer = timer;
+    }
+
+    /**
+     * Creates a tracker with the default timeout which rolls back on the main thread
+     */
+    public static OptimisticStateTracker create() {
+        return new OptimisticStateTracker(DEFAULT_TIMEOUT, new MainThreadTimer());
+    }
+
+    public synchronized void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public synchronized void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the state the item will have after the command. Returns false if that state
+     * can't be known in advance, e.g. for INCREASE, UP or a Dimmer ON, the item is left
+     * unchanged then.
+     */
+    public synchronized boolean apply(OpenHABItem item, String command) {
+        String expectedState = getExpectedState(item, command);
+        if (expectedState == null || item.getName() == null) {
+            return false;
+        }
+        PendingState pendingState = pendingStates.get(item.getName());
+        if (pendingState == null) {
+            pendingState = new PendingState(item);
+            pendingStates.put(item.getName(), pendingState);
+        } else {
+            timer.cancel(pendingState);
+        }
+        pendingState.item = item;
+        pendingState.url = item.getLink();
+        pendingState.expectedState = expectedState;
+        timer.schedule(pendingState, timeout);
+        item.setState(expectedState);
+        notifyListeners(item);
+        return true;
+    }
+
+    /**
+     * Keeps the expected state of the item the command was posted to until the command is
+     * delivered, as it is waiting for a retry and can't be confirmed before
+     */
+    public synchronized void onCommandDeferred(String url) {
+        PendingState pendingState = findPendingState(url);
+        if (pendingState != null) {
+            timer.cancel(pendingState);
+        }
+    }
+
+    /**
+     * Starts waiting for the confirmation of the item the command was posted to again,
+     * the server reports the new state within the timeout from now on
+     */
+    public synchronized void onCommandDelivered(String url) {
+        PendingState pendingState = findPendingState(url);
+        if (pendingState != null) {
+            timer.cancel(pendingState);
+            timer.schedule(pendingState, timeout);
+        }
+    }
+
+    /**
+     * Rolls back the item the failed command was posted to
+     */
+    public synchronized void onCommandFailed(String url) {
+        PendingState pendingState = findPendingState(url);
+        if (pendingState != null) {
+            failedCount++;
+            rollback(pendingState);
+        }
+    }
+
+    private PendingState findPendingState(String url) {
+        for (PendingState pendingState : pendingStates.values()) {
+            if (url != null && url.equals(pendingState.url)) {
+                return pendingState;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reconciles the state the server reported for the item with a pending expected state.
+     * The item is given the expected state again if the server didn't report it yet. The
+     * item replaces the pending item, so later rollbacks are applied to it.
+     *
+     * @return  true if the state of the item was changed
+     */
+    public synchronized boolean reconcile(OpenHABItem item) {
+        PendingState pendingState = item.getName() != null ? pendingStates.get(item.getName()) : null;
+        if (pendingState == null) {
+            return false;
+        }
+        String serverState = item.getState();
+        if (isSameState(pendingState.expectedState, serverState)) {
+            timer.cancel(pendingState);
+            pendingStates.remove(pendingState.itemName);
+            confirmedCount++;
+            return false;
+        }
+        pendingState.item = item;
+        pendingState.serverState = serverState;
+        pendingState.serverStateReceived = true;
+        item.setState(pendingState.expectedState);
+        return true;
+    }
+
+    private void rollback(PendingState pendingState) {
+        timer.cancel(pendingState);
+        pendingStates.remove(pendingState.itemName);
+        String state = pendingState.serverStateReceived ? pendingState.serverState : pendingState.previousState;
+        pendingState.item.setState(state);
+        notifyListeners(pendingState.item);
+    }
+
+    private void notifyListeners(OpenHABItem item) {
+        for (int i = 0; i < listeners.size(); i++) {
+            listeners.get(i).onItemStateChanged(item);
+        }
+    }
+
+    /**
+     * State an item of the given type reports after receiving the command, or null if
+     * it can't be told without the server
+     */
+    static String getExpectedState(OpenHABItem item, String command) {
+        String type = item.getType();
+        if (type == null || command == null) {
+            return null;
+        }
+        if (type.startsWith("Group") && item.getGroupType() != null) {
+            type = item.getGroupType();
+        }
+        // openHAB 1 item types end with Item
+        if (type.endsWith("Item")) {
+            type = type.substring(0, type.length() - 4);
+        }
+        switch (type) {
+            case "Switch":
+                return "ON".equals(command) || "OFF".equals(command) ? command : null;
+            case "Dimmer":
+                // Dimmers may restore their last level on ON
+                if ("OFF".equals(command)) {
+                    return "0";
+                }
+                return isNumber(command) ? command : null;
+            case "Rollershutter":
+                // UP and DOWN only start moving the shutter, it reports its position on the way
+                return isNumber(command) ? command : null;
+            case "Number":
+                return isNumber(command) ? command : null;
+            case "Color":
+                return command.split(",").length == 3 ? command : null;
+            case "String":
+                return command;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Compares numbers by value, as the server may format them differently than the command.
+     * Color states are compared by their hue, saturation and brightness components.
+     */
+    static boolean isSameState(String expectedState, String serverState) {
+        if (expectedState.equals(serverState)) {
+            return true;
+        }
+        if (serverState == null) {
+            return false;
+        }
+        String[] expectedComponents = expectedState.split(",");
+        String[] serverComponents = serverState.split(",");
+        if (expectedComponents.length != serverComponents.length) {
+            return false;
+        }
+        for (int i = 0; i < expectedComponents.length; i++) {
+            String expected = expectedComponents[i].trim();
+            String server = serverComponents[i].trim();
+            if (!isNumber(expected) || !isNumber(server)
+                    || Float.parseFloat(expected) != Float.parseFloat(server)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNumber(String command) {
+        try {
+            Float.parseFloat(command);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingStates.size();
+    }
+
+    public synchronized int getConfirmedCount() {
+        return confirmedCount;
+    }
+
+    public synchronized int getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class keeps the last successfully parsed response of sitemap pages and sitemap lists
+ * on disk, so they can be shown immediately after a cold start while fresh data is loaded.
+ *
+ * Entries are keyed by the absolute URL, which includes the server's base URL, so
+ * different servers never share entries. Each entry is stored in a small binary file
+ * holding the openHAB version, the time it was saved and the deflated response body.
+ * The least recently used entries are removed once the cache exceeds its maximum size.
+ */
+
+public class PageCache {
+    private static final String TAG = PageCache.class.getSimpleName();
+    private static final int MAGIC = 0x4F484350;
+    private static final int FORMAT_VERSION = 1;
+    public static final long DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+
+    public interface Callback {
+        /**
+         * @param entry the cached entry, or null if the URL isn't cached
+         */
+        void onEntryLoaded(Entry entry);
+    }
+
+    public static class Entry {
+        private final String url;
+        private final int openHABVersion;
+        private final long savedAt;
+        private final byte[] responseBody;
+
+        Entry(String url, int openHABVersion, long savedAt, byte[] responseBody) {
+            this.url = url;
+            this.openHABVersion = openHABVersion;
+            this.savedAt = savedAt;
+            this.responseBody = responseBody;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getOpenHABVersion() {
+            return openHABVersion;
+        }
+
+        public long getSavedAt() {
+            return savedAt;
+        }
+
+        public byte[] getResponseBody() {
+            return responseBody;
+        }
+    }
+
+    private final File directory;
+    private final long maxSize;
+    private final Executor ioExecutor;
+    private final Executor callbackExecutor;
+    // File name -> file size, in access order
+    private LinkedHashMap<String, Long> entries;
+    private long size = 0;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    public PageCache(File directory, long maxSize, Executor ioExecutor, Executor callbackExecutor) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        this.ioExecutor = ioExecutor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Creates a cache in the app's cache directory which does its disk access on a
+     * background thread and delivers entries on the main thread
+     */
+    public static PageCache create(Context context) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new PageCache(new File(context.getCacheDir(), "pages"), DEFAULT_MAX_SIZE,
+                Executors.newSingleThreadExecutor(), new Executor() {
+                    @Override
+                    public void execute(Runnable runnable) {
+                        handler.post(runnable);
+                    }
+                });
+    }
+
+    /**
+     * Loads the cached response of the given URL. The callback receives null if there
+     * is no usable entry.
+     */
+    public void get(final String url, final Callback callback) {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Entry entry = read(url);
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onEntryLoaded(entry);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Stores the response of the given URL, replacing any earlier entry
+     */
+    public void put(final String url, final int openHABVersion, final byte[] responseBody) {
+        final long savedAt = System.currentTimeMillis();
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                write(new Entry(url, openHABVersion, savedAt, responseBody));
+            }
+        });
+    }
+
+    public void clear() {
+        ioExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (PageCache.this) {
+                    loadEntries();
+                    for (String fileName : entries.keySet()) {
+                        new File(directory, fileName).delete();
+                    }
+                    entries.clear();
+                    size = 0;
+                }
+            }
+        });
+    }
+
+    private synchronized Entry read(String url) {
+        loadEntries();
+        String fileName = getFileName(url);
+        if (entries.get(fileName) == null) {
+            missCount++;
+            return null;
+        }
+        File file = new File(directory, fileName);
+        Entry entry = null;
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (in.readInt() == MAGIC && in.readByte() == FORMAT_VERSION) {
+                int openHABVersion = in.readInt();
+                long savedAt = in.readLong();
+                String entryUrl = in.readUTF();
+                int length = in.readInt();
+                byte[] body = readFully(new InflaterInputStream(in), length);
+                // Guard against hash collisions
+                if (entryUrl.equals(url)) {
+                    entry = new Entry(entryUrl, openHABVersion, savedAt, body);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read cached page " + url, e);
+        } finally {
+            closeQuietly(in);
+        }
+        if (entry == null) {
+            remove(fileName);
+            missCount++;
+            return null;
+        }
+        // Keep the access order across restarts
+        file.setLastModified(System.currentTimeMillis());
+        hitCount++;
+        return entry;
+    }
+
+    private synchronized void write(Entry entry) {
+        loadEntries();
+        String fileName = getFileName(entry.getUrl());
+        File file = new File(directory, fileName);
+        File tempFile = new File(directory, fileName + ".tmp");
+        DataOutputStream out = null;
+        try {
+            directory.mkdirs();
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(MAGIC);
+            out.writeByte(FORMAT_VERSION);
+            out.writeInt(entry.getOpenHABVersion());
+            out.writeLong(entry.getSavedAt());
+            out.writeUTF(entry.getUrl());
+            out.writeInt(entry.getResponseBody().length);
+            DeflaterOutputStream deflater = new DeflaterOutputStream(out);
+            deflater.write(entry.getResponseBody());
+            deflater.finish();
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Can't rename " + tempFile);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to cache page " + entry.getUrl(), e);
+            closeQuietly(out);
+            tempFile.delete();
+            remove(fileName);
+            return;
+        }
+        Long oldSize = entries.put(fileName, file.length());
+        size += file.length() - (oldSize != null ? oldSize : 0);
+        trimToSize();
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            iterator.remove();
+            Log.d(TAG, "Evicted " + eldest.getKey());
+        }
+    }
+
+    private void remove(String fileName) {
+        new File(directory, fileName).delete();
+        Long oldSize = entries.remove(fileName);
+        if (oldSize != null) {
+            size -= oldSize;
+        }
+    }
+
+    /**
+     * Reads the existing entries on first use, ordered by their last access
+     */
+    private void loadEntries() {
+        if (entries != null) {
+            return;
+        }
+        entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File first, File second) {
+                long diff = first.lastModified() - second.lastModified();
+                return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+                continue;
+            }
+            entries.put(file.getName(), file.length());
+            size += file.length();
+        }
+    }
+
+    static String getFileName(String url) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(url.getBytes("UTF-8"));
+            StringBuilder fileName = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                fileName.append(String.format("%02x", b & 0xff));
+            }
+            return fileName.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            // Both are guaranteed to be available
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        if (out.size() != length) {
+            throw new IOException("Truncated cache entry");
+        }
+        return out.toByteArray();
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Size of all entries on disk in bytes
+     */
+    public synchronized long getSize() {
+        loadEntries();
+        return size;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.util.Log;
+
+import org.openhab.habdroid.model.OpenHABWidget;
+import org.openhab.habdroid.model.OpenHABWidgetDataSource;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * This class loads the pages linked from a displayed sitemap page in the background and keeps
+ * them in memory for a short time, so navigating to one of them can show it immediately.
+ *
+ * Only a few prefetch requests run at the same time, on low priority threads. On metered
+ * networks only the first linked pages are prefetched.
+ */
+
+public class PagePrefetcher {
+    private static final String TAG = PagePrefetcher.class.getSimpleName();
+    public static final int DEFAULT_MAX_REQUESTS = 2;
+    public static final int DEFAULT_MAX_ENTRIES = 20;
+    public static final long DEFAULT_MAX_AGE = 60 * 1000;
+    // Linked pages prefetched per page
+    private static final int MAX_PAGES = 10;
+    private static final int MAX_PAGES_METERED = 2;
+
+    private static class Entry {
+        final byte[] responseBody;
+        final long fetchedAt;
+
+        Entry(byte[] responseBody, long fetchedAt) {
+            this.responseBody = responseBody;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private final OkHttpClient client;
+    private final Map<String, String> headers;
+    private final int maxEntries;
+    private final long maxAge;
+    private final LinkedHashMap<String, Entry> pages = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private final Map<String, Call> runningCalls = new HashMap<String, Call>();
+    private int hitCount = 0;
+    private int missCount = 0;
+    private int fetchCount = 0;
+
+    /**
+     * @param client  client whose SSL setup and connection pool is used for prefetching
+     * @param headers  headers added to every request, e.g. for authentication
+     * @param maxRequests  maximum number of prefetch requests running at the same time
+     * @param maxEntries  maximum number of pages kept in memory
+     * @param maxAge  time in milliseconds a prefetched page may be shown after it was loaded
+     */
+    public PagePrefetcher(OkHttpClient client, Map<String, String> headers, int maxRequests,
+                          int maxEntries, long maxAge) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60,
+                TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        // An own dispatcher keeps prefetching from delaying requests the user is waiting for
+        Dispatcher dispatcher = new Dispatcher(executor);
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+        this.client = client.newBuilder().dispatcher(dispatcher).build();
+        this.headers = new HashMap<String, String>(headers);
+        this.maxEntries = maxEntries;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Creates a prefetcher with default limits which uses the setup of the given client
+     */
+    public static PagePrefetcher create(MyHttpClient<?> httpClient) {
+        return new PagePrefetcher(httpClient.getClient(), httpClient.getHeaders(),
+                DEFAULT_MAX_REQUESTS, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * Starts loading the pages linked from the given page which aren't in memory already
+     *
+     * @param dataSource  the loaded page
+     * @param openHABVersion  version of the server the page was loaded from
+     * @param metered  whether the active network is metered
+     */
+    public void prefetch(OpenHABWidgetDataSource dataSource, int openHABVersion, boolean metered) {
+        List<String> pageUrls = new ArrayList<String>();
+        for (OpenHABWidget widget : dataSource.getLinkWidgetList()) {
+            if (!widget.hasLinkedPage()) {
+                continue;
+            }
+            String pageUrl = widget.getLinkedPage().getLink();
+            if (pageUrl != null && !pageUrls.contains(pageUrl)) {
+                pageUrls.add(pageUrl);
+            }
+        }
+        int limit = Math.min(pageUrls.size(), metered ? MAX_PAGES_METERED : MAX_PAGES);
+        for (int i = 0; i < limit; i++) {
+            prefetch(pageUrls.get(i), openHABVersion);
+        }
+    }
+
+    private synchronized void prefetch(final String pageUrl, int openHABVersion) {
+        Entry entry = pages.get(pageUrl);
+        if (runningCalls.containsKey(pageUrl) || (entry != null && !isExpired(entry))) {
+            return;
+        }
+        Request.Builder requestBuilder = new Request.Builder().url(pageUrl);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            requestBuilder.header(header.getKey(), header.getValue());
+        }
+        if (openHABVersion == 1) {
+            requestBuilder.header("Accept", "application/xml");
+        }
+        Call call = client.newCall(requestBuilder.build());
+        runningCalls.put(pageUrl, call);
+        fetchCount++;
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                Log.d(TAG, "Prefetching " + pageUrl + " failed: " + e.getMessage());
+                finish(pageUrl, null);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                byte[] responseBody = null;
+                try {
+                    if (response.isSuccessful()) {
+                        responseBody = response.body().bytes();
+                    } else {
+                        Log.d(TAG, "Prefetching " + pageUrl + " failed with " + response.code());
+                    }
+                } finally {
+                    response.close();
+                    finish(pageUrl, responseBody);
+                }
+            }
+        });
+    }
+
+    private synchronized void finish(String pageUrl, byte[] responseBody) {
+        runningCalls.remove(pageUrl);
+        if (responseBody == null || responseBody.length == 0) {
+            return;
+        }
+        pages.put(pageUrl, new Entry(responseBody, System.currentTimeMillis()));
+        Iterator<String> iterator = pages.keySet().iterator();
+        while (pages.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Returns the prefetched response of the given page, or null if it wasn't prefetched
+     * or is too old
+     */
+    public synchronized byte[] getPage(String pageUrl) {
+        Entry entry = pages.get(pageUrl);
+        if (entry != null && isExpired(entry)) {
+            pages.remove(pageUrl);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.responseBody;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.fetchedAt > maxAge;
+    }
+
+    /**
+     * Stops all running prefetch requests and drops all prefetched pages
+     */
+    public synchronized void clear() {
+        for (Call call : runningCalls.values()) {
+            call.cancel();
+        }
+        runningCalls.clear();
+        pages.clear();
+    }
+
+    public synchronized int getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized int getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Number of prefetch requests started
+     */
+    public synchronized int getFetchCount() {
+        return fetchCount;
+    }
+
+    public synchronized int getRunningCount() {
+        return runningCalls.size();
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class starts and stops the video and MJPEG streams of a page as their rows enter and
+ * leave the screen. At most a limited number of streams play at the same time, further
+ * visible streams wait in the order they became visible until a playing one leaves the
+ * screen. A stream which comes back on screen is started again.
+ *
+ * While the coordinator is paused, e.g. because its page isn't resumed, no stream plays.
+ * The coordinator is meant to be used on the main thread only.
+ */
+
+public class PlaybackCoordinator {
+    private static final String TAG = PlaybackCoordinator.class.getSimpleName();
+    public static final int DEFAULT_MAX_STREAMS = 2;
+
+    public interface Stream {
+        void start();
+        void stop();
+    }
+
+    private final int maxStreams;
+    // Streams on screen, in the order they became visible
+    private final List<Stream> visibleStreams = new ArrayList<Stream>();
+    private final List<Stream> playingStreams = new ArrayList<Stream>();
+    private boolean paused = false;
+    private int startCount = 0;
+    private int stopCount = 0;
+
+    /**
+     * @param maxStreams  maximum number of streams playing at the same time
+     */
+    public PlaybackCoordinator(int maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    /**
+     * Called when the row of the stream entered the screen
+     */
+    public void onVisible(Stream stream) {
+        if (!visibleStreams.contains(stream)) {
+            visibleStreams.add(stream);
+            update();
+        }
+    }
+
+    /**
+     * Called when the row of the stream left the screen or was recycled
+     */
+    public void onHidden(Stream stream) {
+        if (visibleStreams.remove(stream)) {
+            stop(stream);
+            update();
+        }
+    }
+
+    /**
+     * Stops all streams, e.g. when the page is paused. The visible streams are started
+     * again on resume.
+     */
+    public void pause() {
+        paused = true;
+        Log.d(TAG, "Stopping " + playingStreams.size() + " streams");
+        for (Stream stream : new ArrayList<Stream>(playingStreams)) {
+            stop(stream);
+        }
+    }
+
+    public void resume() {
+        paused = false;
+        update();
+    }
+
+    /**
+     * Whether the stream was started and should play
+     */
+    public boolean isPlaying(Stream stream) {
+        return playingStreams.contains(stream);
+    }
+
+    private void stop(Stream stream) {
+        if (playingStreams.remove(stream)) {
+            stopCount++;
+            stream.stop();
+        }
+    }
+
+    private void update() {
+        if (paused) {
+            return;
+        }
+        for (int i = 0; i < visibleStreams.size() && playingStreams.size() < maxStreams; i++) {
+            Stream stream = visibleStreams.get(i);
+            if (!playingStreams.contains(stream)) {
+                playingStreams.add(stream);
+                startCount++;
+                stream.start();
+            }
+        }
+    }
+
+    public int getVisibleCount() {
+        return visibleStreams.size();
+    }
+
+    public int getPlayingCount() {
+        return playingStreams.size();
+    }
+
+    public int getStartCount() {
+        return startCount;
+    }
+
+    public int getStopCount() {
+        return stopCount;
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * This class schedules reconnects of all components which keep a connection to openHAB open.
+ * After a failure the next attempt is delayed with exponential backoff and jitter up to a
+ * maximum delay. The failure state is shared, so components which fail at the same time are
+ * retried together in one attempt and don't escalate the backoff independently.
+ *
+ * Attempts are held back while there is no network connection and run immediately once it
+ * comes back. The backoff is reset once a component reports that its connection delivers
+ * data again.
+ */
+
+public class ReconnectScheduler {
+    private static final String TAG = ReconnectScheduler.class.getSimpleName();
+    public static final long DEFAULT_INITIAL_DELAY = 1000;
+    public static final long DEFAULT_MAX_DELAY = 5 * 60 * 1000;
+
+    private final long initialDelay;
+    private final long maxDelay;
+    private final Random random;
+    private final Timer timer;
+    private final Set<Runnable> pendingReconnects = new LinkedHashSet<Runnable>();
+    private int failureCount = 0;
+    private long nextAttemptTime = -1;
+    private boolean networkAvailable = true;
+
+    private final Runnable attemptRunnable = new Runnable() {
+        @Override
+        public void run() {
+            List<Runnable> reconnects;
+            synchronized (ReconnectScheduler.this) {
+                nextAttemptTime = -1;
+                reconnects = new ArrayList<Runnable>(pendingReconnects);
+                pendingReconnects.clear();
+                Log.d(TAG, String.format("Reconnecting %d components after %d failures",
+                        reconnects.size(), failureCount));
+            }
+            for (Runnable reconnect : reconnects) {
+                reconnect.run();
+            }
+        }
+    };
+
+    public ReconnectScheduler(long initialDelay, long maxDelay, Random random, Timer timer) {
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.random = random;
+        this.timer = timer;
+    }
+
+    /**
+     * Creates a scheduler with default delays which runs reconnects on the main thread
+     */
+    public static ReconnectScheduler create() {
+        return new ReconnectScheduler(DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, new Random(),
+                new MainThreadTimer());
+    }
+
+    /**
+     * Reports a failed connection and schedules the given reconnect. If an attempt is
+     * scheduled already, the reconnect joins it without increasing the backoff.
+     */
+    public synchronized void scheduleReconnect(Runnable reconnect) {
+        boolean attemptPending = !pendingReconnects.isEmpty();
+        pendingReconnects.add(reconnect);
+        if (attemptPending) {
+            return;
+        }
+        failureCount++;
+        if (!networkAvailable) {
+            Log.d(TAG, "No network, waiting for connectivity before reconnecting");
+            return;
+        }
+        long delay = getDelay(failureCount);
+        nextAttemptTime = timer.now() + delay;
+        Log.d(TAG, String.format("Connection failed %d times, reconnecting in %d ms",
+                failureCount, delay));
+        timer.schedule(attemptRunnable, delay);
+    }
+
+    /**
+     * Removes a reconnect which is not needed anymore, e.g. because its component was paused
+     */
+    public synchronized void cancel(Runnable reconnect) {
+        pendingReconnects.remove(reconnect);
+        if (pendingReconnects.isEmpty()) {
+            timer.cancel(attemptRunnable);
+            nextAttemptTime = -1;
+        }
+    }
+
+    /**
+     * Reports a successful connection, which resets the backoff
+     */
+    public synchronized void onSuccess() {
+        failureCount = 0;
+    }
+
+    /**
+     * Connectivity callback. Pending reconnects are held while the network is down
+     * and attempted immediately when it is available again.
+     */
+    public synchronized void setNetworkAvailable(boolean available) {
+        if (available == networkAvailable) {
+            return;
+        }
+        networkAvailable = available;
+        timer.cancel(attemptRunnable);
+        nextAttemptTime = -1;
+        if (available) {
+            // The failures were most likely caused by the missing network
+            failureCount = 0;
+            if (!pendingReconnects.isEmpty()) {
+                nextAttemptTime = timer.now();
+                timer.schedule(attemptRunnable, 0);
+            }
+        }
+    }
+
+    /**
+     * Delay before the attempt after the given number of consecutive failures. Half of
+     * the delay is randomized so that clients don't reconnect in lockstep after a
+     * server restart.
+     */
+    long getDelay(int failures) {
+        long delay = initialDelay;
+        for (int i = 1; i < failures && delay < maxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, maxDelay);
+        return delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Time of the next scheduled attempt as reported by the timer, or -1 if no
+     * attempt is scheduled
+     */
+    public synchronized long getNextAttemptTime() {
+        return nextAttemptTime;
+    }
+
+    public synchronized boolean isNetworkAvailable() {
+        return networkAvailable;
+    }
+
+    public synchronized int getPendingReconnectCount() {
+        return pendingReconnects.size();
+    }
+}
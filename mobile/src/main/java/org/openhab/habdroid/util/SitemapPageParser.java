@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.openhab.habdroid.model.OpenHAB1PageParser;
+import org.openhab.habdroid.model.OpenHABWidget;
+import org.openhab.habdroid.model.OpenHABWidgetDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class parses sitemap page responses on a small pool of background threads and hands
+ * the finished widget list to the callback executor, usually the main thread.
+ *
+ * Requests are identified by a key, like the fragment showing the page. Only the newest
+ * request of a key is delivered: a request which is still queued when a newer one arrives
+ * is replaced by it, and results of older requests which already ran are discarded. Keys are
+ * only held until their newest request is delivered or cancelled.
+ */
+
+public class SitemapPageParser {
+    private static final String TAG = SitemapPageParser.class.getSimpleName();
+    private static final int MAX_THREADS = 2;
+
+    public interface ResultListener {
+        void onPageParsed(Result result);
+    }
+
+    public static class Result {
+        private final byte[] responseBody;
+        private final OpenHABWidgetDataSource dataSource;
+        private final List<OpenHABWidget> widgets;
+        private final long parseTime;
+        private final Exception error;
+
+        Result(byte[] responseBody, OpenHABWidgetDataSource dataSource, List<OpenHABWidget> widgets,
+               long parseTime, Exception error) {
+            this.responseBody = responseBody;
+            this.dataSource = dataSource;
+            this.widgets = widgets;
+            this.parseTime = parseTime;
+            this.error = error;
+        }
+
+        public byte[] getResponseBody() {
+            return responseBody;
+        }
+
+        public OpenHABWidgetDataSource getDataSource() {
+            return dataSource;
+        }
+
+        /**
+         * Widgets to display, frames without label are already removed. The list can't be
+         * modified.
+         */
+        public List<OpenHABWidget> getWidgets() {
+            return widgets;
+        }
+
+        /**
+         * Time spent parsing and building the widget list in milliseconds
+         */
+        public long getParseTime() {
+            return parseTime;
+        }
+
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    private class ParseRequest implements Runnable {
+        final Object key;
+        byte[] responseBody;
+        int openHABVersion;
+        String iconFormat;
+        int generation;
+        ResultListener listener;
+
+        ParseRequest(Object key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            final byte[] body;
+            final int version;
+            final String format;
+            final int requestGeneration;
+            final ResultListener resultListener;
+            synchronized (SitemapPageParser.this) {
+                if (pendingRequests.get(key) != this) {
+                    // Cancelled while queued
+                    return;
+                }
+                // From now on newer requests of this key need a new task
+                pendingRequests.remove(key);
+                body = responseBody;
+                version = openHABVersion;
+                format = iconFormat;
+                requestGeneration = generation;
+                resultListener = listener;
+            }
+            final Result result = parsePage(body, version, format);
+            synchronized (SitemapPageParser.this) {
+                parseCount++;
+                totalParseTime += result.getParseTime();
+            }
+            Log.d(TAG, String.format("Parsed page of %d bytes with %d widgets in %d ms",
+                    body.length, result.getWidgets().size(), result.getParseTime()));
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!onDelivering(key, requestGeneration)) {
+                        Log.d(TAG, "Discarding stale page");
+                        synchronized (SitemapPageParser.this) {
+                            discardedCount++;
+                        }
+                        return;
+                    }
+                    resultListener.onPageParsed(result);
+                }
+            });
+        }
+    }
+
+    private final Executor executor;
+    private final Executor callbackExecutor;
+    private final Map<Object, ParseRequest> pendingRequests = new HashMap<Object, ParseRequest>();
+    // Generation of the newest request of every key which wasn't delivered yet
+    private final Map<Object, Integer> generations = new HashMap<Object, Integer>();
+    private int lastGeneration = 0;
+    private final ThreadLocal<OpenHAB1PageParser> xmlParsers = new ThreadLocal<OpenHAB1PageParser>();
+    private int parseCount = 0;
+    private int discardedCount = 0;
+    private long totalParseTime = 0;
+
+    public SitemapPageParser(Executor executor, Executor callbackExecutor) {
+        this.executor = executor;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * Creates a parser with a bounded pool of background threads which delivers its
+     * results on the main thread
+     */
+    public static SitemapPageParser create() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, TAG);
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new SitemapPageParser(executor, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                handler.post(runnable);
+            }
+        });
+    }
+
+    /**
+     * Parses a sitemap page response in the background. Any earlier request with the same
+     * key which wasn't delivered yet is dropped.
+     */
+    public synchronized void parse(Object key, byte[] responseBody, int openHABVersion,
+                                   String iconFormat, ResultListener listener) {
+        int generation = nextGeneration(key);
+        ParseRequest request = pendingRequests.get(key);
+        boolean queued = request != null;
+        if (!queued) {
+            request = new ParseRequest(key);
+            pendingRequests.put(key, request);
+        }
+        request.responseBody = responseBody;
+        request.openHABVersion = openHABVersion;
+        request.iconFormat = iconFormat;
+        request.generation = generation;
+        request.listener = listener;
+        if (!queued) {
+            executor.execute(request);
+        }
+    }
+
+    /**
+     * Drops all requests of the given key which weren't delivered yet
+     */
+    public synchronized void cancel(Object key) {
+        generations.remove(key);
+        pendingRequests.remove(key);
+    }
+
+    /**
+     * Generations are unique across all keys, so a request from before a cancel never
+     * matches a newer request of the same key
+     */
+    private int nextGeneration(Object key) {
+        lastGeneration++;
+        generations.put(key, lastGeneration);
+        return lastGeneration;
+    }
+
+    /**
+     * Checks if the result is the newest one of its key and forgets the key if it is
+     */
+    private synchronized boolean onDelivering(Object key, int generation) {
+        Integer current = generations.get(key);
+        if (current == null || current != generation) {
+            return false;
+        }
+        generations.remove(key);
+        return true;
+    }
+
+    private Result parsePage(byte[] responseBody, int openHABVersion, String iconFormat) {
+        long startTime = System.nanoTime();
+        OpenHABWidgetDataSource dataSource = new OpenHABWidgetDataSource(iconFormat);
+        Exception error = null;
+        try {
+            if (openHABVersion == 1) {
+                OpenHAB1PageParser xmlParser = xmlParsers.get();
+                if (xmlParser == null) {
+                    xmlParser = new OpenHAB1PageParser();
+                    xmlParsers.set(xmlParser);
+                }
+                dataSource.setSourceXml(new ByteArrayInputStream(responseBody), xmlParser);
+            } else {
+                dataSource.setSourceJson(new ByteArrayInputStream(responseBody));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Parsing page failed", e);
+            error = e;
+        }
+        List<OpenHABWidget> widgets = new ArrayList<OpenHABWidget>();
+        if (error == null) {
+            for (OpenHABWidget widget : dataSource.getWidgetList()) {
+                // Remove frame widgets with no label text
+                if (widget.getType().equals("Frame")
+                        && (widget.getLabel() == null || widget.getLabel().isEmpty()))
+                    continue;
+                widgets.add(widget);
+            }
+        }
+        long parseTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        return new Result(responseBody, dataSource, Collections.unmodifiableList(widgets),
+                parseTime, error);
+    }
+
+    public synchronized int getParseCount() {
+        return parseCount;
+    }
+
+    /**
+     * Number of results which were not delivered because a newer request arrived
+     */
+    public synchronized int getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * Number of keys with a request which wasn't delivered or cancelled yet
+     */
+    public synchronized int getPendingKeyCount() {
+        return generations.size();
+    }
+
+    public synchronized long getAverageParseTime() {
+        return parseCount > 0 ? totalParseTime / parseCount : 0;
+    }
+}
@@ -0,0 +1,526 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openhab.habdroid.model.OpenHABWidgetEvent;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okio.BufferedSource;
+
+/**
+ * This class keeps the server push subscriptions of all sitemap pages which are displayed.
+ * Every page is watched by a single subscription no matter how many fragments show it, and
+ * updates are fanned out to all listeners of that page.
+ *
+ * openHAB 2 servers are subscribed through the sitemap event stream (server-sent events),
+ * which only transfers the widgets that changed. openHAB 1 servers and openHAB 2 servers
+ * without event stream support are watched with Atmosphere long polling instead.
+ *
+ * Failed subscriptions are reported to their listeners, which reconnect through the shared
+ * ReconnectScheduler. Its backoff is reset only once a subscription delivered an update,
+ * not already when the connection was established.
+ */
+
+public class SitemapSubscriptionManager {
+    private static final String TAG = SitemapSubscriptionManager.class.getSimpleName();
+    private static final int LONG_POLLING_TIMEOUT = 300000;
+    private static final Pattern PAGE_URL_PATTERN =
+            Pattern.compile("^(.*/)rest/sitemaps/([^/?]+)/([^/?]+)");
+
+    public interface PageUpdateListener {
+        /**
+         * Called with the complete page whenever a long polling request returned it
+         */
+        void onPageContent(String pageUrl, byte[] responseBody);
+
+        /**
+         * Called for every widget update received from the sitemap event stream
+         */
+        void onWidgetEvent(String pageUrl, OpenHABWidgetEvent event);
+
+        /**
+         * Called if the page has to be loaded again, e.g. because the sitemap was changed
+         */
+        void onPageInvalidated(String pageUrl);
+
+        /**
+         * Called if the subscription failed, the page is not watched anymore afterwards
+         */
+        void onSubscriptionFailure(String pageUrl, Throwable error);
+    }
+
+    private class PageSubscription {
+        final String pageUrl;
+        final int openHABVersion;
+        final List<PageUpdateListener> listeners = new ArrayList<PageUpdateListener>();
+        String atmosphereTrackingId;
+        String eventStreamUrl;
+        // Whether the current event subscription ever delivered data
+        boolean eventStreamActive;
+        Call call;
+
+        PageSubscription(String pageUrl, int openHABVersion) {
+            this.pageUrl = pageUrl;
+            this.openHABVersion = openHABVersion;
+        }
+    }
+
+    private final OkHttpClient longPollingClient;
+    private final OkHttpClient eventStreamClient;
+    private final Map<String, String> headers;
+    private final Executor callbackExecutor;
+    private final ReconnectScheduler reconnectScheduler;
+    private final Map<String, PageSubscription> subscriptions = new HashMap<String, PageSubscription>();
+    private boolean eventStreamUnsupported = false;
+
+    /**
+     * @param client  client whose SSL setup and connection pool is used for all subscriptions
+     * @param headers  headers added to every request, e.g. for authentication
+     * @param callbackExecutor  executor on which listeners are called
+     * @param reconnectScheduler  scheduler whose backoff is reset when updates arrive, may be null
+     */
+    public SitemapSubscriptionManager(OkHttpClient client, Map<String, String> headers,
+                                      Executor callbackExecutor, ReconnectScheduler reconnectScheduler) {
+        // Subscriptions block their requests for a long time, so they get an own dispatcher
+        // to not use up the per host request limit of the regular client
+        Dispatcher dispatcher = new Dispatcher();
+        longPollingClient = client.newBuilder()
+                .dispatcher(dispatcher)
+                .readTimeout(LONG_POLLING_TIMEOUT, TimeUnit.MILLISECONDS)
+                .build();
+        eventStreamClient = client.newBuilder()
+                .dispatcher(dispatcher)
+                .readTimeout(0, TimeUnit.MILLISECONDS)
+                .build();
+        this.headers = new HashMap<String, String>(headers);
+        this.callbackExecutor = callbackExecutor;
+        this.reconnectScheduler = reconnectScheduler;
+    }
+
+    /**
+     * Creates a subscription manager which uses the setup of the given client and calls
+     * its listeners on the main thread.
+     */
+    public static SitemapSubscriptionManager create(MyHttpClient<?> httpClient,
+                                                    ReconnectScheduler reconnectScheduler) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        return new SitemapSubscriptionManager(httpClient.getClient(), httpClient.getHeaders(),
+                new Executor() {
+                    @Override
+                    public void execute(Runnable runnable) {
+                        handler.post(runnable);
+                    }
+                }, reconnectScheduler);
+    }
+
+    /**
+     * Starts watching a sitemap page for the given listener. If the page is watched
+     * already, the listener is added to the existing subscription.
+     */
+    public synchronized void subscribe(String pageUrl, int openHABVersion, PageUpdateListener listener) {
+        PageSubscription subscription = subscriptions.get(pageUrl);
+        if (subscription != null) {
+            if (!subscription.listeners.contains(listener)) {
+                subscription.listeners.add(listener);
+            }
+            return;
+        }
+        Log.d(TAG, "Subscribing to " + pageUrl);
+        subscription = new PageSubscription(pageUrl, openHABVersion);
+        subscription.listeners.add(listener);
+        subscriptions.put(pageUrl, subscription);
+        if (openHABVersion >= 2 && !eventStreamUnsupported
+                && PAGE_URL_PATTERN.matcher(pageUrl).find()) {
+            createEventSubscription(subscription);
+        } else {
+            longPoll(subscription);
+        }
+    }
+
+    /**
+     * Removes a listener from a sitemap page. The page is not watched anymore once
+     * its last listener is gone.
+     */
+    public synchronized void unsubscribe(String pageUrl, PageUpdateListener listener) {
+        PageSubscription subscription = subscriptions.get(pageUrl);
+        if (subscription == null) {
+            return;
+        }
+        subscription.listeners.remove(listener);
+        if (subscription.listeners.isEmpty()) {
+            Log.d(TAG, "Unsubscribing from " + pageUrl);
+            cancel(subscription);
+        }
+    }
+
+    /**
+     * Cancels all subscriptions
+     */
+    public synchronized void shutdown() {
+        for (PageSubscription subscription : new ArrayList<PageSubscription>(subscriptions.values())) {
+            cancel(subscription);
+        }
+    }
+
+    public synchronized boolean isSubscribed(String pageUrl) {
+        return subscriptions.containsKey(pageUrl);
+    }
+
+    public synchronized int getSubscriptionCount() {
+        return subscriptions.size();
+    }
+
+    private void cancel(PageSubscription subscription) {
+        subscriptions.remove(subscription.pageUrl);
+        if (subscription.call != null) {
+            subscription.call.cancel();
+            subscription.call = null;
+        }
+    }
+
+    private synchronized boolean isActive(PageSubscription subscription) {
+        return subscriptions.get(subscription.pageUrl) == subscription;
+    }
+
+    private Request.Builder newRequestBuilder(String url) {
+        Request.Builder requestBuilder = new Request.Builder().url(url);
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            requestBuilder.addHeader(entry.getKey(), entry.getValue());
+        }
+        return requestBuilder;
+    }
+
+    private synchronized void enqueue(PageSubscription subscription, OkHttpClient client,
+                                      Request request, Callback callback) {
+        if (!isActive(subscription)) {
+            return;
+        }
+        subscription.call = client.newCall(request);
+        subscription.call.enqueue(callback);
+    }
+
+    private void longPoll(final PageSubscription subscription) {
+        Request.Builder requestBuilder = newRequestBuilder(subscription.pageUrl);
+        if (subscription.openHABVersion == 1) {
+            requestBuilder.addHeader("Accept", "application/xml");
+        }
+        requestBuilder.addHeader("X-Atmosphere-Framework", "1.0");
+        requestBuilder.addHeader("X-Atmosphere-Transport", "long-polling");
+        requestBuilder.addHeader("X-Atmosphere-tracking-id",
+                subscription.atmosphereTrackingId != null ? subscription.atmosphereTrackingId : "0");
+        enqueue(subscription, longPollingClient, requestBuilder.build(), new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (call.isCanceled() || !isActive(subscription)) {
+                    return;
+                }
+                if (e instanceof SocketTimeoutException) {
+                    Log.d(TAG, "Long polling timeout, reconnecting");
+                    longPoll(subscription);
+                    return;
+                }
+                subscription.atmosphereTrackingId = null;
+                fail(subscription, e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                byte[] body;
+                try {
+                    if (!response.isSuccessful()) {
+                        subscription.atmosphereTrackingId = null;
+                        fail(subscription, new IOException(response.code() + ": " + response.message()));
+                        return;
+                    }
+                    body = response.body().bytes();
+                } finally {
+                    response.close();
+                }
+                if (call.isCanceled() || !isActive(subscription)) {
+                    return;
+                }
+                String id = response.header("X-Atmosphere-tracking-id");
+                if (id != null) {
+                    subscription.atmosphereTrackingId = id;
+                }
+                // Empty responses are sent when nothing changed before the server side timeout
+                if (body.length > 0) {
+                    onUpdateReceived();
+                    dispatchPageContent(subscription, body);
+                }
+                longPoll(subscription);
+            }
+        });
+    }
+
+    private void createEventSubscription(final PageSubscription subscription) {
+        Matcher matcher = PAGE_URL_PATTERN.matcher(subscription.pageUrl);
+        matcher.find();
+        final String baseUrl = matcher.group(1);
+        Request request = newRequestBuilder(baseUrl + "rest/sitemaps/events/subscribe")
+                .post(RequestBody.create(MediaType.parse("application/json"), ""))
+                .build();
+        enqueue(subscription, longPollingClient, request, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled() && isActive(subscription)) {
+                    fail(subscription, e);
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                String body;
+                try {
+                    body = response.body().string();
+                } finally {
+                    response.close();
+                }
+                if (call.isCanceled() || !isActive(subscription)) {
+                    return;
+                }
+                if (isEventStreamUnsupported(response.code())) {
+                    fallBackToLongPolling(subscription, response);
+                    return;
+                }
+                String subscriptionId = response.isSuccessful() ? parseSubscriptionId(body) : null;
+                if (subscriptionId == null) {
+                    fail(subscription, new IOException("Creating sitemap event subscription failed: "
+                            + response.code() + " " + body));
+                    return;
+                }
+                Matcher matcher = PAGE_URL_PATTERN.matcher(subscription.pageUrl);
+                matcher.find();
+                subscription.eventStreamUrl = baseUrl + "rest/sitemaps/events/" + subscriptionId
+                        + "?sitemap=" + matcher.group(2) + "&pageid=" + matcher.group(3);
+                subscription.eventStreamActive = false;
+                readEventStream(subscription);
+            }
+        });
+    }
+
+    /**
+     * The subscribe call returns the URL of the new subscription in its Location header and,
+     * as the header may contain a server internal host name, also in the response body.
+     * We only use the subscription id from it and build the URL ourselves.
+     */
+    static String parseSubscriptionId(String body) {
+        try {
+            String location = new JSONObject(body).getJSONObject("context")
+                    .getJSONObject("headers").getJSONArray("Location").getString(0);
+            return location.substring(location.lastIndexOf('/') + 1);
+        } catch (JSONException e) {
+            Log.e(TAG, "Invalid sitemap event subscription response: " + body);
+            return null;
+        }
+    }
+
+    private void readEventStream(final PageSubscription subscription) {
+        Request request = newRequestBuilder(subscription.eventStreamUrl)
+                .addHeader("Accept", "text/event-stream")
+                .build();
+        enqueue(subscription, eventStreamClient, request, new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (!call.isCanceled() && isActive(subscription)) {
+                    fail(subscription, e);
+                }
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) throws IOException {
+                try {
+                    if (response.code() == 404 && subscription.eventStreamActive) {
+                        // Subscriptions expire on the server if nobody listens for a while
+                        Log.d(TAG, "Sitemap event subscription expired, subscribing again");
+                        createEventSubscription(subscription);
+                        return;
+                    }
+                    if (!response.isSuccessful()) {
+                        fail(subscription, new IOException(response.code() + ": " + response.message()));
+                        return;
+                    }
+                    BufferedSource source = response.body().source();
+                    StringBuilder data = new StringBuilder();
+                    String line;
+                    while ((line = source.readUtf8Line()) != null) {
+                        if (call.isCanceled() || !isActive(subscription)) {
+                            return;
+                        }
+                        if (line.isEmpty()) {
+                            if (data.length() > 0) {
+                                handleEvent(subscription, data.toString());
+                                data.setLength(0);
+                            }
+                        } else if (line.startsWith("data:")) {
+                            if (!subscription.eventStreamActive) {
+                                subscription.eventStreamActive = true;
+                                onUpdateReceived();
+                            }
+                            if (data.length() > 0) {
+                                data.append('\n');
+                            }
+                            data.append(line.substring(line.startsWith("data: ") ? 6 : 5));
+                        }
+                    }
+                } catch (IOException e) {
+                    if (!call.isCanceled() && isActive(subscription)) {
+                        fail(subscription, e);
+                    }
+                    return;
+                } finally {
+                    response.close();
+                }
+                if (call.isCanceled() || !isActive(subscription)) {
+                    return;
+                }
+                if (subscription.eventStreamActive) {
+                    // The server closed the stream, continue with the same subscription
+                    readEventStream(subscription);
+                } else {
+                    // Reconnecting a stream which never worked is left to the reconnect backoff
+                    fail(subscription, new IOException("Sitemap event stream closed without data"));
+                }
+            }
+        });
+    }
+
+    /**
+     * Status codes of the subscribe call meaning the server has no sitemap events. Other
+     * errors, like a refused login, are failures which are retried with the reconnect backoff.
+     */
+    static boolean isEventStreamUnsupported(int code) {
+        return code == 404 || code == 405;
+    }
+
+    /**
+     * Watches the page with long polling instead of the event stream, which the server
+     * doesn't support. The event stream isn't tried anymore for further subscriptions either.
+     */
+    private void fallBackToLongPolling(PageSubscription subscription, Response response) {
+        Log.d(TAG, "Sitemap event stream request failed with " + response.code()
+                + ", falling back to long polling");
+        synchronized (this) {
+            eventStreamUnsupported = true;
+        }
+        longPoll(subscription);
+    }
+
+    /**
+     * The connection to the server works, so the reconnect backoff can start over
+     */
+    private void onUpdateReceived() {
+        if (reconnectScheduler != null) {
+            reconnectScheduler.onSuccess();
+        }
+    }
+
+    private void handleEvent(PageSubscription subscription, String data) {
+        OpenHABWidgetEvent event;
+        try {
+            event = OpenHABWidgetEvent.fromJson(data);
+        } catch (IOException e) {
+            Log.e(TAG, "Invalid sitemap event: " + data, e);
+            return;
+        }
+        if (OpenHABWidgetEvent.TYPE_SITEMAP_CHANGED.equals(event.getType())) {
+            dispatchPageInvalidated(subscription);
+        } else if (event.isWidgetEvent()) {
+            dispatchWidgetEvent(subscription, event);
+        }
+    }
+
+    private void fail(final PageSubscription subscription, final Throwable error) {
+        Log.e(TAG, "Subscription to " + subscription.pageUrl + " failed: " + error.toString());
+        final List<PageUpdateListener> listeners;
+        synchronized (this) {
+            if (!isActive(subscription)) {
+                return;
+            }
+            listeners = new ArrayList<PageUpdateListener>(subscription.listeners);
+            cancel(subscription);
+        }
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (PageUpdateListener listener : listeners) {
+                    listener.onSubscriptionFailure(subscription.pageUrl, error);
+                }
+            }
+        });
+    }
+
+    private void dispatchPageContent(final PageSubscription subscription, final byte[] body) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (PageUpdateListener listener : getActiveListeners(subscription)) {
+                    listener.onPageContent(subscription.pageUrl, body);
+                }
+            }
+        });
+    }
+
+    private void dispatchWidgetEvent(final PageSubscription subscription, final OpenHABWidgetEvent event) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (PageUpdateListener listener : getActiveListeners(subscription)) {
+                    listener.onWidgetEvent(subscription.pageUrl, event);
+                }
+            }
+        });
+    }
+
+    private void dispatchPageInvalidated(final PageSubscription subscription) {
+        callbackExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (PageUpdateListener listener : getActiveListeners(subscription)) {
+                    listener.onPageInvalidated(subscription.pageUrl);
+                }
+            }
+        });
+    }
+
+    /**
+     * Listeners might have unsubscribed between receiving an update and dispatching it
+     */
+    private synchronized List<PageUpdateListener> getActiveListeners(PageSubscription subscription) {
+        if (!isActive(subscription)) {
+            return new ArrayList<PageUpdateListener>();
+        }
+        return new ArrayList<PageUpdateListener>(subscription.listeners);
+    }
+}
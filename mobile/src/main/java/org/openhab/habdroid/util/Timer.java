@@ -0,0 +1,22 @@
+/*
+ * Copyright (c) 2010-2016, openHAB.org and others.
+ *
+ *   All rights reserved. This program and the accompanying materials
+ *   are made available under the terms of the Eclipse Public License v1.0
+ *   which accompanies this distribution, and is available at
+ *   http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openhab.habdroid.util;
+
+/**
+ * This interface tells the current time and runs delayed work for the schedulers, queues and
+ * caches of the app. It lets tests replace the main thread and the wall clock by a time which
+ * only passes when the test advances it.
+ */
+
+public interface Timer {
+    long now();
+    void schedule(Runnable runnable, long delayMillis);
+    void cancel(Runnable runnable);
+}
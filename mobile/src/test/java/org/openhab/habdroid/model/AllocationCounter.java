@@ -0,0 +1,59 @@
+package org.openhab.habdroid.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Counts the bytes allocated by the current thread, for tests asserting that a code path
+ * doesn't allocate. Not every JVM can count them, tests have to be skipped with Assume
+ * if isSupported() returns false.
+ */
+class AllocationCounter {
+    private static final int RUNS = 3;
+
+    private AllocationCounter() {
+    }
+
+    static boolean isSupported() {
+        try {
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+                return false;
+            }
+            com.sun.management.ThreadMXBean sunThreadBean = (com.sun.management.ThreadMXBean) threadBean;
+            return sunThreadBean.isThreadAllocatedMemorySupported() && sunThreadBean.isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            // The com.sun.management classes don't exist on this JVM
+            return false;
+        }
+    }
+
+    /**
+     * Bytes the task allocates, the least of a few runs so allocations of the JIT compiler
+     * during one run don't count
+     */
+    static long measure(Runnable task) {
+        long overhead = leastAllocated(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        return Math.max(0, leastAllocated(task) - overhead);
+    }
+
+    private static long leastAllocated(Runnable task) {
+        long least = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            long before = allocatedBytes();
+            task.run();
+            least = Math.min(least, allocatedBytes() - before);
+        }
+        return least;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
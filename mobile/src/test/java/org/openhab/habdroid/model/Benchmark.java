@@ -0,0 +1,9 @@
+package org.openhab.habdroid.model;
+
+/**
+ * JUnit category of the benchmarks, which print their measurements instead of asserting
+ * them. They are left out of the default test run, run them with
+ * ./gradlew testDebugUnitTest -Pbenchmark
+ */
+public interface Benchmark {
+}
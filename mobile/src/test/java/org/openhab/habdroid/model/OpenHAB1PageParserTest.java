@@ -0,0 +1,207 @@
+package org.openhab.habdroid.model;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OpenHAB1PageParserTest {
+    private static final String PAGE_XML = "" +
+            "<page>" +
+            "  <id>demo</id>" +
+            "  <title>Demo [x]</title>" +
+            "  <icon>house</icon>" +
+            "  <link>http://localhost/rest/sitemaps/demo/demo</link>" +
+            "  <leaf>false</leaf>" +
+            "  <widget>" +
+            "    <widgetId>frame</widgetId>" +
+            "    <type>Frame</type>" +
+            "    <label>Frame</label>" +
+            OpenHAB1WidgetTest.WIDGET_XML +
+            "  </widget>" +
+            "  <widget>" +
+            "    <widgetId>switch</widgetId>" +
+            "    <type>Switch</type>" +
+            "    <label>Light [ON]</label>" +
+            "    <item>" +
+            "      <type>SwitchItem</type>" +
+            "      <name>Light</name>" +
+            "      <state>Uninitialized</state>" +
+            "      <link>http://localhost/rest/items/Light</link>" +
+            "    </item>" +
+            "    <linkedPage>" +
+            "      <id>0002</id>" +
+            "      <title>Nested</title>" +
+            "      <link>http://localhost/rest/sitemaps/demo/0002</link>" +
+            "      <widget>" +
+            "        <widgetId>nested</widgetId>" +
+            "        <type>Text</type>" +
+            "      </widget>" +
+            "    </linkedPage>" +
+            "  </widget>" +
+            "</page>";
+
+    @Test
+    public void setSourceXml_buildsSameWidgetsAsDom() throws Exception {
+        OpenHABWidgetDataSource domSource = parseDom(PAGE_XML.getBytes("UTF-8"));
+        OpenHABWidgetDataSource saxSource = parseSax(new OpenHABWidgetDataSource("PNG"),
+                PAGE_XML.getBytes("UTF-8"));
+
+        List<OpenHABWidget> domWidgets = domSource.getWidgets();
+        List<OpenHABWidget> saxWidgets = saxSource.getWidgets();
+        assertEquals(3, saxWidgets.size());
+        assertEquals(domWidgets.size(), saxWidgets.size());
+        for (int i = 0; i < domWidgets.size(); i++) {
+            assertEquals(domWidgets.get(i).getId(), saxWidgets.get(i).getId());
+            assertEquals(domWidgets.get(i).getType(), saxWidgets.get(i).getType());
+            assertTrue(OpenHABWidgetDiff.hasSameContent(domWidgets.get(i), saxWidgets.get(i)));
+            assertEquals(domWidgets.get(i).getIconPath(), saxWidgets.get(i).getIconPath());
+        }
+        assertEquals(domSource.getTitle(), saxSource.getTitle());
+        assertEquals(domSource.getId(), saxSource.getId());
+        assertEquals(domSource.getIcon(), saxSource.getIcon());
+        assertEquals(domSource.getLink(), saxSource.getLink());
+    }
+
+    @Test
+    public void setSourceXml_parsesWidgetFields() throws Exception {
+        OpenHABWidgetDataSource source = parseSax(new OpenHABWidgetDataSource("PNG"),
+                PAGE_XML.getBytes("UTF-8"));
+
+        OpenHABWidget group = source.getWidgetById("demo");
+        assertEquals("Group", group.getType());
+        assertEquals(10f, group.getMaxValue(), 0f);
+        assertEquals(10, group.getRefresh());
+        assertEquals("ON", group.getMapping(0).getCommand());
+        assertEquals("On", group.getMapping(0).getLabel());
+        assertEquals("group1", group.getItem().getName());
+        assertEquals("0001", group.getLinkedPage().getId());
+        assertEquals("demo11", group.getChildren().get(0).getId());
+        assertEquals("frame", group.parent.getId());
+
+        OpenHABWidget light = source.getWidgetById("switch");
+        assertNull(light.getItem().getState());
+        assertEquals("Nested", light.getLinkedPage().getTitle());
+        // Widgets inside a linked page don't belong to this page
+        assertNull(source.getWidgetById("nested"));
+        assertEquals("Demo ", source.getTitle());
+    }
+
+    @Test
+    public void setSourceXml_reusedParser_replacesPage() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        parseSax(source, createPageXml(30).getBytes("UTF-8"));
+        assertEquals(30, source.getWidgets().size());
+        parseSax(source, PAGE_XML.getBytes("UTF-8"));
+        assertEquals(3, source.getWidgets().size());
+    }
+
+    @Test(expected = SAXException.class)
+    public void setSourceXml_invalidNumber_throwsSAXException() throws Exception {
+        String xml = "<page><widget><type>Slider</type><minValue>low</minValue></widget></page>";
+        parseSax(new OpenHABWidgetDataSource("PNG"), xml.getBytes("UTF-8"));
+    }
+
+    /**
+     * Parses pages of different sizes with the DOM parser and with one reused SAX parser
+     */
+    @Test
+    public void setSourceXml_domAndSax_returnSameWidgetCount() throws Exception {
+        OpenHABWidgetDataSource saxSource = new OpenHABWidgetDataSource("PNG");
+        for (int size : new int[] {50, 500, 5000}) {
+            byte[] page = createPageXml(size).getBytes("UTF-8");
+            assertEquals(parseDom(page).getWidgets().size(), parseSax(saxSource, page).getWidgets().size());
+        }
+    }
+
+    /**
+     * Compares the time the DOM parser and one reused SAX parser take for pages of
+     * different sizes
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void setSourceXml_benchmark() throws Exception {
+        OpenHABWidgetDataSource saxSource = new OpenHABWidgetDataSource("PNG");
+        for (int size : new int[] {50, 500, 5000}) {
+            byte[] page = createPageXml(size).getBytes("UTF-8");
+            int rounds = Math.max(5, 20000 / size);
+            // Warm up both code paths
+            parseDom(page);
+            parseSax(saxSource, page);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                parseDom(page);
+            }
+            long domTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                parseSax(saxSource, page);
+            }
+            long saxTime = System.nanoTime() - start;
+
+            System.out.println(String.format("%d widgets: DOM %.3f ms, SAX %.3f ms per page",
+                    size, domTime / 1e6 / rounds, saxTime / 1e6 / rounds));
+        }
+    }
+
+    private OpenHABWidgetDataSource parseDom(byte[] page) throws Exception {
+        DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+        Document document = builder.parse(new InputSource(new ByteArrayInputStream(page)));
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceNode(document.getFirstChild());
+        return source;
+    }
+
+    private OpenHABWidgetDataSource parseSax(OpenHABWidgetDataSource source, byte[] page)
+            throws Exception {
+        source.setSourceXml(new ByteArrayInputStream(page));
+        return source;
+    }
+
+    private String createPageXml(int size) {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<page><id>demo</id><title>Demo</title>")
+                .append("<link>http://localhost/rest/sitemaps/demo/demo</link>");
+        for (int i = 0; i < size; i++) {
+            if (i % 10 == 0) {
+                if (i > 0) {
+                    xml.append("</widget>");
+                }
+                xml.append("<widget><widgetId>f").append(i).append("</widgetId><type>Frame</type>")
+                        .append("<label>Frame ").append(i).append("</label>");
+                continue;
+            }
+            xml.append("<widget><widgetId>w").append(i).append("</widgetId>")
+                    .append("<type>").append(i % 3 == 0 ? "Text" : "Switch").append("</type>")
+                    .append("<label>Widget ").append(i).append(" [").append(i).append(" °C]</label>")
+                    .append("<icon>temperature</icon><minValue>0</minValue><maxValue>100</maxValue>")
+                    .append("<step>1</step><item><type>NumberItem</type><name>Item").append(i)
+                    .append("</name><state>").append(i).append("</state>")
+                    .append("<link>http://localhost/rest/items/Item").append(i).append("</link></item>");
+            if (i % 7 == 0) {
+                xml.append("<linkedPage><id>p").append(i).append("</id><title>Page ").append(i)
+                        .append("</title><link>http://localhost/rest/sitemaps/demo/p").append(i)
+                        .append("</link><leaf>true</leaf></linkedPage>");
+            }
+            xml.append("</widget>");
+        }
+        if (size > 0) {
+            xml.append("</widget>");
+        }
+        xml.append("</page>");
+        return xml.toString();
+    }
+}
@@ -0,0 +1,143 @@
+package org.openhab.habdroid.model;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assume.assumeTrue;
+
+public class OpenHABLabelParserTest {
+    private static final String[] LABELS = {
+            "Temperature [21.5 °C]", "Light", "", "Window [OPEN]", "Value []", "[]", "[x]",
+            "A [b] c", "A [b [c]]", "A [", "A ]", "A [] c", "Power [12 W] [x]", "]x[", "[[", "Ü [ä]"
+    };
+
+    @Test
+    public void getText_getValue_matchRegexSplit() {
+        for (String label : LABELS) {
+            String[] splitString = label.split("\\[|\\]");
+            String expectedText = splitString.length > 0 ? splitString[0] : "";
+            String expectedValue = splitString.length > 1 ? splitString[1] : null;
+            assertEquals(label, expectedText, OpenHABLabelParser.getText(label));
+            assertEquals(label, expectedValue, OpenHABLabelParser.getValue(label));
+        }
+    }
+
+    @Test
+    public void getText_nullLabel_returnsNull() {
+        assertNull(OpenHABLabelParser.getText(null));
+        assertNull(OpenHABLabelParser.getValue(null));
+    }
+
+    @Test
+    public void setLabel_splitsLabelOnce() {
+        OpenHABWidget widget = new OpenHAB2Widget();
+        widget.setLabel("Temperature [21.5 °C]");
+        assertEquals("Temperature ", widget.getLabelText());
+        assertEquals("21.5 °C", widget.getLabelValue());
+
+        widget.setLabel("Temperature");
+        assertEquals("Temperature", widget.getLabelText());
+        assertNull(widget.getLabelValue());
+    }
+
+    /**
+     * Reading the fields split when the label was set gives the same text and value as
+     * splitting the label with a regex on every bind, as the adapter did before
+     */
+    @Test
+    public void bindWithFields_matchesBindWithSplit() {
+        OpenHABWidget[] widgets = createWidgets();
+        assertEquals(bindWithSplit(widgets, 1), bindWithFields(widgets, 1));
+    }
+
+    @Test
+    public void bindWithFields_allocatesNothing() {
+        assumeTrue(AllocationCounter.isSupported());
+        final OpenHABWidget[] widgets = createWidgets();
+        final int length = bindWithFields(widgets, 1);
+
+        long allocated = AllocationCounter.measure(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(length * 200, bindWithFields(widgets, 200));
+            }
+        });
+
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * Compares splitting the label with a regex on every bind, as the adapter did before,
+     * with reading the fields split when the label was set. Prints the time and the bytes
+     * allocated per bind, the bytes only if the JVM can count them.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void bindPath_benchmark() {
+        final OpenHABWidget[] widgets = createWidgets();
+        final int rounds = 200;
+        int binds = widgets.length * rounds;
+        // Warm up both code paths
+        bindWithSplit(widgets, rounds);
+        bindWithFields(widgets, rounds);
+
+        long start = System.nanoTime();
+        bindWithSplit(widgets, rounds);
+        long splitTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        bindWithFields(widgets, rounds);
+        long fieldTime = System.nanoTime() - start;
+
+        System.out.println(String.format("%d binds: split %.3f µs, fields %.3f µs per bind",
+                binds, splitTime / 1e3 / binds, fieldTime / 1e3 / binds));
+        if (AllocationCounter.isSupported()) {
+            long splitAllocated = AllocationCounter.measure(new Runnable() {
+                @Override
+                public void run() {
+                    bindWithSplit(widgets, rounds);
+                }
+            });
+            long fieldAllocated = AllocationCounter.measure(new Runnable() {
+                @Override
+                public void run() {
+                    bindWithFields(widgets, rounds);
+                }
+            });
+            System.out.println(String.format("%d binds: split %d bytes, fields %d bytes per bind",
+                    binds, splitAllocated / binds, fieldAllocated / binds));
+        }
+    }
+
+    private static OpenHABWidget[] createWidgets() {
+        OpenHABWidget[] widgets = new OpenHABWidget[300];
+        for (int i = 0; i < widgets.length; i++) {
+            widgets[i] = new OpenHAB2Widget();
+            widgets[i].setLabel("Widget " + i + " [" + i + " °C]");
+        }
+        return widgets;
+    }
+
+    private int bindWithSplit(OpenHABWidget[] widgets, int rounds) {
+        int length = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (OpenHABWidget widget : widgets) {
+                String[] splitString = widget.getLabel().split("\\[|\\]");
+                length += splitString[0].length() + splitString[1].length();
+            }
+        }
+        return length;
+    }
+
+    private int bindWithFields(OpenHABWidget[] widgets, int rounds) {
+        int length = 0;
+        for (int i = 0; i < rounds; i++) {
+            for (OpenHABWidget widget : widgets) {
+                length += widget.getLabelText().length() + widget.getLabelValue().length();
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,114 @@
+package org.openhab.habdroid.model;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class OpenHABWidgetBindTest {
+    private static final String PAGE = "{\"id\":\"demo\",\"widgets\":[" +
+            "{\"widgetId\":\"00\",\"type\":\"Switch\",\"label\":\"Light [ON]\",\"icon\":\"light\"," +
+            "\"mappings\":[],\"item\":{\"type\":\"SwitchItem\",\"name\":\"Light\",\"state\":\"ON\"}}," +
+            "{\"widgetId\":\"01\",\"type\":\"Slider\",\"label\":\"Dimmer [42 %]\",\"icon\":\"slider\"," +
+            "\"mappings\":[],\"item\":{\"type\":\"DimmerItem\",\"name\":\"Dimmer\",\"state\":\"42.5\"}}," +
+            "{\"widgetId\":\"02\",\"type\":\"Switch\",\"label\":\"Scene\",\"icon\":\"scene\"," +
+            "\"mappings\":[{\"command\":\"0\",\"label\":\"Off\"},{\"command\":\"1\",\"label\":\"Day\"}," +
+            "{\"command\":\"2\",\"label\":\"Night\"}]," +
+            "\"item\":{\"type\":\"NumberItem\",\"name\":\"Scene\",\"state\":\"1\"}}," +
+            "{\"widgetId\":\"03\",\"type\":\"Colorpicker\",\"label\":\"Color\",\"icon\":\"colorwheel\"," +
+            "\"mappings\":[],\"item\":{\"type\":\"ColorItem\",\"name\":\"Color\",\"state\":\"120,100,50\"}}]}";
+
+    @Test
+    public void getStateAsFloat_afterSetState_parsesNewState() throws Exception {
+        OpenHABItem item = new OpenHABItem(new JSONObject());
+        item.setState("21.5");
+        assertEquals(21.5f, item.getStateAsFloat(), 0f);
+        assertSame(item.getStateAsFloat(), item.getStateAsFloat());
+        item.setState("OFF");
+        assertEquals(0f, item.getStateAsFloat(), 0f);
+        assertFalse(item.getStateAsBoolean());
+        item.setState("ON");
+        assertEquals(100f, item.getStateAsFloat(), 0f);
+        assertTrue(item.getStateAsBoolean());
+    }
+
+    @Test
+    public void getIconPath_itemStateChanged_rebuildsPath() throws Exception {
+        OpenHABWidget widget = parsePage().get(0);
+        String iconPath = widget.getIconPath();
+        assertSame(iconPath, widget.getIconPath());
+
+        widget.getItem().setState("OFF");
+
+        assertNotSame(iconPath, widget.getIconPath());
+        assertEquals("icon/light?state=OFF&format=PNG", widget.getIconPath());
+    }
+
+    /**
+     * Reads everything the view holders bind for rows whose widget didn't change and asserts
+     * that doing so allocates nothing once the values have been read for the first time.
+     */
+    @Test
+    public void rebind_unchangedRow_allocatesNothing() throws Exception {
+        assumeTrue(AllocationCounter.isSupported());
+        final List<OpenHABWidget> widgets = parsePage();
+        // The first bind parses states and builds icon paths
+        final int checksum = bind(widgets, 20000);
+
+        long allocated = AllocationCounter.measure(new Runnable() {
+            @Override
+            public void run() {
+                assertEquals(checksum, bind(widgets, 20000));
+            }
+        });
+
+        assertEquals(0, allocated);
+    }
+
+    private List<OpenHABWidget> parsePage() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(PAGE.getBytes("UTF-8")));
+        return source.getWidgetList();
+    }
+
+    private int bind(List<OpenHABWidget> widgets, int rounds) {
+        int checksum = 0;
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < widgets.size(); i++) {
+                OpenHABWidget widget = widgets.get(i);
+                checksum += widget.getIconPath().length();
+                checksum += widget.getLabelText().length();
+                if (widget.getLabelValue() != null) {
+                    checksum += widget.getLabelValue().length();
+                }
+                if (widget.getIconColor() != null || widget.getLabelColor() != null
+                        || widget.getValueColor() != null) {
+                    checksum++;
+                }
+                if (!widget.hasItem()) {
+                    continue;
+                }
+                OpenHABItem item = widget.getItem();
+                checksum += item.getStateAsBoolean() ? 1 : 0;
+                checksum += item.getStateAsFloat().intValue();
+                List<OpenHABWidgetMapping> mappings = widget.getMappings();
+                for (int j = 0; j < mappings.size(); j++) {
+                    OpenHABWidgetMapping mapping = mappings.get(j);
+                    checksum += mapping.getLabel().length();
+                    if (mapping.getCommand().equals(item.getState())) {
+                        checksum += j;
+                    }
+                }
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,252 @@
+package org.openhab.habdroid.model;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OpenHABWidgetDataSourceTest {
+
+    @Test
+    public void setSourceJson_stream_buildsSameWidgetsAsJsonObject() throws Exception {
+        String page = createPageJson(20).toString();
+        OpenHABWidgetDataSource treeSource = new OpenHABWidgetDataSource("PNG");
+        treeSource.setSourceJson(new JSONObject(page));
+        OpenHABWidgetDataSource streamSource = new OpenHABWidgetDataSource("PNG");
+        streamSource.setSourceJson(new ByteArrayInputStream(page.getBytes("UTF-8")));
+
+        List<OpenHABWidget> treeWidgets = treeSource.getWidgets();
+        List<OpenHABWidget> streamWidgets = streamSource.getWidgets();
+        assertEquals(treeWidgets.size(), streamWidgets.size());
+        for (int i = 0; i < treeWidgets.size(); i++) {
+            assertEquals(treeWidgets.get(i).getId(), streamWidgets.get(i).getId());
+            assertEquals(treeWidgets.get(i).getType(), streamWidgets.get(i).getType());
+            assertTrue(OpenHABWidgetDiff.hasSameContent(treeWidgets.get(i), streamWidgets.get(i)));
+            assertEquals(treeWidgets.get(i).getIconPath(), streamWidgets.get(i).getIconPath());
+        }
+        assertEquals(treeSource.getTitle(), streamSource.getTitle());
+        assertEquals(treeSource.getId(), streamSource.getId());
+        assertEquals(treeSource.getLink(), streamSource.getLink());
+    }
+
+    @Test
+    public void setSourceJson_stream_parsesWidgetFields() throws Exception {
+        String page = "{\"id\":\"demo\",\"title\":\"Demo [x]\",\"leaf\":false,\"widgets\":[{" +
+                "\"widgetId\":\"0000\",\"type\":\"Setpoint\",\"label\":\"Temp\",\"icon\":\"temperature\"," +
+                "\"minValue\":16,\"maxValue\":\"28.5\",\"step\":0.5,\"refresh\":1000,\"height\":2," +
+                "\"visibility\":true,\"mappings\":[{\"command\":\"ON\",\"label\":\"On\"}]," +
+                "\"item\":{\"type\":\"NumberItem\",\"name\":\"Temp\",\"state\":\"NULL\"," +
+                "\"tags\":[],\"link\":\"http://localhost/rest/items/Temp\"}," +
+                "\"linkedPage\":{\"id\":\"0001\",\"title\":\"Sub\",\"leaf\":true," +
+                "\"link\":\"http://localhost/rest/sitemaps/demo/0001\"},\"widgets\":[]}]}";
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("SVG");
+        source.setSourceJson(new ByteArrayInputStream(page.getBytes("UTF-8")));
+
+        OpenHABWidget widget = source.getWidgetById("0000");
+        assertEquals("Setpoint", widget.getType());
+        assertEquals(16f, widget.getMinValue(), 0f);
+        assertEquals(28.5f, widget.getMaxValue(), 0f);
+        assertEquals(0.5f, widget.getStep(), 0f);
+        assertEquals(1000, widget.getRefresh());
+        assertEquals(2, widget.getHeight());
+        assertEquals("ON", widget.getMapping(0).getCommand());
+        assertEquals("Temp", widget.getItem().getName());
+        assertNull(widget.getItem().getState());
+        assertEquals("http://localhost/rest/sitemaps/demo/0001", widget.getLinkedPage().getLink());
+        assertEquals("icon/temperature?state=null&format=SVG", widget.getIconPath());
+        assertEquals("Demo ", source.getTitle());
+    }
+
+    @Test(expected = IOException.class)
+    public void setSourceJson_streamMalformed_throwsIOException() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream("{\"widgets\":[{\"type\":".getBytes("UTF-8")));
+    }
+
+    @Test
+    public void getWidgetById_findsWidgetsOfBothLevels() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(createPageJson(30).toString().getBytes("UTF-8")));
+
+        assertEquals("Frame", source.getWidgetById("f10").getType());
+        assertEquals("Widget 21 [21 °C]", source.getWidgetById("w21").getLabel());
+        assertNull(source.getWidgetById("w30"));
+    }
+
+    @Test
+    public void getWidgetsByItemName_returnsAllWidgetsOfItem() throws Exception {
+        String page = "{\"id\":\"demo\",\"widgets\":[{\"widgetId\":\"00\",\"type\":\"Frame\",\"label\":\"A\"," +
+                "\"widgets\":[{\"widgetId\":\"0000\",\"type\":\"Switch\",\"item\":{\"name\":\"Light\"}}," +
+                "{\"widgetId\":\"0001\",\"type\":\"Text\",\"item\":{\"name\":\"Temp\"}}]}," +
+                "{\"widgetId\":\"01\",\"type\":\"Slider\",\"item\":{\"name\":\"Light\"}}]}";
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(page.getBytes("UTF-8")));
+
+        List<OpenHABWidget> lightWidgets = source.getWidgetsByItemName("Light");
+        assertEquals(2, lightWidgets.size());
+        assertEquals("0000", lightWidgets.get(0).getId());
+        assertEquals("01", lightWidgets.get(1).getId());
+        assertEquals(1, source.getWidgetsByItemName("Temp").size());
+        assertTrue(source.getWidgetsByItemName("Unknown").isEmpty());
+    }
+
+    @Test
+    public void setSourceJson_newPage_replacesIndexAndLists() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(createPageJson(30).toString().getBytes("UTF-8")));
+        List<OpenHABWidget> firstList = source.getWidgetList();
+        assertSame(firstList, source.getWidgetList());
+        assertEquals(1, source.getWidgetsByItemName("Item21").size());
+
+        source.setSourceJson(new ByteArrayInputStream(createPageJson(10).toString().getBytes("UTF-8")));
+
+        assertNotSame(firstList, source.getWidgetList());
+        assertEquals(10, source.getWidgetList().size());
+        assertNull(source.getWidgetById("w21"));
+        assertTrue(source.getWidgetsByItemName("Item21").isEmpty());
+    }
+
+    @Test
+    public void getLinkWidgetList_matchesSplitOfWidgets() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(createPageJson(30).toString().getBytes("UTF-8")));
+
+        // Frames containing links show up in both lists
+        for (OpenHABWidget widget : source.getLinkWidgetList()) {
+            assertTrue(widget.hasLinkedPage() || widget.childrenHasLinkedPages());
+        }
+        for (OpenHABWidget widget : source.getNonlinkWidgetList()) {
+            assertTrue(!widget.hasLinkedPage());
+        }
+        assertEquals(source.getLinkWidgets(), source.getLinkWidgetList());
+        assertEquals(source.getNonlinkWidgets(), source.getNonlinkWidgetList());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void getWidgetList_isReadOnly() throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(createPageJson(10).toString().getBytes("UTF-8")));
+        source.getWidgetList().clear();
+    }
+
+    @Test
+    public void getTitle_afterSetTitle_returnsNewTitle() {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setTitle("Kitchen [22 °C]");
+        assertEquals("Kitchen ", source.getTitle());
+        source.setTitle("Living room");
+        assertEquals("Living room", source.getTitle());
+    }
+
+    /**
+     * Parses pages of different sizes with the JSONObject tree parser and the streaming parser
+     */
+    @Test
+    public void setSourceJson_streamAndTree_returnSameWidgetCount() throws Exception {
+        for (int size : new int[] {50, 500, 5000}) {
+            byte[] page = createPageJson(size).toString().getBytes("UTF-8");
+            assertEquals(parseTree(page), parseStream(page));
+        }
+    }
+
+    /**
+     * Compares the time the JSONObject tree parser and the streaming parser take for pages
+     * of different sizes
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void setSourceJson_benchmark() throws Exception {
+        for (int size : new int[] {50, 500, 5000}) {
+            byte[] page = createPageJson(size).toString().getBytes("UTF-8");
+            int rounds = Math.max(5, 20000 / size);
+            // Warm up both code paths
+            parseTree(page);
+            parseStream(page);
+
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                parseTree(page);
+            }
+            long treeTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                parseStream(page);
+            }
+            long streamTime = System.nanoTime() - start;
+
+            System.out.println(String.format("%d widgets: JSONObject %.3f ms, JsonReader %.3f ms per page",
+                    size, treeTime / 1e6 / rounds, streamTime / 1e6 / rounds));
+        }
+    }
+
+    private int parseTree(byte[] page) throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new JSONObject(new String(page, "UTF-8")));
+        return source.getWidgets().size();
+    }
+
+    private int parseStream(byte[] page) throws Exception {
+        OpenHABWidgetDataSource source = new OpenHABWidgetDataSource("PNG");
+        source.setSourceJson(new ByteArrayInputStream(page));
+        return source.getWidgets().size();
+    }
+
+    private JSONObject createPageJson(int size) throws Exception {
+        JSONArray frames = new JSONArray();
+        JSONArray children = null;
+        for (int i = 0; i < size; i++) {
+            if (i % 10 == 0) {
+                JSONObject frame = new JSONObject();
+                frame.put("widgetId", "f" + i);
+                frame.put("type", "Frame");
+                frame.put("label", "Frame " + i);
+                children = new JSONArray();
+                frame.put("widgets", children);
+                frames.put(frame);
+                continue;
+            }
+            JSONObject widget = new JSONObject();
+            widget.put("widgetId", "w" + i);
+            widget.put("type", i % 3 == 0 ? "Text" : "Switch");
+            widget.put("label", "Widget " + i + " [" + i + " °C]");
+            widget.put("icon", "temperature");
+            widget.put("minValue", 0);
+            widget.put("maxValue", 100);
+            widget.put("step", 1);
+            JSONObject item = new JSONObject();
+            item.put("type", "NumberItem");
+            item.put("name", "Item" + i);
+            item.put("state", String.valueOf(i));
+            item.put("link", "http://localhost/rest/items/Item" + i);
+            widget.put("item", item);
+            if (i % 7 == 0) {
+                JSONObject linkedPage = new JSONObject();
+                linkedPage.put("id", "p" + i);
+                linkedPage.put("title", "Page " + i);
+                linkedPage.put("link", "http://localhost/rest/sitemaps/demo/p" + i);
+                linkedPage.put("leaf", true);
+                widget.put("linkedPage", linkedPage);
+            }
+            widget.put("widgets", new JSONArray());
+            children.put(widget);
+        }
+        JSONObject page = new JSONObject();
+        page.put("id", "demo");
+        page.put("title", "Demo");
+        page.put("link", "http://localhost/rest/sitemaps/demo/demo");
+        page.put("leaf", false);
+        page.put("widgets", frames);
+        return page;
+    }
+}
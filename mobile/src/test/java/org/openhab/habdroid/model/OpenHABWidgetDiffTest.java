@@ -0,0 +1,198 @@
+package org.openhab.habdroid.model;
+
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OpenHABWidgetDiffTest {
+
+    @Test
+    public void hasSameContent_samePage_isTrue() throws Exception {
+        List<OpenHABWidget> oldPage = createPage(10, -1, null);
+        List<OpenHABWidget> newPage = createPage(10, -1, null);
+        for (int i = 0; i < oldPage.size(); i++) {
+            assertTrue(OpenHABWidgetDiff.isSameWidget(oldPage.get(i), newPage.get(i)));
+            assertTrue(OpenHABWidgetDiff.hasSameContent(oldPage.get(i), newPage.get(i)));
+        }
+    }
+
+    @Test
+    public void hasSameContent_itemStateChanged_isFalseForChangedWidgetOnly() throws Exception {
+        List<OpenHABWidget> oldPage = createPage(10, -1, null);
+        List<OpenHABWidget> newPage = createPage(10, 4, "ON");
+        for (int i = 0; i < oldPage.size(); i++) {
+            assertTrue(OpenHABWidgetDiff.isSameWidget(oldPage.get(i), newPage.get(i)));
+            assertEquals(i != 4, OpenHABWidgetDiff.hasSameContent(oldPage.get(i), newPage.get(i)));
+        }
+    }
+
+    @Test
+    public void hasSameContent_labelChanged_isFalse() throws Exception {
+        List<OpenHABWidget> oldPage = createPage(3, -1, null);
+        List<OpenHABWidget> newPage = createPage(3, -1, null);
+        newPage.get(1).setLabel("Temperature [21.5 °C]");
+
+        assertFalse(OpenHABWidgetDiff.hasSameContent(oldPage.get(1), newPage.get(1)));
+        assertTrue(OpenHABWidgetDiff.hasSameContent(oldPage.get(2), newPage.get(2)));
+    }
+
+    @Test
+    public void isSameWidget_typeChanged_isFalse() throws Exception {
+        OpenHABWidget oldWidget = createWidget("w1", "Switch", "Widget 1", "OFF");
+        OpenHABWidget newWidget = createWidget("w1", "Slider", "Widget 1", "OFF");
+
+        assertFalse(OpenHABWidgetDiff.isSameWidget(oldWidget, newWidget));
+    }
+
+    @Test
+    public void isSameWidget_otherId_isFalse() throws Exception {
+        OpenHABWidget oldWidget = createWidget("w1", "Switch", "Widget 1", "OFF");
+        OpenHABWidget newWidget = createWidget("w2", "Switch", "Widget 1", "OFF");
+
+        assertFalse(OpenHABWidgetDiff.isSameWidget(oldWidget, newWidget));
+    }
+
+    @Test
+    public void isSameWidget_widgetsWithoutId_neverMatch() throws Exception {
+        OpenHABWidget oldWidget = createWidget(null, "Text", "No id", null);
+        OpenHABWidget newWidget = createWidget(null, "Text", "No id", null);
+
+        assertFalse(OpenHABWidgetDiff.isSameWidget(oldWidget, newWidget));
+        assertTrue(OpenHABWidgetDiff.hasSameContent(oldWidget, newWidget));
+    }
+
+    @Test
+    public void callback_itemStateChanged_reportsSingleChange() throws Exception {
+        int[] counts = replay(createPage(10, -1, null), createPage(10, 4, "ON"));
+        assertEquals(1, counts[0]);
+        assertEquals(0, counts[1]);
+    }
+
+    @Test
+    public void callback_widgetInserted_reportsInsert() throws Exception {
+        List<OpenHABWidget> newPage = createPage(5, -1, null);
+        newPage.add(2, createWidget("new", "Text", "Added", null));
+        int[] counts = replay(createPage(5, -1, null), newPage);
+        assertEquals(0, counts[0]);
+        assertEquals(1, counts[1]);
+    }
+
+    /**
+     * Replays a sequence of long polling responses of a large page where a single item
+     * changes its state with every response, like a temperature sensor does. Diffing and
+     * the number of rows rebound are compared with rebinding the whole list.
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void callback_replayPageSequence_benchmark() throws Exception {
+        final int pageSize = 300;
+        final int updates = 200;
+        List<List<OpenHABWidget>> sequence = new ArrayList<List<OpenHABWidget>>();
+        sequence.add(createPage(pageSize, -1, null));
+        for (int i = 0; i < updates; i++) {
+            sequence.add(createPage(pageSize, (i * 37) % pageSize, "ON"));
+        }
+        // Warm up
+        replay(sequence);
+
+        long start = System.nanoTime();
+        int[] counts = replay(sequence);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(0, counts[1]);
+        System.out.println(String.format("Replayed %d updates of %d widgets in %.2f ms, %d rows rebound"
+                + " instead of %d", updates, pageSize, elapsed / 1e6, counts[0], updates * pageSize));
+    }
+
+    private int[] replay(List<OpenHABWidget> oldPage, List<OpenHABWidget> newPage) {
+        List<List<OpenHABWidget>> sequence = new ArrayList<List<OpenHABWidget>>();
+        sequence.add(oldPage);
+        sequence.add(newPage);
+        return replay(sequence);
+    }
+
+    /**
+     * Diffs each page of the sequence against the one before, like the adapter does
+     *
+     * @return number of changed rows and number of insert, remove and move operations
+     */
+    private int[] replay(List<List<OpenHABWidget>> sequence) {
+        final int[] counts = new int[2];
+        ListUpdateCallback callback = new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                counts[1]++;
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                counts[1]++;
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                counts[1]++;
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                counts[0] += count;
+            }
+        };
+        for (int i = 1; i < sequence.size(); i++) {
+            DiffUtil.calculateDiff(new OpenHABWidgetDiff.Callback(sequence.get(i - 1), sequence.get(i)), false)
+                    .dispatchUpdatesTo(callback);
+        }
+        return counts;
+    }
+
+    private List<OpenHABWidget> createPage(int size, int changedIndex, String changedState) throws Exception {
+        JSONArray widgetsJson = new JSONArray();
+        for (int i = 0; i < size; i++) {
+            widgetsJson.put(createWidgetJson("w" + i, "Switch", "Widget " + i,
+                    i == changedIndex ? changedState : "OFF"));
+        }
+        JSONObject pageJson = new JSONObject();
+        pageJson.put("id", "page");
+        pageJson.put("title", "Page");
+        pageJson.put("widgets", widgetsJson);
+        OpenHABWidgetDataSource dataSource = new OpenHABWidgetDataSource("PNG");
+        dataSource.setSourceJson(pageJson);
+        return dataSource.getWidgets();
+    }
+
+    private OpenHABWidget createWidget(String id, String type, String label, String state) throws Exception {
+        OpenHABWidget root = new OpenHAB2Widget();
+        return OpenHAB2Widget.createOpenHABWidgetFromJson(root, createWidgetJson(id, type, label, state), "PNG");
+    }
+
+    private JSONObject createWidgetJson(String id, String type, String label, String state) throws Exception {
+        JSONObject widgetJson = new JSONObject();
+        if (id != null) {
+            widgetJson.put("widgetId", id);
+        }
+        widgetJson.put("type", type);
+        widgetJson.put("label", label);
+        widgetJson.put("icon", "switch");
+        if (state != null) {
+            JSONObject itemJson = new JSONObject();
+            itemJson.put("type", "SwitchItem");
+            itemJson.put("name", "Item_" + id);
+            itemJson.put("state", state);
+            itemJson.put("link", "http://localhost/rest/items/Item_" + id);
+            widgetJson.put("item", itemJson);
+        }
+        return widgetJson;
+    }
+}
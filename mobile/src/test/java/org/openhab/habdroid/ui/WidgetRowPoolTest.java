@@ -0,0 +1,137 @@
+package org.openhab.habdroid.ui;
+
+import android.content.res.ColorStateList;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.SeekBar;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.openhab.habdroid.R;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WidgetRowPoolTest {
+    private static final int LAYOUT = 1;
+
+    private LayoutInflater inflater;
+    private WidgetRowPool pool;
+
+    @Before
+    public void setUp() {
+        inflater = mock(LayoutInflater.class);
+        when(inflater.inflate(anyInt(), nullable(ViewGroup.class), eq(false))).thenAnswer(
+                new Answer<View>() {
+                    @Override
+                    public View answer(InvocationOnMock invocation) {
+                        return mock(View.class);
+                    }
+                });
+        pool = new WidgetRowPool(inflater, mock(ViewGroup.class));
+    }
+
+    @Test
+    public void obtain_reusesRecycledRow() {
+        View row = pool.obtain(LAYOUT, null);
+        pool.recycle(LAYOUT, row);
+
+        assertEquals(1, pool.getPooledCount());
+        assertSame(row, pool.obtain(LAYOUT, null));
+        assertNotSame(row, pool.obtain(LAYOUT, null));
+        assertEquals(2, pool.getInflatedCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+
+    @Test
+    public void recycle_rowStillShown_isNotKept() {
+        View row = pool.obtain(LAYOUT, null);
+        when(row.getParent()).thenReturn(mock(ViewGroup.class));
+        pool.recycle(LAYOUT, row);
+
+        assertEquals(0, pool.getPooledCount());
+    }
+
+    @Test
+    public void recycle_keepsAtMostMaxRows() {
+        pool.setMaxRows(LAYOUT, 2);
+        for (int i = 0; i < 3; i++) {
+            pool.recycle(LAYOUT, mock(View.class));
+        }
+        assertEquals(2, pool.getPooledCount());
+
+        pool.setMaxRows(LAYOUT, 1);
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test
+    public void recycle_clearsListeners() {
+        ViewGroup row = mock(ViewGroup.class);
+        View button = mock(View.class);
+        View icon = mock(View.class);
+        SeekBar seekBar = mock(SeekBar.class);
+        Spinner spinner = mock(Spinner.class);
+        when(row.isClickable()).thenReturn(true);
+        when(row.isLongClickable()).thenReturn(true);
+        when(button.isClickable()).thenReturn(true);
+        when(spinner.isClickable()).thenReturn(true);
+        when(row.getChildCount()).thenReturn(4);
+        when(row.getChildAt(0)).thenReturn(button);
+        when(row.getChildAt(1)).thenReturn(icon);
+        when(row.getChildAt(2)).thenReturn(seekBar);
+        when(row.getChildAt(3)).thenReturn(spinner);
+        pool.recycle(LAYOUT, row);
+
+        verify(row).setOnClickListener(null);
+        verify(row).setOnLongClickListener(null);
+        verify(button).setOnClickListener(null);
+        verify(button).setOnTouchListener(null);
+        verify(seekBar).setOnSeekBarChangeListener(null);
+        verify(spinner).setAdapter(null);
+        // Clearing a listener would make these clickable
+        verify(icon, never()).setOnClickListener(any(View.OnClickListener.class));
+        verify(icon, never()).setOnLongClickListener(any(View.OnLongClickListener.class));
+        // Spinners throw if a click listener is set
+        verify(spinner, never()).setOnClickListener(any(View.OnClickListener.class));
+    }
+
+    @Test
+    public void obtain_recordsInflatedTextColors() {
+        ViewGroup row = mock(ViewGroup.class);
+        TextView label = mock(TextView.class);
+        ColorStateList colors = mock(ColorStateList.class);
+        when(label.getTextColors()).thenReturn(colors);
+        when(row.getChildCount()).thenReturn(1);
+        when(row.getChildAt(0)).thenReturn(label);
+        when(inflater.inflate(eq(LAYOUT), nullable(ViewGroup.class), eq(false))).thenReturn(row);
+
+        assertSame(row, pool.obtain(LAYOUT, null));
+        verify(label).setTag(R.id.default_text_colors, colors);
+    }
+
+    @Test
+    public void getDefaultTextColors_returnsRecordedColors() {
+        TextView label = mock(TextView.class);
+        ColorStateList defaultColors = mock(ColorStateList.class);
+        ColorStateList widgetColors = mock(ColorStateList.class);
+        when(label.getTextColors()).thenReturn(widgetColors);
+        assertSame(widgetColors, WidgetRowPool.getDefaultTextColors(label));
+
+        when(label.getTag(R.id.default_text_colors)).thenReturn(defaultColors);
+        assertSame(defaultColors, WidgetRowPool.getDefaultTextColors(label));
+    }
+}
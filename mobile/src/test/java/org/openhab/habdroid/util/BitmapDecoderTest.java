@@ -0,0 +1,60 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BitmapDecoderTest {
+    @Test
+    public void calculateSampleSize_keepsImageAtLeastMaxSize() {
+        assertEquals(1, BitmapDecoder.calculateSampleSize(64, 64, 150));
+        assertEquals(1, BitmapDecoder.calculateSampleSize(1920, 1080, 0));
+        assertEquals(1, BitmapDecoder.calculateSampleSize(1920, 1080, 1080));
+        assertEquals(2, BitmapDecoder.calculateSampleSize(4000, 3000, 1080));
+        assertEquals(4, BitmapDecoder.calculateSampleSize(4000, 3000, 600));
+    }
+
+    @Test
+    public void hasAlpha_jpeg_isFalse() {
+        assertFalse(BitmapDecoder.hasAlpha(new byte[] { (byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0 }));
+    }
+
+    @Test
+    public void hasAlpha_png_dependsOnColorTypeAndTransparency() throws IOException {
+        assertTrue(BitmapDecoder.hasAlpha(png(6, false)));
+        assertTrue(BitmapDecoder.hasAlpha(png(4, false)));
+        assertFalse(BitmapDecoder.hasAlpha(png(2, false)));
+        assertFalse(BitmapDecoder.hasAlpha(png(3, false)));
+        assertTrue(BitmapDecoder.hasAlpha(png(3, true)));
+    }
+
+    @Test
+    public void hasAlpha_unknownFormat_isTrue() {
+        assertTrue(BitmapDecoder.hasAlpha("GIF89a".getBytes()));
+    }
+
+    private static byte[] png(int colorType, boolean transparency) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' });
+        chunk(out, "IHDR", new byte[] { 0, 0, 0, 16, 0, 0, 0, 16, 8, (byte) colorType, 0, 0, 0 });
+        if (transparency) {
+            chunk(out, "tRNS", new byte[] { 0 });
+        }
+        chunk(out, "IDAT", new byte[] { 1, 2, 3 });
+        chunk(out, "IEND", new byte[0]);
+        return out.toByteArray();
+    }
+
+    private static void chunk(ByteArrayOutputStream out, String type, byte[] data) throws IOException {
+        out.write(new byte[] { 0, 0, 0, (byte) data.length });
+        out.write(type.getBytes());
+        out.write(data);
+        // The checksum isn't checked
+        out.write(new byte[4]);
+    }
+}
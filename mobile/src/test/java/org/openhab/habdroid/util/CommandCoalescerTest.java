@@ -0,0 +1,217 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CommandCoalescerTest {
+    private static final String LIGHT = "http://localhost/rest/items/Light";
+    private static final String COLOR = "http://localhost/rest/items/Color";
+
+    private FakeTimer timer;
+    private FakeSender sender;
+    private CommandCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        timer = new FakeTimer();
+        sender = new FakeSender();
+        coalescer = new CommandCoalescer(200, timer, sender);
+    }
+
+    @Test
+    public void send_idleItem_sendsImmediately() {
+        coalescer.send(LIGHT, "ON");
+
+        assertEquals(Arrays.asList(LIGHT + " ON"), sender.sent);
+        assertEquals(1, coalescer.getInFlightCount());
+        sender.completeAll(true);
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void send_fastChanges_sendsOnlyLatestAfterInterval() {
+        coalescer.send(COLOR, "0,100,10");
+        sender.completeAll(true);
+        for (int i = 1; i <= 15; i++) {
+            timer.advance(10);
+            coalescer.send(COLOR, "0,100," + (10 + i));
+        }
+
+        assertEquals(1, sender.sent.size());
+        assertEquals(14, coalescer.getDroppedCount());
+        timer.advance(200);
+        assertEquals(Arrays.asList(COLOR + " 0,100,10", COLOR + " 0,100,25"), sender.sent);
+        assertEquals(1, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void send_whileInFlight_waitsForCompletion() {
+        coalescer.send(LIGHT, "10");
+        timer.advance(500);
+        coalescer.send(LIGHT, "20");
+        coalescer.send(LIGHT, "30");
+
+        // Only one command per item is in flight, so commands stay ordered
+        assertEquals(1, sender.sent.size());
+        assertEquals(1, coalescer.getPendingCount());
+        sender.completeAll(false);
+
+        assertEquals(Arrays.asList(LIGHT + " 10", LIGHT + " 30"), sender.sent);
+        assertEquals(1, coalescer.getFailedCount());
+        assertEquals(1, coalescer.getDroppedCount());
+        assertEquals(0, coalescer.getPendingCount());
+    }
+
+    @Test
+    public void send_differentItems_areIndependent() {
+        coalescer.send(LIGHT, "ON");
+        coalescer.send(COLOR, "0,0,0");
+
+        assertEquals(2, sender.sent.size());
+        assertEquals(2, coalescer.getInFlightCount());
+        assertEquals(2, coalescer.getSentCount());
+    }
+
+    @Test
+    public void send_afterIntervalOver_sendsImmediately() {
+        coalescer.send(LIGHT, "ON");
+        sender.completeAll(true);
+        timer.advance(200);
+        coalescer.send(LIGHT, "OFF");
+
+        assertEquals(Arrays.asList(LIGHT + " ON", LIGHT + " OFF"), sender.sent);
+        assertEquals(0, coalescer.getDroppedCount());
+    }
+
+    @Test
+    public void onComplete_failure_reportedUnlessSuperseded() {
+        RecordingListener listener = new RecordingListener();
+        coalescer.setListener(listener);
+        coalescer.send(LIGHT, "ON");
+        coalescer.send(LIGHT, "OFF");
+        sender.completeAll(false);
+        assertTrue(listener.events.isEmpty());
+
+        timer.advance(200);
+        sender.completeAll(false);
+        assertEquals(Arrays.asList("failed " + LIGHT + " OFF"), listener.events);
+    }
+
+    @Test
+    public void onDeferred_sendsNextCommandOfItem() {
+        RecordingListener listener = new RecordingListener();
+        coalescer.setListener(listener);
+        coalescer.send(LIGHT, "ON");
+        sender.deferAll();
+
+        assertEquals(0, coalescer.getInFlightCount());
+        assertEquals(1, coalescer.getDeferredCount());
+        timer.advance(200);
+        coalescer.send(LIGHT, "OFF");
+        assertEquals(Arrays.asList(LIGHT + " ON", LIGHT + " OFF"), sender.sent);
+        assertEquals(1, coalescer.getInFlightCount());
+
+        // A failure of the deferred command doesn't count, the newer one decides about the state
+        sender.complete(0, false);
+        assertEquals(1, coalescer.getInFlightCount());
+        sender.completeAll(true);
+        assertEquals(0, coalescer.getInFlightCount());
+        assertEquals(Arrays.asList("deferred " + LIGHT + " ON", "delivered " + LIGHT + " OFF"), listener.events);
+    }
+
+    @Test
+    public void onReplaced_deferredCommand_isNotReportedAsDelivered() {
+        RecordingListener listener = new RecordingListener();
+        coalescer.setListener(listener);
+        coalescer.send(LIGHT, "ON");
+        sender.deferAll();
+        timer.advance(200);
+        coalescer.send(LIGHT, "OFF");
+
+        sender.callbacks.remove(0).onReplaced();
+        assertEquals(Arrays.asList("deferred " + LIGHT + " ON"), listener.events);
+        assertEquals(1, coalescer.getDroppedCount());
+        sender.completeAll(true);
+        assertEquals(Arrays.asList("deferred " + LIGHT + " ON", "delivered " + LIGHT + " OFF"), listener.events);
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void onComplete_deferredCommandFailed_isReported() {
+        RecordingListener listener = new RecordingListener();
+        coalescer.setListener(listener);
+        coalescer.send(LIGHT, "ON");
+        sender.deferAll();
+        sender.callbacks.get(0).onDeferred();
+        sender.completeAll(false);
+
+        assertEquals(Arrays.asList("deferred " + LIGHT + " ON", "failed " + LIGHT + " ON"), listener.events);
+        assertEquals(0, coalescer.getInFlightCount());
+    }
+
+    @Test
+    public void send_completedBeforeInterval_forgetsItemAfterInterval() {
+        coalescer.send(LIGHT, "ON");
+        sender.completeAll(true);
+        assertEquals(1, coalescer.getItemCount());
+
+        timer.advance(200);
+        assertEquals(0, coalescer.getItemCount());
+        assertTrue(timer.scheduled.isEmpty());
+    }
+
+    private static class FakeSender implements CommandCoalescer.Sender {
+        final List<String> sent = new ArrayList<String>();
+        final List<CommandCoalescer.Callback> callbacks = new ArrayList<CommandCoalescer.Callback>();
+
+        @Override
+        public void send(String url, String command, CommandCoalescer.Callback callback) {
+            sent.add(url + " " + command);
+            callbacks.add(callback);
+        }
+
+        void deferAll() {
+            for (CommandCoalescer.Callback callback : new ArrayList<CommandCoalescer.Callback>(callbacks)) {
+                callback.onDeferred();
+            }
+        }
+
+        void complete(int index, boolean success) {
+            callbacks.remove(index).onComplete(success);
+        }
+
+        void completeAll(boolean success) {
+            List<CommandCoalescer.Callback> running = new ArrayList<CommandCoalescer.Callback>(callbacks);
+            callbacks.clear();
+            for (CommandCoalescer.Callback callback : running) {
+                callback.onComplete(success);
+            }
+        }
+    }
+
+    private static class RecordingListener implements CommandCoalescer.Listener {
+        final List<String> events = new ArrayList<String>();
+
+        @Override
+        public void onCommandDeferred(String url, String command) {
+            events.add("deferred " + url + " " + command);
+        }
+
+        @Override
+        public void onCommandDelivered(String url, String command) {
+            events.add("delivered " + url + " " + command);
+        }
+
+        @Override
+        public void onCommandFailed(String url, String command) {
+            events.add("failed " + url + " " + command);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package org.openhab.habdroid.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommandQueueTest {
+    private static final String LIGHT = "Light";
+    private static final String COLOR = "Color";
+    private static final String SHUTTER = "Shutter";
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File file;
+    private FakeTimer timer;
+    private ReconnectScheduler reconnectScheduler;
+    private FakeTransport transport;
+    private CommandQueue queue;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("commands", null);
+        file.delete();
+        timer = new FakeTimer();
+        reconnectScheduler = new ReconnectScheduler(1000, 60000, new Random(0), timer);
+        transport = new FakeTransport();
+        queue = createQueue();
+        queue.setTransport(transport);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void send_limitsConcurrentRequests() {
+        queue.sendItemCommand(LIGHT, "ON");
+        queue.sendItemCommand(COLOR, "0,0,0");
+        queue.sendItemCommand(SHUTTER, "UP");
+
+        assertEquals(Arrays.asList(LIGHT + " ON", COLOR + " 0,0,0"), transport.posted);
+        assertEquals(3, queue.getDepth());
+        transport.completeAll(200);
+
+        assertEquals(SHUTTER + " UP", transport.posted.get(2));
+        assertEquals(2, queue.getDeliveredCount());
+        assertEquals(1, queue.getDepth());
+    }
+
+    @Test
+    public void send_queuedCommandToSameItem_isReplaced() {
+        final List<String> results = new ArrayList<String>();
+        queue.sendItemCommand(LIGHT, "10");
+        queue.sendItemCommand(LIGHT, "20", new RecordingCallback("20", results));
+        queue.sendItemCommand(LIGHT, "30");
+
+        // 10 is in flight, 20 waits for it and is replaced by 30
+        assertEquals(Arrays.asList("20 replaced"), results);
+        assertEquals(1, queue.getReplacedCount());
+        transport.completeAll(200);
+        assertEquals(Arrays.asList(LIGHT + " 10", LIGHT + " 30"), transport.posted);
+        transport.completeAll(200);
+        assertEquals(2, queue.getDeliveredCount());
+        assertEquals(Arrays.asList("20 replaced"), results);
+    }
+
+    @Test
+    public void send_itemUrl_queuesCommandForItemName() {
+        queue.send("http://192.168.1.2:8080/rest/items/Light", "ON", null);
+        queue.send("https://myopenhab.org/rest/items/Light", "OFF", null);
+        transport.completeAll(200);
+
+        // Both urls point to the same item, so the second command waited for the first
+        assertEquals(Arrays.asList(LIGHT + " ON", LIGHT + " OFF"), transport.posted);
+        assertEquals(0, queue.getReplacedCount());
+
+        final List<String> results = new ArrayList<String>();
+        queue.send("not a url", "ON", new RecordingCallback("ON", results));
+        assertEquals(Arrays.asList("ON false"), results);
+        assertEquals(1, queue.getFailedCount());
+    }
+
+    @Test
+    public void getItemName_returnsLastPathSegment() {
+        assertEquals("Light", CommandQueue.getItemName("http://localhost:8080/rest/items/Light"));
+        assertEquals("Light", CommandQueue.getItemName("https://myopenhab.org/rest/items/Light/"));
+        assertNull(CommandQueue.getItemName("http://localhost/"));
+        assertNull(CommandQueue.getItemName("Light"));
+    }
+
+    @Test
+    public void onResult_noResponse_retriesWithBackoff() {
+        final List<String> results = new ArrayList<String>();
+        queue.sendItemCommand(LIGHT, "ON", new RecordingCallback("ON", results));
+        transport.completeAll(0);
+
+        assertEquals(1, queue.getRetryCount());
+        assertEquals(1, queue.getDepth());
+        queue.sendItemCommand(COLOR, "0,0,0", new RecordingCallback("0,0,0", results));
+        // Nothing is sent while waiting for the retry
+        assertEquals(1, transport.posted.size());
+        assertEquals(Arrays.asList("ON deferred", "0,0,0 deferred"), results);
+
+        timer.advance(1000);
+        assertEquals(Arrays.asList(LIGHT + " ON", LIGHT + " ON", COLOR + " 0,0,0"), transport.posted);
+        transport.completeAll(204);
+        assertEquals(0, queue.getDepth());
+        assertEquals(Arrays.asList("ON deferred", "0,0,0 deferred", "ON true", "0,0,0 true"), results);
+        // The shared backoff is only reset by page subscriptions
+        assertEquals(1, reconnectScheduler.getFailureCount());
+    }
+
+    @Test
+    public void onResult_retryFailsAgain_keepsCommandQueued() {
+        final List<String> results = new ArrayList<String>();
+        queue.sendItemCommand(LIGHT, "ON", new RecordingCallback("ON", results));
+        transport.completeAll(503);
+        timer.advance(1000);
+        transport.completeAll(503);
+
+        assertEquals(2, queue.getRetryCount());
+        assertEquals(1, queue.getDepth());
+        assertEquals(Arrays.asList("ON deferred", "ON deferred"), results);
+    }
+
+    @Test
+    public void onResult_clientError_dropsCommand() {
+        final List<Boolean> results = new ArrayList<Boolean>();
+        queue.sendItemCommand(LIGHT, "FOO", new CommandCoalescer.Callback() {
+            @Override
+            public void onDeferred() {
+                fail();
+            }
+
+            @Override
+            public void onReplaced() {
+                fail();
+            }
+
+            @Override
+            public void onComplete(boolean success) {
+                results.add(success);
+            }
+        });
+        transport.completeAll(400);
+
+        assertEquals(Arrays.asList(false), results);
+        assertEquals(1, queue.getFailedCount());
+        assertEquals(0, queue.getDepth());
+        assertTrue(timer.scheduled.isEmpty());
+    }
+
+    @Test
+    public void load_restoresUndeliveredCommands() {
+        queue.sendItemCommand(LIGHT, "ON");
+        queue.sendItemCommand(COLOR, "0,0,0");
+        queue.sendItemCommand(SHUTTER, "UP");
+        transport.complete(0, 200);
+        transport.completeAll(0);
+
+        CommandQueue restoredQueue = createQueue();
+        restoredQueue.load();
+        restoredQueue.sendItemCommand(SHUTTER, "DOWN");
+        assertEquals(2, restoredQueue.getDepth());
+
+        FakeTransport restoredTransport = new FakeTransport();
+        restoredQueue.setTransport(restoredTransport);
+        // The restored command comes first, the one to the shutter was replaced
+        assertEquals(Arrays.asList(COLOR + " 0,0,0", SHUTTER + " DOWN"), restoredTransport.posted);
+        assertEquals(1, restoredQueue.getReplacedCount());
+    }
+
+    @Test
+    public void load_skipsExpiredCommands() {
+        queue.setTransport(null);
+        queue.sendItemCommand(LIGHT, "ON");
+        timer.advance(10001);
+
+        CommandQueue restoredQueue = createQueue();
+        restoredQueue.load();
+        assertEquals(0, restoredQueue.getDepth());
+        assertEquals(1, restoredQueue.getExpiredCount());
+    }
+
+    @Test
+    public void drain_expiredCommand_isDropped() {
+        queue.setTransport(null);
+        queue.sendItemCommand(LIGHT, "ON");
+        timer.advance(10001);
+        queue.setTransport(transport);
+
+        assertTrue(transport.posted.isEmpty());
+        assertEquals(1, queue.getExpiredCount());
+        assertEquals(0, queue.getDepth());
+    }
+
+    private CommandQueue createQueue() {
+        return new CommandQueue(file, 2, 10000, reconnectScheduler, timer, DIRECT_EXECUTOR);
+    }
+
+    private static class RecordingCallback implements CommandCoalescer.Callback {
+        final String command;
+        final List<String> results;
+
+        RecordingCallback(String command, List<String> results) {
+            this.command = command;
+            this.results = results;
+        }
+
+        @Override
+        public void onDeferred() {
+            results.add(command + " deferred");
+        }
+
+        @Override
+        public void onReplaced() {
+            results.add(command + " replaced");
+        }
+
+        @Override
+        public void onComplete(boolean success) {
+            results.add(command + " " + success);
+        }
+    }
+
+    private static class FakeTransport implements CommandQueue.Transport {
+        final List<String> posted = new ArrayList<String>();
+        final List<CommandQueue.TransportCallback> callbacks = new ArrayList<CommandQueue.TransportCallback>();
+
+        @Override
+        public void post(String itemName, String command, CommandQueue.TransportCallback callback) {
+            posted.add(itemName + " " + command);
+            callbacks.add(callback);
+        }
+
+        void complete(int index, int statusCode) {
+            callbacks.remove(index).onResult(statusCode);
+        }
+
+        void completeAll(int statusCode) {
+            List<CommandQueue.TransportCallback> running = new ArrayList<CommandQueue.TransportCallback>(callbacks);
+            callbacks.clear();
+            for (CommandQueue.TransportCallback callback : running) {
+                callback.onResult(statusCode);
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package org.openhab.habdroid.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timer for tests whose time only passes when a test advances it. Runnables which are due
+ * are run in the order of their scheduled time.
+ */
+class FakeTimer implements Timer {
+    long now = 100000;
+    long lastDelay = -1;
+    final Map<Runnable, Long> scheduled = new LinkedHashMap<Runnable, Long>();
+
+    @Override
+    public long now() {
+        return now;
+    }
+
+    @Override
+    public void schedule(Runnable runnable, long delayMillis) {
+        lastDelay = delayMillis;
+        scheduled.put(runnable, now + delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable runnable) {
+        scheduled.remove(runnable);
+    }
+
+    void advance(long millis) {
+        long end = now + millis;
+        while (true) {
+            Runnable next = null;
+            long nextTime = end;
+            for (Map.Entry<Runnable, Long> entry : scheduled.entrySet()) {
+                if (entry.getValue() <= nextTime) {
+                    next = entry.getKey();
+                    nextTime = entry.getValue();
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            now = nextTime;
+            scheduled.remove(next);
+            next.run();
+        }
+        now = end;
+    }
+}
@@ -0,0 +1,207 @@
+package org.openhab.habdroid.util;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import okhttp3.Call;
+import okhttp3.Headers;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class HttpValidatorStoreTest {
+    private static final String SITEMAPS = "[{\"name\":\"demo\"}]";
+
+    private MockWebServer server;
+    private HttpValidatorStore store;
+    private MySyncHttpClient client;
+    private RecordingHandler handler;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        store = new HttpValidatorStore();
+        client = new MySyncHttpClient(mock(Context.class), false, false);
+        client.setValidatorStore(store);
+        handler = new RecordingHandler();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void get_withETag_sendsConditionalRequestAndServesStoredBody() throws Exception {
+        server.enqueue(new MockResponse().setBody(SITEMAPS).addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setResponseCode(304).addHeader("ETag", "\"1\""));
+        String url = server.url("/rest/sitemaps").toString();
+
+        client.get(url, handler);
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        client.get(url, handler);
+
+        RecordedRequest conditionalRequest = server.takeRequest();
+        assertEquals("\"1\"", conditionalRequest.getHeader("If-None-Match"));
+        assertEquals(304, handler.statusCode);
+        assertEquals(SITEMAPS, handler.body);
+        assertEquals(0, handler.failures);
+        assertEquals(1, store.getConditionalRequestCount());
+        assertEquals(1, store.getHitCount());
+    }
+
+    @Test
+    public void get_withLastModified_sendsIfModifiedSince() throws Exception {
+        server.enqueue(new MockResponse().setBody(SITEMAPS)
+                .addHeader("Last-Modified", "Tue, 14 Mar 2017 10:00:00 GMT"));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        String url = server.url("/rest/thing-types").toString();
+
+        client.get(url, handler);
+        client.get(url, handler);
+
+        server.takeRequest();
+        assertEquals("Tue, 14 Mar 2017 10:00:00 GMT", server.takeRequest().getHeader("If-Modified-Since"));
+        assertEquals(SITEMAPS, handler.body);
+    }
+
+    @Test
+    public void get_changedContent_replacesBodyAndDropsModel() throws Exception {
+        server.enqueue(new MockResponse().setBody(SITEMAPS).addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setBody("[]").addHeader("ETag", "\"2\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+        String url = server.url("/rest/sitemaps").toString();
+
+        client.get(url, handler);
+        Object model = new Object();
+        client.putStoredModel(url, model);
+        assertSame(model, client.getStoredModel(url));
+        client.get(url, handler);
+        assertNull(client.getStoredModel(url));
+        client.get(url, handler);
+
+        server.takeRequest();
+        server.takeRequest();
+        assertEquals("\"2\"", server.takeRequest().getHeader("If-None-Match"));
+        assertEquals("[]", handler.body);
+        assertEquals(1, store.getMissCount());
+        assertEquals(1, store.getHitCount());
+    }
+
+    @Test
+    public void get_withoutValidators_isNotConditional() throws Exception {
+        server.enqueue(new MockResponse().setBody(SITEMAPS));
+        server.enqueue(new MockResponse().setBody(SITEMAPS));
+        String url = server.url("/static/uuid").toString();
+
+        client.get(url, handler);
+        client.get(url, handler);
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(0, store.getConditionalRequestCount());
+    }
+
+    @Test
+    public void post_isNeverConditional() throws Exception {
+        server.enqueue(new MockResponse().setBody(SITEMAPS).addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setBody("OK"));
+        String url = server.url("/rest/bindings").toString();
+
+        client.get(url, handler);
+        client.post(url, "ON", "text/plain", handler);
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void onResponse_overMaximumSize_evictsLeastRecentlyUsed() {
+        HttpValidatorStore smallStore = new HttpValidatorStore(2, 1024);
+        Headers headers = new Headers.Builder().add("ETag", "\"1\"").build();
+        smallStore.onResponse("a", null, 200, headers, new byte[10]);
+        smallStore.onResponse("b", null, 200, headers, new byte[10]);
+        smallStore.putModel("a", null, "a");
+        smallStore.onResponse("c", null, 200, headers, new byte[10]);
+
+        assertEquals("a", smallStore.getModel("a", null));
+        assertNull(smallStore.onResponse("b", null, 304, headers, new byte[0]));
+        smallStore.onResponse("d", null, 200, headers, new byte[2000]);
+        // Bodies larger than the store are not kept
+        assertNull(smallStore.onResponse("d", null, 304, headers, new byte[0]));
+    }
+
+    @Test
+    public void get_otherLogin_doesNotUseStoredBody() throws Exception {
+        server.enqueue(new MockResponse().setBody(SITEMAPS).addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setResponseCode(304).addHeader("ETag", "\"1\""));
+        String url = server.url("/rest/sitemaps").toString();
+
+        client.setBasicAuth("alice", "secret");
+        client.get(url, handler);
+        client.putStoredModel(url, new Object());
+        client.setBasicAuth("bob", "secret");
+        client.get(url, handler);
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertNull(client.getStoredModel(url));
+        assertEquals(0, store.getHitCount());
+        // The 304 without stored body for this login is a failure
+        assertEquals(1, handler.failures);
+    }
+
+    @Test
+    public void get_sitemapPage_isNotConditional() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}").addHeader("ETag", "\"1\""));
+        server.enqueue(new MockResponse().setBody("{}").addHeader("ETag", "\"1\""));
+        String url = server.url("/rest/sitemaps/demo/demo").toString();
+
+        client.get(url, handler);
+        client.get(url, handler);
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(0, store.getConditionalRequestCount());
+    }
+
+    @Test
+    public void handles_onlyListedEndpoints() {
+        assertTrue(HttpValidatorStore.handles("http://localhost:8080/rest/sitemaps"));
+        assertTrue(HttpValidatorStore.handles("http://localhost:8080/rest/thing-types"));
+        assertTrue(HttpValidatorStore.handles("https://myopenhab.org/rest/bindings"));
+        assertTrue(HttpValidatorStore.handles("http://localhost:8080/static/uuid"));
+        assertFalse(HttpValidatorStore.handles("http://localhost:8080/rest/sitemaps/demo/demo"));
+        assertFalse(HttpValidatorStore.handles("http://localhost:8080/rest/items/Light"));
+        assertFalse(HttpValidatorStore.handles("invalid"));
+    }
+
+    private static class RecordingHandler implements MyHttpClient.ResponseHandler {
+        int statusCode;
+        String body;
+        int failures;
+
+        @Override
+        public void onFailure(Call call, int statusCode, Headers headers, byte[] responseBody, Throwable error) {
+            this.statusCode = statusCode;
+            failures++;
+        }
+
+        @Override
+        public void onSuccess(Call call, int statusCode, Headers headers, byte[] responseBody) {
+            this.statusCode = statusCode;
+            body = new String(responseBody);
+        }
+    }
+}
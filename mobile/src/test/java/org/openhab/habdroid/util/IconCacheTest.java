@@ -0,0 +1,160 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class IconCacheTest {
+    private static final String ICON_URL = "http://192.168.1.2:8080/icon/light?state=ON&format=PNG";
+    private static final IconCache.Sizer<String> SIZER = new IconCache.Sizer<String>() {
+        @Override
+        public int sizeOf(String image) {
+            return image.length();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File directory;
+    private FakeTimer clock;
+    private IconCache<String> cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("icons");
+        clock = new FakeTimer();
+        cache = new IconCache<String>(SIZER, 10, directory, 10, 1000, clock);
+    }
+
+    @Test
+    public void getKey_sortsParametersAndKeepsServer() {
+        assertEquals(IconCache.getKey(ICON_URL),
+                IconCache.getKey("HTTP://192.168.1.2:8080/icon/light?format=PNG&state=ON#top"));
+        assertEquals("http://192.168.1.2:8080/icon/light?format=PNG&state=ON", IconCache.getKey(ICON_URL));
+        assertEquals("https://home.example.com/images/light.png",
+                IconCache.getKey("https://Home.Example.com/images/light.png?&"));
+        // Different states and servers are different icons
+        assertNotEquals(IconCache.getKey(ICON_URL),
+                IconCache.getKey("http://192.168.1.2:8080/icon/light?state=OFF&format=PNG"));
+        assertNotEquals(IconCache.getKey(ICON_URL),
+                IconCache.getKey("https://home.example.com/icon/light?state=ON&format=PNG"));
+    }
+
+    @Test
+    public void put_overMemoryBudget_evictsLeastRecentlyUsed() {
+        put("a", "aaaa");
+        put("b", "bbbb");
+        cache.get("a");
+        put("c", "cccc");
+
+        assertEquals("aaaa", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("cccc", cache.get("c"));
+        assertEquals(8, cache.getMemorySize());
+        assertEquals(1, cache.getMemoryEvictionCount());
+        assertEquals(3, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void put_largerThanBudget_isNotKept() {
+        put("a", "aaaaaaaaaaa");
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getMemorySize());
+    }
+
+    @Test
+    public void put_equalData_sharesImage() {
+        String image = new String("dimmer");
+        assertSame(image, cache.put("icon/dimmer?state=37", "hash", image));
+        assertSame(image, cache.put("icon/dimmer?state=38", "hash", new String("dimmer")));
+
+        assertSame(image, cache.get("icon/dimmer?state=38"));
+        assertSame(image, cache.getShared("hash"));
+        assertEquals(6, cache.getMemorySize());
+        assertEquals(1, cache.getMemoryImageCount());
+        assertEquals(2, cache.getMemoryKeyCount());
+        assertEquals(1, cache.getSharedHitCount());
+    }
+
+    @Test
+    public void put_lastKeyOfSharedImageReplaced_dropsImage() {
+        cache.put("icon/dimmer?state=37", "low", "low");
+        cache.put("icon/dimmer?state=38", "low", "low");
+        cache.put("icon/dimmer?state=37", "high", "high");
+        assertEquals(2, cache.getMemoryImageCount());
+
+        cache.put("icon/dimmer?state=38", "high", "high");
+        assertNull(cache.getShared("low"));
+        assertEquals(1, cache.getMemoryImageCount());
+        assertEquals(4, cache.getMemorySize());
+        assertEquals(1, cache.getMemoryEvictionCount());
+    }
+
+    @Test
+    public void hash_isEqualForEqualData() {
+        assertEquals(IconCache.hash("icon".getBytes()), IconCache.hash("icon".getBytes()));
+        assertNotEquals(IconCache.hash("icon".getBytes()), IconCache.hash("icon2".getBytes()));
+    }
+
+    @Test
+    public void putData_overDiskBudget_evictsLeastRecentlyUsed() {
+        cache.putData("a", "aaaa".getBytes());
+        cache.putData("b", "bbbb".getBytes());
+        cache.getData("a");
+        cache.putData("c", "cccc".getBytes());
+
+        assertArrayEquals("aaaa".getBytes(), cache.getData("a"));
+        assertNull(cache.getData("b"));
+        assertEquals(8, cache.getDiskSize());
+        assertEquals(2, directory.listFiles().length);
+        assertEquals(1, cache.getDiskEvictionCount());
+        assertEquals(2, cache.getDiskHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void getData_expired_isRemoved() {
+        cache.putData("a", "aaaa".getBytes());
+        clock.advance(1001);
+
+        assertNull(cache.getData("a"));
+        assertEquals(1, cache.getExpiredCount());
+        assertEquals(0, cache.getDiskSize());
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void getData_storedByEarlierCache_isFound() {
+        cache.putData(ICON_URL, "icon".getBytes());
+
+        IconCache<String> newCache = new IconCache<String>(SIZER, 10, directory, 10, Long.MAX_VALUE, clock);
+        assertArrayEquals("icon".getBytes(),
+                newCache.getData("http://192.168.1.2:8080/icon/light?format=PNG&state=ON"));
+        assertEquals(4, newCache.getDiskSize());
+    }
+
+    @Test
+    public void clear_dropsBothTiers() {
+        put("a", "aaaa");
+        cache.putData("a", "aaaa".getBytes());
+        cache.clear();
+
+        assertNull(cache.get("a"));
+        assertNull(cache.getData("a"));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    private void put(String url, String image) {
+        cache.put(url, image, image);
+    }
+}
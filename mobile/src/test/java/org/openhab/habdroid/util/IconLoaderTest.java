@@ -0,0 +1,416 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Headers;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IconLoaderTest {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private FakeFetcher fetcher;
+    private Map<String, String> cache;
+    private Map<String, byte[]> cacheData;
+    private Map<String, String> sharedImages;
+    private int decodeCount;
+    private List<String> recycled;
+    private List<String> results;
+    private IconLoader.Decoder<String> decoder;
+    private IconLoader.Cache<String> fakeCache;
+    private IconLoader<String> loader;
+
+    @Before
+    public void setUp() {
+        fetcher = new FakeFetcher();
+        cache = new HashMap<String, String>();
+        cacheData = new HashMap<String, byte[]>();
+        sharedImages = new HashMap<String, String>();
+        decodeCount = 0;
+        recycled = new ArrayList<String>();
+        results = new ArrayList<String>();
+        decoder = new IconLoader.Decoder<String>() {
+            @Override
+            public String decode(String url, byte[] data, int maxSize) {
+                decodeCount++;
+                return data.length > 0 ? new String(data) + (maxSize > 0 ? "@" + maxSize : "") : null;
+            }
+
+            @Override
+            public void recycle(String image) {
+                recycled.add(image);
+            }
+        };
+        fakeCache = new IconLoader.Cache<String>() {
+            @Override
+            public String get(String url) {
+                return cache.get(url);
+            }
+
+            @Override
+            public String getShared(String hash) {
+                return sharedImages.get(hash);
+            }
+
+            @Override
+            public String put(String url, String hash, String image) {
+                if (sharedImages.containsKey(hash)) {
+                    image = sharedImages.get(hash);
+                } else {
+                    sharedImages.put(hash, image);
+                }
+                cache.put(url, image);
+                return image;
+            }
+
+            @Override
+            public byte[] getData(String url) {
+                return cacheData.get(url);
+            }
+
+            @Override
+            public void putData(String url, byte[] data) {
+                cacheData.put(url, data);
+            }
+
+            @Override
+            public void clear() {
+                cache.clear();
+                cacheData.clear();
+            }
+        };
+        loader = new IconLoader<String>(fetcher, decoder, fakeCache, 2, DIRECT_EXECUTOR, DIRECT_EXECUTOR, new FakeTimer());
+    }
+
+    @Test
+    public void load_limitsConcurrentDownloads() {
+        loader.load("a", null, null, true, callback());
+        loader.load("b", null, null, true, callback());
+        loader.load("c", null, null, true, callback());
+
+        assertEquals(Arrays.asList("a", "b"), fetcher.urls);
+        assertEquals(2, loader.getActiveCount());
+        assertEquals(1, loader.getQueueLength());
+
+        fetcher.succeed(0, "image a");
+        assertEquals(Arrays.asList("a", "b", "c"), fetcher.urls);
+        assertEquals(Arrays.asList("image a"), results);
+        assertEquals(0, loader.getQueueLength());
+        assertEquals(2, loader.getPeakActiveCount());
+        assertEquals(1, loader.getPeakQueueLength());
+    }
+
+    @Test
+    public void load_cachedImage_isNotDownloaded() {
+        cache.put("a", "cached a");
+
+        loader.load("a", null, null, true, callback());
+        loader.load("a", null, null, false, callback());
+
+        assertEquals(Arrays.asList("cached a"), results);
+        assertEquals(Arrays.asList("a"), fetcher.urls);
+        assertEquals(1, loader.getCacheHitCount());
+    }
+
+    @Test
+    public void load_downloadedImage_isCachedUnlessDisabled() {
+        loader.load("a", null, null, true, callback());
+        loader.load("b", null, null, false, callback());
+        fetcher.succeed(0, "image a");
+        fetcher.succeed(0, "image b");
+
+        assertEquals("image a", cache.get("a"));
+        assertEquals("image a", new String(cacheData.get("a")));
+        assertEquals(1, cache.size());
+        assertEquals(1, cacheData.size());
+        assertEquals(2, loader.getLoadedCount());
+    }
+
+    @Test
+    public void load_storedData_isDecodedIntoMemory() {
+        cacheData.put("a", "stored a".getBytes());
+
+        loader.load("a", null, null, true, callback());
+
+        assertEquals(Arrays.asList("stored a"), results);
+        assertTrue(fetcher.urls.isEmpty());
+        assertEquals("stored a", cache.get("a"));
+        assertEquals(1, loader.getCacheHitCount());
+    }
+
+    @Test
+    public void load_failedOrUndecodable_reportsFailure() {
+        loader.load("a", null, null, true, callback());
+        loader.load("b", null, null, true, callback());
+        fetcher.fail(0);
+        fetcher.succeed(0, "");
+
+        assertEquals(Arrays.asList("failed", "failed"), results);
+        assertEquals(2, loader.getFailedCount());
+        assertEquals(0, loader.getActiveCount());
+    }
+
+    @Test
+    public void cancel_queuedRequest_isNeverDownloaded() {
+        loader.load("a", null, null, true, callback());
+        loader.load("b", null, null, true, callback());
+        IconLoader<String>.Request request = loader.load("c", null, null, true, callback());
+
+        request.cancel();
+        fetcher.succeed(0, "image a");
+
+        assertEquals(Arrays.asList("a", "b"), fetcher.urls);
+        assertEquals(1, loader.getCancelledCount());
+    }
+
+    @Test
+    public void cancel_runningRequest_dropsCallback() {
+        IconLoader<String>.Request request = loader.load("a", null, null, true, callback());
+        request.cancel();
+        fetcher.succeed(0, "image a");
+
+        assertTrue(results.isEmpty());
+        // The data is still stored, the image is likely shown again
+        assertEquals("image a", new String(cacheData.get("a")));
+        assertTrue(cache.isEmpty());
+    }
+
+    @Test
+    public void load_sameImage_isDownloadedOnce() {
+        loader.load("http://server/icon/switch?state=ON&format=PNG", null, null, true, callback());
+        loader.load("http://server/icon/switch?format=PNG&state=ON", null, null, true, callback());
+        loader.load("http://server/icon/switch?state=ON&format=PNG", null, null, true, callback());
+        loader.load("http://server/icon/switch?state=ON&format=PNG", "user", "secret", true, callback());
+
+        assertEquals(2, fetcher.urls.size());
+        assertEquals(2, loader.getCoalescedCount());
+        fetcher.succeed(0, "switch on");
+        assertEquals(Arrays.asList("switch on", "switch on", "switch on"), results);
+        assertEquals(3, loader.getLoadedCount());
+    }
+
+    @Test
+    public void load_equalDataForDifferentUrls_isDecodedOnce() {
+        loader.load("icon/dimmer?state=37", null, null, true, callback());
+        loader.load("icon/dimmer?state=38", null, null, true, callback());
+        fetcher.succeed(0, "dimmer");
+        fetcher.succeed(0, "dimmer");
+
+        assertEquals(2, fetcher.urls.size());
+        assertEquals(1, decodeCount);
+        assertEquals(Arrays.asList("dimmer", "dimmer"), results);
+        assertSame(results.get(0), results.get(1));
+        assertSame(cache.get("icon/dimmer?state=37"), cache.get("icon/dimmer?state=38"));
+    }
+
+    @Test
+    public void load_withMaxSize_keepsSizesApart() {
+        loader.load("a", null, null, true, 100, callback());
+        fetcher.succeed(0, "image a");
+        loader.load("a", null, null, true, 100, callback());
+        loader.load("a", null, null, true, callback());
+
+        assertEquals(Arrays.asList("image a@100", "image a@100", "image a"), results);
+        // Decoded at full size from the stored data, not downloaded again
+        assertEquals(1, fetcher.urls.size());
+        assertEquals("image a", cache.get("a"));
+    }
+
+    @Test
+    public void ownsImage_onlyForSingleUncachedRequest() {
+        IconLoader<String>.Request uncached = loader.load("a", null, null, false, callback());
+        IconLoader<String>.Request cached = loader.load("b", null, null, true, callback());
+        fetcher.succeed(0, "image a");
+        fetcher.succeed(0, "image b");
+        IconLoader<String>.Request first = loader.load("c", null, null, false, callback());
+        IconLoader<String>.Request second = loader.load("c", null, null, false, callback());
+        fetcher.succeed(0, "image c");
+
+        assertTrue(uncached.ownsImage());
+        assertFalse(cached.ownsImage());
+        assertFalse(first.ownsImage());
+        assertFalse(second.ownsImage());
+
+        loader.recycle("image a");
+        assertEquals(Arrays.asList("image a"), recycled);
+    }
+
+    @Test
+    public void cancel_oneOfSeveralRequests_keepsSharedDownload() {
+        IconLoader<String>.Request request = loader.load("a", null, null, true, callback());
+        loader.load("a", null, null, true, callback());
+        request.cancel();
+        fetcher.succeed(0, "image a");
+
+        assertEquals(Arrays.asList("image a"), results);
+        assertEquals("image a", cache.get("a"));
+    }
+
+    @Test
+    public void cancel_allRequestsOfQueuedLoad_allowsNewLoad() {
+        loader.load("a", null, null, true, callback());
+        loader.load("b", null, null, true, callback());
+        IconLoader<String>.Request first = loader.load("c", null, null, true, callback());
+        IconLoader<String>.Request second = loader.load("c", null, null, true, callback());
+        first.cancel();
+        second.cancel();
+        assertEquals(0, loader.getQueueLength());
+        assertEquals(1, loader.getCancelledCount());
+
+        loader.load("c", null, null, true, callback());
+        fetcher.succeed(0, "image a");
+        fetcher.succeed(1, "image c");
+        assertEquals(Arrays.asList("image a", "image c"), results);
+    }
+
+    @Test
+    public void load_sameIconsConcurrently_hitServerOncePerIcon() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // Hold the responses until all loads are started
+                release.await(5, TimeUnit.SECONDS);
+                return new MockResponse().setBody(request.getPath());
+            }
+        });
+        server.start();
+        ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+        try {
+            IconLoader<String> serverLoader = new IconLoader<String>(new ServerFetcher(), decoder, fakeCache,
+                    IconLoader.DEFAULT_MAX_REQUESTS, decodeExecutor, DIRECT_EXECUTOR, new FakeTimer());
+            final CountDownLatch done = new CountDownLatch(20);
+            final List<String> images = Collections.synchronizedList(new ArrayList<String>());
+            for (int i = 0; i < 20; i++) {
+                String state = i % 2 == 0 ? "ON" : "OFF";
+                String path = i % 4 < 2 ? "/icon/switch?state=" + state + "&format=PNG"
+                        : "/icon/switch?format=PNG&state=" + state;
+                serverLoader.load(server.url(path).toString(), null, null, true, new IconLoader.Callback<String>() {
+                    @Override
+                    public void onLoaded(String image) {
+                        images.add(image);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onFailed() {
+                        done.countDown();
+                    }
+                });
+            }
+            release.countDown();
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(2, server.getRequestCount());
+            assertEquals(18, serverLoader.getCoalescedCount());
+            assertEquals(20, images.size());
+            // Each icon was decoded once, all views got the same image
+            Map<String, String> decoded = new HashMap<String, String>();
+            for (String image : images) {
+                if (!decoded.containsKey(image)) {
+                    decoded.put(image, image);
+                }
+                assertSame(decoded.get(image), image);
+            }
+            assertEquals(2, decoded.size());
+        } finally {
+            decodeExecutor.shutdown();
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void load_withCredentials_addsAuthorizationHeader() {
+        loader.load("a", "user", "secret", true, callback());
+        loader.load("b", "", "", true, callback());
+
+        assertEquals("Basic dXNlcjpzZWNyZXQ=", fetcher.headers.get(0).get("Authorization"));
+        assertTrue(fetcher.headers.get(1).isEmpty());
+    }
+
+    private IconLoader.Callback<String> callback() {
+        return new IconLoader.Callback<String>() {
+            @Override
+            public void onLoaded(String image) {
+                results.add(image);
+            }
+
+            @Override
+            public void onFailed() {
+                results.add("failed");
+            }
+        };
+    }
+
+    private static class FakeFetcher implements IconLoader.Fetcher {
+        final List<String> urls = new ArrayList<String>();
+        final List<Map<String, String>> headers = new ArrayList<Map<String, String>>();
+        final List<IconLoader.FetchCallback> callbacks = new ArrayList<IconLoader.FetchCallback>();
+
+        @Override
+        public void fetch(String url, Map<String, String> headers, IconLoader.FetchCallback callback) {
+            urls.add(url);
+            this.headers.add(headers);
+            callbacks.add(callback);
+        }
+
+        void succeed(int index, String body) {
+            callbacks.remove(index).onSuccess(body.getBytes());
+        }
+
+        void fail(int index) {
+            callbacks.remove(index).onFailure(0, new Exception("No connection"));
+        }
+    }
+
+    private static class ServerFetcher implements IconLoader.Fetcher {
+        private final OkHttpClient client = new OkHttpClient();
+
+        @Override
+        public void fetch(String url, Map<String, String> headers, final IconLoader.FetchCallback callback) {
+            client.newCall(new Request.Builder().url(url).headers(Headers.of(headers)).build()).enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    callback.onFailure(0, e);
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) throws IOException {
+                    callback.onSuccess(response.body().bytes());
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImageRefreshSchedulerTest {
+    private FakeTimer timer;
+    private ImageRefreshScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        timer = new FakeTimer();
+        scheduler = new ImageRefreshScheduler(timer);
+        scheduler.resume();
+    }
+
+    @Test
+    public void register_samePeriod_sharesOneTick() {
+        FakeTarget first = new FakeTarget();
+        FakeTarget second = new FakeTarget();
+        FakeTarget slow = new FakeTarget();
+        scheduler.register(first, 1000);
+        scheduler.register(second, 1000);
+        scheduler.register(slow, 5000);
+
+        assertEquals(2, scheduler.getTickCount());
+        assertEquals(2, timer.scheduled.size());
+        timer.advance(1000);
+        assertEquals(1, first.refreshes);
+        assertEquals(1, second.refreshes);
+        assertEquals(0, slow.refreshes);
+        timer.advance(4000);
+        assertEquals(5, first.refreshes);
+        assertEquals(1, slow.refreshes);
+    }
+
+    @Test
+    public void tick_previousRefreshInFlight_skipsTarget() {
+        FakeTarget target = new FakeTarget();
+        target.autoComplete = false;
+        scheduler.register(target, 1000);
+
+        timer.advance(3000);
+        assertEquals(1, target.refreshes);
+        assertEquals(2, scheduler.getSkippedInFlightCount());
+
+        target.complete();
+        timer.advance(1000);
+        assertEquals(2, target.refreshes);
+    }
+
+    @Test
+    public void tick_invisibleTarget_isNotRefreshed() {
+        FakeTarget target = new FakeTarget();
+        target.visible = false;
+        scheduler.register(target, 1000);
+
+        timer.advance(2000);
+        assertEquals(0, target.refreshes);
+        assertEquals(2, scheduler.getSkippedInvisibleCount());
+
+        target.visible = true;
+        timer.advance(1000);
+        assertEquals(1, target.refreshes);
+    }
+
+    @Test
+    public void pause_stopsTicksUntilLastListResumes() {
+        FakeTarget target = new FakeTarget();
+        scheduler.resume();
+        scheduler.register(target, 1000);
+
+        scheduler.pause();
+        assertFalse(scheduler.isPaused());
+        scheduler.pause();
+        assertTrue(scheduler.isPaused());
+        assertTrue(timer.scheduled.isEmpty());
+        timer.advance(5000);
+        assertEquals(0, target.refreshes);
+
+        scheduler.resume();
+        timer.advance(1000);
+        assertEquals(1, target.refreshes);
+    }
+
+    @Test
+    public void unregister_lastTargetOfPeriod_cancelsTick() {
+        FakeTarget target = new FakeTarget();
+        scheduler.register(target, 1000);
+        scheduler.register(target, 2000);
+        assertEquals(1, scheduler.getTickCount());
+        assertEquals(1, scheduler.getRegisteredCount());
+
+        scheduler.unregister(target);
+
+        assertEquals(0, scheduler.getTickCount());
+        assertTrue(timer.scheduled.isEmpty());
+        timer.advance(5000);
+        assertEquals(0, target.refreshes);
+    }
+
+    private static class FakeTarget implements ImageRefreshScheduler.Target {
+        boolean visible = true;
+        boolean autoComplete = true;
+        int refreshes;
+        Runnable pendingCompletion;
+
+        @Override
+        public boolean isVisible() {
+            return visible;
+        }
+
+        @Override
+        public void refresh(Runnable onComplete) {
+            refreshes++;
+            pendingCompletion = onComplete;
+            if (autoComplete) {
+                complete();
+            }
+        }
+
+        void complete() {
+            if (pendingCompletion != null) {
+                pendingCompletion.run();
+                pendingCompletion = null;
+            }
+        }
+    }
+}
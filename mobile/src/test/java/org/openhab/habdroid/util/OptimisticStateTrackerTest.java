@@ -0,0 +1,169 @@
+package org.openhab.habdroid.util;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.habdroid.model.OpenHABItem;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class OptimisticStateTrackerTest {
+    private FakeTimer timer;
+    private OptimisticStateTracker tracker;
+    private List<String> changes;
+
+    @Before
+    public void setUp() {
+        timer = new FakeTimer();
+        tracker = new OptimisticStateTracker(5000, timer);
+        changes = new ArrayList<String>();
+        tracker.addListener(new OptimisticStateTracker.Listener() {
+            @Override
+            public void onItemStateChanged(OpenHABItem item) {
+                changes.add(item.getName() + "=" + item.getState());
+            }
+        });
+    }
+
+    @Test
+    public void apply_switchCommand_setsStateImmediately() throws Exception {
+        OpenHABItem item = createItem("SwitchItem", "Light", "OFF");
+
+        assertTrue(tracker.apply(item, "ON"));
+
+        assertEquals("ON", item.getState());
+        assertEquals(1, tracker.getPendingCount());
+        assertEquals("[Light=ON]", changes.toString());
+    }
+
+    @Test
+    public void reconcile_serverReportsExpectedState_confirms() throws Exception {
+        OpenHABItem item = createItem("Dimmer", "Dimmer", "0");
+        tracker.apply(item, "42");
+
+        OpenHABItem serverItem = createItem("Dimmer", "Dimmer", "42.0");
+        assertFalse(tracker.reconcile(serverItem));
+
+        assertEquals("42.0", serverItem.getState());
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(1, tracker.getConfirmedCount());
+        assertTrue(timer.scheduled.isEmpty());
+    }
+
+    @Test
+    public void reconcile_staleServerState_keepsExpectedStateUntilTimeout() throws Exception {
+        OpenHABItem item = createItem("Rollershutter", "Shutter", "100");
+        tracker.apply(item, "0");
+        assertEquals("0", item.getState());
+
+        OpenHABItem serverItem = createItem("Rollershutter", "Shutter", "60");
+        assertTrue(tracker.reconcile(serverItem));
+        assertEquals("0", serverItem.getState());
+
+        timer.advance(5000);
+        // Rolled back to the latest server state, on the item shown last
+        assertEquals("60", serverItem.getState());
+        assertEquals(1, tracker.getTimeoutCount());
+        assertEquals("[Shutter=0, Shutter=60]", changes.toString());
+    }
+
+    @Test
+    public void onCommandFailed_rollsBackToPreviousState() throws Exception {
+        OpenHABItem item = createItem("Switch", "Light", "OFF");
+        tracker.apply(item, "ON");
+        tracker.apply(item, "OFF");
+        tracker.apply(item, "ON");
+
+        tracker.onCommandFailed("http://localhost/rest/items/Light");
+
+        assertEquals("OFF", item.getState());
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(1, tracker.getFailedCount());
+        assertTrue(timer.scheduled.isEmpty());
+    }
+
+    @Test
+    public void apply_unpredictableCommand_leavesItemUnchanged() throws Exception {
+        OpenHABItem item = createItem("Rollershutter", "Shutter", "40");
+
+        assertFalse(tracker.apply(item, "STOP"));
+        assertFalse(tracker.apply(item, "UP"));
+        assertFalse(tracker.apply(item, "DOWN"));
+        assertFalse(tracker.apply(createItem("Dimmer", "Dimmer", "40"), "ON"));
+        assertFalse(tracker.apply(createItem("Dimmer", "Dimmer", "40"), "INCREASE"));
+
+        assertEquals("40", item.getState());
+        assertEquals(0, tracker.getPendingCount());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void onCommandDeferred_keepsExpectedStateUntilDelivered() throws Exception {
+        OpenHABItem item = createItem("Switch", "Light", "OFF");
+        tracker.apply(item, "ON");
+        tracker.onCommandDeferred(item.getLink());
+
+        timer.advance(60000);
+        assertEquals("ON", item.getState());
+        assertEquals(0, tracker.getTimeoutCount());
+
+        tracker.onCommandDelivered(item.getLink());
+        timer.advance(4999);
+        assertEquals("ON", item.getState());
+        timer.advance(1);
+        assertEquals("OFF", item.getState());
+        assertEquals(1, tracker.getTimeoutCount());
+    }
+
+    @Test
+    public void getExpectedState_mapsCommandsPerItemType() throws Exception {
+        assertEquals("0", OptimisticStateTracker.getExpectedState(createItem("DimmerItem", "D", "40"), "OFF"));
+        assertNull(OptimisticStateTracker.getExpectedState(createItem("DimmerItem", "D", "0"), "ON"));
+        assertEquals("30", OptimisticStateTracker.getExpectedState(createItem("Rollershutter", "R", "0"), "30"));
+        assertNull(OptimisticStateTracker.getExpectedState(createItem("Rollershutter", "R", "0"), "DOWN"));
+        assertEquals("21.5", OptimisticStateTracker.getExpectedState(createItem("Number", "N", "20"), "21.5"));
+        assertEquals("120,100,50", OptimisticStateTracker.getExpectedState(createItem("Color", "C", null), "120,100,50"));
+        assertNull(OptimisticStateTracker.getExpectedState(createItem("Color", "C", null), "ON"));
+        assertNull(OptimisticStateTracker.getExpectedState(createItem("Contact", "W", "OPEN"), "CLOSED"));
+        assertNull(OptimisticStateTracker.getExpectedState(createItem("Number", "N", "20"), "abc"));
+    }
+
+    @Test
+    public void reconcile_colorFormattedDifferently_confirmsState() throws Exception {
+        OpenHABItem item = createItem("Color", "Color", "0,0,0");
+        tracker.apply(item, "120,50,100");
+
+        OpenHABItem serverItem = createItem("Color", "Color", "120.0,50.0,100.0");
+        assertFalse(tracker.reconcile(serverItem));
+        assertEquals("120.0,50.0,100.0", serverItem.getState());
+        assertEquals(1, tracker.getConfirmedCount());
+        assertTrue(timer.scheduled.isEmpty());
+    }
+
+    @Test
+    public void isSameState_comparesComponentsByValue() {
+        assertTrue(OptimisticStateTracker.isSameState("120,50,100", "120.0,50.0,100.0"));
+        assertTrue(OptimisticStateTracker.isSameState("50", "50.0"));
+        assertTrue(OptimisticStateTracker.isSameState("ON", "ON"));
+        assertFalse(OptimisticStateTracker.isSameState("120,50,100", "120,50,99"));
+        assertFalse(OptimisticStateTracker.isSameState("120,50,100", "120,50"));
+        assertFalse(OptimisticStateTracker.isSameState("ON", "OFF"));
+        assertFalse(OptimisticStateTracker.isSameState("50", null));
+    }
+
+    private OpenHABItem createItem(String type, String name, String state) throws Exception {
+        JSONObject json = new JSONObject();
+        json.put("type", type);
+        json.put("name", name);
+        json.put("link", "http://localhost/rest/items/" + name);
+        OpenHABItem item = new OpenHABItem(json);
+        item.setState(state);
+        return item;
+    }
+}
@@ -0,0 +1,147 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PageCacheTest {
+    private static final String LOCAL_URL = "http://192.168.1.2:8080/rest/sitemaps/demo/demo";
+    private static final String REMOTE_URL = "https://home.example.com/rest/sitemaps/demo/demo";
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private File directory;
+    private PageCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.newFolder("pages");
+        cache = new PageCache(directory, 16 * 1024, DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+    }
+
+    @Test
+    public void put_thenGet_returnsEntry() {
+        byte[] body = page(20);
+        cache.put(LOCAL_URL, 2, body);
+
+        PageCache.Entry entry = get(cache, LOCAL_URL);
+        assertNotNull(entry);
+        assertEquals(LOCAL_URL, entry.getUrl());
+        assertEquals(2, entry.getOpenHABVersion());
+        assertArrayEquals(body, entry.getResponseBody());
+        assertTrue(entry.getSavedAt() > 0);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void put_storesCompressedBody() {
+        byte[] body = page(100);
+        cache.put(LOCAL_URL, 2, body);
+        assertTrue(cache.getSize() < body.length / 4);
+    }
+
+    @Test
+    public void get_differentServer_isMiss() {
+        cache.put(LOCAL_URL, 2, page(1));
+
+        assertNull(get(cache, REMOTE_URL));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void get_afterRestart_readsEntriesFromDisk() {
+        byte[] body = page(5);
+        cache.put(LOCAL_URL, 1, body);
+
+        PageCache restarted = new PageCache(directory, 16 * 1024, DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+        PageCache.Entry entry = get(restarted, LOCAL_URL);
+        assertNotNull(entry);
+        assertEquals(1, entry.getOpenHABVersion());
+        assertArrayEquals(body, entry.getResponseBody());
+    }
+
+    @Test
+    public void get_corruptedEntry_isRemoved() throws Exception {
+        cache.put(LOCAL_URL, 2, page(5));
+        FileOutputStream out = new FileOutputStream(new File(directory, PageCache.getFileName(LOCAL_URL)));
+        out.write(new byte[] { 1, 2, 3 });
+        out.close();
+
+        assertNull(get(cache, LOCAL_URL));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void put_overMaximumSize_evictsLeastRecentlyUsed() {
+        PageCache smallCache = new PageCache(directory, 1000, DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+        smallCache.put(LOCAL_URL + "/0", 2, randomPage(1));
+        smallCache.put(LOCAL_URL + "/1", 2, randomPage(2));
+        // Touch the first entry, so the second one is the eldest
+        assertNotNull(get(smallCache, LOCAL_URL + "/0"));
+        smallCache.put(LOCAL_URL + "/2", 2, randomPage(3));
+
+        assertTrue(smallCache.getSize() <= 1000);
+        assertNotNull(get(smallCache, LOCAL_URL + "/0"));
+        assertNull(get(smallCache, LOCAL_URL + "/1"));
+        assertNotNull(get(smallCache, LOCAL_URL + "/2"));
+    }
+
+    @Test
+    public void clear_removesAllEntries() {
+        cache.put(LOCAL_URL, 2, page(5));
+        cache.put(REMOTE_URL, 2, page(5));
+        cache.clear();
+
+        assertEquals(0, cache.getSize());
+        assertNull(get(cache, LOCAL_URL));
+    }
+
+    private static PageCache.Entry get(PageCache cache, String url) {
+        final PageCache.Entry[] result = new PageCache.Entry[1];
+        cache.get(url, new PageCache.Callback() {
+            @Override
+            public void onEntryLoaded(PageCache.Entry entry) {
+                result[0] = entry;
+            }
+        });
+        return result[0];
+    }
+
+    private static byte[] page(int widgetCount) {
+        StringBuilder json = new StringBuilder("{\"id\":\"demo\",\"widgets\":[");
+        for (int i = 0; i < widgetCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"widgetId\":\"").append(i)
+                    .append("\",\"type\":\"Switch\",\"label\":\"Light\",\"icon\":\"light\"}");
+        }
+        return json.append("]}").toString().getBytes();
+    }
+
+    private static byte[] randomPage(long seed) {
+        // Random content doesn't compress, so the entry size is predictable
+        byte[] body = new byte[400];
+        new Random(seed).nextBytes(body);
+        return body;
+    }
+}
@@ -0,0 +1,130 @@
+package org.openhab.habdroid.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.habdroid.model.OpenHABWidgetDataSource;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class PagePrefetcherTest {
+    private MockWebServer server;
+    private PagePrefetcher prefetcher;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("{\"id\":\"" + request.getPath() + "\",\"widgets\":[]}");
+            }
+        });
+        server.start();
+        prefetcher = createPrefetcher(PagePrefetcher.DEFAULT_MAX_AGE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        prefetcher.clear();
+        server.shutdown();
+    }
+
+    @Test
+    public void prefetch_loadsAllLinkedPages() throws Exception {
+        prefetcher.prefetch(page(4), 2, false);
+        awaitPrefetch();
+
+        assertEquals(4, server.getRequestCount());
+        for (int i = 0; i < 4; i++) {
+            byte[] body = prefetcher.getPage(linkedPageUrl(i));
+            assertNotNull(body);
+            assertTrue(new String(body).contains("/rest/sitemaps/demo/000" + i));
+        }
+        assertEquals(4, prefetcher.getHitCount());
+        assertEquals("Basic dGVzdDp0ZXN0", server.takeRequest().getHeader("Authorization"));
+    }
+
+    @Test
+    public void prefetch_meteredNetwork_limitsPages() throws Exception {
+        prefetcher.prefetch(page(4), 2, true);
+        awaitPrefetch();
+
+        assertEquals(2, server.getRequestCount());
+        assertNull(prefetcher.getPage(linkedPageUrl(3)));
+        assertEquals(1, prefetcher.getMissCount());
+    }
+
+    @Test
+    public void prefetch_pagesInMemory_areNotLoadedAgain() throws Exception {
+        prefetcher.prefetch(page(2), 2, false);
+        awaitPrefetch();
+        prefetcher.prefetch(page(3), 2, false);
+        awaitPrefetch();
+
+        assertEquals(3, server.getRequestCount());
+        assertEquals(3, prefetcher.getFetchCount());
+    }
+
+    @Test
+    public void prefetch_openHAB1_requestsXml() throws Exception {
+        prefetcher.prefetch(page(1), 1, false);
+        awaitPrefetch();
+
+        assertEquals("application/xml", server.takeRequest().getHeader("Accept"));
+    }
+
+    @Test
+    public void getPage_expiredPage_isMiss() throws Exception {
+        prefetcher.clear();
+        prefetcher = createPrefetcher(-1);
+        prefetcher.prefetch(page(1), 2, false);
+        awaitPrefetch();
+
+        assertNull(prefetcher.getPage(linkedPageUrl(0)));
+        assertEquals(1, prefetcher.getMissCount());
+    }
+
+    private PagePrefetcher createPrefetcher(long maxAge) {
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Authorization", "Basic dGVzdDp0ZXN0");
+        return new PagePrefetcher(new OkHttpClient(), headers, 2, 10, maxAge);
+    }
+
+    private String linkedPageUrl(int index) {
+        return server.url("/rest/sitemaps/demo/000" + index).toString();
+    }
+
+    private OpenHABWidgetDataSource page(int linkCount) throws Exception {
+        StringBuilder json = new StringBuilder("{\"id\":\"demo\",\"widgets\":[");
+        for (int i = 0; i < linkCount; i++) {
+            json.append("{\"widgetId\":\"0").append(i).append("\",\"type\":\"Group\",\"label\":\"Room\",")
+                    .append("\"linkedPage\":{\"id\":\"000").append(i).append("\",\"title\":\"Room\",")
+                    .append("\"link\":\"").append(linkedPageUrl(i)).append("\"}},");
+        }
+        json.append("{\"widgetId\":\"99\",\"type\":\"Switch\",\"label\":\"Light\"}]}");
+        OpenHABWidgetDataSource dataSource = new OpenHABWidgetDataSource("PNG");
+        dataSource.setSourceJson(new ByteArrayInputStream(json.toString().getBytes()));
+        return dataSource;
+    }
+
+    private void awaitPrefetch() throws InterruptedException {
+        long end = System.currentTimeMillis() + 5000;
+        while (prefetcher.getRunningCount() > 0 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, prefetcher.getRunningCount());
+    }
+}
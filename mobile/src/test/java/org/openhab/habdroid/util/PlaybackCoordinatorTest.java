@@ -0,0 +1,107 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlaybackCoordinatorTest {
+    private List<String> events;
+    private PlaybackCoordinator coordinator;
+
+    @Before
+    public void setUp() {
+        events = new ArrayList<String>();
+        coordinator = new PlaybackCoordinator(2);
+    }
+
+    @Test
+    public void onVisible_startsUpToLimit() {
+        FakeStream a = new FakeStream("a");
+        FakeStream b = new FakeStream("b");
+        FakeStream c = new FakeStream("c");
+        coordinator.onVisible(a);
+        coordinator.onVisible(b);
+        coordinator.onVisible(c);
+
+        assertEquals(Arrays.asList("start a", "start b"), events);
+        assertEquals(3, coordinator.getVisibleCount());
+        assertEquals(2, coordinator.getPlayingCount());
+        assertFalse(coordinator.isPlaying(c));
+    }
+
+    @Test
+    public void onHidden_stopsStreamAndStartsWaitingOne() {
+        FakeStream a = new FakeStream("a");
+        FakeStream b = new FakeStream("b");
+        FakeStream c = new FakeStream("c");
+        coordinator.onVisible(a);
+        coordinator.onVisible(b);
+        coordinator.onVisible(c);
+        events.clear();
+
+        coordinator.onHidden(a);
+
+        assertEquals(Arrays.asList("stop a", "start c"), events);
+        assertTrue(coordinator.isPlaying(c));
+    }
+
+    @Test
+    public void onVisible_streamComingBack_isStartedAgain() {
+        FakeStream a = new FakeStream("a");
+        coordinator.onVisible(a);
+        coordinator.onHidden(a);
+        coordinator.onVisible(a);
+        coordinator.onVisible(a);
+
+        assertEquals(Arrays.asList("start a", "stop a", "start a"), events);
+        assertEquals(2, coordinator.getStartCount());
+        assertEquals(1, coordinator.getStopCount());
+    }
+
+    @Test
+    public void pause_stopsAllUntilResumed() {
+        FakeStream a = new FakeStream("a");
+        FakeStream b = new FakeStream("b");
+        coordinator.onVisible(a);
+        coordinator.pause();
+        coordinator.onVisible(b);
+        coordinator.onHidden(a);
+        assertEquals(Arrays.asList("start a", "stop a"), events);
+
+        coordinator.resume();
+        assertEquals(Arrays.asList("start a", "stop a", "start b"), events);
+    }
+
+    @Test
+    public void onHidden_unknownStream_isIgnored() {
+        coordinator.onHidden(new FakeStream("a"));
+
+        assertTrue(events.isEmpty());
+        assertEquals(0, coordinator.getVisibleCount());
+    }
+
+    private class FakeStream implements PlaybackCoordinator.Stream {
+        final String name;
+
+        FakeStream(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void start() {
+            events.add("start " + name);
+        }
+
+        @Override
+        public void stop() {
+            events.add("stop " + name);
+        }
+    }
+}
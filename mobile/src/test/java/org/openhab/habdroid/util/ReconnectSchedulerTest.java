@@ -0,0 +1,121 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectSchedulerTest {
+    private FakeTimer timer;
+    private ReconnectScheduler scheduler;
+    private int reconnects;
+    private Runnable reconnect = new Runnable() {
+        @Override
+        public void run() {
+            reconnects++;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        timer = new FakeTimer();
+        scheduler = new ReconnectScheduler(1000, 60000, new Random(42), timer);
+        reconnects = 0;
+    }
+
+    @Test
+    public void getDelay_growsExponentiallyWithJitterUpToMaximum() {
+        long previousMaximum = 0;
+        for (int failures = 1; failures <= 12; failures++) {
+            long nominal = Math.min(1000L << (failures - 1), 60000);
+            long delay = scheduler.getDelay(failures);
+            assertTrue(delay >= nominal / 2);
+            assertTrue(delay <= nominal);
+            assertTrue(nominal >= previousMaximum);
+            previousMaximum = nominal;
+        }
+        assertTrue(scheduler.getDelay(100) <= 60000);
+    }
+
+    @Test
+    public void scheduleReconnect_repeatedFailures_increaseBackoff() {
+        scheduler.scheduleReconnect(reconnect);
+        assertEquals(1, scheduler.getFailureCount());
+        assertTrue(timer.lastDelay <= 1000);
+        assertEquals(timer.now + timer.lastDelay, scheduler.getNextAttemptTime());
+
+        timer.advance(timer.lastDelay);
+        assertEquals(1, reconnects);
+        assertEquals(-1, scheduler.getNextAttemptTime());
+
+        scheduler.scheduleReconnect(reconnect);
+        timer.advance(timer.lastDelay);
+        scheduler.scheduleReconnect(reconnect);
+        assertEquals(3, scheduler.getFailureCount());
+        assertTrue(timer.lastDelay >= 2000);
+    }
+
+    @Test
+    public void scheduleReconnect_simultaneousFailures_shareOneAttempt() {
+        final List<String> order = new ArrayList<String>();
+        scheduler.scheduleReconnect(new Runnable() {
+            @Override
+            public void run() {
+                order.add("first");
+            }
+        });
+        scheduler.scheduleReconnect(new Runnable() {
+            @Override
+            public void run() {
+                order.add("second");
+            }
+        });
+        assertEquals(1, scheduler.getFailureCount());
+        assertEquals(1, timer.scheduled.size());
+
+        timer.advance(timer.lastDelay);
+        assertEquals(2, order.size());
+        assertEquals("first", order.get(0));
+    }
+
+    @Test
+    public void onSuccess_resetsBackoff() {
+        scheduler.scheduleReconnect(reconnect);
+        timer.advance(timer.lastDelay);
+        scheduler.scheduleReconnect(reconnect);
+        timer.advance(timer.lastDelay);
+        scheduler.onSuccess();
+        assertEquals(0, scheduler.getFailureCount());
+
+        scheduler.scheduleReconnect(reconnect);
+        assertTrue(timer.lastDelay <= 1000);
+    }
+
+    @Test
+    public void setNetworkAvailable_holdsAttemptsUntilConnectivityReturns() {
+        scheduler.setNetworkAvailable(false);
+        scheduler.scheduleReconnect(reconnect);
+        assertTrue(timer.scheduled.isEmpty());
+        assertEquals(-1, scheduler.getNextAttemptTime());
+
+        scheduler.setNetworkAvailable(true);
+        assertEquals(0, timer.lastDelay);
+        timer.advance(timer.lastDelay);
+        assertEquals(1, reconnects);
+        assertEquals(0, scheduler.getFailureCount());
+    }
+
+    @Test
+    public void cancel_lastReconnect_cancelsAttempt() {
+        scheduler.scheduleReconnect(reconnect);
+        scheduler.cancel(reconnect);
+        assertTrue(timer.scheduled.isEmpty());
+        assertEquals(-1, scheduler.getNextAttemptTime());
+        assertEquals(0, scheduler.getPendingReconnectCount());
+    }
+}
@@ -0,0 +1,184 @@
+package org.openhab.habdroid.util;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.habdroid.model.OpenHABWidget;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SitemapPageParserTest {
+    private static final String PAGE_JSON = "{\"id\":\"demo\",\"title\":\"Demo\",\"widgets\":["
+            + "{\"widgetId\":\"00\",\"type\":\"Frame\",\"label\":\"\",\"widgets\":["
+            + "{\"widgetId\":\"0000\",\"type\":\"Switch\",\"label\":\"Light\"}]},"
+            + "{\"widgetId\":\"01\",\"type\":\"Frame\",\"label\":\"Outside\",\"widgets\":["
+            + "{\"widgetId\":\"0100\",\"type\":\"Text\",\"label\":\"Temperature [21 °C]\"}]}]}";
+    private static final String PAGE_XML = "<page><id>demo</id><title>Demo</title>"
+            + "<widget><widgetId>00</widgetId><type>Switch</type><label>Light</label></widget>"
+            + "</page>";
+
+    private QueueExecutor executor;
+    private QueueExecutor callbackExecutor;
+    private SitemapPageParser parser;
+    private List<SitemapPageParser.Result> results;
+    private SitemapPageParser.ResultListener listener = new SitemapPageParser.ResultListener() {
+        @Override
+        public void onPageParsed(SitemapPageParser.Result result) {
+            results.add(result);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        executor = new QueueExecutor();
+        callbackExecutor = new QueueExecutor();
+        parser = new SitemapPageParser(executor, callbackExecutor);
+        results = new ArrayList<SitemapPageParser.Result>();
+    }
+
+    @Test
+    public void parse_openHAB2_deliversImmutableListWithoutEmptyFrames() {
+        parser.parse(this, PAGE_JSON.getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        assertTrue(results.isEmpty());
+        callbackExecutor.runAll();
+
+        assertEquals(1, results.size());
+        SitemapPageParser.Result result = results.get(0);
+        assertNull(result.getError());
+        assertEquals("Demo", result.getDataSource().getTitle());
+        List<OpenHABWidget> widgets = result.getWidgets();
+        assertEquals(3, widgets.size());
+        assertEquals("0000", widgets.get(0).getId());
+        assertEquals("01", widgets.get(1).getId());
+        assertTrue(result.getParseTime() >= 0);
+        assertEquals(1, parser.getParseCount());
+        try {
+            widgets.clear();
+            fail("Widget list must not be modifiable");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parse_openHAB1_usesXmlParser() {
+        parser.parse(this, PAGE_XML.getBytes(), 1, "PNG", listener);
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(1, results.size());
+        assertEquals("demo", results.get(0).getDataSource().getId());
+        assertEquals("Light", results.get(0).getWidgets().get(0).getLabel());
+    }
+
+    @Test
+    public void parse_newerRequestWhileQueued_replacesQueuedRequest() {
+        parser.parse(this, "{\"title\":\"Old\",\"widgets\":[]}".getBytes(), 2, "PNG", listener);
+        parser.parse(this, PAGE_JSON.getBytes(), 2, "PNG", listener);
+        assertEquals(1, executor.queue.size());
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(1, results.size());
+        assertEquals("Demo", results.get(0).getDataSource().getTitle());
+        assertEquals(1, parser.getParseCount());
+    }
+
+    @Test
+    public void parse_newerRequestAfterParsing_discardsStaleResult() {
+        parser.parse(this, "{\"title\":\"Old\",\"widgets\":[]}".getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        parser.parse(this, PAGE_JSON.getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(1, results.size());
+        assertEquals("Demo", results.get(0).getDataSource().getTitle());
+        assertEquals(2, parser.getParseCount());
+        assertEquals(1, parser.getDiscardedCount());
+    }
+
+    @Test
+    public void parse_differentKeys_areDeliveredIndependently() {
+        parser.parse("first", PAGE_JSON.getBytes(), 2, "PNG", listener);
+        parser.parse("second", PAGE_JSON.getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(2, results.size());
+    }
+
+    @Test
+    public void parse_invalidResponse_reportsError() {
+        parser.parse(this, "{\"widgets\":[".getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(1, results.size());
+        assertNotNull(results.get(0).getError());
+        assertTrue(results.get(0).getWidgets().isEmpty());
+    }
+
+    @Test
+    public void cancel_dropsQueuedAndRunningRequests() {
+        parser.parse(this, PAGE_JSON.getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        parser.cancel(this);
+        parser.parse("other", PAGE_JSON.getBytes(), 2, "PNG", listener);
+        parser.cancel("other");
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertTrue(results.isEmpty());
+        assertEquals(1, parser.getParseCount());
+        assertEquals(0, parser.getPendingKeyCount());
+    }
+
+    @Test
+    public void parse_afterCancel_discardsResultFromBeforeCancel() {
+        parser.parse(this, "{\"title\":\"Old\",\"widgets\":[]}".getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        parser.cancel(this);
+        parser.parse(this, PAGE_JSON.getBytes(), 2, "PNG", listener);
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(1, results.size());
+        assertEquals("Demo", results.get(0).getDataSource().getTitle());
+    }
+
+    @Test
+    public void parse_delivered_forgetsKey() {
+        parser.parse("first", PAGE_JSON.getBytes(), 2, "PNG", listener);
+        parser.parse("second", PAGE_JSON.getBytes(), 2, "PNG", listener);
+        assertEquals(2, parser.getPendingKeyCount());
+        executor.runAll();
+        callbackExecutor.runAll();
+
+        assertEquals(2, results.size());
+        assertEquals(0, parser.getPendingKeyCount());
+    }
+
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> queue = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            queue.add(runnable);
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                queue.remove(0).run();
+            }
+        }
+    }
+}
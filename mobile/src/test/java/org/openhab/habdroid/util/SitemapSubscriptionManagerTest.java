@@ -0,0 +1,300 @@
+package org.openhab.habdroid.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.habdroid.model.OpenHABWidgetEvent;
+
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SitemapSubscriptionManagerTest {
+    private static final String SUBSCRIBE_RESPONSE = "{\"status\":\"CREATED\",\"context\":{\"headers\":"
+            + "{\"Location\":[\"http://internal:8080/rest/sitemaps/events/abcd-1234\"]}}}";
+
+    private MockWebServer server;
+    private ReconnectScheduler reconnectScheduler;
+    private SitemapSubscriptionManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        HashMap<String, String> headers = new HashMap<String, String>();
+        headers.put("Authorization", "Basic dGVzdDp0ZXN0");
+        reconnectScheduler = new ReconnectScheduler(1000, 60000, new Random(0), new FakeTimer());
+        manager = new SitemapSubscriptionManager(new OkHttpClient(), headers, new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                runnable.run();
+            }
+        }, reconnectScheduler);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void subscribe_openHAB1_sharesOneLongPollBetweenListeners() throws Exception {
+        server.enqueue(new MockResponse().setBody("<page/>").addHeader("X-Atmosphere-tracking-id", "42"));
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/0001").toString();
+
+        manager.subscribe(pageUrl, 1, first);
+        manager.subscribe(pageUrl, 1, second);
+
+        assertEquals("<page/>", first.takeContent());
+        assertEquals("<page/>", second.takeContent());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("application/xml", request.getHeader("Accept"));
+        assertEquals("long-polling", request.getHeader("X-Atmosphere-Transport"));
+        assertEquals("0", request.getHeader("X-Atmosphere-tracking-id"));
+        assertEquals("Basic dGVzdDp0ZXN0", request.getHeader("Authorization"));
+        // The next poll continues with the tracking id the server assigned
+        RecordedRequest nextRequest = server.takeRequest(5, TimeUnit.SECONDS);
+        assertEquals("42", nextRequest.getHeader("X-Atmosphere-tracking-id"));
+        assertEquals(1, manager.getSubscriptionCount());
+    }
+
+    @Test
+    public void subscribe_openHAB2_readsSitemapEventStream() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody(SUBSCRIBE_RESPONSE));
+        server.enqueue(new MockResponse()
+                .addHeader("Content-Type", "text/event-stream")
+                .setBody("event: event\n"
+                        + "data: {\"sitemapName\":\"demo\",\"pageId\":\"0001\",\"TYPE\":\"ALIVE\"}\n\n"
+                        + "event: event\n"
+                        + "data: {\"widgetId\":\"000100\",\"label\":\"Temperature [21.5 °C]\","
+                        + "\"visibility\":true,\"item\":{\"name\":\"Temp\",\"state\":\"21.5\"},"
+                        + "\"sitemapName\":\"demo\",\"pageId\":\"0001\"}\n\n")
+                .setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+        RecordingListener listener = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/0001").toString();
+
+        manager.subscribe(pageUrl, 2, listener);
+
+        OpenHABWidgetEvent event = listener.events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        assertEquals("000100", event.getWidgetId());
+        assertEquals("Temperature [21.5 °C]", event.getLabel());
+        assertEquals("21.5", event.getItem().getState());
+        assertEquals("/rest/sitemaps/events/subscribe", server.takeRequest().getPath());
+        RecordedRequest streamRequest = server.takeRequest();
+        assertEquals("/rest/sitemaps/events/abcd-1234?sitemap=demo&pageid=0001", streamRequest.getPath());
+        assertEquals("text/event-stream", streamRequest.getHeader("Accept"));
+        // Alive events are not passed on
+        assertNull(listener.events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void subscribe_openHAB2WithoutEventStream_fallsBackToLongPolling() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody("{\"widgets\":[]}"));
+        RecordingListener listener = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/demo").toString();
+
+        manager.subscribe(pageUrl, 2, listener);
+
+        assertEquals("{\"widgets\":[]}", listener.takeContent());
+        assertEquals("/rest/sitemaps/events/subscribe", server.takeRequest().getPath());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/rest/sitemaps/demo/demo", request.getPath());
+        assertEquals("long-polling", request.getHeader("X-Atmosphere-Transport"));
+    }
+
+    @Test
+    public void subscribe_subscribeNotAllowed_fallsBackToLongPollingForLaterPages() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(405));
+        server.enqueue(new MockResponse().setBody("{\"widgets\":[]}"));
+        RecordingListener listener = new RecordingListener();
+
+        manager.subscribe(server.url("/rest/sitemaps/demo/0001").toString(), 2, listener);
+        assertEquals("{\"widgets\":[]}", listener.takeContent());
+        manager.subscribe(server.url("/rest/sitemaps/demo/0002").toString(), 2, listener);
+
+        assertEquals("/rest/sitemaps/events/subscribe", server.takeRequest().getPath());
+        for (int i = 0; i < 2; i++) {
+            // The event stream is not tried again for the second page
+            assertFalse(server.takeRequest(5, TimeUnit.SECONDS).getPath().startsWith("/rest/sitemaps/events"));
+        }
+    }
+
+    @Test
+    public void subscribe_subscribeUnauthorized_failsAndKeepsEventStream() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setResponseCode(201).setBody(SUBSCRIBE_RESPONSE));
+        server.enqueue(new MockResponse().setResponseCode(200).setSocketPolicy(SocketPolicy.KEEP_OPEN));
+        RecordingListener listener = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/0001").toString();
+
+        manager.subscribe(pageUrl, 2, listener);
+        assertNotNull(listener.failures.poll(5, TimeUnit.SECONDS));
+        assertFalse(manager.isSubscribed(pageUrl));
+        // Subscribing again, like the reconnect does, still uses the event stream
+        manager.subscribe(pageUrl, 2, listener);
+
+        assertEquals("/rest/sitemaps/events/subscribe", server.takeRequest().getPath());
+        assertEquals("/rest/sitemaps/events/subscribe", server.takeRequest().getPath());
+        assertEquals("/rest/sitemaps/events/abcd-1234?sitemap=demo&pageid=0001", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void subscribe_eventStreamForbidden_fails() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody(SUBSCRIBE_RESPONSE));
+        server.enqueue(new MockResponse().setResponseCode(403));
+        RecordingListener listener = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/0001").toString();
+
+        manager.subscribe(pageUrl, 2, listener);
+
+        assertNotNull(listener.failures.poll(5, TimeUnit.SECONDS));
+        assertFalse(manager.isSubscribed(pageUrl));
+        assertEquals("/rest/sitemaps/events/subscribe", server.takeRequest().getPath());
+        assertEquals("/rest/sitemaps/events/abcd-1234?sitemap=demo&pageid=0001", server.takeRequest().getPath());
+        assertNull(server.takeRequest(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void isEventStreamUnsupported_onlyForNotFoundAndNotAllowed() {
+        assertTrue(SitemapSubscriptionManager.isEventStreamUnsupported(404));
+        assertTrue(SitemapSubscriptionManager.isEventStreamUnsupported(405));
+        assertFalse(SitemapSubscriptionManager.isEventStreamUnsupported(401));
+        assertFalse(SitemapSubscriptionManager.isEventStreamUnsupported(403));
+        assertFalse(SitemapSubscriptionManager.isEventStreamUnsupported(500));
+        assertFalse(SitemapSubscriptionManager.isEventStreamUnsupported(200));
+    }
+
+    @Test
+    public void subscribe_sitemapChanged_invalidatesPage() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody(SUBSCRIBE_RESPONSE));
+        server.enqueue(new MockResponse()
+                .setBody("data: {\"sitemapName\":\"demo\",\"pageId\":\"0001\",\"TYPE\":\"SITEMAP_CHANGED\"}\n\n")
+                .setSocketPolicy(SocketPolicy.DISCONNECT_AT_END));
+        RecordingListener listener = new RecordingListener();
+
+        manager.subscribe(server.url("/rest/sitemaps/demo/0001").toString(), 2, listener);
+
+        assertNotNull(listener.invalidations.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void subscribe_serverError_notifiesAndRemovesSubscription() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        RecordingListener listener = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/0001").toString();
+
+        manager.subscribe(pageUrl, 1, listener);
+
+        assertNotNull(listener.failures.poll(5, TimeUnit.SECONDS));
+        assertFalse(manager.isSubscribed(pageUrl));
+    }
+
+    @Test
+    public void subscribe_eventReceived_resetsReconnectBackoff() throws Exception {
+        reconnectScheduler.scheduleReconnect(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        server.enqueue(new MockResponse().setResponseCode(201).setBody(SUBSCRIBE_RESPONSE));
+        server.enqueue(new MockResponse()
+                .setBody("data: {\"sitemapName\":\"demo\",\"pageId\":\"0001\",\"TYPE\":\"ALIVE\"}\n\n")
+                .setSocketPolicy(SocketPolicy.KEEP_OPEN));
+        RecordingListener listener = new RecordingListener();
+
+        manager.subscribe(server.url("/rest/sitemaps/demo/0001").toString(), 2, listener);
+
+        for (int i = 0; i < 50 && reconnectScheduler.getFailureCount() > 0; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, reconnectScheduler.getFailureCount());
+    }
+
+    @Test
+    public void subscribe_failure_keepsReconnectBackoff() throws Exception {
+        reconnectScheduler.scheduleReconnect(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        server.enqueue(new MockResponse().setResponseCode(500));
+        RecordingListener listener = new RecordingListener();
+
+        manager.subscribe(server.url("/rest/sitemaps/demo/0001").toString(), 1, listener);
+
+        assertNotNull(listener.failures.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, reconnectScheduler.getFailureCount());
+    }
+
+    @Test
+    public void unsubscribe_lastListener_stopsSubscription() throws Exception {
+        RecordingListener first = new RecordingListener();
+        RecordingListener second = new RecordingListener();
+        String pageUrl = server.url("/rest/sitemaps/demo/0001").toString();
+
+        manager.subscribe(pageUrl, 1, first);
+        manager.subscribe(pageUrl, 1, second);
+        manager.unsubscribe(pageUrl, first);
+        assertTrue(manager.isSubscribed(pageUrl));
+        manager.unsubscribe(pageUrl, second);
+        assertFalse(manager.isSubscribed(pageUrl));
+        assertEquals(0, manager.getSubscriptionCount());
+    }
+
+    @Test
+    public void parseSubscriptionId_usesLastPathSegment() {
+        assertEquals("abcd-1234", SitemapSubscriptionManager.parseSubscriptionId(SUBSCRIBE_RESPONSE));
+        assertNull(SitemapSubscriptionManager.parseSubscriptionId("{}"));
+    }
+
+    private static class RecordingListener implements SitemapSubscriptionManager.PageUpdateListener {
+        final BlockingQueue<String> contents = new LinkedBlockingQueue<String>();
+        final BlockingQueue<OpenHABWidgetEvent> events = new LinkedBlockingQueue<OpenHABWidgetEvent>();
+        final BlockingQueue<String> invalidations = new LinkedBlockingQueue<String>();
+        final BlockingQueue<Throwable> failures = new LinkedBlockingQueue<Throwable>();
+
+        @Override
+        public void onPageContent(String pageUrl, byte[] responseBody) {
+            contents.add(new String(responseBody));
+        }
+
+        @Override
+        public void onWidgetEvent(String pageUrl, OpenHABWidgetEvent event) {
+            events.add(event);
+        }
+
+        @Override
+        public void onPageInvalidated(String pageUrl) {
+            invalidations.add(pageUrl);
+        }
+
+        @Override
+        public void onSubscriptionFailure(String pageUrl, Throwable error) {
+            failures.add(error);
+        }
+
+        String takeContent() throws InterruptedException {
+            return contents.poll(5, TimeUnit.SECONDS);
+        }
+    }
+}